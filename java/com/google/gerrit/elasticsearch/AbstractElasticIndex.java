@@ -40,6 +40,7 @@ import com.google.gerrit.index.FieldType;
 import com.google.gerrit.index.Index;
 import com.google.gerrit.index.QueryOptions;
 import com.google.gerrit.index.Schema;
+import com.google.gerrit.index.SearchAfter;
 import com.google.gerrit.index.query.DataSource;
 import com.google.gerrit.index.query.FieldBundle;
 import com.google.gerrit.index.query.ListResultSet;
@@ -55,6 +56,7 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 import com.google.protobuf.MessageLite;
 import java.io.IOException;
 import java.io.InputStream;
@@ -63,6 +65,7 @@ import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -88,6 +91,7 @@ abstract class AbstractElasticIndex<K, V> implements Index<K, V> {
   protected static final String ASC_SORT_ORDER = "asc";
   protected static final String UNMAPPED_TYPE = "unmapped_type";
   protected static final String SEARCH = "_search";
+  protected static final String SEARCH_AFTER = "search_after";
   protected static final String SETTINGS = "settings";
 
   protected static byte[] decodeBase64(String base64String) {
@@ -283,12 +287,53 @@ abstract class AbstractElasticIndex<K, V> implements Index<K, V> {
     return params;
   }
 
-  protected String getSearch(SearchSourceBuilder searchSource, JsonArray sortArray) {
+  protected String getSearch(
+      SearchSourceBuilder searchSource, JsonArray sortArray, @Nullable SearchAfter searchAfter) {
     JsonObject search = new JsonParser().parse(searchSource.toString()).getAsJsonObject();
     search.add("sort", sortArray);
+    if (searchAfter != null) {
+      JsonArray values = new JsonArray();
+      for (Object v : searchAfter.values()) {
+        if (v instanceof Long) {
+          values.add((Long) v);
+        } else {
+          values.add((String) v);
+        }
+      }
+      search.add(SEARCH_AFTER, values);
+    }
     return gson.toJson(search);
   }
 
+  /**
+   * Returns the position of a search hit in the sort order.
+   *
+   * @param hit search hit.
+   * @return the position, or null if the hit has no sort values.
+   */
+  @Nullable
+  protected static SearchAfter getSearchAfter(JsonObject hit) {
+    JsonElement sort = hit.get("sort");
+    if (sort == null || !sort.isJsonArray()) {
+      return null;
+    }
+    List<Object> values = new ArrayList<>();
+    for (JsonElement e : sort.getAsJsonArray()) {
+      if (!e.isJsonPrimitive()) {
+        return null;
+      }
+      JsonPrimitive v = e.getAsJsonPrimitive();
+      if (v.isNumber()) {
+        values.add(v.getAsLong());
+      } else if (v.isString()) {
+        values.add(v.getAsString());
+      } else {
+        return null;
+      }
+    }
+    return SearchAfter.create(values);
+  }
+
   protected JsonArray getSortArray(String idFieldName) {
     JsonObject properties = new JsonObject();
     properties.addProperty(ORDER, ASC_SORT_ORDER);
@@ -346,18 +391,31 @@ abstract class AbstractElasticIndex<K, V> implements Index<K, V> {
   protected class ElasticQuerySource implements DataSource<V> {
     private final QueryOptions opts;
     private final String search;
+    private final int skip;
 
     ElasticQuerySource(Predicate<V> p, QueryOptions opts, JsonArray sortArray)
         throws QueryParseException {
       this.opts = opts;
       QueryBuilder qb = queryBuilder.toQueryBuilder(p);
+      int from = opts.start();
+      int size = opts.limit();
+      if (opts.searchAfter() != null) {
+        // Elasticsearch rejects search_after together with a non-zero from, so the results before
+        // start are fetched as well and skipped when reading the response.
+        from = 0;
+        size = opts.start() + opts.limit();
+        if (Integer.MAX_VALUE - opts.limit() < opts.start()) {
+          size = Integer.MAX_VALUE;
+        }
+      }
+      skip = opts.start() - from;
       SearchSourceBuilder searchSource =
           new SearchSourceBuilder(client.adapter())
               .query(qb)
-              .from(opts.start())
-              .size(opts.limit())
+              .from(from)
+              .size(size)
               .fields(Lists.newArrayList(opts.fields()));
-      search = getSearch(searchSource, sortArray);
+      search = getSearch(searchSource, sortArray, opts.searchAfter());
     }
 
     @Override
@@ -387,8 +445,9 @@ abstract class AbstractElasticIndex<K, V> implements Index<K, V> {
               new JsonParser().parse(content).getAsJsonObject().getAsJsonObject("hits");
           if (obj.get("hits") != null) {
             JsonArray json = obj.getAsJsonArray("hits");
-            ImmutableList.Builder<T> results = ImmutableList.builderWithExpectedSize(json.size());
-            for (int i = 0; i < json.size(); i++) {
+            ImmutableList.Builder<T> results =
+                ImmutableList.builderWithExpectedSize(Math.max(json.size() - skip, 0));
+            for (int i = skip; i < json.size(); i++) {
               T mapperResult = mapper.apply(json.get(i).getAsJsonObject());
               if (mapperResult != null) {
                 results.add(mapperResult);
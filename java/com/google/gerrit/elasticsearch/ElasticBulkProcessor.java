@@ -0,0 +1,423 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.elasticsearch;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Iterables;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Histogram0;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NStringEntity;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+
+/**
+ * Sends the bulk actions of concurrent index writers in shared {@code _bulk} requests.
+ *
+ * <p>Writers add their actions and block until these were executed, so that index writes keep
+ * their synchronous semantics. While fewer than {@code elasticsearch.bulkMaxInFlight} requests are
+ * running, pending actions are sent right away; otherwise they accumulate until a request
+ * finishes. Batches therefore grow with the write rate, e.g. during reindexing, without delaying
+ * single writes, up to {@code elasticsearch.bulkMaxActions} actions and {@code
+ * elasticsearch.bulkMaxBytes} bytes.
+ *
+ * <p>Actions that Elasticsearch rejects with {@code 429 Too Many Requests} are retried with
+ * exponential backoff, and the batch limit is halved. The limit grows back gradually with each
+ * successful request.
+ */
+@Singleton
+class ElasticBulkProcessor {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final long INITIAL_BACKOFF_MILLIS = 50;
+  private static final long MAX_BACKOFF_MILLIS = 5000;
+
+  private static class Action {
+    final String payload;
+    final SettableFuture<Void> result = SettableFuture.create();
+    int attempts;
+
+    Action(String payload) {
+      this.payload = payload;
+    }
+  }
+
+  private final Provider<RestClient> client;
+  private final int maxActions;
+  private final long maxBytes;
+  private final int maxInFlight;
+  private final int maxRetries;
+  private final ScheduledExecutorService retryExecutor;
+
+  private final Counter0 actionCount;
+  private final Counter0 retryCount;
+  private final Histogram0 batchSize;
+  private final Timer0 latency;
+
+  // Guarded by this.
+  private final Deque<Action> pending = new ArrayDeque<>();
+  private int inFlight;
+  private int batchLimit;
+  private boolean backingOff;
+
+  @Inject
+  ElasticBulkProcessor(
+      ElasticConfiguration cfg,
+      ElasticRestClientProvider client,
+      WorkQueue workQueue,
+      MetricMaker metricMaker) {
+    this(
+        client,
+        cfg.bulkMaxActions,
+        cfg.bulkMaxBytes,
+        cfg.bulkMaxInFlight,
+        cfg.bulkMaxRetries,
+        workQueue.createQueue(1, "ElasticBulkRetry"),
+        metricMaker);
+  }
+
+  /**
+   * @param retryExecutor executor on which rejected actions are retried after the backoff; must
+   *     run delayed tasks that were scheduled before it was shut down.
+   */
+  @VisibleForTesting
+  ElasticBulkProcessor(
+      Provider<RestClient> client,
+      int maxActions,
+      long maxBytes,
+      int maxInFlight,
+      int maxRetries,
+      ScheduledExecutorService retryExecutor,
+      MetricMaker metricMaker) {
+    this.client = client;
+    this.maxActions = Math.max(1, maxActions);
+    this.maxBytes = maxBytes;
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.maxRetries = maxRetries;
+    this.batchLimit = this.maxActions;
+    this.retryExecutor = retryExecutor;
+
+    this.actionCount =
+        metricMaker.newCounter(
+            "elasticsearch/bulk/actions",
+            new Description("Actions sent to Elasticsearch in bulk requests")
+                .setRate()
+                .setUnit("actions"));
+    this.retryCount =
+        metricMaker.newCounter(
+            "elasticsearch/bulk/retries",
+            new Description("Bulk actions that were rejected by Elasticsearch and retried")
+                .setRate()
+                .setUnit("actions"));
+    this.batchSize =
+        metricMaker.newHistogram(
+            "elasticsearch/bulk/batch_size",
+            new Description("Number of actions per bulk request")
+                .setCumulative()
+                .setUnit("actions"));
+    this.latency =
+        metricMaker.newTimer(
+            "elasticsearch/bulk/latency",
+            new Description("Latency of bulk requests to Elasticsearch")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS));
+    metricMaker.newCallbackMetric(
+        "elasticsearch/bulk/batch_limit",
+        Integer.class,
+        new Description("Current maximum number of actions per bulk request")
+            .setGauge()
+            .setUnit("actions"),
+        this::getBatchLimit);
+  }
+
+  /**
+   * Executes bulk actions and waits for the result.
+   *
+   * @param payload one or more bulk actions in the newline-delimited format of the {@code _bulk}
+   *     API.
+   * @throws StorageException if Elasticsearch failed to execute the actions.
+   */
+  void execute(String payload) {
+    try {
+      Uninterruptibles.getUninterruptibly(submit(payload));
+    } catch (ExecutionException e) {
+      // Wrap the cause, so that the stack trace shows the writer.
+      throw new StorageException(e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  /** Queues bulk actions, see {@link #execute(String)}. */
+  ListenableFuture<Void> submit(String payload) {
+    Action action = new Action(payload);
+    synchronized (this) {
+      pending.add(action);
+    }
+    dispatch();
+    return action.result;
+  }
+
+  @VisibleForTesting
+  synchronized int getBatchLimit() {
+    return batchLimit;
+  }
+
+  private void dispatch() {
+    while (true) {
+      List<Action> batch;
+      synchronized (this) {
+        if (backingOff || inFlight >= maxInFlight || pending.isEmpty()) {
+          return;
+        }
+        batch = nextBatch();
+        inFlight++;
+      }
+      send(batch);
+    }
+  }
+
+  // Must be called while holding the lock.
+  private List<Action> nextBatch() {
+    List<Action> batch = new ArrayList<>();
+    long bytes = 0;
+    while (!pending.isEmpty() && batch.size() < batchLimit) {
+      Action next = pending.peek();
+      if (!batch.isEmpty() && bytes + next.payload.length() > maxBytes) {
+        break;
+      }
+      batch.add(pending.poll());
+      bytes += next.payload.length();
+    }
+    return batch;
+  }
+
+  private void send(List<Action> batch) {
+    StringBuilder payload = new StringBuilder();
+    for (Action action : batch) {
+      payload.append(action.payload);
+    }
+    Request request = new Request("POST", "/" + AbstractElasticIndex.BULK);
+    request.setEntity(new NStringEntity(payload.toString(), ContentType.APPLICATION_JSON));
+    // Like single writes, make the documents searchable before returning.
+    request.addParameter("refresh", "true");
+
+    actionCount.incrementBy(batch.size());
+    batchSize.record(batch.size());
+    long start = System.nanoTime();
+    try {
+      client
+          .get()
+          .performRequestAsync(
+              request,
+              new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                  latency.record(System.nanoTime() - start, NANOSECONDS);
+                  onResponse(batch, response);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                  latency.record(System.nanoTime() - start, NANOSECONDS);
+                  onError(batch, e);
+                }
+              });
+    } catch (RuntimeException e) {
+      onError(batch, e);
+    }
+  }
+
+  private void onResponse(List<Action> batch, Response response) {
+    List<Action> rejected = new ArrayList<>();
+    try {
+      JsonObject result =
+          new JsonParser().parse(AbstractElasticIndex.getContent(response)).getAsJsonObject();
+      JsonElement errors = result.get("errors");
+      JsonArray items = result.getAsJsonArray("items");
+      if (errors == null || !errors.getAsBoolean() || items == null) {
+        batch.forEach(a -> a.result.set(null));
+      } else {
+        // The bulk payload of an action may contain more than one item, e.g. a delete from both
+        // the open and the closed index. Map the items back to the actions they came from.
+        int item = 0;
+        for (Action action : batch) {
+          int n = countItems(action.payload);
+          String error = null;
+          boolean retry = false;
+          for (int i = 0; i < n && item < items.size(); i++, item++) {
+            // Each item is an object with the action name as its only key.
+            JsonObject itemResult =
+                Iterables.getOnlyElement(items.get(item).getAsJsonObject().entrySet())
+                    .getValue()
+                    .getAsJsonObject();
+            int status = itemResult.get("status").getAsInt();
+            if (status == TOO_MANY_REQUESTS) {
+              retry = true;
+            } else if (status >= 300 && status != HttpStatus.SC_NOT_FOUND) {
+              error = String.valueOf(itemResult.get("error"));
+            }
+          }
+          if (error != null) {
+            action.result.setException(
+                new StorageException("Elasticsearch bulk action failed: " + error));
+          } else if (retry) {
+            rejected.add(action);
+          } else {
+            action.result.set(null);
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      fail(batch, e);
+      rejected.clear();
+    }
+    finish(batch.size(), rejected);
+  }
+
+  private void onError(List<Action> batch, Exception e) {
+    if (e instanceof ResponseException
+        && ((ResponseException) e).getResponse().getStatusLine().getStatusCode()
+            == TOO_MANY_REQUESTS) {
+      finish(batch.size(), batch);
+      return;
+    }
+    fail(batch, e);
+    finish(batch.size(), new ArrayList<>());
+  }
+
+  private static void fail(List<Action> batch, Exception e) {
+    StorageException error =
+        e instanceof StorageException
+            ? (StorageException) e
+            : new StorageException("Elasticsearch bulk request failed", e);
+    batch.forEach(a -> a.result.setException(error));
+  }
+
+  /**
+   * Completes a request, retries rejected actions and adapts the batch limit.
+   *
+   * @param sent number of actions that were sent in the request.
+   * @param rejected actions that Elasticsearch rejected because it was overloaded.
+   */
+  private void finish(int sent, List<Action> rejected) {
+    List<Action> retry = new ArrayList<>();
+    for (Action action : rejected) {
+      if (++action.attempts > maxRetries) {
+        action.result.setException(
+            new StorageException(
+                "Elasticsearch rejected bulk action after " + maxRetries + " retries"));
+      } else {
+        retry.add(action);
+      }
+    }
+
+    long backoffMillis = 0;
+    synchronized (this) {
+      inFlight--;
+      if (rejected.isEmpty()) {
+        // Additive increase, multiplicative decrease.
+        batchLimit = Math.min(maxActions, batchLimit + Math.max(1, maxActions / 10));
+      } else {
+        batchLimit = Math.max(1, Math.min(batchLimit, sent) / 2);
+      }
+      if (!retry.isEmpty()) {
+        for (int i = retry.size() - 1; i >= 0; i--) {
+          pending.addFirst(retry.get(i));
+        }
+        int attempts = retry.stream().mapToInt(a -> a.attempts).max().getAsInt();
+        backoffMillis = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << (attempts - 1));
+        backingOff = true;
+      }
+    }
+
+    if (!retry.isEmpty()) {
+      retryCount.incrementBy(retry.size());
+      logger.atFine().log(
+          "Elasticsearch rejected %d bulk actions, retrying in %d ms", retry.size(), backoffMillis);
+      try {
+        @SuppressWarnings("unused")
+        Future<?> possiblyIgnoredError =
+            retryExecutor.schedule(
+                () -> {
+                  synchronized (this) {
+                    backingOff = false;
+                  }
+                  dispatch();
+                },
+                backoffMillis,
+                MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // Server shutdown, don't leave the writers of the queued actions waiting.
+        failPending(e);
+      }
+      return;
+    }
+    dispatch();
+  }
+
+  private void failPending(Exception e) {
+    List<Action> failed;
+    synchronized (this) {
+      failed = new ArrayList<>(pending);
+      pending.clear();
+      backingOff = false;
+    }
+    fail(failed, e);
+  }
+
+  /** Counts the items of a bulk payload, i.e. the action lines without source lines. */
+  private static int countItems(String payload) {
+    int n = 0;
+    for (String line : payload.split(System.lineSeparator())) {
+      if (line.startsWith("{\"index\"") || line.startsWith("{\"delete\"")) {
+        n++;
+      }
+    }
+    return Math.max(1, n);
+  }
+}
@@ -64,9 +64,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.Collections;
 import java.util.Optional;
 import java.util.Set;
-import org.apache.http.HttpStatus;
 import org.eclipse.jgit.lib.Config;
-import org.elasticsearch.client.Response;
 
 /** Secondary index implementation using Elasticsearch. */
 class ElasticChangeIndex extends AbstractElasticIndex<Change.Id, ChangeData>
@@ -91,6 +89,7 @@ class ElasticChangeIndex extends AbstractElasticIndex<Change.Id, ChangeData>
   private final Schema<ChangeData> schema;
   private final FieldDef<ChangeData, ?> idField;
   private final ImmutableSet<String> skipFields;
+  private final ElasticBulkProcessor bulkProcessor;
 
   @Inject
   ElasticChangeIndex(
@@ -98,9 +97,11 @@ class ElasticChangeIndex extends AbstractElasticIndex<Change.Id, ChangeData>
       ChangeData.Factory changeDataFactory,
       SitePaths sitePaths,
       ElasticRestClientProvider clientBuilder,
+      ElasticBulkProcessor bulkProcessor,
       @GerritServerConfig Config gerritConfig,
       @Assisted Schema<ChangeData> schema) {
     super(cfg, sitePaths, schema, clientBuilder, CHANGES);
+    this.bulkProcessor = bulkProcessor;
     this.changeDataFactory = changeDataFactory;
     this.schema = schema;
     this.mapping = new ChangeMapping(schema, client.adapter());
@@ -117,13 +118,26 @@ class ElasticChangeIndex extends AbstractElasticIndex<Change.Id, ChangeData>
     BulkRequest bulk =
         new IndexRequest(getId(cd), indexName).add(new UpdateRequest<>(schema, cd, skipFields));
 
-    String uri = getURI(BULK);
-    Response response = postRequest(uri, bulk, getRefreshParam());
-    int statusCode = response.getStatusLine().getStatusCode();
-    if (statusCode != HttpStatus.SC_OK) {
+    // Changes are written by many threads during reindexing. Share bulk requests between them.
+    try {
+      bulkProcessor.execute(bulk.toString());
+    } catch (StorageException e) {
       throw new StorageException(
           String.format(
-              "Failed to replace change %s in index %s: %s", cd.getId(), indexName, statusCode));
+              "Failed to replace change %s in index %s: %s",
+              cd.getId(), indexName, e.getMessage()),
+          e);
+    }
+  }
+
+  @Override
+  public void delete(Change.Id id) {
+    try {
+      bulkProcessor.execute(getDeleteActions(id));
+    } catch (StorageException e) {
+      throw new StorageException(
+          String.format("Failed to delete %s from index %s: %s", id, indexName, e.getMessage()),
+          e);
     }
   }
 
@@ -172,6 +186,12 @@ class ElasticChangeIndex extends AbstractElasticIndex<Change.Id, ChangeData>
 
   @Override
   protected ChangeData fromDocument(JsonObject json, Set<String> fields) {
+    ChangeData cd = toChangeData(json, fields);
+    cd.setSearchAfter(getSearchAfter(json));
+    return cd;
+  }
+
+  private ChangeData toChangeData(JsonObject json, Set<String> fields) {
     JsonElement sourceElement = json.get("_source");
     if (sourceElement == null) {
       sourceElement = json.getAsJsonObject().get("fields");
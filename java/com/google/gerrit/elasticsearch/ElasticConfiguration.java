@@ -45,6 +45,10 @@ class ElasticConfiguration {
   static final String KEY_MAX_RESULT_WINDOW = "maxResultWindow";
   static final String KEY_CONNECT_TIMEOUT = "connectTimeout";
   static final String KEY_SOCKET_TIMEOUT = "socketTimeout";
+  static final String KEY_BULK_MAX_ACTIONS = "bulkMaxActions";
+  static final String KEY_BULK_MAX_BYTES = "bulkMaxBytes";
+  static final String KEY_BULK_MAX_IN_FLIGHT = "bulkMaxInFlight";
+  static final String KEY_BULK_MAX_RETRIES = "bulkMaxRetries";
 
   static final String DEFAULT_PORT = "9200";
   static final String DEFAULT_USERNAME = "elastic";
@@ -53,6 +57,10 @@ class ElasticConfiguration {
   static final int DEFAULT_MAX_RESULT_WINDOW = 10000;
   static final int DEFAULT_CONNECT_TIMEOUT = RestClientBuilder.DEFAULT_CONNECT_TIMEOUT_MILLIS;
   static final int DEFAULT_SOCKET_TIMEOUT = RestClientBuilder.DEFAULT_SOCKET_TIMEOUT_MILLIS;
+  static final int DEFAULT_BULK_MAX_ACTIONS = 500;
+  static final long DEFAULT_BULK_MAX_BYTES = 5 * 1024 * 1024;
+  static final int DEFAULT_BULK_MAX_IN_FLIGHT = 4;
+  static final int DEFAULT_BULK_MAX_RETRIES = 5;
 
   private final Config cfg;
   private final List<HttpHost> hosts;
@@ -64,6 +72,10 @@ class ElasticConfiguration {
   final int maxResultWindow;
   final int connectTimeout;
   final int socketTimeout;
+  final int bulkMaxActions;
+  final long bulkMaxBytes;
+  final int bulkMaxInFlight;
+  final int bulkMaxRetries;
   final String prefix;
 
   @Inject
@@ -98,6 +110,15 @@ class ElasticConfiguration {
                 KEY_SOCKET_TIMEOUT,
                 DEFAULT_SOCKET_TIMEOUT,
                 TimeUnit.MILLISECONDS);
+    this.bulkMaxActions =
+        cfg.getInt(SECTION_ELASTICSEARCH, null, KEY_BULK_MAX_ACTIONS, DEFAULT_BULK_MAX_ACTIONS);
+    this.bulkMaxBytes =
+        cfg.getLong(SECTION_ELASTICSEARCH, null, KEY_BULK_MAX_BYTES, DEFAULT_BULK_MAX_BYTES);
+    this.bulkMaxInFlight =
+        cfg.getInt(
+            SECTION_ELASTICSEARCH, null, KEY_BULK_MAX_IN_FLIGHT, DEFAULT_BULK_MAX_IN_FLIGHT);
+    this.bulkMaxRetries =
+        cfg.getInt(SECTION_ELASTICSEARCH, null, KEY_BULK_MAX_RETRIES, DEFAULT_BULK_MAX_RETRIES);
     this.hosts = new ArrayList<>();
     for (String server : cfg.getStringList(SECTION_ELASTICSEARCH, null, KEY_SERVER)) {
       try {
@@ -76,6 +76,9 @@ public interface RevisionApi {
 
   void setReviewed(String path, boolean reviewed) throws RestApiException;
 
+  /** Marks many files as reviewed or unreviewed at once. */
+  void setReviewed(ReviewedFilesInput input) throws RestApiException;
+
   Set<String> reviewed() throws RestApiException;
 
   default Map<String, FileInfo> files() throws RestApiException {
@@ -239,6 +242,11 @@ public interface RevisionApi {
       throw new NotImplementedException();
     }
 
+    @Override
+    public void setReviewed(ReviewedFilesInput input) throws RestApiException {
+      throw new NotImplementedException();
+    }
+
     @Override
     public Set<String> reviewed() throws RestApiException {
       throw new NotImplementedException();
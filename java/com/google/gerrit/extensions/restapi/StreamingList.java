@@ -0,0 +1,35 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.extensions.restapi;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * List whose elements can be computed one by one while the response is written.
+ *
+ * <p>REST views may return a {@code StreamingList} for results that can get large. The REST API
+ * servlet then writes the list as a JSON array using {@link #streamingIterator()}, without holding
+ * the complete response in memory. All other list operations compute the full list first.
+ */
+public interface StreamingList<T> extends List<T> {
+  /**
+   * Returns an iterator that computes the elements of this list as they are requested.
+   *
+   * <p>Elements returned by the iterator are not retained by the list, so callers should not hold
+   * on to them either if they want to keep memory usage bounded.
+   */
+  Iterator<T> streamingIterator();
+}
@@ -94,6 +94,7 @@ import com.google.gerrit.extensions.restapi.RestModifyView;
 import com.google.gerrit.extensions.restapi.RestReadView;
 import com.google.gerrit.extensions.restapi.RestResource;
 import com.google.gerrit.extensions.restapi.RestView;
+import com.google.gerrit.extensions.restapi.StreamingList;
 import com.google.gerrit.extensions.restapi.TopLevelResource;
 import com.google.gerrit.extensions.restapi.UnprocessableEntityException;
 import com.google.gerrit.httpd.WebSession;
@@ -111,6 +112,7 @@ import com.google.gerrit.server.audit.ExtendedHttpAuditEvent;
 import com.google.gerrit.server.cache.PerThreadCache;
 import com.google.gerrit.server.change.ChangeFinder;
 import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.git.RequestConcurrencyLimiter;
 import com.google.gerrit.server.group.GroupAuditService;
 import com.google.gerrit.server.logging.Metadata;
 import com.google.gerrit.server.logging.PerformanceLogContext;
@@ -169,6 +171,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -245,6 +248,7 @@ public class RestApiServlet extends HttpServlet {
     final RestApiMetrics metrics;
     final Pattern allowOrigin;
     final RestApiQuotaEnforcer quotaChecker;
+    final RequestConcurrencyLimiter concurrencyLimiter;
     final Config config;
     final DynamicSet<PerformanceLogger> performanceLoggers;
     final ChangeFinder changeFinder;
@@ -263,6 +267,7 @@ public class RestApiServlet extends HttpServlet {
         GroupAuditService auditService,
         RestApiMetrics metrics,
         RestApiQuotaEnforcer quotaChecker,
+        RequestConcurrencyLimiter concurrencyLimiter,
         @GerritServerConfig Config config,
         DynamicSet<PerformanceLogger> performanceLoggers,
         ChangeFinder changeFinder,
@@ -278,6 +283,7 @@ public class RestApiServlet extends HttpServlet {
       this.auditService = auditService;
       this.metrics = metrics;
       this.quotaChecker = quotaChecker;
+      this.concurrencyLimiter = concurrencyLimiter;
       this.config = config;
       this.performanceLoggers = performanceLoggers;
       this.changeFinder = changeFinder;
@@ -330,6 +336,7 @@ public class RestApiServlet extends HttpServlet {
     Object inputRequestBody = null;
     RestResource rsrc = TopLevelResource.INSTANCE;
     ViewData viewData = null;
+    RequestConcurrencyLimiter.Permit permit = null;
 
     try (TraceContext traceContext = enableTracing(req, res)) {
       List<IdString> path = splitPath(req);
@@ -358,6 +365,7 @@ public class RestApiServlet extends HttpServlet {
             req = applyXdOverrides(req, qp);
           }
           checkUserSession(req);
+          permit = globals.concurrencyLimiter.acquire(globals.currentUser.get());
 
           RestCollection<RestResource, RestResource> rc = members.get();
           globals
@@ -611,6 +619,8 @@ public class RestApiServlet extends HttpServlet {
             Object value = Response.unwrap(response);
             if (value instanceof BinaryResult) {
               responseBytes = replyBinaryResult(req, res, (BinaryResult) value);
+            } else if (value instanceof StreamingList) {
+              responseBytes = replyJsonStream(req, res, qp.config(), (StreamingList<?>) value);
             } else {
               responseBytes = replyJson(req, res, false, qp.config(), value);
             }
@@ -720,6 +730,9 @@ public class RestApiServlet extends HttpServlet {
           }
         }
       } finally {
+        if (permit != null) {
+          permit.close();
+        }
         String metric = getViewName(viewData);
         String formattedCause = cause.map(globals.retryHelper::formatCause).orElse("_none");
         globals.metrics.count.increment(metric);
@@ -1373,6 +1386,59 @@ public class RestApiServlet extends HttpServlet {
         req, res, asBinaryResult(buf).setContentType(JSON_TYPE).setCharacterEncoding(UTF_8));
   }
 
+  /**
+   * Sets a JSON array reply on the given HTTP servlet response, writing the elements of the given
+   * list while they are computed.
+   *
+   * <p>Unlike {@link #replyJson(HttpServletRequest, HttpServletResponse, boolean, ListMultimap,
+   * Object)} the response is not buffered, so it has no content length and, if the client accepts
+   * gzip, it is compressed while it is written.
+   *
+   * @param req the HTTP servlet request
+   * @param res the HTTP servlet response on which the reply should be set
+   * @param config config parameters for the JSON formatting
+   * @param result the list that should be formatted as JSON array
+   * @return the length of the response
+   * @throws IOException
+   */
+  private static long replyJsonStream(
+      HttpServletRequest req,
+      HttpServletResponse res,
+      ListMultimap<String, String> config,
+      StreamingList<?> result)
+      throws IOException {
+    res.setContentType(JSON_TYPE + "; charset=" + UTF_8.name());
+    boolean gzip = acceptsGzip(req);
+    if (gzip) {
+      res.setHeader("Content-Encoding", "gzip");
+    }
+    if ("HEAD".equals(req.getMethod())) {
+      return 0;
+    }
+
+    Gson gson = newGson(config);
+    CountingOutputStream dst = new CountingOutputStream(res.getOutputStream());
+    try (Writer w =
+        new BufferedWriter(
+            new OutputStreamWriter(gzip ? new GZIPOutputStream(dst) : dst, UTF_8))) {
+      w.write(new String(JSON_MAGIC, UTF_8));
+      JsonWriter json = gson.newJsonWriter(w);
+      json.beginArray();
+      for (Iterator<?> it = result.streamingIterator(); it.hasNext(); ) {
+        Object element = it.next();
+        if (element != null) {
+          gson.toJson(element, element.getClass(), json);
+        } else {
+          json.nullValue();
+        }
+      }
+      json.endArray();
+      json.flush();
+      w.write('\n');
+    }
+    return dst.getCount();
+  }
+
   private static Gson newGson(ListMultimap<String, String> config) {
     GsonBuilder gb = OutputFormat.JSON_COMPACT.newGsonBuilder();
 
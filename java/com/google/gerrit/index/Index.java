@@ -22,6 +22,7 @@ import com.google.gerrit.index.query.IndexPredicate;
 import com.google.gerrit.index.query.Predicate;
 import com.google.gerrit.index.query.QueryParseException;
 import java.util.Optional;
+import java.util.OptionalLong;
 
 /**
  * Secondary index implementation for arbitrary documents.
@@ -129,6 +130,25 @@ public interface Index<K, V> {
    */
   Predicate<V> keyPredicate(K key);
 
+  /**
+   * Get the generation of the documents that searches of the current thread see.
+   *
+   * <p>The generation advances whenever changes to the index become visible to searches. Results of
+   * a search can be reused as long as the generation is the same.
+   *
+   * @return the current searcher generation, or empty if the index doesn't track it.
+   */
+  default OptionalLong getSearcherGeneration() {
+    return OptionalLong.empty();
+  }
+
+  /**
+   * Make the writes that were applied so far durable.
+   *
+   * <p>Indexes that persist each write on their own don't need to do anything.
+   */
+  default void commit() {}
+
   /**
    * Mark whether this index is up-to-date and ready to serve reads.
    *
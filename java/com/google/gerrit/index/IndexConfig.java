@@ -40,6 +40,7 @@ public abstract class IndexConfig {
     setIfPresent(cfg, "maxLimit", b::maxLimit);
     setIfPresent(cfg, "maxPages", b::maxPages);
     setIfPresent(cfg, "maxTerms", b::maxTerms);
+    setIfPresent(cfg, "maxPostFilterCandidates", b::maxPostFilterCandidates);
     setTypeOrDefault(cfg, b::type);
     return b;
   }
@@ -61,6 +62,7 @@ public abstract class IndexConfig {
         .maxLimit(Integer.MAX_VALUE)
         .maxPages(Integer.MAX_VALUE)
         .maxTerms(DEFAULT_MAX_TERMS)
+        .maxPostFilterCandidates(Integer.MAX_VALUE)
         .type(IndexType.getDefault())
         .separateChangeSubIndexes(false);
   }
@@ -79,6 +81,10 @@ public abstract class IndexConfig {
 
     public abstract int maxTerms();
 
+    public abstract Builder maxPostFilterCandidates(int maxPostFilterCandidates);
+
+    public abstract int maxPostFilterCandidates();
+
     public abstract Builder type(String type);
 
     public abstract String type();
@@ -92,6 +98,7 @@ public abstract class IndexConfig {
       checkLimit(cfg.maxLimit(), "maxLimit");
       checkLimit(cfg.maxPages(), "maxPages");
       checkLimit(cfg.maxTerms(), "maxTerms");
+      checkLimit(cfg.maxPostFilterCandidates(), "maxPostFilterCandidates");
       return cfg;
     }
   }
@@ -117,6 +124,12 @@ public abstract class IndexConfig {
    */
   public abstract int maxTerms();
 
+  /**
+   * @return maximum number of index results that a single query may check against predicates that
+   *     can't be evaluated by the index, before it is aborted as too expensive.
+   */
+  public abstract int maxPostFilterCandidates();
+
   /** @return index type. */
   public abstract String type();
 
@@ -0,0 +1,78 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.index;
+
+import com.google.common.collect.MapMaker;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the index writes that were done on behalf of the current thread.
+ *
+ * <p>Index implementations that make writes searchable asynchronously record the generation of
+ * each write here. Queries from the same thread can then wait until their own writes are
+ * searchable, while queries that didn't write anything don't have to wait at all.
+ *
+ * <p>Work that is handed off to another thread can be attributed to the submitting thread by
+ * capturing {@link #current()} on submission and installing it with {@link #use(IndexWriteTracker)}
+ * while the work runs.
+ */
+public final class IndexWriteTracker {
+  private static final ThreadLocal<IndexWriteTracker> CURRENT =
+      ThreadLocal.withInitial(IndexWriteTracker::new);
+
+  /** Returns the tracker of the current thread. */
+  public static IndexWriteTracker current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Makes {@code tracker} the tracker of the current thread until the returned context is closed.
+   */
+  public static Context use(IndexWriteTracker tracker) {
+    IndexWriteTracker old = CURRENT.get();
+    CURRENT.set(tracker);
+    return () -> CURRENT.set(old);
+  }
+
+  /** Restores the previous tracker of the thread when closed. */
+  @FunctionalInterface
+  public interface Context extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  // Weak keys, so that closed indexes are not retained by long-lived threads.
+  private final ConcurrentMap<Object, Long> generations = new MapMaker().weakKeys().makeMap();
+
+  private IndexWriteTracker() {}
+
+  /**
+   * Records a write.
+   *
+   * @param index index instance that was written to.
+   * @param generation generation of the write, as defined by the index implementation.
+   */
+  public void record(Object index, long generation) {
+    generations.merge(index, generation, Math::max);
+  }
+
+  /**
+   * Returns the highest generation that was recorded for the given index, or -1 if nothing was
+   * written to it.
+   */
+  public long getGeneration(Object index) {
+    return generations.getOrDefault(index, -1L);
+  }
+}
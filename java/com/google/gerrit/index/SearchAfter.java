@@ -0,0 +1,114 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.index;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+import com.google.gerrit.index.query.QueryParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Position of a document in the sort order of an index query.
+ *
+ * <p>Holds the values of the sort fields of the document, as reported by the index. Passing it in
+ * {@link QueryOptions#searchAfter()} makes the index return only documents that sort after it,
+ * which costs the same for every page, unlike skipping results with {@link QueryOptions#start()}.
+ *
+ * <p>Users get it as an opaque string from {@link #encode()}. Values are only meaningful to the
+ * index implementation that produced them.
+ */
+@AutoValue
+public abstract class SearchAfter {
+  private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+  private static final char LONG = 'l';
+  private static final char STRING = 's';
+
+  /**
+   * Creates a position from sort values.
+   *
+   * @param values values of the sort fields, each either a {@link Number} or a {@link String}.
+   * @return the position.
+   */
+  public static SearchAfter create(List<?> values) {
+    ImmutableList.Builder<Object> b = ImmutableList.builderWithExpectedSize(values.size());
+    for (Object v : values) {
+      if (v instanceof Number) {
+        b.add(((Number) v).longValue());
+      } else if (v instanceof String) {
+        b.add(v);
+      } else {
+        throw new IllegalArgumentException("unsupported sort value: " + v);
+      }
+    }
+    return new AutoValue_SearchAfter(b.build());
+  }
+
+  /**
+   * Parses a position that was returned by {@link #encode()}.
+   *
+   * @param encoded encoded position.
+   * @return the position.
+   * @throws QueryParseException if {@code encoded} is not a valid position.
+   */
+  public static SearchAfter decode(String encoded) throws QueryParseException {
+    List<Object> values = new ArrayList<>();
+    try {
+      String decoded = new String(ENCODING.decode(encoded), UTF_8);
+      for (String v : Splitter.on('.').split(decoded)) {
+        if (v.isEmpty()) {
+          throw new IllegalArgumentException("empty value");
+        }
+        String rest = v.substring(1);
+        switch (v.charAt(0)) {
+          case LONG:
+            values.add(Long.parseLong(rest));
+            break;
+          case STRING:
+            values.add(new String(ENCODING.decode(rest), UTF_8));
+            break;
+          default:
+            throw new IllegalArgumentException("unknown type: " + v.charAt(0));
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      throw new QueryParseException("Invalid search-after cursor: " + encoded, e);
+    }
+    return new AutoValue_SearchAfter(ImmutableList.copyOf(values));
+  }
+
+  /** @return values of the sort fields, each either a {@link Long} or a {@link String}. */
+  public abstract ImmutableList<Object> values();
+
+  /** @return an opaque string that {@link #decode(String)} turns into this position again. */
+  public String encode() {
+    StringBuilder b = new StringBuilder();
+    for (Object v : values()) {
+      if (b.length() > 0) {
+        b.append('.');
+      }
+      if (v instanceof Long) {
+        b.append(LONG).append(v);
+      } else {
+        b.append(STRING).append(ENCODING.encode(((String) v).getBytes(UTF_8)));
+      }
+    }
+    return ENCODING.encode(b.toString().getBytes(UTF_8));
+  }
+}
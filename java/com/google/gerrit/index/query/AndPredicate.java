@@ -15,17 +15,22 @@
 package com.google.gerrit.index.query;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 
+import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /** Requires all predicates to be true. */
 public class AndPredicate<T> extends Predicate<T> implements Matchable<T> {
   private final List<Predicate<T>> children;
+  private final ImmutableList<Predicate<T>> matchOrder;
   private final int cost;
+  private final double selectivity;
 
   @SafeVarargs
   protected AndPredicate(Predicate<T>... that) {
@@ -35,19 +40,39 @@ public class AndPredicate<T> extends Predicate<T> implements Matchable<T> {
   protected AndPredicate(Collection<? extends Predicate<T>> that) {
     List<Predicate<T>> t = new ArrayList<>(that.size());
     int c = 0;
+    double s = 1;
     for (Predicate<T> p : that) {
       if (getClass() == p.getClass()) {
         for (Predicate<T> gp : p.getChildren()) {
           t.add(gp);
           c += gp.estimateCost();
+          s *= gp.estimateSelectivity();
         }
       } else {
         t.add(p);
         c += p.estimateCost();
+        s *= p.estimateSelectivity();
       }
     }
     children = t;
+    matchOrder = t.stream().sorted(matchOrder()).collect(toImmutableList());
     cost = c;
+    selectivity = s;
+  }
+
+  /**
+   * Orders children such that the ones that reject most objects per unit of cost are evaluated
+   * first. Children that aren't matchable go last, so that they are only reached if all others
+   * match; among equally ranked children the original order is kept.
+   */
+  private static <T> Comparator<Predicate<T>> matchOrder() {
+    return Comparator.<Predicate<T>, Boolean>comparing(p -> !p.isMatchable())
+        .thenComparingDouble(AndPredicate::rank);
+  }
+
+  private static double rank(Predicate<?> p) {
+    // Expected cost of evaluating p per object it rejects.
+    return p.estimateCost() / Math.max(1 - p.estimateSelectivity(), 0.001);
   }
 
   @Override
@@ -82,7 +107,7 @@ public class AndPredicate<T> extends Predicate<T> implements Matchable<T> {
 
   @Override
   public boolean match(T object) {
-    for (Predicate<T> c : children) {
+    for (Predicate<T> c : matchOrder) {
       checkState(
           c.isMatchable(),
           "match invoked, but child predicate %s doesn't implement %s",
@@ -100,6 +125,11 @@ public class AndPredicate<T> extends Predicate<T> implements Matchable<T> {
     return cost;
   }
 
+  @Override
+  public double estimateSelectivity() {
+    return selectivity;
+  }
+
   @Override
   public int hashCode() {
     return getChild(0).hashCode() * 31 + getChild(1).hashCode();
@@ -105,11 +105,21 @@ public class AndSource<T> extends AndPredicate<T>
             //
             @SuppressWarnings("unchecked")
             Paginated<T> p = (Paginated<T>) source;
+            int maxCandidates = p.getOptions().config().maxPostFilterCandidates();
             while (skipped && r.size() < p.getOptions().limit() + start) {
               skipped = false;
               ResultSet<T> next = p.restart(nextStart);
 
               for (T data : buffer(next)) {
+                if (nextStart >= maxCandidates) {
+                  throw new StorageException(
+                      new QueryParseException(
+                          String.format(
+                              "Query is too expensive: checked %d results without finding enough"
+                                  + " matches (index.maxPostFilterCandidates). Narrow down the"
+                                  + " query, e.g. by project, branch or status.",
+                              nextStart)));
+                }
                 if (match(data)) {
                   r.add(data);
                 } else {
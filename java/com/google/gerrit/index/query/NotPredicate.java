@@ -77,6 +77,11 @@ public class NotPredicate<T> extends Predicate<T> implements Matchable<T> {
     return that.estimateCost();
   }
 
+  @Override
+  public double estimateSelectivity() {
+    return 1 - that.estimateSelectivity();
+  }
+
   @Override
   public int hashCode() {
     return ~that.hashCode();
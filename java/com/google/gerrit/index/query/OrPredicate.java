@@ -100,6 +100,15 @@ public class OrPredicate<T> extends Predicate<T> implements Matchable<T> {
     return cost;
   }
 
+  @Override
+  public double estimateSelectivity() {
+    double none = 1;
+    for (Predicate<T> c : children) {
+      none *= 1 - c.estimateSelectivity();
+    }
+    return 1 - none;
+  }
+
   @Override
   public int hashCode() {
     return getChild(0).hashCode() * 31 + getChild(1).hashCode();
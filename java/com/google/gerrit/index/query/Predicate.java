@@ -41,6 +41,9 @@ import java.util.List;
  * @param <T> type of object the predicate can evaluate in memory.
  */
 public abstract class Predicate<T> {
+  /** Selectivity of predicates that don't know better. */
+  public static final double DEFAULT_SELECTIVITY = 0.5;
+
   /** A predicate that matches any input, always, with no cost. */
   @SuppressWarnings("unchecked")
   public static <T> Predicate<T> any() {
@@ -141,6 +144,15 @@ public abstract class Predicate<T> {
     return asMatchable().getCost();
   }
 
+  /**
+   * @return an estimate of the fraction of objects that match this predicate, between 0 and 1.
+   *     Predicates that are known to be very restrictive should override this, so that {@link
+   *     AndPredicate} evaluates them before cheaper predicates which rarely reject anything.
+   */
+  public double estimateSelectivity() {
+    return DEFAULT_SELECTIVITY;
+  }
+
   @Override
   public abstract int hashCode();
 
@@ -167,6 +179,11 @@ public abstract class Predicate<T> {
       return 0;
     }
 
+    @Override
+    public double estimateSelectivity() {
+      return 1;
+    }
+
     @Override
     public int hashCode() {
       return System.identityHashCode(this);
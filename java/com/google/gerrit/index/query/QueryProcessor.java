@@ -33,6 +33,7 @@ import com.google.gerrit.index.IndexConfig;
 import com.google.gerrit.index.IndexRewriter;
 import com.google.gerrit.index.QueryOptions;
 import com.google.gerrit.index.SchemaDefinitions;
+import com.google.gerrit.index.SearchAfter;
 import com.google.gerrit.metrics.Description;
 import com.google.gerrit.metrics.Field;
 import com.google.gerrit.metrics.MetricMaker;
@@ -92,6 +93,7 @@ public abstract class QueryProcessor<T> {
   private int userProvidedLimit;
   private boolean isNoLimit;
   private Set<String> requestedFields;
+  private String searchAfter;
 
   protected QueryProcessor(
       MetricMaker metricMaker,
@@ -167,6 +169,21 @@ public abstract class QueryProcessor<T> {
     return this;
   }
 
+  /**
+   * Only return results that sort after the given position.
+   *
+   * <p>Unlike {@link #setStart(int)}, the cost of fetching a page doesn't grow with the number of
+   * pages before it. A start offset is applied in addition, counting from the position.
+   *
+   * @param cursor position of the last result of the previous page, as returned by {@link
+   *     SearchAfter#encode()}; null to start at the first result.
+   * @return this.
+   */
+  public QueryProcessor<T> setSearchAfter(@Nullable String cursor) {
+    searchAfter = cursor;
+    return this;
+  }
+
   /**
    * Query for entities that match a structured query.
    *
@@ -225,7 +242,9 @@ public abstract class QueryProcessor<T> {
       List<Integer> limits = new ArrayList<>(cnt);
       List<Predicate<T>> predicates = new ArrayList<>(cnt);
       List<DataSource<T>> sources = new ArrayList<>(cnt);
+      List<QueryOptions> options = new ArrayList<>(cnt);
       int queryCount = 0;
+      SearchAfter after = searchAfter != null ? SearchAfter.decode(searchAfter) : null;
       for (Predicate<T> q : queries) {
         int limit = getEffectiveLimit(q);
         limits.add(limit);
@@ -243,7 +262,9 @@ public abstract class QueryProcessor<T> {
         // Always bump limit by 1, even if this results in exceeding the permitted
         // max for this user. The only way to see if there are more entities is to
         // ask for one more result from the query.
-        QueryOptions opts = createOptions(indexConfig, start, limit + 1, getRequestedFields());
+        QueryOptions opts =
+            createOptions(indexConfig, start, limit + 1, getRequestedFields())
+                .withSearchAfter(after);
         logger.atFine().log("Query options: " + opts);
         Predicate<T> pred = rewriter.rewrite(q, opts);
         if (enforceVisibility) {
@@ -259,12 +280,13 @@ public abstract class QueryProcessor<T> {
         @SuppressWarnings("unchecked")
         DataSource<T> s = (DataSource<T>) pred;
         sources.add(s);
+        options.add(opts);
       }
 
       // Run each query asynchronously, if supported.
       List<ResultSet<T>> matches = new ArrayList<>(cnt);
-      for (DataSource<T> s : sources) {
-        matches.add(s.read());
+      for (int i = 0; i < cnt; i++) {
+        matches.add(read(sources.get(i), options.get(i)));
       }
 
       out = new ArrayList<>(cnt);
@@ -294,6 +316,19 @@ public abstract class QueryProcessor<T> {
     return out;
   }
 
+  /**
+   * Start reading the results of a rewritten query.
+   *
+   * <p>Subclasses may override this to serve the results without querying the index.
+   *
+   * @param source rewritten query.
+   * @param opts options that the query was rewritten with.
+   * @return results of the query.
+   */
+  protected ResultSet<T> read(DataSource<T> source, QueryOptions opts) {
+    return source.read();
+  }
+
   private static <T> ImmutableList<QueryResult<T>> disabledResults(
       List<String> queryStrings, List<Predicate<T>> queries) {
     return IntStream.range(0, queries.size())
@@ -36,6 +36,7 @@ import com.google.gerrit.exceptions.StorageException;
 import com.google.gerrit.index.FieldDef;
 import com.google.gerrit.index.FieldType;
 import com.google.gerrit.index.Index;
+import com.google.gerrit.index.IndexWriteTracker;
 import com.google.gerrit.index.QueryOptions;
 import com.google.gerrit.index.Schema;
 import com.google.gerrit.index.Schema.Values;
@@ -50,6 +51,7 @@ import com.google.gerrit.server.logging.LoggingContextAwareScheduledExecutorServ
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.Map;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -60,6 +62,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
@@ -105,6 +108,8 @@ public abstract class AbstractLuceneIndex<K, V> implements Index<K, V> {
   private final ReferenceManager<IndexSearcher> searcherManager;
   private final ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
   private final Set<NrtFuture> notDoneNrtFutures;
+  private final boolean waitForRefreshOnWrite;
+  private final AtomicLong searcherGeneration = new AtomicLong();
   private ScheduledExecutorService autoCommitExecutor;
 
   AbstractLuceneIndex(
@@ -124,6 +129,7 @@ public abstract class AbstractLuceneIndex<K, V> implements Index<K, V> {
     this.skipFields = skipFields;
     String index = Joiner.on('_').skipNulls().join(name, subIndex);
     long commitPeriod = writerConfig.getCommitWithinMs();
+    this.waitForRefreshOnWrite = writerConfig.waitForRefreshOnWrite();
 
     if (commitPeriod < 0) {
       writer = new AutoCommitWriter(dir, writerConfig.getLuceneConfig());
@@ -209,6 +215,9 @@ public abstract class AbstractLuceneIndex<K, V> implements Index<K, V> {
 
           @Override
           public void afterRefresh(boolean didRefresh) throws IOException {
+            if (didRefresh) {
+              searcherGeneration.incrementAndGet();
+            }
             for (NrtFuture f : notDoneNrtFutures) {
               f.removeIfDone();
             }
@@ -281,6 +290,18 @@ public abstract class AbstractLuceneIndex<K, V> implements Index<K, V> {
 
   private ListenableFuture<?> submit(Callable<Long> task) {
     ListenableFuture<Long> future = Futures.nonCancellationPropagating(writerThread.submit(task));
+    if (!waitForRefreshOnWrite) {
+      // Complete as soon as the write was applied. Only queries of the writing thread wait for the
+      // searcher to catch up, see acquire().
+      IndexWriteTracker tracker = IndexWriteTracker.current();
+      return Futures.transform(
+          future,
+          gen -> {
+            tracker.record(this, gen);
+            return null;
+          },
+          directExecutor());
+    }
     return Futures.transformAsync(
         future,
         gen -> {
@@ -301,14 +322,59 @@ public abstract class AbstractLuceneIndex<K, V> implements Index<K, V> {
     }
   }
 
+  @Override
+  public void commit() {
+    try {
+      writer.commit();
+    } catch (IOException e) {
+      throw new StorageException(e);
+    }
+  }
+
   public IndexWriter getWriter() {
     return writer;
   }
 
+  @Override
+  public OptionalLong getSearcherGeneration() {
+    if (!waitForRefreshOnWrite) {
+      awaitWrites(IndexWriteTracker.current());
+    }
+    return OptionalLong.of(searcherGeneration.get());
+  }
+
   IndexSearcher acquire() throws IOException {
+    return acquire(IndexWriteTracker.current());
+  }
+
+  /**
+   * Acquires a searcher that sees the writes of the given tracker.
+   *
+   * <p>Searches that run on another thread than the query pass the tracker of the query thread.
+   */
+  IndexSearcher acquire(IndexWriteTracker tracker) throws IOException {
+    if (!waitForRefreshOnWrite) {
+      awaitWrites(tracker);
+    }
     return searcherManager.acquire();
   }
 
+  /** Waits until the writes of the tracker are visible to newly acquired searchers. */
+  private void awaitWrites(IndexWriteTracker tracker) {
+    long gen = tracker.getGeneration(this);
+    if (gen < 0) {
+      return;
+    }
+    try {
+      // Returns immediately if the generation is already searchable, otherwise the reopen thread
+      // refreshes after the minimum stale time.
+      reopenThread.waitForGeneration(gen);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.atWarning().withCause(e).log("Interrupted waiting for searcher generation");
+    }
+  }
+
   void release(IndexSearcher searcher) throws IOException {
     searcherManager.release(searcher);
   }
@@ -43,6 +43,8 @@ import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Constants;
 
 public class ChangeSubIndex extends AbstractLuceneIndex<Change.Id, ChangeData>
     implements ChangeIndex {
@@ -57,7 +59,7 @@ public class ChangeSubIndex extends AbstractLuceneIndex<Change.Id, ChangeData>
     this(
         schema,
         sitePaths,
-        FSDirectory.open(path),
+        open(path, writerConfig.preload()),
         path.getFileName().toString(),
         skipFields,
         writerConfig,
@@ -76,6 +78,17 @@ public class ChangeSubIndex extends AbstractLuceneIndex<Change.Id, ChangeData>
     super(schema, sitePaths, dir, NAME, skipFields, subIndex, writerConfig, searcherFactory);
   }
 
+  private static Directory open(Path path, boolean preload) throws IOException {
+    if (!preload || !Constants.JRE_IS_64BIT) {
+      return FSDirectory.open(path);
+    }
+    // Touch all pages of the index files when they are opened, so that the first queries after a
+    // restart don't have to wait for them to be read from disk.
+    MMapDirectory dir = new MMapDirectory(path);
+    dir.setPreload(true);
+    return dir;
+  }
+
   @Override
   public void replace(ChangeData obj) {
     throw new UnsupportedOperationException("don't use ChangeSubIndex directly");
@@ -33,6 +33,8 @@ class GerritIndexWriterConfig {
 
   private final IndexWriterConfig luceneConfig;
   private long commitWithinMs;
+  private final boolean waitForRefreshOnWrite;
+  private final boolean preload;
   private final CustomMappingAnalyzer analyzer;
 
   GerritIndexWriterConfig(Config cfg, String name) {
@@ -75,6 +77,8 @@ class GerritIndexWriterConfig {
     } catch (IllegalArgumentException e) {
       commitWithinMs = cfg.getLong("index", name, "commitWithin", 0);
     }
+    waitForRefreshOnWrite = cfg.getBoolean("index", null, "waitForRefreshOnWrite", true);
+    preload = cfg.getBoolean("index", name, "preload", false);
   }
 
   CustomMappingAnalyzer getAnalyzer() {
@@ -88,4 +92,17 @@ class GerritIndexWriterConfig {
   long getCommitWithinMs() {
     return commitWithinMs;
   }
+
+  /**
+   * Whether writes wait until they are searchable. If false, only queries of the thread that did
+   * the write wait for it, see {@link com.google.gerrit.index.IndexWriteTracker}.
+   */
+  boolean waitForRefreshOnWrite() {
+    return waitForRefreshOnWrite;
+  }
+
+  /** Whether the index files are memory-mapped and loaded into the page cache when opened. */
+  boolean preload() {
+    return preload;
+  }
 }
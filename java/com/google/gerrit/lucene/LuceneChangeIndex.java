@@ -38,6 +38,8 @@ import com.google.common.collect.Sets;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.PatchSet;
@@ -48,9 +50,11 @@ import com.google.gerrit.entities.converter.PatchSetProtoConverter;
 import com.google.gerrit.entities.converter.ProtoConverter;
 import com.google.gerrit.exceptions.StorageException;
 import com.google.gerrit.index.FieldDef;
+import com.google.gerrit.index.IndexWriteTracker;
 import com.google.gerrit.index.QueryOptions;
 import com.google.gerrit.index.RefState;
 import com.google.gerrit.index.Schema;
+import com.google.gerrit.index.SearchAfter;
 import com.google.gerrit.index.query.FieldBundle;
 import com.google.gerrit.index.query.Predicate;
 import com.google.gerrit.index.query.QueryParseException;
@@ -75,9 +79,11 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -88,9 +94,9 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
@@ -300,6 +306,12 @@ public class LuceneChangeIndex implements ChangeIndex {
     closedIndex.deleteAll();
   }
 
+  @Override
+  public void commit() {
+    openIndex.commit();
+    closedIndex.commit();
+  }
+
   @Override
   public ChangeDataSource getSource(Predicate<ChangeData> p, QueryOptions opts)
       throws QueryParseException {
@@ -321,6 +333,14 @@ public class LuceneChangeIndex implements ChangeIndex {
     openIndex.markReady(ready);
   }
 
+  @Override
+  public OptionalLong getSearcherGeneration() {
+    // Generations of both sub indexes only grow, hence their sum changes whenever any of them does.
+    return OptionalLong.of(
+        openIndex.getSearcherGeneration().getAsLong()
+            + closedIndex.getSearcherGeneration().getAsLong());
+  }
+
   private Sort getSort() {
     return new Sort(
         new SortField(UPDATED_SORT_FIELD, SortField.Type.LONG, true),
@@ -335,6 +355,7 @@ public class LuceneChangeIndex implements ChangeIndex {
     private final QueryOptions opts;
     private final Sort sort;
     private final Function<Document, FieldBundle> rawDocumentMapper;
+    @Nullable private final Object[] searchAfter;
 
     private QuerySource(
         List<ChangeSubIndex> indexes,
@@ -349,6 +370,7 @@ public class LuceneChangeIndex implements ChangeIndex {
       this.opts = opts;
       this.sort = sort;
       this.rawDocumentMapper = rawDocumentMapper;
+      this.searchAfter = toSortValues(opts.searchAfter(), sort);
     }
 
     @Override
@@ -374,12 +396,14 @@ public class LuceneChangeIndex implements ChangeIndex {
       }
 
       final Set<String> fields = IndexUtils.changeFields(opts, schema.useLegacyNumericFields());
+      // Searchers are acquired on the executor, but must still see the writes of this thread.
+      final IndexWriteTracker writeTracker = IndexWriteTracker.current();
       return new ChangeDataResults(
           executor.submit(
-              new Callable<List<Document>>() {
+              new Callable<List<Hit>>() {
                 @Override
-                public List<Document> call() throws IOException {
-                  return doRead(fields);
+                public List<Hit> call() throws IOException {
+                  return doRead(fields, writeTracker);
                 }
 
                 @Override
@@ -392,14 +416,17 @@ public class LuceneChangeIndex implements ChangeIndex {
 
     @Override
     public ResultSet<FieldBundle> readRaw() {
-      List<Document> documents;
+      List<Hit> hits;
       try {
-        documents = doRead(IndexUtils.changeFields(opts, schema.useLegacyNumericFields()));
+        hits =
+            doRead(
+                IndexUtils.changeFields(opts, schema.useLegacyNumericFields()),
+                IndexWriteTracker.current());
       } catch (IOException e) {
         throw new StorageException(e);
       }
       ImmutableList<FieldBundle> fieldBundles =
-          documents.stream().map(rawDocumentMapper).collect(toImmutableList());
+          hits.stream().map(h -> rawDocumentMapper.apply(h.document)).collect(toImmutableList());
       return new ResultSet<FieldBundle>() {
         @Override
         public Iterator<FieldBundle> iterator() {
@@ -418,27 +445,38 @@ public class LuceneChangeIndex implements ChangeIndex {
       };
     }
 
-    private List<Document> doRead(Set<String> fields) throws IOException {
+    private List<Hit> doRead(Set<String> fields, IndexWriteTracker writeTracker)
+        throws IOException {
       IndexSearcher[] searchers = new IndexSearcher[indexes.size()];
+      List<Future<TopFieldDocs>> pending = new ArrayList<>();
       try {
         int realLimit = opts.start() + opts.limit();
         if (Integer.MAX_VALUE - opts.limit() < opts.start()) {
           realLimit = Integer.MAX_VALUE;
         }
-        TopFieldDocs[] hits = new TopFieldDocs[indexes.size()];
         for (int i = 0; i < indexes.size(); i++) {
-          searchers[i] = indexes.get(i).acquire();
-          hits[i] = searchers[i].search(query, realLimit, sort);
+          searchers[i] = indexes.get(i).acquire(writeTracker);
         }
+        TopFieldDocs[] hits = search(searchers, realLimit, pending);
         TopDocs docs = TopDocs.merge(sort, realLimit, hits);
 
-        List<Document> result = new ArrayList<>(docs.scoreDocs.length);
+        List<Hit> result = new ArrayList<>(docs.scoreDocs.length);
         for (int i = opts.start(); i < docs.scoreDocs.length; i++) {
-          ScoreDoc sd = docs.scoreDocs[i];
-          result.add(searchers[sd.shardIndex].doc(sd.doc, fields));
+          FieldDoc fd = (FieldDoc) docs.scoreDocs[i];
+          result.add(new Hit(searchers[fd.shardIndex].doc(fd.doc, fields), fd.fields));
         }
         return result;
       } finally {
+        // Searches that are still running need their searchers until they are done.
+        for (Future<TopFieldDocs> f : pending) {
+          if (!f.cancel(false)) {
+            try {
+              Uninterruptibles.getUninterruptibly(f);
+            } catch (ExecutionException e) {
+              // Already reported by search().
+            }
+          }
+        }
         for (int i = 0; i < indexes.size(); i++) {
           if (searchers[i] != null) {
             try {
@@ -450,13 +488,89 @@ public class LuceneChangeIndex implements ChangeIndex {
         }
       }
     }
+
+    /**
+     * Searches all sub indexes in parallel.
+     *
+     * <p>The first sub index is searched on the current thread, the others on the executor.
+     * Searches that the executor didn't start by the time the current thread needs their results
+     * are run on the current thread instead, so a busy executor can't block the query.
+     */
+    private TopFieldDocs[] search(
+        IndexSearcher[] searchers, int limit, List<Future<TopFieldDocs>> pending)
+        throws IOException {
+      TopFieldDocs[] hits = new TopFieldDocs[searchers.length];
+      if (searchers.length == 0) {
+        return hits;
+      }
+      for (int i = 1; i < searchers.length; i++) {
+        IndexSearcher searcher = searchers[i];
+        pending.add(executor.submit(() -> search(searcher, limit)));
+      }
+      hits[0] = search(searchers[0], limit);
+      for (int i = 1; i < searchers.length; i++) {
+        Future<TopFieldDocs> f = pending.get(i - 1);
+        if (f.cancel(false)) {
+          hits[i] = search(searchers[i], limit);
+          continue;
+        }
+        try {
+          hits[i] = Uninterruptibles.getUninterruptibly(f);
+        } catch (ExecutionException e) {
+          Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+          Throwables.throwIfUnchecked(e.getCause());
+          throw new StorageException(e.getCause());
+        }
+      }
+      return hits;
+    }
+
+    private TopFieldDocs search(IndexSearcher searcher, int limit) throws IOException {
+      int maxDoc = searcher.getIndexReader().maxDoc();
+      if (searchAfter == null || maxDoc == 0) {
+        return searcher.search(query, limit, sort);
+      }
+      // Documents with the same sort values as the position only follow it if their doc ID is
+      // greater. Sort values include the change number, so only the change of the position itself
+      // has the same values, and it is skipped by using the highest doc ID.
+      FieldDoc after = new FieldDoc(maxDoc - 1, Float.NaN, searchAfter);
+      return searcher.searchAfter(after, query, limit, sort, false, false);
+    }
+  }
+
+  @Nullable
+  private static Object[] toSortValues(@Nullable SearchAfter searchAfter, Sort sort)
+      throws QueryParseException {
+    if (searchAfter == null) {
+      return null;
+    }
+    ImmutableList<Object> values = searchAfter.values();
+    if (values.size() != sort.getSort().length
+        || !values.stream().allMatch(v -> v instanceof Long)) {
+      throw new QueryParseException("Invalid search-after cursor: " + searchAfter.encode());
+    }
+    return values.toArray();
+  }
+
+  /** Document found by a search, with its values of the sort fields. */
+  private static class Hit {
+    final Document document;
+    @Nullable final SearchAfter position;
+
+    Hit(Document document, @Nullable Object[] sortValues) {
+      this.document = document;
+      this.position =
+          sortValues != null && Arrays.stream(sortValues).allMatch(Long.class::isInstance)
+              ? SearchAfter.create(Arrays.asList(sortValues))
+              : null;
+    }
   }
 
   private class ChangeDataResults implements ResultSet<ChangeData> {
-    private final Future<List<Document>> future;
+    private final Future<List<Hit>> future;
     private final Set<String> fields;
 
-    ChangeDataResults(Future<List<Document>> future, Set<String> fields) {
+    ChangeDataResults(Future<List<Hit>> future, Set<String> fields) {
       this.future = future;
       this.fields = fields;
     }
@@ -469,11 +583,13 @@ public class LuceneChangeIndex implements ChangeIndex {
     @Override
     public ImmutableList<ChangeData> toList() {
       try {
-        List<Document> docs = future.get();
+        List<Hit> hits = future.get();
         ImmutableList.Builder<ChangeData> result =
-            ImmutableList.builderWithExpectedSize(docs.size());
-        for (Document doc : docs) {
-          result.add(toChangeData(fields(doc, fields), fields, idField.getName()));
+            ImmutableList.builderWithExpectedSize(hits.size());
+        for (Hit hit : hits) {
+          ChangeData cd = toChangeData(fields(hit.document, fields), fields, idField.getName());
+          cd.setSearchAfter(hit.position);
+          result.add(cd);
         }
         return result.build();
       } catch (InterruptedException e) {
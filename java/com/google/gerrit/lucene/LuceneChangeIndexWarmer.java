@@ -0,0 +1,120 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.lucene;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.index.IndexConfig;
+import com.google.gerrit.index.QueryOptions;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.index.query.QueryParseException;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.server.AnonymousUser;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.index.change.ChangeIndex;
+import com.google.gerrit.server.index.change.ChangeIndexCollection;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.ChangeQueryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Runs the queries from {@code index.lucene.warmupQuery} against the change index on startup.
+ *
+ * <p>This reads the postings, doc values and stored fields that these queries need from disk before
+ * the server accepts requests, so that the first user queries after a restart are not slowed down
+ * by a cold page cache. Queries run as anonymous user and directly on the index, hence they may
+ * only use operators that are fully answered by the index.
+ */
+@Singleton
+class LuceneChangeIndexWarmer implements LifecycleListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final ChangeIndexCollection indexes;
+  private final Provider<ChangeQueryBuilder> queryBuilder;
+  private final Provider<AnonymousUser> anonymousUser;
+  private final IndexConfig indexConfig;
+  private final String[] queries;
+  private final int limit;
+  private final Timer0 warmupLatency;
+
+  @Inject
+  LuceneChangeIndexWarmer(
+      @GerritServerConfig Config cfg,
+      ChangeIndexCollection indexes,
+      Provider<ChangeQueryBuilder> queryBuilder,
+      Provider<AnonymousUser> anonymousUser,
+      IndexConfig indexConfig,
+      MetricMaker metricMaker) {
+    this.indexes = indexes;
+    this.queryBuilder = queryBuilder;
+    this.anonymousUser = anonymousUser;
+    this.indexConfig = indexConfig;
+    this.queries = cfg.getStringList("index", "lucene", "warmupQuery");
+    this.limit = cfg.getInt("index", "lucene", "warmupLimit", 1000);
+    this.warmupLatency =
+        metricMaker.newTimer(
+            "index/lucene/warmup_latency",
+            new Description("Time spent warming the change index on startup")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS));
+  }
+
+  @Override
+  public void start() {
+    if (queries.length == 0) {
+      return;
+    }
+    ChangeIndex index = indexes.getSearchIndex();
+    if (index == null) {
+      return;
+    }
+
+    logger.atInfo().log("Warming change index with %d queries", queries.length);
+    long startNanos = System.nanoTime();
+    int docs = 0;
+    for (String query : queries) {
+      docs += warm(index, query);
+    }
+    long elapsedNanos = System.nanoTime() - startNanos;
+    warmupLatency.record(elapsedNanos, NANOSECONDS);
+    logger.atInfo().log(
+        "Warmed change index with %d documents in %d ms", docs, NANOSECONDS.toMillis(elapsedNanos));
+  }
+
+  private int warm(ChangeIndex index, String query) {
+    try {
+      Predicate<ChangeData> p = queryBuilder.get().asUser(anonymousUser.get()).parse(query);
+      QueryOptions opts =
+          QueryOptions.create(
+              indexConfig, 0, limit, index.getSchema().getStoredFields().keySet());
+      // Reading the raw documents loads all their stored fields, but doesn't touch NoteDb.
+      return index.getSource(p, opts).readRaw().toList().size();
+    } catch (QueryParseException | StorageException e) {
+      logger.atWarning().withCause(e).log("Cannot warm change index with query: %s", query);
+      return 0;
+    }
+  }
+
+  @Override
+  public void stop() {}
+}
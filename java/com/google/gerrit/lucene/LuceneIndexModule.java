@@ -17,6 +17,7 @@ package com.google.gerrit.lucene;
 import com.google.common.collect.ImmutableMap;
 import com.google.gerrit.index.IndexConfig;
 import com.google.gerrit.index.project.ProjectIndex;
+import com.google.gerrit.lifecycle.LifecycleModule;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.index.AbstractIndexModule;
 import com.google.gerrit.server.index.VersionManager;
@@ -45,8 +46,27 @@ public class LuceneIndexModule extends AbstractIndexModule {
     return cfg.getBoolean("index", "lucene", "testInmemory", false);
   }
 
+  private final boolean multiVersion;
+
   private LuceneIndexModule(Map<String, Integer> singleVersions, int threads, boolean slave) {
     super(singleVersions, threads, slave);
+    this.multiVersion = singleVersions == null;
+  }
+
+  @Override
+  protected void configure() {
+    super.configure();
+    if (multiVersion) {
+      // Only servers pick up the latest index versions on their own; they are also the only ones
+      // that serve user queries.
+      install(
+          new LifecycleModule() {
+            @Override
+            protected void configure() {
+              listener().to(LuceneChangeIndexWarmer.class);
+            }
+          });
+    }
   }
 
   @Override
@@ -31,7 +31,9 @@ import com.google.gerrit.pgm.util.BatchProgramModule;
 import com.google.gerrit.pgm.util.SiteProgram;
 import com.google.gerrit.server.change.ChangeResource;
 import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.SitePaths;
 import com.google.gerrit.server.index.IndexModule;
+import com.google.gerrit.server.index.change.AllChangesIndexer;
 import com.google.gerrit.server.index.change.ChangeSchemaDefinitions;
 import com.google.gerrit.server.plugins.PluginGuiceEnvironment;
 import com.google.gerrit.server.util.ReplicaUtil;
@@ -69,12 +71,20 @@ public class Reindex extends SiteProgram {
   @Option(name = "--index", usage = "Only reindex specified indices")
   private List<String> indices = new ArrayList<>();
 
+  @Option(
+      name = "--incremental",
+      usage =
+          "Only reindex changes whose documents are stale, and continue an interrupted"
+              + " incremental run; other indices are reindexed fully")
+  private boolean incremental;
+
   private Injector dbInjector;
   private Injector sysInjector;
   private Injector cfgInjector;
   private Config globalConfig;
 
   @Inject private Collection<IndexDefinition<?, ?, ?>> indexDefs;
+  @Inject private SitePaths sitePaths;
 
   @Override
   public int run() throws Exception {
@@ -171,8 +181,9 @@ public class Reindex extends SiteProgram {
   }
 
   private void overrideConfig() {
-    // Disable auto-commit for speed; committing will happen at the end of the process.
     if (IndexModule.getIndexType(dbInjector).isLucene()) {
+      // Disable auto-commit for speed; committing will happen at the end of the process. An
+      // incremental run commits the index before recording a slice in the checkpoint.
       globalConfig.setLong("index", "changes_open", "commitWithin", -1);
       globalConfig.setLong("index", "changes_closed", "commitWithin", -1);
     }
@@ -188,10 +199,21 @@ public class Reindex extends SiteProgram {
     I index = def.getIndexCollection().getSearchIndex();
     requireNonNull(
         index, () -> String.format("no active search index configured for %s", def.getName()));
-    index.markReady(false);
-    index.deleteAll();
-
     SiteIndexer<K, V, I> siteIndexer = def.getSiteIndexer();
+    boolean incrementalChanges = incremental && siteIndexer instanceof AllChangesIndexer;
+    if (incrementalChanges) {
+      // Documents of unchanged changes are kept, and the index stays usable while it is updated.
+      AllChangesIndexer changesIndexer = (AllChangesIndexer) siteIndexer;
+      changesIndexer.setIncremental(true);
+      changesIndexer.setCheckpointFile(
+          sitePaths.index_dir.resolve(
+              String.format(
+                  "reindex_%s_%04d.checkpoint", def.getName(), index.getSchema().getVersion())));
+    } else {
+      index.markReady(false);
+      index.deleteAll();
+    }
+
     siteIndexer.setProgressOut(System.err);
     siteIndexer.setVerboseOut(verbose ? System.out : NullOutputStream.INSTANCE);
     SiteIndexer.Result result = siteIndexer.indexAll(index);
@@ -19,12 +19,14 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.extensions.client.AuthType;
 import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.pgm.http.jetty.HttpLog.HttpLogFactory;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.config.SitePaths;
 import com.google.gerrit.server.config.ThreadSettingsConfig;
+import com.google.gerrit.server.util.VirtualThreads;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Singleton;
@@ -42,6 +44,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.servlet.DispatcherType;
@@ -77,6 +80,8 @@ import org.eclipse.jgit.lib.Config;
 
 @Singleton
 public class JettyServer {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   static class Lifecycle implements LifecycleListener {
     private final JettyServer server;
     private final Config cfg;
@@ -461,16 +466,35 @@ public class JettyServer {
     int maxQueued = cfg.getInt("httpd", null, "maxqueued", 200);
     int idleTimeout = (int) MILLISECONDS.convert(60, SECONDS);
     int maxCapacity = maxQueued == 0 ? Integer.MAX_VALUE : Math.max(minThreads, maxQueued);
-    QueuedThreadPool pool =
-        new QueuedThreadPool(
-            maxThreads,
-            minThreads,
-            idleTimeout,
-            new BlockingArrayQueue<>(
-                minThreads, // capacity,
-                minThreads, // growBy,
-                maxCapacity // maxCapacity
-                ));
+    BlockingArrayQueue<Runnable> queue =
+        new BlockingArrayQueue<>(
+            minThreads, // capacity,
+            minThreads, // growBy,
+            maxCapacity // maxCapacity
+            );
+    QueuedThreadPool pool;
+    if (threadSettingsConfig.useVirtualThreads()) {
+      // Requests are limited by RequestConcurrencyLimiter, the pool only needs to be large enough
+      // to not become the bottleneck.
+      maxThreads +=
+          threadSettingsConfig.getInteractiveRequestLimit()
+              + threadSettingsConfig.getBatchRequestLimit();
+      ThreadFactory threadFactory =
+          VirtualThreads.newThreadFactory(
+              "HTTP-",
+              (t, e) -> logger.atSevere().withCause(e).log("HTTP thread %s threw exception", t));
+      pool =
+          new QueuedThreadPool(maxThreads, minThreads, idleTimeout, queue) {
+            @Override
+            protected Thread newThread(Runnable runnable) {
+              return threadFactory.newThread(runnable);
+            }
+          };
+      // Virtual threads are always daemon threads.
+      pool.setDaemon(true);
+    } else {
+      pool = new QueuedThreadPool(maxThreads, minThreads, idleTimeout, queue);
+    }
     pool.setName("HTTP");
     return pool;
   }
@@ -80,6 +80,7 @@ import com.google.gerrit.server.project.ProjectState;
 import com.google.gerrit.server.project.SubmitRuleEvaluator;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gerrit.server.query.change.ChangeIsVisibleToPredicate;
+import com.google.gerrit.server.query.change.ChangeQueryResultCache;
 import com.google.gerrit.server.restapi.group.GroupModule;
 import com.google.gerrit.server.rules.DefaultSubmitRule;
 import com.google.gerrit.server.rules.IgnoreSelfApprovalRule;
@@ -175,6 +176,7 @@ public class BatchProgramModule extends FactoryModule {
     modules.add(ProjectCacheImpl.module());
     modules.add(SectionSortCache.module());
     modules.add(ChangeKindCacheImpl.module());
+    modules.add(ChangeQueryResultCache.module());
     modules.add(MergeabilityCacheImpl.module());
     modules.add(ServiceUserClassifierImpl.module());
     modules.add(TagCache.module());
@@ -367,7 +367,8 @@ public class IdentifiedUser extends CurrentUser {
     return state().account();
   }
 
-  public boolean hasEmailAddress(String email) {
+  // Synchronized, as commits of a push may be validated in parallel for the same user.
+  public synchronized boolean hasEmailAddress(String email) {
     if (validEmails.contains(email)) {
       return true;
     } else if (invalidEmails != null && invalidEmails.contains(email)) {
@@ -383,7 +384,7 @@ public class IdentifiedUser extends CurrentUser {
   }
 
   @Override
-  public ImmutableSet<String> getEmailAddresses() {
+  public synchronized ImmutableSet<String> getEmailAddresses() {
     if (!loadedAllEmails) {
       validEmails.addAll(realm.getEmailAddresses(this));
       loadedAllEmails = true;
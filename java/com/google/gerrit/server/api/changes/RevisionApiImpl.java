@@ -33,6 +33,7 @@ import com.google.gerrit.extensions.api.changes.RebaseInput;
 import com.google.gerrit.extensions.api.changes.RelatedChangesInfo;
 import com.google.gerrit.extensions.api.changes.ReviewInput;
 import com.google.gerrit.extensions.api.changes.ReviewResult;
+import com.google.gerrit.extensions.api.changes.ReviewedFilesInput;
 import com.google.gerrit.extensions.api.changes.RevisionApi;
 import com.google.gerrit.extensions.api.changes.RevisionReviewerApi;
 import com.google.gerrit.extensions.api.changes.RobotCommentApi;
@@ -122,6 +123,7 @@ class RevisionApiImpl extends RevisionApi.NotImplemented {
   private final PreviewSubmit submitPreview;
   private final Reviewed.PutReviewed putReviewed;
   private final Reviewed.DeleteReviewed deleteReviewed;
+  private final Reviewed.PostReviewed postReviewed;
   private final RevisionResource revision;
   private final Files files;
   private final Files.ListFiles listFiles;
@@ -170,6 +172,7 @@ class RevisionApiImpl extends RevisionApi.NotImplemented {
       PreviewSubmit submitPreview,
       Reviewed.PutReviewed putReviewed,
       Reviewed.DeleteReviewed deleteReviewed,
+      Reviewed.PostReviewed postReviewed,
       Files files,
       Files.ListFiles listFiles,
       GetCommit getCommit,
@@ -217,6 +220,7 @@ class RevisionApiImpl extends RevisionApi.NotImplemented {
     this.files = files;
     this.putReviewed = putReviewed;
     this.deleteReviewed = deleteReviewed;
+    this.postReviewed = postReviewed;
     this.listFiles = listFiles;
     this.getCommit = getCommit;
     this.getPatch = getPatch;
@@ -350,6 +354,15 @@ class RevisionApiImpl extends RevisionApi.NotImplemented {
     }
   }
 
+  @Override
+  public void setReviewed(ReviewedFilesInput input) throws RestApiException {
+    try {
+      postReviewed.apply(revision, input);
+    } catch (Exception e) {
+      throw asRestApiException("Cannot update reviewed flags", e);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   public Set<String> reviewed() throws RestApiException {
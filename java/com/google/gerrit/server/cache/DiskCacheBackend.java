@@ -0,0 +1,95 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.server.logging.LoggingContextAwareExecutorService;
+import com.google.gerrit.server.logging.LoggingContextAwareScheduledExecutorService;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Storage used for the disk part of a persistent cache, selected per cache by {@code
+ * cache.<name>.diskBackend}. H2 is used by default.
+ *
+ * <p>Also provides the executors that the factories of all backends use to write to and prune
+ * their stores.
+ */
+public enum DiskCacheBackend {
+  H2,
+  MMAP;
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** Returns the backend that is configured for the cache. */
+  public static DiskCacheBackend of(Config cfg, PersistentCacheDef<?, ?> def) {
+    return cfg.getEnum("cache", def.configKey(), "diskBackend", H2);
+  }
+
+  /**
+   * Creates the executor that writes cache updates to disk.
+   *
+   * @param name prefix of the thread name.
+   */
+  public static ExecutorService newStoreExecutor(String name) {
+    return new LoggingContextAwareExecutorService(
+        Executors.newFixedThreadPool(
+            1, new ThreadFactoryBuilder().setNameFormat(name + "-Store-%d").build()));
+  }
+
+  /**
+   * Creates the executor that prunes the disk stores.
+   *
+   * @param name prefix of the thread name.
+   */
+  public static ScheduledExecutorService newPruneExecutor(String name) {
+    return new LoggingContextAwareScheduledExecutorService(
+        Executors.newScheduledThreadPool(
+            1,
+            new ThreadFactoryBuilder()
+                .setNameFormat(name + "-Prune-%d")
+                .setDaemon(true)
+                .build()));
+  }
+
+  /**
+   * Stops the executors of a factory. Pending pruning is dropped, while pending cache updates are
+   * still written to disk.
+   */
+  public static void shutdown(ExecutorService executor, ScheduledExecutorService cleanup) {
+    try {
+      cleanup.shutdownNow();
+
+      List<Runnable> pending = executor.shutdownNow();
+      if (executor.awaitTermination(15, TimeUnit.MINUTES)) {
+        if (pending != null && !pending.isEmpty()) {
+          logger.atInfo().log("Finishing %d disk cache updates", pending.size());
+          for (Runnable update : pending) {
+            update.run();
+          }
+        }
+      } else {
+        logger.atInfo().log("Timeout waiting for disk cache to close");
+      }
+    } catch (InterruptedException e) {
+      logger.atWarning().log("Interrupted waiting for disk cache to shutdown");
+    }
+  }
+}
@@ -17,20 +17,18 @@ package com.google.gerrit.server.cache.h2;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
-import com.google.common.flogger.FluentLogger;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.extensions.registration.DynamicMap;
 import com.google.gerrit.server.cache.CacheBackend;
+import com.google.gerrit.server.cache.DiskCacheBackend;
 import com.google.gerrit.server.cache.MemoryCacheFactory;
 import com.google.gerrit.server.cache.PersistentCacheBaseFactory;
 import com.google.gerrit.server.cache.PersistentCacheDef;
 import com.google.gerrit.server.cache.h2.H2CacheImpl.SqlStore;
 import com.google.gerrit.server.cache.h2.H2CacheImpl.ValueHolder;
+import com.google.gerrit.server.cache.mmap.MmapCacheFactory;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.config.SitePaths;
-import com.google.gerrit.server.logging.LoggingContextAwareExecutorService;
-import com.google.gerrit.server.logging.LoggingContextAwareScheduledExecutorService;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
@@ -38,7 +36,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -47,43 +44,37 @@ import org.eclipse.jgit.lib.Config;
 /**
  * Creates persistent caches depending on gerrit.config parameters. If the cache.directory property
  * is unset, it will fall back to in-memory caches.
+ *
+ * <p>Caches that set {@code cache.<name>.diskBackend} to {@code mmap} are delegated to {@link
+ * MmapCacheFactory}.
  */
 @Singleton
 class H2CacheFactory extends PersistentCacheBaseFactory implements LifecycleListener {
-  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
-
   private final List<H2CacheImpl<?, ?>> caches;
   private final DynamicMap<Cache<?, ?>> cacheMap;
   private final ExecutorService executor;
   private final ScheduledExecutorService cleanup;
   private final long h2CacheSize;
   private final boolean h2AutoServer;
+  private final MmapCacheFactory mmapCacheFactory;
 
   @Inject
   H2CacheFactory(
       MemoryCacheFactory memCacheFactory,
       @GerritServerConfig Config cfg,
       SitePaths site,
-      DynamicMap<Cache<?, ?>> cacheMap) {
+      DynamicMap<Cache<?, ?>> cacheMap,
+      MmapCacheFactory mmapCacheFactory) {
     super(memCacheFactory, cfg, site);
+    this.mmapCacheFactory = mmapCacheFactory;
     h2CacheSize = cfg.getLong("cache", null, "h2CacheSize", -1);
     h2AutoServer = cfg.getBoolean("cache", null, "h2AutoServer", false);
     caches = new LinkedList<>();
     this.cacheMap = cacheMap;
 
     if (diskEnabled) {
-      executor =
-          new LoggingContextAwareExecutorService(
-              Executors.newFixedThreadPool(
-                  1, new ThreadFactoryBuilder().setNameFormat("DiskCache-Store-%d").build()));
-      cleanup =
-          new LoggingContextAwareScheduledExecutorService(
-              Executors.newScheduledThreadPool(
-                  1,
-                  new ThreadFactoryBuilder()
-                      .setNameFormat("DiskCache-Prune-%d")
-                      .setDaemon(true)
-                      .build()));
+      executor = DiskCacheBackend.newStoreExecutor("DiskCache");
+      cleanup = DiskCacheBackend.newPruneExecutor("DiskCache");
     } else {
       executor = null;
       cleanup = null;
@@ -105,23 +96,7 @@ class H2CacheFactory extends PersistentCacheBaseFactory implements LifecycleList
   @Override
   public void stop() {
     if (executor != null) {
-      try {
-        cleanup.shutdownNow();
-
-        List<Runnable> pending = executor.shutdownNow();
-        if (executor.awaitTermination(15, TimeUnit.MINUTES)) {
-          if (pending != null && !pending.isEmpty()) {
-            logger.atInfo().log("Finishing %d disk cache updates", pending.size());
-            for (Runnable update : pending) {
-              update.run();
-            }
-          }
-        } else {
-          logger.atInfo().log("Timeout waiting for disk cache to close");
-        }
-      } catch (InterruptedException e) {
-        logger.atWarning().log("Interrupted waiting for disk cache to shutdown");
-      }
+      DiskCacheBackend.shutdown(executor, cleanup);
     }
     synchronized (caches) {
       for (H2CacheImpl<?, ?> cache : caches) {
@@ -134,6 +109,9 @@ class H2CacheFactory extends PersistentCacheBaseFactory implements LifecycleList
   @Override
   public <K, V> Cache<K, V> buildImpl(
       PersistentCacheDef<K, V> in, long limit, CacheBackend backend) {
+    if (DiskCacheBackend.of(config, in) == DiskCacheBackend.MMAP) {
+      return mmapCacheFactory.build(in, backend);
+    }
     H2CacheDefProxy<K, V> def = new H2CacheDefProxy<>(in);
     SqlStore<K, V> store = newSqlStore(def, limit);
     H2CacheImpl<K, V> cache =
@@ -152,6 +130,9 @@ class H2CacheFactory extends PersistentCacheBaseFactory implements LifecycleList
   @Override
   public <K, V> LoadingCache<K, V> buildImpl(
       PersistentCacheDef<K, V> in, CacheLoader<K, V> loader, long limit, CacheBackend backend) {
+    if (DiskCacheBackend.of(config, in) == DiskCacheBackend.MMAP) {
+      return mmapCacheFactory.build(in, loader, backend);
+    }
     H2CacheDefProxy<K, V> def = new H2CacheDefProxy<>(in);
     SqlStore<K, V> store = newSqlStore(def, limit);
     Cache<K, ValueHolder<V>> mem =
@@ -169,6 +150,7 @@ class H2CacheFactory extends PersistentCacheBaseFactory implements LifecycleList
 
   @Override
   public void onStop(String plugin) {
+    mmapCacheFactory.onStop(plugin);
     synchronized (caches) {
       for (Map.Entry<String, Provider<Cache<?, ?>>> entry : cacheMap.byPlugin(plugin).entrySet()) {
         Cache<?, ?> cache = entry.getValue().get();
@@ -0,0 +1,167 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache.mmap;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gerrit.server.cache.CacheBackend;
+import com.google.gerrit.server.cache.DiskCacheBackend;
+import com.google.gerrit.server.cache.MemoryCacheFactory;
+import com.google.gerrit.server.cache.PersistentCacheBaseFactory;
+import com.google.gerrit.server.cache.PersistentCacheDef;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Creates persistent caches that store their entries in memory-mapped, append-only segment files.
+ * If the cache.directory property is unset, it will fall back to in-memory caches.
+ *
+ * <p>Used for caches that set {@code cache.<name>.diskBackend} to {@code mmap}.
+ */
+@Singleton
+public class MmapCacheFactory extends PersistentCacheBaseFactory implements LifecycleListener {
+  private static final int MIN_SEGMENT_SIZE = 1 << 20;
+  private static final int MAX_SEGMENT_SIZE = 64 << 20;
+
+  private final List<MmapCacheImpl<?, ?>> caches;
+  private final DynamicMap<Cache<?, ?>> cacheMap;
+  private final ExecutorService executor;
+  private final ScheduledExecutorService cleanup;
+
+  // Guarded by caches.
+  private boolean started;
+
+  @Inject
+  MmapCacheFactory(
+      MemoryCacheFactory memCacheFactory,
+      @GerritServerConfig Config cfg,
+      SitePaths site,
+      DynamicMap<Cache<?, ?>> cacheMap) {
+    super(memCacheFactory, cfg, site);
+    caches = new LinkedList<>();
+    this.cacheMap = cacheMap;
+
+    if (diskEnabled) {
+      executor = DiskCacheBackend.newStoreExecutor("MmapCache");
+      cleanup = DiskCacheBackend.newPruneExecutor("MmapCache");
+    } else {
+      executor = null;
+      cleanup = null;
+    }
+  }
+
+  @Override
+  public void start() {
+    synchronized (caches) {
+      started = true;
+      for (MmapCacheImpl<?, ?> cache : caches) {
+        start(cache);
+      }
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (executor != null) {
+      DiskCacheBackend.shutdown(executor, cleanup);
+    }
+    synchronized (caches) {
+      for (MmapCacheImpl<?, ?> cache : caches) {
+        cache.stop();
+      }
+    }
+  }
+
+  @Override
+  protected <K, V> Cache<K, V> buildImpl(
+      PersistentCacheDef<K, V> in, long limit, CacheBackend backend) {
+    MmapCacheImpl<K, V> cache =
+        new MmapCacheImpl<>(
+            executor, newStore(in, limit), in.keyType(), memCacheFactory.build(in, backend));
+    add(cache);
+    return cache;
+  }
+
+  @Override
+  protected <K, V> LoadingCache<K, V> buildImpl(
+      PersistentCacheDef<K, V> in, CacheLoader<K, V> loader, long limit, CacheBackend backend) {
+    MmapStore<K, V> store = newStore(in, limit);
+    MmapCacheImpl.Loader<K, V> storeLoader = new MmapCacheImpl.Loader<>(executor, store, loader);
+    LoadingCache<K, V> mem = memCacheFactory.build(in, storeLoader, backend);
+    storeLoader.setMem(mem);
+    MmapCacheImpl<K, V> cache = new MmapCacheImpl<>(executor, store, in.keyType(), mem);
+    add(cache);
+    return cache;
+  }
+
+  private void add(MmapCacheImpl<?, ?> cache) {
+    synchronized (caches) {
+      caches.add(cache);
+      // Caches of plugins are built after the factory was started.
+      if (started) {
+        start(cache);
+      }
+    }
+  }
+
+  private void start(MmapCacheImpl<?, ?> cache) {
+    if (executor != null) {
+      executor.execute(cache::start);
+      @SuppressWarnings("unused")
+      Future<?> possiblyIgnoredError =
+          cleanup.scheduleWithFixedDelay(cache::prune, 30, 3600, TimeUnit.SECONDS);
+    }
+  }
+
+  @Override
+  public void onStop(String plugin) {
+    synchronized (caches) {
+      for (Map.Entry<String, Provider<Cache<?, ?>>> entry : cacheMap.byPlugin(plugin).entrySet()) {
+        Cache<?, ?> cache = entry.getValue().get();
+        if (caches.remove(cache)) {
+          ((MmapCacheImpl<?, ?>) cache).stop();
+        }
+      }
+    }
+  }
+
+  private <K, V> MmapStore<K, V> newStore(PersistentCacheDef<K, V> def, long maxSize) {
+    // Use at least four segments, so that evicting the oldest one only drops a fraction of the
+    // cache.
+    int segmentSize = (int) Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, maxSize / 4));
+    return new MmapStore<>(
+        cacheDir.resolve(def.name() + ".mmap"),
+        def.keySerializer(),
+        def.valueSerializer(),
+        def.version(),
+        maxSize,
+        segmentSize,
+        def.expireAfterWrite());
+  }
+}
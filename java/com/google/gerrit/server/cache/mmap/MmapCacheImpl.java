@@ -0,0 +1,219 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache.mmap;
+
+import com.google.common.cache.AbstractLoadingCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gerrit.server.cache.PersistentCache;
+import com.google.gerrit.server.logging.Metadata;
+import com.google.gerrit.server.logging.TraceContext;
+import com.google.gerrit.server.logging.TraceContext.TraceTimer;
+import com.google.gerrit.server.util.time.TimeUtil;
+import com.google.inject.TypeLiteral;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Hybrid in-memory and disk backed cache built on a memory-mapped, append-only {@link MmapStore}.
+ *
+ * <p>Like the H2 backed cache, this cache can be used as either a recall cache, or a loading cache
+ * if a CacheLoader was supplied to its constructor at build time. The in-memory cache is checked
+ * first, then the store, and finally the CacheLoader is used to construct the item.
+ *
+ * <p>Cache stores and invalidations are performed on a background thread. Since writes only append
+ * to the newest segment and lookups are served from an in-memory index, neither needs a database
+ * connection or a Bloom filter.
+ *
+ * @see MmapCacheFactory
+ */
+public class MmapCacheImpl<K, V> extends AbstractLoadingCache<K, V> implements PersistentCache {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final Executor executor;
+  private final MmapStore<K, V> store;
+  private final TypeLiteral<K> keyType;
+  private final Cache<K, V> mem;
+
+  MmapCacheImpl(
+      Executor executor, MmapStore<K, V> store, TypeLiteral<K> keyType, Cache<K, V> mem) {
+    this.executor = executor;
+    this.store = store;
+    this.keyType = keyType;
+    this.mem = mem;
+  }
+
+  @Override
+  public V getIfPresent(Object objKey) {
+    if (!keyType.getRawType().isInstance(objKey)) {
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    K key = (K) objKey;
+
+    V val = mem.getIfPresent(key);
+    if (val != null) {
+      return val;
+    }
+
+    val = store.getIfPresent(key);
+    if (val != null) {
+      mem.put(key, val);
+    }
+    return val;
+  }
+
+  @Override
+  public V get(K key) throws ExecutionException {
+    if (mem instanceof LoadingCache) {
+      return ((LoadingCache<K, V>) mem).get(key);
+    }
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public V get(K key, Callable<? extends V> valueLoader) throws ExecutionException {
+    return mem.get(
+        key,
+        () -> {
+          V val = store.getIfPresent(key);
+          if (val == null) {
+            val = valueLoader.call();
+            write(executor, store, mem, key, val);
+          }
+          return val;
+        });
+  }
+
+  @Override
+  public void put(K key, V val) {
+    mem.put(key, val);
+    write(executor, store, mem, key, val);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void invalidate(Object key) {
+    if (keyType.getRawType().isInstance(key)) {
+      executor.execute(() -> store.invalidate((K) key));
+    }
+    mem.invalidate(key);
+  }
+
+  @Override
+  public void invalidateAll() {
+    store.invalidateAll();
+    mem.invalidateAll();
+  }
+
+  @Override
+  public long size() {
+    return mem.size();
+  }
+
+  @Override
+  public CacheStats stats() {
+    return mem.stats();
+  }
+
+  @Override
+  public DiskStats diskStats() {
+    return store.diskStats();
+  }
+
+  void start() {
+    store.open();
+  }
+
+  void stop() {
+    store.close();
+  }
+
+  void prune() {
+    store.prune(mem);
+  }
+
+  private static <K, V> void write(
+      Executor executor, MmapStore<K, V> store, Cache<K, ?> mem, K key, V val) {
+    executor.execute(
+        () -> {
+          store.put(key, val, TimeUtil.now());
+          if (store.isOverLimit()) {
+            store.prune(mem);
+          }
+        });
+  }
+
+  static class Loader<K, V> extends CacheLoader<K, V> {
+    private final Executor executor;
+    private final MmapStore<K, V> store;
+    private final CacheLoader<K, V> loader;
+    private Cache<K, V> mem;
+
+    Loader(Executor executor, MmapStore<K, V> store, CacheLoader<K, V> loader) {
+      this.executor = executor;
+      this.store = store;
+      this.loader = loader;
+    }
+
+    /** Sets the in-memory cache this loader was built into, used to decide what to evict. */
+    void setMem(Cache<K, V> mem) {
+      this.mem = mem;
+    }
+
+    @Override
+    public V load(K key) throws Exception {
+      try (TraceTimer timer =
+          TraceContext.newTimer(
+              "Loading value from cache", Metadata.builder().cacheKey(key.toString()).build())) {
+        V val = store.getIfPresent(key);
+        if (val == null) {
+          val = loader.load(key);
+          write(executor, store, mem, key, val);
+        }
+        return val;
+      }
+    }
+
+    @Override
+    public ListenableFuture<V> reload(K key, V oldValue) throws Exception {
+      ListenableFuture<V> reloadedValue = loader.reload(key, oldValue);
+      Futures.addCallback(
+          reloadedValue,
+          new FutureCallback<V>() {
+            @Override
+            public void onSuccess(V result) {
+              write(MoreExecutors.directExecutor(), store, mem, key, result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+              logger.atWarning().withCause(t).log("Unable to reload cache value");
+            }
+          },
+          executor);
+      return reloadedValue;
+    }
+  }
+}
@@ -0,0 +1,520 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache.mmap;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.server.cache.PersistentCache.DiskStats;
+import com.google.gerrit.server.cache.serialize.CacheSerializer;
+import com.google.gerrit.server.util.time.TimeUtil;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Append-only log of serialized cache entries, stored in memory-mapped segment files.
+ *
+ * <p>Entries are only ever appended to the newest segment; updates and invalidations append a new
+ * record that supersedes the previous one. The index maps each serialized key to the position of
+ * its latest record and is rebuilt by scanning the segments when the store is opened. Values are
+ * read directly from the mapped segments, so they do not occupy heap until they are deserialized.
+ *
+ * <p>Every segment starts with a header, followed by records of the form:
+ *
+ * <pre>
+ *   int length, int version, long created, int keyLength, int valueLength, key, value
+ * </pre>
+ *
+ * A {@code valueLength} of -1 marks an invalidation. The length of a record is written last, so a
+ * record that was only partially written, e.g. because the server crashed, ends the scan of its
+ * segment.
+ *
+ * <p>{@link #prune(Cache)} keeps the store within its size limit by evicting the oldest segments
+ * and compacts segments that mostly contain superseded records.
+ */
+class MmapStore<K, V> {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final int MAGIC = 0x47434d31;
+  private static final int SEGMENT_HEADER_SIZE = 8;
+  private static final int RECORD_HEADER_SIZE = 24;
+  private static final int TOMBSTONE = -1;
+  private static final Pattern SEGMENT_NAME = Pattern.compile("segment-([0-9]+)\\.log");
+
+  private final Path dir;
+  private final CacheSerializer<K> keySerializer;
+  private final CacheSerializer<V> valueSerializer;
+  private final int version;
+  private final long maxSize;
+  private final int segmentSize;
+  @Nullable private final Duration expireAfterWrite;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  // Guarded by lock.
+  private final NavigableMap<Integer, Segment> segments = new TreeMap<>();
+  private final Map<ByteString, Long> index = new HashMap<>();
+  private long totalBytes;
+  private volatile boolean opened;
+
+  MmapStore(
+      Path dir,
+      CacheSerializer<K> keySerializer,
+      CacheSerializer<V> valueSerializer,
+      int version,
+      long maxSize,
+      int segmentSize,
+      @Nullable Duration expireAfterWrite) {
+    this.dir = dir;
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+    this.version = version;
+    this.maxSize = maxSize;
+    this.segmentSize = segmentSize;
+    this.expireAfterWrite = expireAfterWrite;
+  }
+
+  void open() {
+    if (opened) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      if (opened) {
+        return;
+      }
+      Files.createDirectories(dir);
+      NavigableMap<Integer, Path> files = new TreeMap<>();
+      try (DirectoryStream<Path> s = Files.newDirectoryStream(dir)) {
+        for (Path p : s) {
+          Matcher m = SEGMENT_NAME.matcher(p.getFileName().toString());
+          if (m.matches()) {
+            files.put(Integer.parseInt(m.group(1)), p);
+          }
+        }
+      }
+      for (Map.Entry<Integer, Path> e : files.entrySet()) {
+        Segment seg = Segment.open(e.getKey(), e.getValue());
+        if (seg == null) {
+          logger.atWarning().log("Discarding corrupt cache segment %s", e.getValue());
+          Files.deleteIfExists(e.getValue());
+          continue;
+        }
+        segments.put(seg.id, seg);
+        scan(seg);
+        totalBytes += seg.writeOffset;
+      }
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot open cache %s", dir);
+      closeSegments();
+      index.clear();
+      totalBytes = 0;
+    } finally {
+      opened = true;
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void scan(Segment seg) {
+    int off = SEGMENT_HEADER_SIZE;
+    while (off + RECORD_HEADER_SIZE <= seg.capacity()) {
+      int len = seg.buf.getInt(off);
+      if (len < RECORD_HEADER_SIZE || len > seg.capacity() - off) {
+        break;
+      }
+      int recordVersion = seg.buf.getInt(off + 4);
+      ByteString key = readKey(seg, off);
+      drop(key);
+      if (seg.buf.getInt(off + 20) != TOMBSTONE && recordVersion == version) {
+        index.put(key, position(seg.id, off));
+        seg.liveBytes += len;
+      }
+      off += len;
+    }
+    seg.writeOffset = off;
+  }
+
+  @Nullable
+  V getIfPresent(K key) {
+    open();
+    ByteString k = ByteString.copyFrom(keySerializer.serialize(key));
+    long created;
+    byte[] value;
+    lock.readLock().lock();
+    try {
+      Long pos = index.get(k);
+      if (pos == null) {
+        missCount.incrementAndGet();
+        return null;
+      }
+      Segment seg = segments.get(segmentId(pos));
+      int off = offset(pos);
+      created = seg.buf.getLong(off + 8);
+      int keyLength = seg.buf.getInt(off + 16);
+      value = new byte[seg.buf.getInt(off + 20)];
+      ByteBuffer b = seg.buf.duplicate();
+      b.position(off + RECORD_HEADER_SIZE + keyLength);
+      b.get(value);
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    if (expired(created)) {
+      invalidate(key);
+      missCount.incrementAndGet();
+      return null;
+    }
+    hitCount.incrementAndGet();
+    return valueSerializer.deserialize(value);
+  }
+
+  void put(K key, V value, Instant created) {
+    open();
+    byte[] k = keySerializer.serialize(key);
+    byte[] v = valueSerializer.serialize(value);
+    lock.writeLock().lock();
+    try {
+      append(k, v, created.toEpochMilli());
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot write cache %s for %s", dir, key);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  void invalidate(K key) {
+    open();
+    byte[] k = keySerializer.serialize(key);
+    lock.writeLock().lock();
+    try {
+      if (index.containsKey(ByteString.copyFrom(k))) {
+        append(k, null, TimeUtil.nowMs());
+      }
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot invalidate cache %s for %s", dir, key);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  void invalidateAll() {
+    open();
+    lock.writeLock().lock();
+    try {
+      for (Segment seg : ImmutableList.copyOf(segments.values())) {
+        delete(seg);
+      }
+      index.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  boolean isOverLimit() {
+    lock.readLock().lock();
+    try {
+      return totalBytes > maxSize;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Evicts the oldest segments until the store fits within its size limit, then compacts segments
+   * of which less than half of the space is used by live records.
+   *
+   * <p>Live records of evicted segments that are still present in {@code mem} are moved to the
+   * newest segment instead of being dropped.
+   */
+  void prune(Cache<K, ?> mem) {
+    open();
+    lock.writeLock().lock();
+    try {
+      for (Segment seg : ImmutableList.copyOf(segments.values())) {
+        if (totalBytes <= maxSize || seg == segments.lastEntry().getValue()) {
+          break;
+        }
+        rewrite(seg, k -> mem.getIfPresent(k) != null);
+      }
+      for (Segment seg : ImmutableList.copyOf(segments.values())) {
+        if (seg != segments.lastEntry().getValue() && seg.liveBytes < seg.writeOffset / 2) {
+          rewrite(seg, k -> true);
+        }
+      }
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot prune cache %s", dir);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  DiskStats diskStats() {
+    open();
+    lock.readLock().lock();
+    try {
+      return new DiskStats(index.size(), totalBytes, hitCount.get(), missCount.get());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  void close() {
+    lock.writeLock().lock();
+    try {
+      for (Segment seg : segments.values()) {
+        seg.buf.force();
+      }
+      closeSegments();
+      index.clear();
+      totalBytes = 0;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @VisibleForTesting
+  int segmentCount() {
+    lock.readLock().lock();
+    try {
+      return segments.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Moves live records of {@code seg} that match {@code keep} to the newest segment.
+   *
+   * <p>As long as an older segment exists, it may still contain records for the keys of dropped
+   * records and of invalidations in {@code seg}. These keys get a new invalidation in the newest
+   * segment, so that the older records are not indexed again when the store is reopened.
+   */
+  private void rewrite(Segment seg, Predicate<K> keep) throws IOException {
+    boolean hasOlder = segments.firstKey() < seg.id;
+    int off = SEGMENT_HEADER_SIZE;
+    while (off < seg.writeOffset) {
+      int len = seg.buf.getInt(off);
+      ByteString key = readKey(seg, off);
+      Long pos = index.get(key);
+      if (pos != null && pos == position(seg.id, off)) {
+        long created = seg.buf.getLong(off + 8);
+        if (!expired(created) && matches(key, keep)) {
+          byte[] value = new byte[seg.buf.getInt(off + 20)];
+          ByteBuffer b = seg.buf.duplicate();
+          b.position(off + RECORD_HEADER_SIZE + key.size());
+          b.get(value);
+          append(key.toByteArray(), value, created);
+        } else if (hasOlder) {
+          append(key.toByteArray(), null, created);
+        } else {
+          drop(key);
+        }
+      } else if (pos == null && hasOlder && seg.buf.getInt(off + 20) == TOMBSTONE) {
+        append(key.toByteArray(), null, seg.buf.getLong(off + 8));
+      }
+      off += len;
+    }
+    delete(seg);
+  }
+
+  private boolean matches(ByteString key, Predicate<K> predicate) {
+    try {
+      return predicate.test(keySerializer.deserialize(key.toByteArray()));
+    } catch (RuntimeException e) {
+      logger.atFine().withCause(e).log("Cannot deserialize key in cache %s", dir);
+      return false;
+    }
+  }
+
+  private void append(byte[] key, @Nullable byte[] value, long created) throws IOException {
+    int len = RECORD_HEADER_SIZE + key.length + (value != null ? value.length : 0);
+    if (len > segmentSize - SEGMENT_HEADER_SIZE) {
+      logger.atFine().log("Not storing entry of %d bytes in cache %s", len, dir);
+      if (value != null) {
+        drop(ByteString.copyFrom(key));
+      }
+      return;
+    }
+
+    Segment seg = segments.isEmpty() ? null : segments.lastEntry().getValue();
+    if (seg == null || len > seg.capacity() - seg.writeOffset) {
+      int id = seg != null ? seg.id + 1 : 1;
+      seg = Segment.create(id, dir.resolve(String.format("segment-%d.log", id)), segmentSize);
+      segments.put(id, seg);
+      totalBytes += seg.writeOffset;
+    }
+
+    int off = seg.writeOffset;
+    ByteBuffer b = seg.buf.duplicate();
+    b.position(off + 4);
+    b.putInt(version);
+    b.putLong(created);
+    b.putInt(key.length);
+    b.putInt(value != null ? value.length : TOMBSTONE);
+    b.put(key);
+    if (value != null) {
+      b.put(value);
+    }
+    // Writing the length last commits the record.
+    seg.buf.putInt(off, len);
+    seg.writeOffset += len;
+    totalBytes += len;
+
+    ByteString k = ByteString.copyFrom(key);
+    drop(k);
+    if (value != null) {
+      index.put(k, position(seg.id, off));
+      seg.liveBytes += len;
+    }
+  }
+
+  private void drop(ByteString key) {
+    Long pos = index.remove(key);
+    if (pos != null) {
+      Segment seg = segments.get(segmentId(pos));
+      seg.liveBytes -= seg.buf.getInt(offset(pos));
+    }
+  }
+
+  private void delete(Segment seg) {
+    segments.remove(seg.id);
+    totalBytes -= seg.writeOffset;
+    seg.close();
+    try {
+      Files.deleteIfExists(seg.path);
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot delete cache segment %s", seg.path);
+    }
+  }
+
+  private void closeSegments() {
+    for (Segment seg : segments.values()) {
+      seg.close();
+    }
+    segments.clear();
+  }
+
+  private boolean expired(long created) {
+    if (expireAfterWrite == null) {
+      return false;
+    }
+    Duration age = Duration.between(Instant.ofEpochMilli(created), TimeUtil.now());
+    return age.compareTo(expireAfterWrite) > 0;
+  }
+
+  private static ByteString readKey(Segment seg, int off) {
+    byte[] key = new byte[seg.buf.getInt(off + 16)];
+    ByteBuffer b = seg.buf.duplicate();
+    b.position(off + RECORD_HEADER_SIZE);
+    b.get(key);
+    return ByteString.copyFrom(key);
+  }
+
+  private static long position(int segmentId, int offset) {
+    return ((long) segmentId << 32) | offset;
+  }
+
+  private static int segmentId(long position) {
+    return (int) (position >>> 32);
+  }
+
+  private static int offset(long position) {
+    return (int) position;
+  }
+
+  private static class Segment {
+    final int id;
+    final Path path;
+    final FileChannel channel;
+    final MappedByteBuffer buf;
+    int writeOffset;
+    long liveBytes;
+
+    static Segment create(int id, Path path, int size) throws IOException {
+      FileChannel channel =
+          FileChannel.open(
+              path,
+              StandardOpenOption.CREATE_NEW,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE);
+      Segment seg =
+          new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+      seg.buf.putInt(0, MAGIC);
+      seg.writeOffset = SEGMENT_HEADER_SIZE;
+      return seg;
+    }
+
+    @Nullable
+    static Segment open(int id, Path path) throws IOException {
+      FileChannel channel =
+          FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      long length = channel.size();
+      if (length < SEGMENT_HEADER_SIZE || length > Integer.MAX_VALUE) {
+        channel.close();
+        return null;
+      }
+      // Segments are mapped at their own size, which differs from the configured one if the
+      // segment size was changed since they were written.
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+      if (buf.getInt(0) != MAGIC) {
+        channel.close();
+        return null;
+      }
+      return new Segment(id, path, channel, buf);
+    }
+
+    private Segment(int id, Path path, FileChannel channel, MappedByteBuffer buf) {
+      this.id = id;
+      this.path = path;
+      this.channel = channel;
+      this.buf = buf;
+    }
+
+    int capacity() {
+      return buf.capacity();
+    }
+
+    void close() {
+      // The mapping itself is released once the buffer is garbage collected.
+      try {
+        channel.close();
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Cannot close cache segment %s", path);
+      }
+    }
+  }
+}
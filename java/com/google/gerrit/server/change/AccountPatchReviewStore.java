@@ -15,11 +15,14 @@
 package com.google.gerrit.server.change;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.PatchSet;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -32,6 +35,10 @@ import java.util.Optional;
  *
  * <p>For a cluster setups with multiple primary nodes the store must replicate the data between the
  * primary servers.
+ *
+ * <p>The batch methods have default implementations that delegate to the methods for single patch
+ * sets and files. Implementations should override them if they can handle a batch in fewer round
+ * trips to their storage.
  */
 public interface AccountPatchReviewStore {
 
@@ -67,6 +74,18 @@ public interface AccountPatchReviewStore {
    */
   void markReviewed(PatchSet.Id psId, Account.Id accountId, Collection<String> paths);
 
+  /**
+   * Marks the given files in the given patch sets as reviewed by the given user.
+   *
+   * @param accountId account ID of the user
+   * @param paths file paths by patch set ID
+   */
+  default void markReviewed(Account.Id accountId, Multimap<PatchSet.Id, String> paths) {
+    for (Map.Entry<PatchSet.Id, Collection<String>> e : paths.asMap().entrySet()) {
+      markReviewed(e.getKey(), accountId, e.getValue());
+    }
+  }
+
   /**
    * Clears the reviewed flag for the given file in the given patch set for the given user.
    *
@@ -76,6 +95,19 @@ public interface AccountPatchReviewStore {
    */
   void clearReviewed(PatchSet.Id psId, Account.Id accountId, String path);
 
+  /**
+   * Clears the reviewed flags for the given files in the given patch set for the given user.
+   *
+   * @param psId patch set ID
+   * @param accountId account ID of the user
+   * @param paths file paths
+   */
+  default void clearReviewed(PatchSet.Id psId, Account.Id accountId, Collection<String> paths) {
+    for (String path : paths) {
+      clearReviewed(psId, accountId, path);
+    }
+  }
+
   /**
    * Clears the reviewed flags for all files in the given patch set for all users.
    *
@@ -100,4 +132,22 @@ public interface AccountPatchReviewStore {
    *     patch set that is smaller or equals to the given patch set
    */
   Optional<PatchSetWithReviewedFiles> findReviewed(PatchSet.Id psId, Account.Id accountId);
+
+  /**
+   * Same as {@link #findReviewed(PatchSet.Id, Account.Id)}, but for many patch sets at once.
+   *
+   * @param psIds patch set IDs
+   * @param accountId account ID of the user
+   * @return for each of the given patch sets for which a reviewed patch set was found, all files
+   *     that have been reviewed by the given user that belong to the latest patch set that is
+   *     smaller or equals to the given patch set
+   */
+  default ImmutableMap<PatchSet.Id, PatchSetWithReviewedFiles> findReviewed(
+      Collection<PatchSet.Id> psIds, Account.Id accountId) {
+    ImmutableMap.Builder<PatchSet.Id, PatchSetWithReviewedFiles> result = ImmutableMap.builder();
+    for (PatchSet.Id psId : ImmutableSet.copyOf(psIds)) {
+      findReviewed(psId, accountId).ifPresent(r -> result.put(psId, r));
+    }
+    return result.build();
+  }
 }
@@ -39,6 +39,8 @@ import static java.util.stream.Collectors.toList;
 import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -76,8 +78,10 @@ import com.google.gerrit.extensions.common.ReviewerUpdateInfo;
 import com.google.gerrit.extensions.common.RevisionInfo;
 import com.google.gerrit.extensions.common.SubmitRequirementInfo;
 import com.google.gerrit.extensions.common.TrackingIdInfo;
+import com.google.gerrit.extensions.restapi.StreamingList;
 import com.google.gerrit.extensions.restapi.Url;
 import com.google.gerrit.index.RefState;
+import com.google.gerrit.index.SearchAfter;
 import com.google.gerrit.index.query.QueryResult;
 import com.google.gerrit.metrics.Description;
 import com.google.gerrit.metrics.Description.Units;
@@ -105,17 +109,22 @@ import com.google.gerrit.server.project.RemoveReviewerControl;
 import com.google.gerrit.server.project.SubmitRuleOptions;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gerrit.server.query.change.ChangeData.ChangedLines;
+import com.google.gerrit.server.query.change.ChangeDataPrefetcher;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.google.inject.assistedinject.Assisted;
 import java.io.IOException;
 import java.sql.Timestamp;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -150,6 +159,20 @@ public class ChangeJson {
           CURRENT_COMMIT,
           MESSAGES);
 
+  /**
+   * Options whose data is completely available from the stored fields of the change index.
+   *
+   * <p>Other options that are not in {@link #REQUIRE_LAZY_LOAD} don't load the change from NoteDb
+   * either, but they need data that is computed from the repository, e.g. file lists or change
+   * kinds.
+   */
+  static final ImmutableSet<ListChangesOption> INDEX_ONLY_OPTIONS =
+      ImmutableSet.of(
+          DETAILED_ACCOUNTS, DETAILED_LABELS, LABELS, REVIEWED, SKIP_DIFFSTAT, SUBMITTABLE);
+
+  /** Number of changes that are formatted at a time when a query result is formatted lazily. */
+  public static final int STREAMING_CHUNK_SIZE = 100;
+
   @Singleton
   public static class Factory {
     private final AssistedFactory factory;
@@ -215,6 +238,7 @@ public class ChangeJson {
   private final Provider<CurrentUser> userProvider;
   private final PermissionBackend permissionBackend;
   private final ChangeData.Factory changeDataFactory;
+  private final ChangeDataPrefetcher changeDataPrefetcher;
   private final AccountLoader.Factory accountLoaderFactory;
   private final ImmutableSet<ListChangesOption> options;
   private final ChangeMessagesUtil cmUtil;
@@ -238,6 +262,7 @@ public class ChangeJson {
       Provider<CurrentUser> user,
       PermissionBackend permissionBackend,
       ChangeData.Factory cdf,
+      ChangeDataPrefetcher changeDataPrefetcher,
       AccountLoader.Factory ailf,
       ChangeMessagesUtil cmUtil,
       Provider<ConsistencyChecker> checkerProvider,
@@ -253,6 +278,7 @@ public class ChangeJson {
       @Assisted Optional<PluginDefinedInfosFactory> pluginDefinedInfosFactory) {
     this.userProvider = user;
     this.changeDataFactory = cdf;
+    this.changeDataPrefetcher = changeDataPrefetcher;
     this.permissionBackend = permissionBackend;
     this.accountLoaderFactory = ailf;
     this.cmUtil = cmUtil;
@@ -272,6 +298,40 @@ public class ChangeJson {
     logger.atFine().log("options = %s", options);
   }
 
+  /**
+   * Whether changes are formatted from the stored fields of the change index alone.
+   *
+   * <p>This is the case if all requested options are in {@link #INDEX_ONLY_OPTIONS}. The changes
+   * are then neither loaded from NoteDb nor is their repository opened. The only exception are
+   * projects with Prolog submit rules, which are evaluated to compute the submit type of open
+   * changes.
+   */
+  public boolean isIndexOnly() {
+    return INDEX_ONLY_OPTIONS.containsAll(options);
+  }
+
+  /**
+   * Returns the stored fields of the change index that are not read when changes are formatted in
+   * index-only mode.
+   *
+   * @see #isIndexOnly()
+   */
+  public ImmutableSet<String> getUnusedIndexFields() {
+    Set<String> unused = new HashSet<>();
+    unused.add(ChangeField.REF_STATE_PATTERN.getName());
+    if (!has(REVIEWED)) {
+      unused.add(ChangeField.REVIEWEDBY.getName());
+    }
+    if (has(SKIP_DIFFSTAT)) {
+      unused.add(ChangeField.ADDED.getName());
+      unused.add(ChangeField.DELETED.getName());
+    }
+    if (!includeMergeable) {
+      unused.add(ChangeField.MERGEABLE.getName());
+    }
+    return ImmutableSet.copyOf(unused);
+  }
+
   public ChangeJson fix(FixInput fix) {
     this.fix = fix;
     return this;
@@ -305,12 +365,16 @@ public class ChangeJson {
       accountLoader = accountLoaderFactory.create(has(DETAILED_ACCOUNTS));
       List<List<ChangeInfo>> res = new ArrayList<>(in.size());
       Map<Change.Id, ChangeInfo> cache = Maps.newHashMapWithExpectedSize(in.size());
+      List<ChangeData> all = in.stream().flatMap(e -> e.entities().stream()).collect(toList());
+      prefetch(all);
       ImmutableListMultimap<Change.Id, PluginDefinedInfo> pluginInfosByChange =
-          getPluginInfos(in.stream().flatMap(e -> e.entities().stream()).collect(toList()));
+          getPluginInfos(all);
       for (QueryResult<ChangeData> r : in) {
         List<ChangeInfo> infos = toChangeInfos(r.entities(), cache, pluginInfosByChange);
         if (!infos.isEmpty() && r.more()) {
-          infos.get(infos.size() - 1)._moreChanges = true;
+          ChangeInfo last = infos.get(infos.size() - 1);
+          last._moreChanges = true;
+          last._searchAfter = getSearchAfter(r.entities());
         }
         res.add(infos);
       }
@@ -319,6 +383,25 @@ public class ChangeJson {
     }
   }
 
+  /**
+   * Formats the changes of a single query result, computing them lazily if the result is large.
+   *
+   * <p>Results with up to {@link #STREAMING_CHUNK_SIZE} changes are formatted right away. For
+   * larger results a {@link StreamingList} is returned that formats the changes in chunks of that
+   * size while it is iterated, so that the REST API can write the {@link ChangeInfo}s to the client
+   * as they are computed, instead of holding all of them in memory.
+   *
+   * <p>As with {@link #format(List)}, the last {@link ChangeInfo} has {@code _moreChanges} and
+   * {@code _searchAfter} set if the query result has more changes.
+   */
+  public List<ChangeInfo> formatLazily(QueryResult<ChangeData> in)
+      throws PermissionBackendException {
+    if (in.entities().size() <= STREAMING_CHUNK_SIZE) {
+      return format(ImmutableList.of(in)).get(0);
+    }
+    return new LazyChangeInfoList(in.entities(), in.more());
+  }
+
   public List<ChangeInfo> format(Collection<ChangeData> in) throws PermissionBackendException {
     accountLoader = accountLoaderFactory.create(has(DETAILED_ACCOUNTS));
     ensureLoaded(in);
@@ -409,6 +492,7 @@ public class ChangeJson {
         // Mark all ChangeDatas as coming from the index, but allow backfilling data from NoteDb
         cd.setStorageConstraint(ChangeData.StorageConstraint.INDEX_PRIMARY_NOTEDB_SECONDARY);
       }
+      changeDataPrefetcher.prefetch(all);
       ChangeData.ensureChangeLoaded(all);
       if (has(ALL_REVISIONS)) {
         ChangeData.ensureAllPatchSetsLoaded(all);
@@ -427,6 +511,18 @@ public class ChangeJson {
     }
   }
 
+  /**
+   * Loads the NoteDb data of the given changes in one pass, if it's needed for formatting.
+   *
+   * <p>Unlike {@link #ensureLoaded(Iterable)} this doesn't fail if a change cannot be loaded, so
+   * that {@link #toChangeInfos} can still omit corrupt changes one by one.
+   */
+  private void prefetch(List<ChangeData> changes) {
+    if (lazyLoad) {
+      changeDataPrefetcher.prefetch(changes);
+    }
+  }
+
   private boolean has(ListChangesOption option) {
     return options.contains(option);
   }
@@ -469,6 +565,102 @@ public class ChangeJson {
     }
   }
 
+  private List<ChangeInfo> formatChunk(List<ChangeData> chunk) {
+    try {
+      accountLoader = accountLoaderFactory.create(has(DETAILED_ACCOUNTS));
+      prefetch(chunk);
+      List<ChangeInfo> infos = toChangeInfos(chunk, new HashMap<>(), getPluginInfos(chunk));
+      accountLoader.fill();
+      return infos;
+    } catch (PermissionBackendException e) {
+      throw new StorageException("Failed to format changes", e);
+    }
+  }
+
+  /**
+   * List of the {@link ChangeInfo}s of a query result that is formatted on demand.
+   *
+   * <p>{@link #streamingIterator()} formats the changes chunk by chunk, without retaining them. The
+   * {@link List} methods format all changes once and keep them.
+   */
+  private class LazyChangeInfoList extends AbstractList<ChangeInfo>
+      implements StreamingList<ChangeInfo> {
+    private final List<ChangeData> changes;
+    private final boolean more;
+    private List<ChangeInfo> formatted;
+
+    LazyChangeInfoList(List<ChangeData> changes, boolean more) {
+      this.changes = changes;
+      this.more = more;
+    }
+
+    @Override
+    public Iterator<ChangeInfo> streamingIterator() {
+      return formatted != null ? formatted.iterator() : new ChunkIterator(changes, more);
+    }
+
+    @Override
+    public ChangeInfo get(int index) {
+      return formatted().get(index);
+    }
+
+    @Override
+    public int size() {
+      return formatted().size();
+    }
+
+    private List<ChangeInfo> formatted() {
+      if (formatted == null) {
+        formatted =
+            Collections.unmodifiableList(Lists.newArrayList(new ChunkIterator(changes, more)));
+      }
+      return formatted;
+    }
+  }
+
+  private class ChunkIterator extends AbstractIterator<ChangeInfo> {
+    private final Iterator<List<ChangeData>> chunks;
+    private final boolean more;
+    private final String searchAfter;
+    private final Deque<ChangeInfo> pending = new ArrayDeque<>();
+
+    ChunkIterator(List<ChangeData> changes, boolean more) {
+      this.chunks = Lists.partition(changes, STREAMING_CHUNK_SIZE).iterator();
+      this.more = more;
+      this.searchAfter = more ? getSearchAfter(changes) : null;
+    }
+
+    @Override
+    protected ChangeInfo computeNext() {
+      // Look ahead by one change, so that we know which ChangeInfo is the last one, even if all
+      // changes of the following chunks are omitted because they are corrupt.
+      while (pending.size() < 2 && chunks.hasNext()) {
+        pending.addAll(formatChunk(chunks.next()));
+      }
+      if (pending.isEmpty()) {
+        return endOfData();
+      }
+      if (more && pending.size() == 1) {
+        pending.getFirst()._moreChanges = true;
+        pending.getFirst()._searchAfter = searchAfter;
+      }
+      return pending.removeFirst();
+    }
+  }
+
+  /**
+   * Returns the cursor for continuing a query after its results, even if the last of them is
+   * omitted from the output, or null if the index didn't report one.
+   */
+  @Nullable
+  private static String getSearchAfter(List<ChangeData> changes) {
+    if (changes.isEmpty()) {
+      return null;
+    }
+    SearchAfter position = changes.get(changes.size() - 1).getSearchAfter();
+    return position != null ? position.encode() : null;
+  }
+
   private ChangeInfo checkOnly(ChangeData cd) {
     ChangeNotes notes;
     try {
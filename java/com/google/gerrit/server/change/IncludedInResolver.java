@@ -34,6 +34,8 @@ import java.util.List;
 import java.util.Set;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.Bitmap;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefDatabase;
@@ -42,7 +44,12 @@ import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevFlag;
 import org.eclipse.jgit.revwalk.RevWalk;
 
-/** Resolve in which tags and branches a commit is included. */
+/**
+ * Resolve in which tags and branches a commit is included.
+ *
+ * <p>If the repository has reachability bitmaps, tips that have a bitmap are resolved by looking
+ * up the commit in their bitmap. Only the history of the other tips is walked.
+ */
 public class IncludedInResolver {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
@@ -97,7 +104,9 @@ public class IncludedInResolver {
     allTagsAndBranches.addAll(tags);
     allTagsAndBranches.addAll(branches);
     parseCommits(allTagsAndBranches);
-    Set<String> allMatchingTagsAndBranches = includedIn(tipsByCommitTime, 0);
+    Set<String> allMatchingTagsAndBranches = new HashSet<>();
+    List<RevCommit> tips = resolveByBitmap(tipsByCommitTime, allMatchingTagsAndBranches);
+    allMatchingTagsAndBranches.addAll(includedIn(tips, 0));
 
     return new AutoValue_IncludedInResolver_Result(
         getMatchingRefNames(allMatchingTagsAndBranches, branches),
@@ -106,15 +115,57 @@ public class IncludedInResolver {
 
   private boolean includedInOne(Collection<Ref> refs) throws IOException {
     parseCommits(refs);
+    rw.reset();
+    Set<String> matchingRefs = new HashSet<>();
+    List<RevCommit> tips = resolveByBitmap(tipsByCommitTime, matchingRefs);
+    if (!matchingRefs.isEmpty()) {
+      return true;
+    }
     List<RevCommit> before = new ArrayList<>();
     List<RevCommit> after = new ArrayList<>();
-    partition(before, after);
-    rw.reset();
+    partition(tips, before, after);
     // It is highly likely that the target is reachable from the "after" set
     // Within the "before" set we are trying to handle cases arising from clock skew
     return !includedIn(after, 1).isEmpty() || !includedIn(before, 1).isEmpty();
   }
 
+  /**
+   * Resolves with the reachability bitmaps of the repository which tip refs include the target
+   * commit.
+   *
+   * <p>Tips that have a bitmap are flagged with {@link #containsTarget} if they include the target
+   * and are marked uninteresting otherwise, so that walks from the other tips stop when they reach
+   * them.
+   *
+   * @param tips tips to resolve.
+   * @param result set to which the names of the refs that include the target are added.
+   * @return tips that have no bitmap and need to be walked, in the order of {@code tips}.
+   */
+  private List<RevCommit> resolveByBitmap(List<RevCommit> tips, Set<String> result)
+      throws IOException {
+    BitmapIndex bitmapIndex = rw.getObjectReader().getBitmapIndex();
+    if (bitmapIndex == null) {
+      return tips;
+    }
+    List<RevCommit> remaining = new ArrayList<>();
+    for (RevCommit tip : tips) {
+      Bitmap bitmap = bitmapIndex.getBitmap(tip);
+      if (bitmap == null) {
+        remaining.add(tip);
+      } else if (bitmapIndex.newBitmapBuilder().or(bitmap).contains(target)) {
+        // A bitmap covers all objects that are reachable from its commit.
+        tip.add(containsTarget);
+        result.addAll(commitToRef.get(tip));
+      } else {
+        rw.markUninteresting(tip);
+      }
+    }
+    logger.atFine().log(
+        "Resolved %d of %d tips with reachability bitmaps",
+        tips.size() - remaining.size(), tips.size());
+    return remaining;
+  }
+
   /** Resolves which tip refs include the target commit. */
   private Set<String> includedIn(Collection<RevCommit> tips, int limit)
       throws IOException, MissingObjectException, IncorrectObjectTypeException {
@@ -150,20 +201,21 @@ public class IncludedInResolver {
    *
    * Each of the before/after lists is sorted by the commit time.
    *
+   * @param tips reference tips, sorted by the commit time.
    * @param before
    * @param after
    */
-  private void partition(List<RevCommit> before, List<RevCommit> after) {
+  private void partition(List<RevCommit> tips, List<RevCommit> before, List<RevCommit> after) {
     int insertionPoint =
-        Collections.binarySearch(tipsByCommitTime, target, comparing(RevCommit::getCommitTime));
+        Collections.binarySearch(tips, target, comparing(RevCommit::getCommitTime));
     if (insertionPoint < 0) {
       insertionPoint = -(insertionPoint + 1);
     }
     if (0 < insertionPoint) {
-      before.addAll(tipsByCommitTime.subList(0, insertionPoint));
+      before.addAll(tips.subList(0, insertionPoint));
     }
-    if (insertionPoint < tipsByCommitTime.size()) {
-      after.addAll(tipsByCommitTime.subList(insertionPoint, tipsByCommitTime.size()));
+    if (insertionPoint < tips.size()) {
+      after.addAll(tips.subList(insertionPoint, tips.size()));
     }
   }
 
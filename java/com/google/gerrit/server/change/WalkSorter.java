@@ -15,6 +15,7 @@
 package com.google.gerrit.server.change;
 
 import static com.google.common.base.Preconditions.checkState;
+import static java.util.Comparator.comparingInt;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
@@ -51,8 +52,9 @@ import org.eclipse.jgit.revwalk.RevWalk;
  *
  * <p>Split changes by project, and map each change to a single commit based on the latest patch
  * set. The set of patch sets considered may be limited by calling {@link
- * #includePatchSets(Iterable)}. Perform a standard {@link RevWalk} on each project repository, do
- * an approximate topo sort, and record the order in which each change's commit is seen.
+ * #includePatchSets(Iterable)}. Order the commits of each project like a standard {@link RevWalk}
+ * started from all of them would, do an approximate topo sort, and record the order in which each
+ * change's commit is seen.
  *
  * <p>Once an order within each project is determined, groups of changes are sorted based on the
  * project name. This is slightly more stable than sorting on something like the commit or change
@@ -124,9 +126,11 @@ public class WalkSorter {
         return ImmutableList.of(byCommit.values().iterator().next());
       }
 
-      // Walk from all patch set SHA-1s, and terminate as soon as we've found
-      // everything we're looking for. This is equivalent to just sorting the
-      // list of commits by the RevWalk's configured order.
+      // Visit the patch set SHA-1s in the order in which a RevWalk started from all of them would
+      // emit them, i.e. by descending commit time, keeping the input order for commits with the
+      // same commit time. Unlike an actual walk this doesn't read any commit that is not in the
+      // input set, which matters if the input contains old commits, e.g. already merged ones, as
+      // a walk would then traverse all history between the newest and the oldest commit.
       //
       // Partially topo sort the list, ensuring no parent is emitted before a
       // direct child that is also in the input set. This preserves the stable,
@@ -148,14 +152,14 @@ public class WalkSorter {
       Deque<RevCommit> todo = new ArrayDeque<>();
 
       RevFlag done = rw.newFlag("done");
-      markStart(rw, commits);
+      List<RevCommit> byCommitTime = new ArrayList<>(commits);
+      byCommitTime.sort(comparingInt(RevCommit::getCommitTime).reversed());
       int expected = commits.size();
       int found = 0;
-      RevCommit c;
       List<PatchSetData> result = new ArrayList<>(expected);
-      while (found < expected && (c = rw.next()) != null) {
-        if (!commits.contains(c)) {
-          continue;
+      for (RevCommit c : byCommitTime) {
+        if (found >= expected) {
+          break;
         }
         todo.clear();
         todo.add(c);
@@ -217,8 +221,10 @@ public class WalkSorter {
 
   private ListMultimap<RevCommit, PatchSetData> byCommit(RevWalk rw, Collection<ChangeData> in)
       throws IOException {
+    // Keep the input order of the commits, sortProject relies on it for commits with the same
+    // commit time.
     ListMultimap<RevCommit, PatchSetData> byCommit =
-        MultimapBuilder.hashKeys(in.size()).arrayListValues(1).build();
+        MultimapBuilder.linkedHashKeys(in.size()).arrayListValues(1).build();
     for (ChangeData cd : in) {
       PatchSet maxPs = null;
       for (PatchSet ps : cd.patchSets()) {
@@ -244,12 +250,6 @@ public class WalkSorter {
     return includePatchSets.isEmpty() || includePatchSets.contains(ps.id());
   }
 
-  private static void markStart(RevWalk rw, Iterable<RevCommit> commits) throws IOException {
-    for (RevCommit c : commits) {
-      rw.markStart(c);
-    }
-  }
-
   @AutoValue
   public abstract static class PatchSetData {
     @VisibleForTesting
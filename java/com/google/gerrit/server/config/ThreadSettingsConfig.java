@@ -14,25 +14,49 @@
 
 package com.google.gerrit.server.config;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.server.util.VirtualThreads;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.eclipse.jgit.lib.Config;
 
 @Singleton
 public class ThreadSettingsConfig {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   private final int sshdThreads;
   private final int httpdMaxThreads;
   private final int sshdBatchThreads;
   private final int databasePoolLimit;
+  private final boolean virtualThreads;
+  private final int interactiveRequestLimit;
+  private final int batchRequestLimit;
 
   @Inject
   ThreadSettingsConfig(@GerritServerConfig Config cfg) {
+    this(cfg, VirtualThreads.isSupported());
+  }
+
+  @VisibleForTesting
+  public ThreadSettingsConfig(Config cfg, boolean virtualThreadsSupported) {
     int cores = Runtime.getRuntime().availableProcessors();
     sshdThreads = cfg.getInt("sshd", "threads", Math.max(4, 2 * cores));
     httpdMaxThreads = cfg.getInt("httpd", "maxThreads", 25);
     int defaultDatabasePoolLimit = sshdThreads + httpdMaxThreads + 2;
     databasePoolLimit = cfg.getInt("database", "poolLimit", defaultDatabasePoolLimit);
     sshdBatchThreads = cores == 1 ? 1 : 2;
+
+    boolean useVirtualThreads = cfg.getBoolean("execution", "virtualThreads", false);
+    if (useVirtualThreads && !virtualThreadsSupported) {
+      logger.atWarning().log(
+          "execution.virtualThreads is enabled, but the Java runtime doesn't support virtual"
+              + " threads; using platform threads");
+      useVirtualThreads = false;
+    }
+    virtualThreads = useVirtualThreads;
+    interactiveRequestLimit = Math.max(1, cfg.getInt("execution", "interactiveRequestLimit", 256));
+    batchRequestLimit = Math.max(1, cfg.getInt("execution", "batchRequestLimit", 64));
   }
 
   public int getDatabasePoolLimit() {
@@ -50,4 +74,24 @@ public class ThreadSettingsConfig {
   public int getSshdBatchTreads() {
     return sshdBatchThreads;
   }
+
+  /**
+   * Returns whether SSH commands and REST requests are executed on virtual threads.
+   *
+   * <p>If so, the number of concurrent requests is limited by {@link #getInteractiveRequestLimit()}
+   * and {@link #getBatchRequestLimit()} rather than by the sizes of the thread pools.
+   */
+  public boolean useVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /** Returns the maximum number of concurrent requests of interactive users. */
+  public int getInteractiveRequestLimit() {
+    return interactiveRequestLimit;
+  }
+
+  /** Returns the maximum number of concurrent requests of batch users. */
+  public int getBatchRequestLimit() {
+    return batchRequestLimit;
+  }
 }
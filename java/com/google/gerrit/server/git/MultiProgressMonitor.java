@@ -19,6 +19,7 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import com.google.common.base.Strings;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gerrit.common.Nullable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
@@ -28,6 +29,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ProgressMonitor;
 
@@ -132,6 +134,7 @@ public class MultiProgressMonitor {
   private char spinnerState = NO_SPINNER;
   private boolean done;
   private boolean write = true;
+  @Nullable private volatile Supplier<String> status;
 
   private final long maxIntervalNanos;
 
@@ -270,6 +273,17 @@ public class MultiProgressMonitor {
     return task;
   }
 
+  /**
+   * Set a status that is appended to each progress message, e.g. an estimate of the remaining
+   * time.
+   *
+   * @param status supplier of the status; called from the thread that waits for the task. May
+   *     return null or an empty string if there is nothing to report.
+   */
+  public void setStatus(@Nullable Supplier<String> status) {
+    this.status = status;
+  }
+
   /**
    * End the overall task.
    *
@@ -335,6 +349,14 @@ public class MultiProgressMonitor {
       }
     }
 
+    Supplier<String> status = this.status;
+    if (status != null) {
+      String statusText = status.get();
+      if (!Strings.isNullOrEmpty(statusText)) {
+        s.append(" [").append(statusText).append(']');
+      }
+    }
+
     if (spinnerState != NO_SPINNER) {
       // Don't output a spinner until the alarm fires for the first time.
       s.append(" (").append(spinnerState).append(')');
@@ -0,0 +1,106 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static com.google.gerrit.server.config.ConfigUtil.getTimeUnit;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.account.AccountLimits;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.ThreadSettingsConfig;
+import com.google.gerrit.server.git.QueueProvider.QueueType;
+import com.google.gerrit.server.quota.QuotaException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Limits the number of concurrent requests if requests are executed on virtual threads.
+ *
+ * <p>With platform threads, the size of the thread pools limits the number of concurrent requests.
+ * Virtual threads are cheap, so this limit is enforced by a semaphore per {@link QueueType}
+ * instead, which is chosen by the priority capability of the groups of the user.
+ */
+@Singleton
+public class RequestConcurrencyLimiter {
+  /** Permit to execute a request, released by {@link #close()}. */
+  public interface Permit extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private static final Permit UNLIMITED = () -> {};
+
+  private final Function<CurrentUser, QueueType> queueTypes;
+  private final ImmutableMap<QueueType, Semaphore> permits;
+  private final long maxWaitMillis;
+
+  @Inject
+  RequestConcurrencyLimiter(
+      AccountLimits.Factory limitsFactory,
+      ThreadSettingsConfig threadSettingsConfig,
+      @GerritServerConfig Config cfg) {
+    this(
+        user -> limitsFactory.create(user).getQueueType(),
+        threadSettingsConfig,
+        MINUTES.toMillis(getTimeUnit(cfg, "httpd", null, "maxwait", 5, MINUTES)));
+  }
+
+  @VisibleForTesting
+  RequestConcurrencyLimiter(
+      Function<CurrentUser, QueueType> queueTypes,
+      ThreadSettingsConfig threadSettingsConfig,
+      long maxWaitMillis) {
+    this.queueTypes = queueTypes;
+    this.permits =
+        threadSettingsConfig.useVirtualThreads()
+            ? ImmutableMap.of(
+                QueueType.INTERACTIVE,
+                new Semaphore(threadSettingsConfig.getInteractiveRequestLimit(), true),
+                QueueType.BATCH,
+                new Semaphore(threadSettingsConfig.getBatchRequestLimit(), true))
+            : ImmutableMap.of();
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+  /**
+   * Waits until the user may execute another request.
+   *
+   * @param user user that executes the request.
+   * @return permit that must be closed once the request is done.
+   * @throws QuotaException if there was no permit available within {@code httpd.maxWait}.
+   */
+  public Permit acquire(CurrentUser user) throws QuotaException {
+    if (permits.isEmpty()) {
+      return UNLIMITED;
+    }
+    Semaphore semaphore = permits.get(queueTypes.apply(user));
+    try {
+      if (!semaphore.tryAcquire(maxWaitMillis, MILLISECONDS)) {
+        throw new QuotaException("Too many concurrent requests");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new QuotaException("Interrupted while waiting for concurrent requests to finish");
+    }
+    return semaphore::release;
+  }
+}
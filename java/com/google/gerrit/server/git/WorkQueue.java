@@ -17,23 +17,30 @@ package com.google.gerrit.server.git;
 import static java.util.stream.Collectors.toList;
 
 import com.google.common.base.CaseFormat;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.lifecycle.LifecycleModule;
 import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
 import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.config.ScheduleConfig.Schedule;
 import com.google.gerrit.server.logging.LoggingContext;
 import com.google.gerrit.server.logging.LoggingContextAwareRunnable;
 import com.google.gerrit.server.util.IdGenerator;
+import com.google.gerrit.server.util.VirtualThreads;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -43,15 +50,22 @@ import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.RunnableScheduledFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import org.eclipse.jgit.lib.Config;
 
 /** Delayed execution of tasks using a background thread pool. */
@@ -84,6 +98,66 @@ public class WorkQueue {
     }
   }
 
+  /**
+   * Runnable with a scheduling priority.
+   *
+   * <p>In queues with priority scheduling enabled, tasks that are ready to run are executed in
+   * order of descending priority, tasks with equal priority in the order in which they were
+   * submitted. Tasks that don't implement this interface have priority {@link #DEFAULT_PRIORITY}.
+   * Other queues ignore the priority.
+   */
+  public interface PrioritizedRunnable extends Runnable {
+    int DEFAULT_PRIORITY = 0;
+
+    /** Returns the priority of this task, higher values are executed first. */
+    int getPriority();
+  }
+
+  /** What happens to tasks that are submitted to a queue that is full. */
+  public enum RejectionPolicy {
+    /** The task is rejected with a {@link RejectedExecutionException}. */
+    ABORT(new ThreadPoolExecutor.AbortPolicy()),
+
+    /** The task is executed by the submitting thread. */
+    CALLER_RUNS(new ThreadPoolExecutor.CallerRunsPolicy()),
+
+    /** The task is silently discarded. */
+    DISCARD(new ThreadPoolExecutor.DiscardPolicy());
+
+    private final RejectedExecutionHandler handler;
+
+    RejectionPolicy(RejectedExecutionHandler handler) {
+      this.handler = handler;
+    }
+  }
+
+  /** Histogram of the times that tasks of a queue waited for a worker thread. */
+  public static class WaitTimeHistogram {
+    private static final long[] BUCKET_LIMITS_MS = {1, 10, 100, 1000, 10_000, 60_000};
+    private static final ImmutableList<String> BUCKET_NAMES =
+        ImmutableList.of("<1ms", "<10ms", "<100ms", "<1s", "<10s", "<1m", ">=1m");
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_NAMES.size());
+
+    void record(long waitNanos) {
+      long waitMs = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+      int bucket = 0;
+      while (bucket < BUCKET_LIMITS_MS.length && waitMs >= BUCKET_LIMITS_MS[bucket]) {
+        bucket++;
+      }
+      counts.incrementAndGet(bucket);
+    }
+
+    /** Returns the number of tasks per bucket, keyed by a description of the bucket. */
+    public ImmutableMap<String, Long> getBuckets() {
+      ImmutableMap.Builder<String, Long> buckets = ImmutableMap.builder();
+      for (int i = 0; i < BUCKET_NAMES.size(); i++) {
+        buckets.put(BUCKET_NAMES.get(i), counts.get(i));
+      }
+      return buckets.build();
+    }
+  }
+
   private static final UncaughtExceptionHandler LOG_UNCAUGHT_EXCEPTION =
       (t, e) ->
           logger.atSevere().withCause(e).log("WorkQueue thread %s threw exception", t.getName());
@@ -91,17 +165,33 @@ public class WorkQueue {
   private final ScheduledExecutorService defaultQueue;
   private final IdGenerator idGenerator;
   private final MetricMaker metrics;
+  private final Config cfg;
   private final CopyOnWriteArrayList<Executor> queues;
 
   @Inject
   WorkQueue(IdGenerator idGenerator, @GerritServerConfig Config cfg, MetricMaker metrics) {
-    this(idGenerator, Math.max(cfg.getInt("execution", "defaultThreadPoolSize", 2), 2), metrics);
+    this(
+        idGenerator,
+        Math.max(cfg.getInt("execution", "defaultThreadPoolSize", 2), 2),
+        metrics,
+        cfg);
   }
 
   /** Constructor to allow binding the WorkQueue more explicitly in a vhost setup. */
   public WorkQueue(IdGenerator idGenerator, int defaultThreadPoolSize, MetricMaker metrics) {
+    this(idGenerator, defaultThreadPoolSize, metrics, new Config());
+  }
+
+  /**
+   * Constructor to allow binding the WorkQueue more explicitly in a vhost setup.
+   *
+   * @param cfg configuration from which the settings of the individual queues are read.
+   */
+  public WorkQueue(
+      IdGenerator idGenerator, int defaultThreadPoolSize, MetricMaker metrics, Config cfg) {
     this.idGenerator = idGenerator;
     this.metrics = metrics;
+    this.cfg = cfg;
     this.queues = new CopyOnWriteArrayList<>();
     this.defaultQueue = createQueue(defaultThreadPoolSize, "WorkQueue", true);
   }
@@ -147,6 +237,10 @@ public class WorkQueue {
    * <p>Creates a new executor queue, optionally with associated metrics. Metrics should not be
    * requested for queues created by plugins.
    *
+   * <p>Priority scheduling, the maximum number of queued tasks and the policy for rejecting tasks
+   * when the queue is full are read from the {@code queue.<queueName>} subsection of the
+   * configuration.
+   *
    * @param poolsize the size of the pool.
    * @param queueName the name of the queue.
    * @param threadPriority thread priority.
@@ -154,7 +248,37 @@ public class WorkQueue {
    */
   public ScheduledThreadPoolExecutor createQueue(
       int poolsize, String queueName, int threadPriority, boolean withMetrics) {
-    Executor executor = new Executor(poolsize, queueName);
+    return createQueue(poolsize, queueName, threadPriority, withMetrics, false);
+  }
+
+  /**
+   * Create a new executor queue, optionally with metrics and virtual threads.
+   *
+   * <p>Like {@link #createQueue(int, String, int, boolean)}, but if {@code virtualThreads} is true
+   * the tasks are executed on virtual threads, which are discarded when they become idle. The pool
+   * size then only limits the number of concurrently running tasks and can be much larger than for
+   * platform threads. The thread priority is ignored for virtual threads.
+   *
+   * @param poolsize the size of the pool.
+   * @param queueName the name of the queue.
+   * @param threadPriority thread priority.
+   * @param withMetrics whether to create metrics.
+   * @param virtualThreads whether to run tasks on virtual threads, see {@link VirtualThreads}.
+   */
+  public ScheduledThreadPoolExecutor createQueue(
+      int poolsize,
+      String queueName,
+      int threadPriority,
+      boolean withMetrics,
+      boolean virtualThreads) {
+    Executor executor =
+        new Executor(
+            poolsize,
+            queueName,
+            cfg.getBoolean("queue", queueName, "priorityScheduling", false),
+            Math.max(cfg.getInt("queue", queueName, "maxQueueSize", 0), 0));
+    executor.setRejectedExecutionHandler(
+        cfg.getEnum("queue", queueName, "rejectionPolicy", RejectionPolicy.ABORT).handler);
     if (withMetrics) {
       logger.atInfo().log("Adding metrics for '%s' queue", queueName);
       executor.buildMetrics(queueName);
@@ -162,7 +286,12 @@ public class WorkQueue {
     executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
     executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(true);
     queues.add(executor);
-    if (threadPriority != Thread.NORM_PRIORITY) {
+    if (virtualThreads) {
+      executor.setThreadFactory(
+          VirtualThreads.newThreadFactory(queueName + "-", LOG_UNCAUGHT_EXCEPTION));
+      executor.setKeepAliveTime(60, TimeUnit.SECONDS);
+      executor.allowCoreThreadTimeOut(true);
+    } else if (threadPriority != Thread.NORM_PRIORITY) {
       ThreadFactory parent = executor.getThreadFactory();
       executor.setThreadFactory(
           task -> {
@@ -228,6 +357,17 @@ public class WorkQueue {
     return null;
   }
 
+  /** Returns the histogram of the wait times of the tasks of a queue, null if there is no queue. */
+  @Nullable
+  public WaitTimeHistogram getWaitTimeHistogram(String queueName) {
+    for (Executor e : queues) {
+      if (e.queueName.equals(queueName)) {
+        return e.waitTimes;
+      }
+    }
+    return null;
+  }
+
   private void stop() {
     for (Executor p : queues) {
       p.shutdown();
@@ -247,8 +387,25 @@ public class WorkQueue {
   private class Executor extends ScheduledThreadPoolExecutor {
     private final ConcurrentHashMap<Integer, Task<?>> all;
     private final String queueName;
+    private final int maxQueueSize;
+    private final WaitTimeHistogram waitTimes = new WaitTimeHistogram();
 
-    Executor(int corePoolSize, final String queueName) {
+    /**
+     * Tasks that are ready to run, in the order in which they should be executed. Only used if
+     * priority scheduling is enabled.
+     *
+     * <p>Each of these tasks is also in the queue of the underlying executor. When a worker thread
+     * takes one of them from that queue, it runs the first task of this queue instead, so that there
+     * are always at least as many executions as tasks.
+     */
+    @Nullable private final PriorityBlockingQueue<Task<?>> ready;
+
+    private final AtomicLong readySequence = new AtomicLong();
+    private volatile Timer0 waitTime;
+    private volatile Timer0 runTime;
+
+    Executor(
+        int corePoolSize, final String queueName, boolean priorityScheduling, int maxQueueSize) {
       super(
           corePoolSize,
           new ThreadFactory() {
@@ -271,28 +428,59 @@ public class WorkQueue {
               corePoolSize + 4 // concurrency level
               );
       this.queueName = queueName;
+      this.maxQueueSize = maxQueueSize;
+      this.ready =
+          priorityScheduling
+              ? new PriorityBlockingQueue<>(
+                  corePoolSize << 1,
+                  Comparator.<Task<?>>comparingInt(t -> t.priority)
+                      .reversed()
+                      .thenComparingLong(t -> t.readySequence))
+              : null;
     }
 
     @Override
     public void execute(Runnable command) {
+      if (isFull()) {
+        getRejectedExecutionHandler().rejectedExecution(command, this);
+        return;
+      }
       super.execute(LoggingContext.copy(command));
     }
 
     @Override
     public <T> Future<T> submit(Callable<T> task) {
+      if (isFull()) {
+        return reject(new RejectedTask<>(task));
+      }
       return super.submit(LoggingContext.copy(task));
     }
 
     @Override
     public <T> Future<T> submit(Runnable task, T result) {
+      if (isFull()) {
+        return reject(new RejectedTask<>(task, result));
+      }
       return super.submit(LoggingContext.copy(task), result);
     }
 
     @Override
     public Future<?> submit(Runnable task) {
+      if (isFull()) {
+        return reject(new RejectedTask<>(task, null));
+      }
       return super.submit(LoggingContext.copy(task));
     }
 
+    private boolean isFull() {
+      return maxQueueSize > 0 && getQueue().size() >= maxQueueSize;
+    }
+
+    private <T> ScheduledFuture<T> reject(RejectedTask<T> task) {
+      getRejectedExecutionHandler().rejectedExecution(task, this);
+      return task;
+    }
+
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks)
         throws InterruptedException {
@@ -322,23 +510,35 @@ public class WorkQueue {
 
     @Override
     public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+      if (isFull()) {
+        return reject(new RejectedTask<>(command, null));
+      }
       return super.schedule(LoggingContext.copy(command), delay, unit);
     }
 
     @Override
     public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+      if (isFull()) {
+        return reject(new RejectedTask<>(callable));
+      }
       return super.schedule(LoggingContext.copy(callable), delay, unit);
     }
 
     @Override
     public ScheduledFuture<?> scheduleAtFixedRate(
         Runnable command, long initialDelay, long period, TimeUnit unit) {
+      if (isFull()) {
+        return reject(new RejectedTask<>(command, null));
+      }
       return super.scheduleAtFixedRate(LoggingContext.copy(command), initialDelay, period, unit);
     }
 
     @Override
     public ScheduledFuture<?> scheduleWithFixedDelay(
         Runnable command, long initialDelay, long delay, TimeUnit unit) {
+      if (isFull()) {
+        return reject(new RejectedTask<>(command, null));
+      }
       return super.scheduleWithFixedDelay(LoggingContext.copy(command), initialDelay, delay, unit);
     }
 
@@ -387,6 +587,33 @@ public class WorkQueue {
               .setCumulative()
               .setUnit("tasks"),
           this::getCompletedTaskCount);
+      waitTime =
+          metrics.newTimer(
+              getMetricName(queueName, "wait_time"),
+              new Description("Time that tasks waited in the queue for a worker thread")
+                  .setCumulative()
+                  .setUnit(Units.MILLISECONDS));
+      runTime =
+          metrics.newTimer(
+              getMetricName(queueName, "run_time"),
+              new Description("Time that tasks ran on a worker thread")
+                  .setCumulative()
+                  .setUnit(Units.MILLISECONDS));
+    }
+
+    private void recordWaitTime(long waitNanos) {
+      waitTimes.record(waitNanos);
+      Timer0 t = waitTime;
+      if (t != null) {
+        t.record(waitNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+
+    private void recordRunTime(long runNanos) {
+      Timer0 t = runTime;
+      if (t != null) {
+        t.record(runNanos, TimeUnit.NANOSECONDS);
+      }
     }
 
     private String getMetricName(String queueName, String metricName) {
@@ -400,6 +627,10 @@ public class WorkQueue {
     protected <V> RunnableScheduledFuture<V> decorateTask(
         Runnable runnable, RunnableScheduledFuture<V> r) {
       r = super.decorateTask(runnable, r);
+      if (runnable instanceof NextReady) {
+        // Not a task of its own.
+        return r;
+      }
       for (; ; ) {
         final int id = idGenerator.next();
 
@@ -416,11 +647,56 @@ public class WorkQueue {
         }
 
         if (all.putIfAbsent(task.getTaskId(), task) == null) {
+          if (ready != null
+              && !r.isPeriodic()
+              && r.getDelay(TimeUnit.NANOSECONDS) <= 0
+              && !isShutdown()) {
+            task.readySequence = readySequence.getAndIncrement();
+            task.prioritized = true;
+            ready.add(task);
+          }
           return task;
         }
       }
     }
 
+    /** Runs the ready task with the highest priority, if there is any. */
+    private void runNextReady() {
+      Task<?> next = ready.poll();
+      if (next != null) {
+        next.runTask();
+      }
+    }
+
+    /**
+     * Queues an execution of the next ready task, in place of the execution of a cancelled task
+     * that already ran or is running in the execution of another task.
+     *
+     * <p>The queued execution of the cancelled task is purged, but it was still needed for the
+     * ready task whose execution the cancelled task took. An execution too many finds no ready
+     * task and does nothing.
+     */
+    private void requeueReady() {
+      if (isShutdown()) {
+        return;
+      }
+      try {
+        // Bypasses the size limit, the execution takes the place of a queued one.
+        @SuppressWarnings("unused")
+        Future<?> possiblyIgnoredError = super.schedule(new NextReady(), 0, TimeUnit.NANOSECONDS);
+      } catch (RejectedExecutionException e) {
+        // Shut down concurrently.
+      }
+    }
+
+    /** Execution of the ready task with the highest priority, see {@link #requeueReady()}. */
+    private class NextReady implements Runnable {
+      @Override
+      public void run() {
+        runNextReady();
+      }
+    }
+
     @Override
     protected <V> RunnableScheduledFuture<V> decorateTask(
         Callable<V> callable, RunnableScheduledFuture<V> task) {
@@ -444,6 +720,27 @@ public class WorkQueue {
     }
   }
 
+  /** Task that a full queue rejected; it only runs if the rejection policy runs it. */
+  private static class RejectedTask<V> extends FutureTask<V> implements ScheduledFuture<V> {
+    RejectedTask(Callable<V> callable) {
+      super(callable);
+    }
+
+    RejectedTask(Runnable runnable, V result) {
+      super(runnable, result);
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return 0;
+    }
+
+    @Override
+    public int compareTo(Delayed o) {
+      return Long.compare(0, o.getDelay(TimeUnit.NANOSECONDS));
+    }
+  }
+
   /**
    * Runnable needing to know it was canceled. Note that cancel is called only in case the task is
    * not in progress already.
@@ -497,6 +794,12 @@ public class WorkQueue {
     private final int taskId;
     private final AtomicBoolean running;
     private final Date startTime;
+    private final int priority;
+
+    /** Whether the task is dispatched in order of its priority. */
+    private volatile boolean prioritized;
+
+    private long readySequence;
 
     Task(Runnable runnable, RunnableScheduledFuture<V> task, Executor executor, int taskId) {
       this.runnable = runnable;
@@ -505,6 +808,10 @@ public class WorkQueue {
       this.taskId = taskId;
       this.running = new AtomicBoolean();
       this.startTime = new Date();
+      this.priority =
+          runnable instanceof PrioritizedRunnable
+              ? ((PrioritizedRunnable) runnable).getPriority()
+              : PrioritizedRunnable.DEFAULT_PRIORITY;
     }
 
     public int getTaskId() {
@@ -535,6 +842,10 @@ public class WorkQueue {
       return executor.queueName;
     }
 
+    public int getPriority() {
+      return priority;
+    }
+
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
       if (task.cancel(mayInterruptIfRunning)) {
@@ -560,6 +871,9 @@ public class WorkQueue {
           ((Future<?>) runnable).cancel(mayInterruptIfRunning);
         }
 
+        if (prioritized && !executor.ready.remove(this)) {
+          executor.requeueReady();
+        }
         executor.remove(this);
         executor.purge();
         return true;
@@ -605,13 +919,26 @@ public class WorkQueue {
 
     @Override
     public void run() {
+      if (prioritized) {
+        // The worker thread runs whichever ready task has the highest priority. This task is run
+        // in its place once it is the first one in the ready queue.
+        executor.runNextReady();
+        return;
+      }
+      runTask();
+    }
+
+    private void runTask() {
       if (running.compareAndSet(false, true)) {
+        executor.recordWaitTime(Math.max(-task.getDelay(TimeUnit.NANOSECONDS), 0));
+        long start = System.nanoTime();
         String oldThreadName = Thread.currentThread().getName();
         try {
           Thread.currentThread().setName(oldThreadName + "[" + task.toString() + "]");
           task.run();
         } finally {
           Thread.currentThread().setName(oldThreadName);
+          executor.recordRunTime(System.nanoTime() - start);
           if (isPeriodic()) {
             running.set(false);
           } else {
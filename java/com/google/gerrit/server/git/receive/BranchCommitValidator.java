@@ -18,13 +18,18 @@ import static com.google.gerrit.git.ObjectIds.abbreviateName;
 import static org.eclipse.jgit.transport.ReceiveCommand.Result.REJECTED_OTHER_REASON;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.BranchNameKey;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.Project;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.server.FanOutExecutor;
 import com.google.gerrit.server.IdentifiedUser;
 import com.google.gerrit.server.events.CommitReceivedEvent;
 import com.google.gerrit.server.git.validators.CommitValidationException;
@@ -35,9 +40,18 @@ import com.google.gerrit.server.logging.TraceContext.TraceTimer;
 import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.gerrit.server.project.ProjectState;
 import com.google.gerrit.server.ssh.SshInfo;
+import com.google.gerrit.server.util.RequestScopePropagator;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
@@ -51,10 +65,14 @@ public class BranchCommitValidator {
 
   private final CommitValidators.Factory commitValidatorsFactory;
   private final IdentifiedUser user;
+  private final PermissionBackend permissionBackend;
   private final PermissionBackend.ForProject permissions;
   private final Project project;
   private final BranchNameKey branch;
   private final SshInfo sshInfo;
+  private final ExecutorService executor;
+  private final RequestScopePropagator scopePropagator;
+  private final boolean parallel;
 
   interface Factory {
     BranchCommitValidator create(
@@ -65,7 +83,12 @@ public class BranchCommitValidator {
   @AutoValue
   abstract static class Result {
     static Result create(boolean isValid, ImmutableList<CommitValidationMessage> messages) {
-      return new AutoValue_BranchCommitValidator_Result(isValid, messages);
+      return new AutoValue_BranchCommitValidator_Result(isValid, messages, null);
+    }
+
+    static Result rejected(
+        String rejectionMessage, ImmutableList<CommitValidationMessage> messages) {
+      return new AutoValue_BranchCommitValidator_Result(false, messages, rejectionMessage);
     }
 
     /** Whether the commit is valid. */
@@ -76,6 +99,10 @@ public class BranchCommitValidator {
      * {@link #isValid()} status.
      */
     abstract ImmutableList<CommitValidationMessage> messages();
+
+    /** Message to reject the command with if the commit is not valid. */
+    @Nullable
+    abstract String rejectionMessage();
   }
 
   @Inject
@@ -83,6 +110,9 @@ public class BranchCommitValidator {
       CommitValidators.Factory commitValidatorsFactory,
       PermissionBackend permissionBackend,
       SshInfo sshInfo,
+      @FanOutExecutor ExecutorService executor,
+      RequestScopePropagator scopePropagator,
+      ReceiveConfig receiveConfig,
       @Assisted ProjectState projectState,
       @Assisted BranchNameKey branch,
       @Assisted IdentifiedUser user) {
@@ -90,6 +120,10 @@ public class BranchCommitValidator {
     this.user = user;
     this.branch = branch;
     this.commitValidatorsFactory = commitValidatorsFactory;
+    this.permissionBackend = permissionBackend;
+    this.executor = executor;
+    this.scopePropagator = scopePropagator;
+    this.parallel = receiveConfig.parallelCommitValidation;
     project = projectState.getProject();
     permissions = permissionBackend.user(user).project(project.getNameKey());
   }
@@ -142,6 +176,160 @@ public class BranchCommitValidator {
       @Nullable Change change,
       boolean skipValidation)
       throws IOException {
+    Result result =
+        validate(
+            repository.getConfig(),
+            permissions,
+            objectReader,
+            cmd,
+            commit,
+            pushOptions,
+            isMerged,
+            rejectCommits,
+            change,
+            skipValidation);
+    if (!result.isValid()) {
+      cmd.setResult(REJECTED_OTHER_REASON, result.rejectionMessage());
+    }
+    return result;
+  }
+
+  /**
+   * Validates the commits of a push that are going to be new changes.
+   *
+   * <p>If {@code receive.parallelCommitValidation} is enabled, the commits are validated in
+   * parallel on the {@link FanOutExecutor}. Readers and rev walks must not be shared between
+   * threads, hence each commit is then read through its own {@link ObjectReader}.
+   *
+   * <p>Unlike {@link #validateCommit}, this doesn't reject the command. The caller should do so
+   * for the first result that is not valid, so that errors are reported in the order of the
+   * commits, as if they were validated one by one.
+   *
+   * @param repository the repository
+   * @param objectReader the object reader to use if commits are validated serially.
+   * @param cmd the ReceiveCommand executing the push.
+   * @param commits the commits being validated, in the order in which errors are reported.
+   * @param isMerged whether these are merge commits created by magicBranch --merge option
+   * @return the validation {@link Result}s of the commits, in the same order, up to and including
+   *     the first result that is not valid.
+   */
+  ImmutableList<Result> validateCommits(
+      Repository repository,
+      ObjectReader objectReader,
+      ReceiveCommand cmd,
+      List<RevCommit> commits,
+      ImmutableListMultimap<String, String> pushOptions,
+      boolean isMerged,
+      NoteMap rejectCommits)
+      throws IOException {
+    Config repoConfig = repository.getConfig();
+    ImmutableList.Builder<Result> results = ImmutableList.builder();
+    // Notes of banned commits are loaded lazily through the reader of the map, which must not be
+    // used by multiple threads. Banning commits is rare, so don't bother to parallelize then.
+    if (!parallel || commits.size() < 2 || !Iterables.isEmpty(rejectCommits)) {
+      for (RevCommit commit : commits) {
+        Result result =
+            validate(
+                repoConfig,
+                permissions,
+                objectReader,
+                cmd,
+                commit,
+                pushOptions,
+                isMerged,
+                rejectCommits,
+                null,
+                false);
+        results.add(result);
+        if (!result.isValid()) {
+          break;
+        }
+      }
+      return results.build();
+    }
+
+    // Load the groups and emails up front, rather than racing to do so from all threads.
+    user.getEffectiveGroups();
+    user.getEmailAddresses();
+    List<FutureTask<Result>> tasks = new ArrayList<>(commits.size());
+    for (RevCommit commit : commits) {
+      Callable<Result> validation =
+          () -> {
+            try (ObjectReader reader = repository.newObjectReader()) {
+              return validate(
+                  repoConfig,
+                  // Permission checks cache their results, they are not thread-safe.
+                  permissionBackend.user(user).project(project.getNameKey()),
+                  reader,
+                  cmd,
+                  commit,
+                  pushOptions,
+                  isMerged,
+                  rejectCommits,
+                  null,
+                  false);
+            }
+          };
+      FutureTask<Result> task = new FutureTask<>(scopePropagator.wrap(validation));
+      tasks.add(task);
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        // The task is run by this thread below.
+      }
+    }
+
+    boolean valid = true;
+    try {
+      for (FutureTask<Result> task : tasks) {
+        if (!valid) {
+          task.cancel(false);
+          continue;
+        }
+        // Run the task in this thread unless the executor already started it.
+        task.run();
+        Result result = getResult(task);
+        results.add(result);
+        valid = result.isValid();
+      }
+    } finally {
+      // Don't let validations use the repository after the caller closed it.
+      for (FutureTask<Result> task : tasks) {
+        if (!task.isDone()) {
+          task.cancel(false);
+        }
+        try {
+          Uninterruptibles.getUninterruptibly(task);
+        } catch (CancellationException | ExecutionException e) {
+          // Already handled above, or not needed anymore.
+        }
+      }
+    }
+    return results.build();
+  }
+
+  private static Result getResult(FutureTask<Result> task) throws IOException {
+    try {
+      return Uninterruptibles.getUninterruptibly(task);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new StorageException("Cannot validate commit", e.getCause());
+    }
+  }
+
+  private Result validate(
+      Config repoConfig,
+      PermissionBackend.ForProject permissions,
+      ObjectReader objectReader,
+      ReceiveCommand cmd,
+      RevCommit commit,
+      ImmutableListMultimap<String, String> pushOptions,
+      boolean isMerged,
+      NoteMap rejectCommits,
+      @Nullable Change change,
+      boolean skipValidation)
+      throws IOException {
     try (TraceTimer traceTimer = TraceContext.newTimer("BranchCommitValidator#validateCommit")) {
       ImmutableList.Builder<CommitValidationMessage> messages = new ImmutableList.Builder<>();
       try (CommitReceivedEvent receiveEvent =
@@ -150,7 +338,7 @@ public class BranchCommitValidator {
               project,
               branch.branch(),
               pushOptions,
-              new Config(repository.getConfig()),
+              new Config(repoConfig),
               objectReader,
               commit,
               user)) {
@@ -186,9 +374,8 @@ public class BranchCommitValidator {
               new CommitValidationMessage(
                   messageForCommit(commit, m.getMessage(), objectReader), m.getType()));
         }
-        cmd.setResult(
-            REJECTED_OTHER_REASON, messageForCommit(commit, e.getMessage(), objectReader));
-        return Result.create(false, messages.build());
+        return Result.rejected(
+            messageForCommit(commit, e.getMessage(), objectReader), messages.build());
       }
       return Result.create(true, messages.build());
     }
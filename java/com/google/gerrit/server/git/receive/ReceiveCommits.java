@@ -2155,6 +2155,8 @@ class ReceiveCommits {
 
         LinkedHashMap<RevCommit, ChangeLookup> pending = new LinkedHashMap<>();
         Set<Change.Key> newChangeIds = new HashSet<>();
+        List<RevCommit> toValidate = new ArrayList<>();
+        Set<RevCommit> withoutChangeId = new HashSet<>();
         int maxBatchChanges = receiveConfig.getEffectiveMaxBatchChangesLimit(user);
         int total = 0;
         int alreadyTracked = 0;
@@ -2222,7 +2224,7 @@ class ReceiveCommits {
             pending.put(c, lookupByCommit(c));
           }
 
-          int n = pending.size() + newChanges.size();
+          int n = pending.size() + withoutChangeId.size();
           if (maxBatchChanges != 0 && n > maxBatchChanges) {
             logger.atFine().log("%d changes exceeds limit of %d", n, maxBatchChanges);
             reject(
@@ -2247,18 +2249,29 @@ class ReceiveCommits {
                 "Creating new change for %s even though it is already tracked", name);
           }
 
-          BranchCommitValidator.Result validationResult =
-              validator.validateCommit(
-                  repo,
-                  receivePack.getRevWalk().getObjectReader(),
-                  magicBranch.cmd,
-                  c,
-                  ImmutableListMultimap.copyOf(pushOptions),
-                  magicBranch.merged,
-                  rejectCommits,
-                  null);
+          // Commits are validated once the walk is done, so that they can be validated in
+          // parallel.
+          toValidate.add(c);
+          if (idList.isEmpty()) {
+            withoutChangeId.add(c);
+          }
+        }
+
+        ImmutableList<BranchCommitValidator.Result> validationResults =
+            validator.validateCommits(
+                repo,
+                receivePack.getRevWalk().getObjectReader(),
+                magicBranch.cmd,
+                toValidate,
+                ImmutableListMultimap.copyOf(pushOptions),
+                magicBranch.merged,
+                rejectCommits);
+        for (int i = 0; i < validationResults.size(); i++) {
+          RevCommit c = toValidate.get(i);
+          BranchCommitValidator.Result validationResult = validationResults.get(i);
           messages.addAll(validationResult.messages());
           if (!validationResult.isValid()) {
+            reject(magicBranch.cmd, validationResult.rejectionMessage());
             // Not a change the user can propose? Abort as early as possible.
             logger.atFine().log("Aborting early due to invalid commit");
             return Collections.emptyList();
@@ -2270,13 +2283,13 @@ class ReceiveCommits {
                 magicBranch.cmd,
                 "Pushing merges in commit chains with 'all not in target' is not allowed,\n"
                     + "to override please set the base manually");
-            logger.atFine().log("Rejecting merge commit %s with newChangeForAllNotInTarget", name);
+            logger.atFine().log(
+                "Rejecting merge commit %s with newChangeForAllNotInTarget", c.name());
             // TODO(dborowitz): Should we early return here?
           }
 
-          if (idList.isEmpty()) {
+          if (withoutChangeId.contains(c)) {
             newChanges.add(new CreateRequest(c, magicBranch.dest.branch(), newProgress));
-            continue;
           }
         }
         logger.atFine().log(
@@ -29,6 +29,7 @@ class ReceiveConfig {
   final boolean checkReferencedObjectsAreReachable;
   final int maxBatchCommits;
   final boolean disablePrivateChanges;
+  final boolean parallelCommitValidation;
   private final int systemMaxBatchChanges;
   private final AccountLimits.Factory limitsFactory;
 
@@ -40,6 +41,8 @@ class ReceiveConfig {
     maxBatchCommits = config.getInt("receive", null, "maxBatchCommits", 10000);
     systemMaxBatchChanges = config.getInt("receive", "maxBatchChanges", 0);
     disablePrivateChanges = config.getBoolean("change", null, "disablePrivateChanges", false);
+    parallelCommitValidation =
+        config.getBoolean("receive", null, "parallelCommitValidation", false);
     this.limitsFactory = limitsFactory;
   }
 
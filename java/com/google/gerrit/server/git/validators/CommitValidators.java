@@ -34,6 +34,11 @@ import com.google.gerrit.entities.RefNames;
 import com.google.gerrit.extensions.api.config.ConsistencyCheckInfo.ConsistencyProblemInfo;
 import com.google.gerrit.extensions.registration.DynamicItem;
 import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
 import com.google.gerrit.server.ChangeUtil;
 import com.google.gerrit.server.GerritPersonIdent;
 import com.google.gerrit.server.IdentifiedUser;
@@ -106,6 +111,7 @@ public class CommitValidators {
     private final ProjectCache projectCache;
     private final ProjectConfig.Factory projectConfigFactory;
     private final Config config;
+    private final Timer1<String> latency;
 
     @Inject
     Factory(
@@ -119,7 +125,8 @@ public class CommitValidators {
         ExternalIdsConsistencyChecker externalIdsConsistencyChecker,
         AccountValidator accountValidator,
         ProjectCache projectCache,
-        ProjectConfig.Factory projectConfigFactory) {
+        ProjectConfig.Factory projectConfigFactory,
+        MetricMaker metricMaker) {
       this.gerritIdent = gerritIdent;
       this.urlFormatter = urlFormatter;
       this.config = config;
@@ -131,6 +138,15 @@ public class CommitValidators {
       this.accountValidator = accountValidator;
       this.projectCache = projectCache;
       this.projectConfigFactory = projectConfigFactory;
+      this.latency =
+          metricMaker.newTimer(
+              "validation/commit_validator_latency",
+              new Description("Latency of validating a received commit, by validator")
+                  .setCumulative()
+                  .setUnit(Units.MILLISECONDS),
+              Field.ofString("validator", Metadata.Builder::className)
+                  .description("commit validator class")
+                  .build());
     }
 
     public CommitValidators forReceiveCommits(
@@ -163,7 +179,7 @@ public class CommitValidators {
           .add(new ExternalIdUpdateListener(allUsers, externalIdsConsistencyChecker))
           .add(new AccountCommitValidator(repoManager, allUsers, accountValidator))
           .add(new GroupCommitValidator(allUsers));
-      return new CommitValidators(validators.build());
+      return new CommitValidators(validators.build(), latency);
     }
 
     public CommitValidators forGerritCommits(
@@ -192,7 +208,7 @@ public class CommitValidators {
           .add(new ExternalIdUpdateListener(allUsers, externalIdsConsistencyChecker))
           .add(new AccountCommitValidator(repoManager, allUsers, accountValidator))
           .add(new GroupCommitValidator(allUsers));
-      return new CommitValidators(validators.build());
+      return new CommitValidators(validators.build(), latency);
     }
 
     public CommitValidators forMergedCommits(
@@ -219,14 +235,16 @@ public class CommitValidators {
           .add(new ProjectStateValidationListener(projectState))
           .add(new AuthorUploaderValidator(user, perm, urlFormatter.get()))
           .add(new CommitterUploaderValidator(user, perm, urlFormatter.get()));
-      return new CommitValidators(validators.build());
+      return new CommitValidators(validators.build(), latency);
     }
   }
 
   private final List<CommitValidationListener> validators;
+  private final Timer1<String> latency;
 
-  CommitValidators(List<CommitValidationListener> validators) {
+  CommitValidators(List<CommitValidationListener> validators, Timer1<String> latency) {
     this.validators = validators;
+    this.latency = latency;
   }
 
   public List<CommitValidationMessage> validate(CommitReceivedEvent receiveEvent)
@@ -234,15 +252,17 @@ public class CommitValidators {
     List<CommitValidationMessage> messages = new ArrayList<>();
     try {
       for (CommitValidationListener commitValidator : validators) {
+        String className = commitValidator.getClass().getSimpleName();
         try (TraceTimer ignored =
-            TraceContext.newTimer(
-                "Running CommitValidationListener",
-                Metadata.builder()
-                    .className(commitValidator.getClass().getSimpleName())
-                    .projectName(receiveEvent.getProjectNameKey().get())
-                    .branchName(receiveEvent.getBranchNameKey().branch())
-                    .commit(receiveEvent.commit.name())
-                    .build())) {
+                TraceContext.newTimer(
+                    "Running CommitValidationListener",
+                    Metadata.builder()
+                        .className(className)
+                        .projectName(receiveEvent.getProjectNameKey().get())
+                        .branchName(receiveEvent.getBranchNameKey().branch())
+                        .commit(receiveEvent.commit.name())
+                        .build());
+            Timer1.Context<String> ctx = latency.start(className)) {
           messages.addAll(commitValidator.onCommitReceived(receiveEvent));
         }
       }
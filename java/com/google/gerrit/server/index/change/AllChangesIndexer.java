@@ -19,37 +19,62 @@ import static com.google.common.util.concurrent.Futures.successfulAsList;
 import static com.google.common.util.concurrent.Futures.transform;
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static com.google.gerrit.server.git.QueueProvider.QueueType.BATCH;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Streams;
 import com.google.common.flogger.FluentLogger;
-import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.index.IndexConfig;
+import com.google.gerrit.index.QueryOptions;
 import com.google.gerrit.index.SiteIndexer;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.index.query.QueryParseException;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.git.MultiProgressMonitor;
 import com.google.gerrit.server.git.MultiProgressMonitor.Task;
 import com.google.gerrit.server.index.IndexExecutor;
 import com.google.gerrit.server.index.OnlineReindexMode;
+import com.google.gerrit.server.index.StalenessCheckResult;
 import com.google.gerrit.server.notedb.ChangeNotes;
-import com.google.gerrit.server.notedb.ChangeNotes.Factory.ChangeNotesResult;
 import com.google.gerrit.server.project.ProjectCache;
 import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.ProjectPredicate;
 import com.google.inject.Inject;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.TextProgressMonitor;
 
@@ -62,12 +87,22 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
   private static final int PROJECT_SLICE_MAX_REFS = 1000;
 
+  /** Minimum number of changes that a running slice hands over to another thread. */
+  private static final int MIN_SPLIT_CHANGES = 100;
+
+  /** Maximum number of changes whose index documents are read with a single query. */
+  private static final int STALENESS_CHECK_BATCH_SIZE = 500;
+
   private final ChangeData.Factory changeDataFactory;
   private final GitRepositoryManager repoManager;
   private final ListeningExecutorService executor;
   private final ChangeIndexer.Factory indexerFactory;
   private final ChangeNotes.Factory notesFactory;
   private final ProjectCache projectCache;
+  private final IndexConfig indexConfig;
+
+  private boolean incremental;
+  @Nullable private Path checkpointFile;
 
   @Inject
   AllChangesIndexer(
@@ -76,24 +111,51 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
       @IndexExecutor(BATCH) ListeningExecutorService executor,
       ChangeIndexer.Factory indexerFactory,
       ChangeNotes.Factory notesFactory,
-      ProjectCache projectCache) {
+      ProjectCache projectCache,
+      IndexConfig indexConfig) {
     this.changeDataFactory = changeDataFactory;
     this.repoManager = repoManager;
     this.executor = executor;
     this.indexerFactory = indexerFactory;
     this.notesFactory = notesFactory;
     this.projectCache = projectCache;
+    this.indexConfig = indexConfig;
+  }
+
+  /**
+   * Only reindex changes whose documents are stale.
+   *
+   * <p>The {@link ChangeField#REF_STATE} and {@link ChangeField#REF_STATE_PATTERN} fields of the
+   * existing documents are compared against the current refs, like {@link StalenessChecker} does.
+   * Changes whose refs didn't change since they were indexed are skipped, and documents of changes
+   * whose meta ref doesn't exist anymore are deleted. Requires an index version that stores these
+   * fields, otherwise all changes are reindexed.
+   */
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  /**
+   * File in which finished project slices are recorded.
+   *
+   * <p>Slices that are listed in the file are skipped, so that an interrupted run continues where
+   * it stopped. The file is deleted once all changes have been indexed successfully.
+   */
+  public void setCheckpointFile(@Nullable Path checkpointFile) {
+    this.checkpointFile = checkpointFile;
   }
 
   private static class ProjectSlice {
     private final Project.NameKey name;
     private final int slice;
     private final int slices;
+    private final long cost;
 
-    ProjectSlice(Project.NameKey name, int slice, int slices) {
+    ProjectSlice(Project.NameKey name, int slice, int slices, long cost) {
       this.name = name;
       this.slice = slice;
       this.slices = slices;
+      this.cost = cost;
     }
 
     public Project.NameKey getName() {
@@ -107,6 +169,26 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
     public int getSlices() {
       return slices;
     }
+
+    /** Estimated cost of indexing the slice, in number of refs. */
+    public long getCost() {
+      return cost;
+    }
+
+    @Override
+    public String toString() {
+      return "project " + name + " (" + slice + "/" + slices + ")";
+    }
+  }
+
+  private static class ProjectSize {
+    private final int changes;
+    private final int refs;
+
+    ProjectSize(int changes, int refs) {
+      this.changes = changes;
+      this.refs = refs;
+    }
   }
 
   @Override
@@ -117,6 +199,13 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
     int changeCount = 0;
     Stopwatch sw = Stopwatch.createStarted();
     int projectsFailed = 0;
+    Checkpoint checkpoint;
+    try {
+      checkpoint = checkpointFile != null ? Checkpoint.load(checkpointFile) : null;
+    } catch (IOException e) {
+      logger.atSevere().withCause(e).log("Error reading checkpoint %s", checkpointFile);
+      return Result.create(sw, false, 0, 0);
+    }
     for (Project.NameKey name : projectCache.all()) {
       try (Repository repo = repoManager.openRepository(name)) {
         // The simplest approach to distribute indexing would be to let each thread grab a project
@@ -133,15 +222,23 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
         // which had 2 big projects, many middle sized ones, and lots of smaller ones, the
         // splitting of repos into smaller parts reduced indexing time from 1.5 hours to 55 minutes
         // in 2020.
-        int size = estimateSize(repo);
-        changeCount += size;
-        int slices = 1 + size / PROJECT_SLICE_MAX_REFS;
+        ProjectSize size = estimateSize(repo);
+        int slices = 1 + size.changes / PROJECT_SLICE_MAX_REFS;
+        long cost = Math.max(1, size.refs / slices);
         if (slices > 1) {
           verboseWriter.println("Submitting " + name + " for indexing in " + slices + " slices");
         }
+        int remaining = 0;
         for (int slice = 0; slice < slices; slice++) {
-          projectSlices.add(new ProjectSlice(name, slice, slices));
+          ProjectSlice projectSlice = new ProjectSlice(name, slice, slices, cost);
+          if (checkpoint != null && checkpoint.isDone(projectSlice)) {
+            verboseWriter.println("Skipping " + projectSlice + ", indexed by a previous run");
+            continue;
+          }
+          projectSlices.add(projectSlice);
+          remaining++;
         }
+        changeCount += (int) ((long) size.changes * remaining / slices);
       } catch (IOException e) {
         logger.atSevere().withCause(e).log("Error collecting project %s", name);
         projectsFailed++;
@@ -156,29 +253,46 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
     setTotalWork(changeCount);
 
     // projectSlices are currently grouped by projects. First all slices for project1, followed
-    // by all slices for project2, and so on. As workers pick tasks sequentially, multiple threads
-    // would typically work concurrently on different slices of the same project. While this is not
-    // a big issue, shuffling the list beforehand helps with ungrouping the project slices, so
-    // different slices are less likely to be worked on concurrently.
+    // by all slices for project2, and so on. The SliceScheduler starts expensive slices first, but
+    // slices of similar cost are started in list order. Multiple threads would then typically work
+    // concurrently on different slices of the same project. While this is not a big issue,
+    // shuffling the list beforehand helps with ungrouping the project slices, so different slices
+    // are less likely to be worked on concurrently.
     // This shuffling gave a 6% runtime reduction for Wikimedia's Gerrit in 2020.
     Collections.shuffle(projectSlices);
-    return indexAll(index, projectSlices);
+    Result result = indexAll(index, projectSlices, checkpoint);
+    if (result.success() && checkpoint != null) {
+      try {
+        checkpoint.delete();
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Error deleting checkpoint %s", checkpointFile);
+      }
+    }
+    return result;
   }
 
-  private int estimateSize(Repository repo) throws IOException {
+  private ProjectSize estimateSize(Repository repo) throws IOException {
     // Estimate size based on IDs that show up in ref names. This is not perfect, since patch set
     // refs may exist for changes whose metadata was never successfully stored. But that's ok, as
-    // the estimate is just used as a heuristic for sorting projects.
-    long size =
-        repo.getRefDatabase().getRefsByPrefix(RefNames.REFS_CHANGES).stream()
-            .map(r -> Change.Id.fromRef(r.getName()))
-            .filter(Objects::nonNull)
-            .distinct()
-            .count();
-    return Ints.saturatedCast(size);
+    // the estimate is just used as a heuristic for splitting and sorting projects.
+    //
+    // The number of refs is used as estimate for the cost of indexing the changes. Changes with
+    // many patch sets tend to have long NoteDb histories with many comments, and each patch set
+    // adds to the work of computing the index fields.
+    Set<Change.Id> ids = new HashSet<>();
+    int refs = 0;
+    for (Ref r : repo.getRefDatabase().getRefsByPrefix(RefNames.REFS_CHANGES)) {
+      Change.Id id = Change.Id.fromRef(r.getName());
+      if (id != null) {
+        ids.add(id);
+        refs++;
+      }
+    }
+    return new ProjectSize(ids.size(), refs);
   }
 
-  private SiteIndexer.Result indexAll(ChangeIndex index, List<ProjectSlice> projectSlices) {
+  private SiteIndexer.Result indexAll(
+      ChangeIndex index, List<ProjectSlice> projectSlices, @Nullable Checkpoint checkpoint) {
     Stopwatch sw = Stopwatch.createStarted();
     MultiProgressMonitor mpm = new MultiProgressMonitor(progressOut, "Reindexing changes");
     Task projTask = mpm.beginSubTask("project-slices", projectSlices.size());
@@ -186,26 +300,53 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
     Task doneTask = mpm.beginSubTask(null, totalWork);
     Task failedTask = mpm.beginSubTask("failed", MultiProgressMonitor.UNKNOWN);
 
+    ChangeIndex stalenessIndex = null;
+    Task unchangedTask = null;
+    if (incremental) {
+      if (index.getSchema().hasField(ChangeField.REF_STATE)
+          && index.getSchema().hasField(ChangeField.REF_STATE_PATTERN)) {
+        stalenessIndex = index;
+        unchangedTask = mpm.beginSubTask("unchanged", MultiProgressMonitor.UNKNOWN);
+      } else {
+        logger.atWarning().log(
+            "Index version %d doesn't store ref states; reindexing all changes",
+            index.getSchema().getVersion());
+      }
+    }
+
     List<ListenableFuture<?>> futures = new ArrayList<>();
     AtomicBoolean ok = new AtomicBoolean(true);
+    SliceScheduler scheduler = new SliceScheduler(executor);
+    mpm.setStatus(() -> scheduler.status(doneTask.getCount() + failedTask.getCount(), totalWork));
 
     for (ProjectSlice projectSlice : projectSlices) {
-      Project.NameKey name = projectSlice.getName();
-      int slice = projectSlice.getSlice();
-      int slices = projectSlice.getSlices();
-      ListenableFuture<?> future =
-          executor.submit(
-              reindexProject(
+      SliceScheduler.Result result =
+          scheduler.submit(
+              new ProjectIndexer(
                   indexerFactory.create(executor, index),
-                  name,
-                  slice,
-                  slices,
+                  projectSlice.getName(),
+                  projectSlice.getSlice(),
+                  projectSlice.getSlices(),
                   doneTask,
-                  failedTask));
-      String description = "project " + name + " (" + slice + "/" + slices + ")";
-      addErrorListener(future, description, projTask, ok);
+                  failedTask,
+                  stalenessIndex,
+                  unchangedTask),
+              projectSlice.getCost());
+      ListenableFuture<?> future = result.future;
+      if (checkpoint != null) {
+        future.addListener(
+            () -> {
+              // Slices with failed changes are retried by the next run.
+              if (isSuccessful(future) && !result.hasFailures()) {
+                markDone(index, checkpoint, projectSlice);
+              }
+            },
+            directExecutor());
+      }
+      addErrorListener(future, projectSlice.toString(), projTask, ok);
       futures.add(future);
     }
+    scheduler.start();
 
     try {
       mpm.waitFor(
@@ -233,6 +374,7 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
           nFailed, nTotal, Math.round(pctFailed));
       ok.set(false);
     }
+    scheduler.printThreadStats(verboseWriter, sw);
     return Result.create(sw, ok.get(), nDone, nFailed);
   }
 
@@ -248,30 +390,77 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
       int slices,
       Task done,
       Task failed) {
-    return new ProjectIndexer(indexer, project, slice, slices, done, failed);
+    return new ProjectIndexer(indexer, project, slice, slices, done, failed, null, null);
+  }
+
+  private static void markDone(ChangeIndex index, Checkpoint checkpoint, ProjectSlice slice) {
+    try {
+      // The documents of the slice must be durable before the slice is skipped by later runs.
+      index.commit();
+    } catch (StorageException e) {
+      logger.atWarning().withCause(e).log("Error committing index for %s", slice);
+      return;
+    }
+    checkpoint.markDone(slice);
+  }
+
+  private static boolean isSuccessful(ListenableFuture<?> future) {
+    try {
+      Futures.getDone(future);
+      return true;
+    } catch (ExecutionException | CancellationException e) {
+      return false;
+    }
   }
 
-  private class ProjectIndexer implements Callable<Void> {
+  private class ProjectIndexer extends SliceScheduler.Work {
     private final ChangeIndexer indexer;
     private final Project.NameKey project;
     private final int slice;
     private final int slices;
     private final ProgressMonitor done;
     private final ProgressMonitor failed;
+    @Nullable private final ChangeIndex stalenessIndex;
+    @Nullable private final ProgressMonitor unchanged;
+
+    // Changes of the slice, read from the ref database on first use. Pieces that were handed over
+    // to other threads share the list and process the range [pos, end).
+    private ImmutableList<Change.Id> ids;
+    private ImmutableMap<Change.Id, Ref> metaRefs;
 
+    /**
+     * @param stalenessIndex if set, only changes whose documents in this index are stale are
+     *     reindexed.
+     * @param unchanged progress monitor for changes that are skipped because their documents are
+     *     up to date; required if {@code stalenessIndex} is set.
+     */
     private ProjectIndexer(
         ChangeIndexer indexer,
         Project.NameKey project,
         int slice,
         int slices,
         ProgressMonitor done,
-        ProgressMonitor failed) {
+        ProgressMonitor failed,
+        @Nullable ChangeIndex stalenessIndex,
+        @Nullable ProgressMonitor unchanged) {
       this.indexer = indexer;
       this.project = project;
       this.slice = slice;
       this.slices = slices;
       this.done = done;
       this.failed = failed;
+      this.stalenessIndex = stalenessIndex;
+      this.unchanged = unchanged;
+    }
+
+    @Override
+    ProjectIndexer newPiece() {
+      ProjectIndexer piece =
+          new ProjectIndexer(
+              indexer, project, slice, slices, done, failed, stalenessIndex, unchanged);
+      piece.ids = ids;
+      piece.metaRefs = metaRefs;
+      return piece;
     }
 
     @Override
@@ -284,30 +473,196 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
         // It does mean that reindexing after invalidating the DiffSummary cache will be expensive,
         // but the goal is to invalidate that cache as infrequently as we possibly can. And besides,
         // we don't have concrete proof that improving packfile locality would help.
-        notesFactory.scan(repo, project, id -> (id.get() % slices) == slice).forEach(r -> index(r));
+        if (ids == null) {
+          if (stalenessIndex != null && slice == 0) {
+            Set<Change.Id> existing = new HashSet<>();
+            readChangeIds(repo, existing);
+            deleteMissing(existing);
+          } else {
+            readChangeIds(repo, null);
+          }
+        }
+        while (pos < end) {
+          int handedOver = handOverHalf(MIN_SPLIT_CHANGES);
+          if (handedOver > 0) {
+            verboseWriter.format(
+                "Handing over %d changes of project %s (%d/%d) to another thread\n",
+                handedOver, project.get(), slice, slices);
+          }
+          if (stalenessIndex != null) {
+            int batchEnd = Math.min(end, pos + STALENESS_CHECK_BATCH_SIZE);
+            List<Change.Id> batch = ids.subList(pos, batchEnd);
+            pos = batchEnd;
+            indexStale(repo, batch);
+          } else {
+            index(repo, ids.get(pos++));
+          }
+        }
       } catch (RepositoryNotFoundException rnfe) {
         logger.atSevere().log(rnfe.getMessage());
+        markFailed();
       } finally {
         OnlineReindexMode.end();
       }
       return null;
     }
 
-    private void index(ChangeNotesResult r) {
-      if (r.error().isPresent()) {
-        fail("Failed to read change " + r.id() + " for indexing", true, r.error().get());
+    /**
+     * Reads the meta refs of the changes in this slice with a single ref database scan.
+     *
+     * <p>The changes are loaded from these refs, so that loading a change doesn't need a ref
+     * lookup of its own.
+     *
+     * @param allIds if set, the changes of all slices of the project are added to it.
+     */
+    private void readChangeIds(Repository repo, @Nullable Set<Change.Id> allIds)
+        throws IOException {
+      ImmutableMap.Builder<Change.Id, Ref> refs = ImmutableMap.builder();
+      for (Ref ref : repo.getRefDatabase().getRefsByPrefix(RefNames.REFS_CHANGES)) {
+        if (!ref.getName().endsWith(RefNames.META_SUFFIX)) {
+          continue;
+        }
+        Change.Id id = Change.Id.fromRef(ref.getName());
+        if (id == null) {
+          continue;
+        }
+        if (allIds != null) {
+          allIds.add(id);
+        }
+        if ((id.get() % slices) == slice) {
+          refs.put(id, ref);
+        }
+      }
+      metaRefs = refs.build();
+      ids = metaRefs.keySet().asList();
+      pos = 0;
+      end = ids.size();
+    }
+
+    /**
+     * Deletes the documents of changes of the project whose meta ref doesn't exist anymore.
+     *
+     * <p>These changes can only be found by querying the index, since their refs are gone. This is
+     * done once per project, by its first slice.
+     *
+     * @param existing changes of all slices of the project that have a meta ref.
+     */
+    private void deleteMissing(Set<Change.Id> existing) {
+      // Collect all changes first, so that deleting them doesn't shift the pages.
+      List<Change.Id> missing = new ArrayList<>();
+      for (int start = 0; ; start += STALENESS_CHECK_BATCH_SIZE) {
+        QueryOptions opts =
+            IndexedChangeQuery.createOptions(
+                indexConfig,
+                start,
+                STALENESS_CHECK_BATCH_SIZE,
+                ImmutableSet.of(ChangeField.PROJECT.getName()));
+        int count = 0;
+        try {
+          for (ChangeData cd :
+              stalenessIndex.getSource(new ProjectPredicate(project.get()), opts).read()) {
+            count++;
+            if (!existing.contains(cd.getId())) {
+              missing.add(cd.getId());
+            }
+          }
+        } catch (QueryParseException e) {
+          throw new StorageException("Unexpected QueryParseException reading changes", e);
+        }
+        if (count < STALENESS_CHECK_BATCH_SIZE) {
+          break;
+        }
+      }
+
+      for (Change.Id id : missing) {
+        try {
+          indexer.delete(id);
+          verboseWriter.format(
+              "Deleted change %d without meta ref (project: %s)\n", id.get(), project.get());
+        } catch (RuntimeException e) {
+          fail("Failed to delete change " + id + " from index", true, e);
+        }
+      }
+    }
+
+    private Optional<ObjectId> readMetaRef(String name) {
+      Change.Id id = Change.Id.fromRef(name);
+      Ref ref = id != null ? metaRefs.get(id) : null;
+      return ref != null && ref.getName().equals(name)
+          ? Optional.of(ref.getObjectId())
+          : Optional.empty();
+    }
+
+    /**
+     * Reindexes the changes of the batch whose documents are missing or stale.
+     *
+     * <p>The stored ref states are read from the index in batches, so that checking an up-to-date
+     * change needs neither a NoteDb read nor an index query of its own.
+     */
+    private void indexStale(Repository repo, List<Change.Id> batch) {
+      Map<Change.Id, ChangeData> indexed = readIndexed(batch);
+      for (Change.Id id : batch) {
+        ChangeData cd = indexed.get(id);
+        StalenessCheckResult staleness =
+            cd == null
+                ? StalenessCheckResult.stale("Document %s missing from index", id)
+                : StalenessChecker.check(
+                    repoManager,
+                    id,
+                    cd.getRefStates(),
+                    StalenessChecker.parsePatterns(cd.getRefStatePatterns()));
+        if (!staleness.isStale()) {
+          unchanged.update(1);
+          done.update(1);
+          processed++;
+          continue;
+        }
+        verboseWriter.println(staleness.reason().orElse("Document " + id + " is stale"));
+        index(repo, id);
+      }
+    }
+
+    private Map<Change.Id, ChangeData> readIndexed(List<Change.Id> ids) {
+      QueryOptions opts =
+          IndexedChangeQuery.createOptions(indexConfig, 0, ids.size(), StalenessChecker.FIELDS);
+      try {
+        return Streams.stream(
+                stalenessIndex
+                    .getSource(
+                        Predicate.or(
+                            ids.stream().map(stalenessIndex::keyPredicate).collect(toList())),
+                        opts)
+                    .read())
+            .collect(toMap(ChangeData::getId, cd -> cd, (a, b) -> a));
+      } catch (QueryParseException e) {
+        throw new StorageException("Unexpected QueryParseException reading ref states", e);
+      }
+    }
+
+    private void index(Repository repo, Change.Id id) {
+      ChangeNotes notes;
+      try {
+        notes = notesFactory.create(repo, project, id, this::readMetaRef);
+      } catch (Exception e) {
+        fail("Failed to read change " + id + " for indexing", true, e);
         return;
       }
+      index(notes);
+    }
+
+    private void index(ChangeNotes notes) {
       try {
-        indexer.index(changeDataFactory.create(r.notes()));
+        indexer.index(changeDataFactory.create(notes));
         done.update(1);
+        processed++;
         verboseWriter.format(
-            "Reindexed change %d (project: %s)\n", r.id().get(), r.notes().getProjectName().get());
+            "Reindexed change %d (project: %s)\n",
+            notes.getChangeId().get(), notes.getProjectName().get());
       } catch (RejectedExecutionException e) {
         // Server shutdown, don't spam the logs.
         failSilently();
       } catch (Exception e) {
-        fail("Failed to index change " + r.id(), true, e);
+        fail("Failed to index change " + notes.getChangeId(), true, e);
       }
     }
 
@@ -315,6 +670,7 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
       if (failed) {
         this.failed.update(1);
       }
+      markFailed();
 
       logger.atWarning().withCause(e).log(error);
       verboseWriter.println(error);
@@ -322,6 +678,14 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
 
     private void failSilently() {
       this.failed.update(1);
+      markFailed();
+    }
+
+    private void markFailed() {
+      SliceScheduler.Result result = result();
+      if (result != null) {
+        result.itemFailed();
+      }
     }
 
     @Override
@@ -329,4 +693,56 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
       return "Index all changes of project " + project.get();
     }
   }
+
+  /** Project slices that were indexed completely, persisted in a file. */
+  private static class Checkpoint {
+    static Checkpoint load(Path file) throws IOException {
+      Set<String> done = ConcurrentHashMap.newKeySet();
+      if (Files.exists(file)) {
+        done.addAll(Files.readAllLines(file, UTF_8));
+      } else {
+        Files.createDirectories(file.getParent());
+      }
+      return new Checkpoint(file, done);
+    }
+
+    private final Path file;
+    private final Set<String> done;
+
+    private Checkpoint(Path file, Set<String> done) {
+      this.file = file;
+      this.done = done;
+    }
+
+    boolean isDone(ProjectSlice slice) {
+      return done.contains(key(slice));
+    }
+
+    synchronized void markDone(ProjectSlice slice) {
+      String key = key(slice);
+      if (!done.add(key)) {
+        return;
+      }
+      try {
+        Files.write(
+            file,
+            ImmutableList.of(key),
+            UTF_8,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Error writing checkpoint %s", file);
+      }
+    }
+
+    synchronized void delete() throws IOException {
+      Files.deleteIfExists(file);
+    }
+
+    private static String key(ProjectSlice slice) {
+      // The slice count is part of the key, since slices of a different split don't cover the same
+      // changes.
+      return slice.getSlice() + "/" + slice.getSlices() + " " + slice.getName().get();
+    }
+  }
 }
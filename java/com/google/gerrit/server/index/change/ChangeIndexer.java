@@ -27,6 +27,7 @@ import com.google.gerrit.entities.Project;
 import com.google.gerrit.exceptions.StorageException;
 import com.google.gerrit.extensions.events.ChangeIndexedListener;
 import com.google.gerrit.index.Index;
+import com.google.gerrit.index.IndexWriteTracker;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.index.IndexExecutor;
 import com.google.gerrit.server.index.StalenessCheckResult;
@@ -37,6 +38,7 @@ import com.google.gerrit.server.notedb.ChangeNotes;
 import com.google.gerrit.server.plugincontext.PluginSetContext;
 import com.google.gerrit.server.project.NoSuchChangeException;
 import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.ChangeDataPrefetcher;
 import com.google.gerrit.server.util.RequestContext;
 import com.google.gerrit.server.util.ThreadLocalRequestContext;
 import com.google.inject.OutOfScopeException;
@@ -49,6 +51,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
 import org.eclipse.jgit.lib.Config;
@@ -72,6 +75,7 @@ public class ChangeIndexer {
   @Nullable private final ChangeIndex index;
   private final ChangeData.Factory changeDataFactory;
   private final ChangeNotes.Factory notesFactory;
+  private final ChangeDataPrefetcher prefetcher;
   private final ThreadLocalRequestContext context;
   private final ListeningExecutorService batchExecutor;
   private final ListeningExecutorService executor;
@@ -79,8 +83,7 @@ public class ChangeIndexer {
   private final StalenessChecker stalenessChecker;
   private final boolean autoReindexIfStale;
 
-  private final Set<IndexTask> queuedIndexTasks =
-      Collections.newSetFromMap(new ConcurrentHashMap<>());
+  private final ConcurrentMap<Change.Id, IndexTask> queuedIndexTasks = new ConcurrentHashMap<>();
   private final Set<ReindexIfStaleTask> queuedReindexIfStaleTasks =
       Collections.newSetFromMap(new ConcurrentHashMap<>());
 
@@ -89,6 +92,7 @@ public class ChangeIndexer {
       @GerritServerConfig Config cfg,
       ChangeData.Factory changeDataFactory,
       ChangeNotes.Factory notesFactory,
+      ChangeDataPrefetcher prefetcher,
       ThreadLocalRequestContext context,
       PluginSetContext<ChangeIndexedListener> indexedListeners,
       StalenessChecker stalenessChecker,
@@ -98,6 +102,7 @@ public class ChangeIndexer {
     this.executor = executor;
     this.changeDataFactory = changeDataFactory;
     this.notesFactory = notesFactory;
+    this.prefetcher = prefetcher;
     this.context = context;
     this.indexedListeners = indexedListeners;
     this.stalenessChecker = stalenessChecker;
@@ -112,6 +117,7 @@ public class ChangeIndexer {
       @GerritServerConfig Config cfg,
       ChangeData.Factory changeDataFactory,
       ChangeNotes.Factory notesFactory,
+      ChangeDataPrefetcher prefetcher,
       ThreadLocalRequestContext context,
       PluginSetContext<ChangeIndexedListener> indexedListeners,
       StalenessChecker stalenessChecker,
@@ -121,6 +127,7 @@ public class ChangeIndexer {
     this.executor = executor;
     this.changeDataFactory = changeDataFactory;
     this.notesFactory = notesFactory;
+    this.prefetcher = prefetcher;
     this.context = context;
     this.indexedListeners = indexedListeners;
     this.stalenessChecker = stalenessChecker;
@@ -141,24 +148,50 @@ public class ChangeIndexer {
    * @return future for the indexing task.
    */
   public ListenableFuture<?> indexAsync(Project.NameKey project, Change.Id id) {
-    IndexTask task = new IndexTask(project, id);
-    if (queuedIndexTasks.add(task)) {
-      fireChangeScheduledForIndexingEvent(project.get(), id.get());
-      return submit(task);
+    return indexAsync(project, id, null);
+  }
+
+  private ListenableFuture<?> indexAsync(
+      Project.NameKey project, Change.Id id, @Nullable ChangeData loaded) {
+    IndexTask task = new IndexTask(project, id, loaded);
+    while (true) {
+      IndexTask queued = queuedIndexTasks.putIfAbsent(id, task);
+      if (queued == null) {
+        fireChangeScheduledForIndexingEvent(project.get(), id.get());
+        return submit(task);
+      }
+      // The change may have been updated since the queued task was created, so it must not index
+      // a change that was loaded before. If it already started, a new task is queued instead.
+      if (queued.discardLoaded()) {
+        return Futures.immediateFuture(null);
+      }
     }
-    return Futures.immediateFuture(null);
   }
 
   /**
    * Start indexing multiple changes in parallel.
    *
+   * <p>The notes of all changes are loaded up front in one pass by the {@link
+   * ChangeDataPrefetcher}, which opens the repository and reads the meta refs only once, instead of
+   * once per change. This keeps reindexing the changes written by a single update, e.g. a push of
+   * a large stack of new changes, cheap.
+   *
    * @param ids changes to index.
    * @return future for completing indexing of all changes.
    */
   public ListenableFuture<?> indexAsync(Project.NameKey project, Collection<Change.Id> ids) {
-    List<ListenableFuture<?>> futures = new ArrayList<>(ids.size());
+    List<ChangeData> changes = new ArrayList<>(ids.size());
     for (Change.Id id : ids) {
-      futures.add(indexAsync(project, id));
+      changes.add(changeDataFactory.create(project, id));
+    }
+    prefetcher.prefetch(changes);
+
+    List<ListenableFuture<?>> futures = new ArrayList<>(changes.size());
+    for (ChangeData cd : changes) {
+      // Changes that failed to load are loaded again by their task, which deletes them from the
+      // index if they don't exist anymore. If another change of the batch is updated again before
+      // its task starts, the deduplicated call makes the task load the change again.
+      futures.add(indexAsync(project, cd.getId(), cd.needsNotes() ? null : cd));
     }
     return Futures.allAsList(futures);
   }
@@ -326,6 +359,9 @@ public class ChangeIndexer {
   private abstract class AbstractIndexTask<T> implements Callable<T> {
     protected final Project.NameKey project;
     protected final Change.Id id;
+    // Attributes the index writes to the thread that submitted the task, so that its queries can
+    // wait for them.
+    private final IndexWriteTracker writeTracker = IndexWriteTracker.current();
 
     protected AbstractIndexTask(Project.NameKey project, Change.Id id) {
       this.project = project;
@@ -347,7 +383,7 @@ public class ChangeIndexer {
               throw new OutOfScopeException("No user during ChangeIndexer");
             };
         RequestContext oldCtx = context.setContext(newCtx);
-        try {
+        try (IndexWriteTracker.Context ignored = IndexWriteTracker.use(writeTracker)) {
           return callImpl();
         } finally {
           context.setContext(oldCtx);
@@ -360,13 +396,42 @@ public class ChangeIndexer {
   }
 
   private class IndexTask extends AbstractIndexTask<Void> {
-    private IndexTask(Project.NameKey project, Change.Id id) {
+    // Guarded by this.
+    @Nullable private ChangeData loaded;
+    private boolean started;
+
+    private IndexTask(Project.NameKey project, Change.Id id, @Nullable ChangeData loaded) {
       super(project, id);
+      this.loaded = loaded;
+    }
+
+    /**
+     * Makes the task load the change itself instead of indexing the change it was created with.
+     *
+     * @return false if the task already started, so it may not see updates of the change anymore.
+     */
+    synchronized boolean discardLoaded() {
+      if (started) {
+        return false;
+      }
+      loaded = null;
+      return true;
+    }
+
+    @Nullable
+    private synchronized ChangeData start() {
+      started = true;
+      remove();
+      return loaded;
     }
 
     @Override
     public Void callImpl() throws Exception {
-      remove();
+      ChangeData cd = start();
+      if (cd != null) {
+        doIndex(cd);
+        return null;
+      }
       try {
         ChangeNotes changeNotes = notesFactory.createChecked(project, id);
         doIndex(changeDataFactory.create(changeNotes));
@@ -397,13 +462,14 @@ public class ChangeIndexer {
 
     @Override
     protected void remove() {
-      queuedIndexTasks.remove(this);
+      queuedIndexTasks.remove(id, this);
     }
   }
 
   // Not AbstractIndexTask as it doesn't need a request context.
   private class DeleteTask implements Callable<Void> {
     private final Change.Id id;
+    private final IndexWriteTracker writeTracker = IndexWriteTracker.current();
 
     private DeleteTask(Change.Id id) {
       this.id = id;
@@ -411,6 +477,13 @@ public class ChangeIndexer {
 
     @Override
     public Void call() {
+      try (IndexWriteTracker.Context ignored = IndexWriteTracker.use(writeTracker)) {
+        doDelete();
+      }
+      return null;
+    }
+
+    private void doDelete() {
       logger.atFine().log("Delete change %d from index.", id.get());
       // Don't bother setting a RequestContext to provide the DB.
       // Implementations should not need to access the DB in order to delete a
@@ -433,7 +506,6 @@ public class ChangeIndexer {
         }
       }
       fireChangeDeletedFromIndexEvent(id.get());
-      return null;
     }
   }
 
@@ -0,0 +1,277 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.index.change;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gerrit.common.Nullable;
+import java.io.PrintWriter;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distributes slices of work over the threads of an executor, most expensive slices first.
+ *
+ * <p>Pending work is kept in a priority queue rather than in the queue of the executor, so that
+ * the order in which slices run doesn't depend on the order in which they were submitted. All
+ * slices are submitted before {@link #start()} dispatches the tasks on the executor, which then
+ * take the most expensive work from the queue until it is empty.
+ *
+ * <p>Whenever the queue runs empty, a running slice hands half of its remaining items back to the
+ * queue. This way threads that would otherwise idle towards the end of the run take over work from
+ * the threads that are still busy, and a big slice that was started last doesn't become the
+ * critical path.
+ */
+class SliceScheduler {
+  private final Executor executor;
+  private final PriorityBlockingQueue<Work> queue =
+      new PriorityBlockingQueue<>(
+          11,
+          Comparator.comparingInt((Work w) -> w.costClass)
+              .reversed()
+              .thenComparingLong(w -> w.sequence));
+  private final AtomicLong sequence = new AtomicLong();
+  private final Set<Thread> busy = ConcurrentHashMap.newKeySet();
+  private final Map<String, LongAdder> processedByThread = new ConcurrentHashMap<>();
+  private final Stopwatch sw = Stopwatch.createStarted();
+  private volatile boolean direct;
+
+  SliceScheduler(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Queues a slice. It doesn't run before {@link #start()} is called.
+   *
+   * @return result whose future is done once all items of the slice were processed, including the
+   *     ones that were handed over to other threads.
+   */
+  Result submit(Work work, long cost) {
+    work.scheduler = this;
+    work.result = new Result();
+    work.sequence = sequence.getAndIncrement();
+    work.setCost(cost);
+    queue.add(work);
+    return work.result;
+  }
+
+  /** Starts running the queued slices, with one task on the executor per slice. */
+  void start() {
+    int tasks = queue.size();
+    for (int i = 0; i < tasks; i++) {
+      try {
+        executor.execute(this::runQueued);
+      } catch (RejectedExecutionException e) {
+        if (i == 0) {
+          Work work;
+          while ((work = queue.poll()) != null) {
+            work.result.fail(e);
+          }
+        }
+        // Otherwise the tasks that were accepted run the remaining slices.
+        return;
+      }
+    }
+  }
+
+  /** Whether a running slice should hand over some of its items to another thread. */
+  boolean wantsWork() {
+    return !direct && queue.isEmpty();
+  }
+
+  private void handOver(Work piece) {
+    piece.sequence = sequence.getAndIncrement();
+    piece.result.pending.incrementAndGet();
+    queue.add(piece);
+    try {
+      executor.execute(this::runQueued);
+    } catch (RejectedExecutionException e) {
+      // The piece stays queued and is run by the thread that handed it over once that thread is
+      // done with its own items.
+    }
+  }
+
+  private void runQueued() {
+    Thread thread = Thread.currentThread();
+    if (!busy.add(thread)) {
+      // The executor runs tasks on the calling thread, so handing over work doesn't help. The
+      // queued work is run by the enclosing call.
+      direct = true;
+      return;
+    }
+    try {
+      LongAdder count = processedByThread.computeIfAbsent(thread.getName(), n -> new LongAdder());
+      Work work;
+      while ((work = queue.poll()) != null) {
+        run(work);
+        count.add(work.processed);
+      }
+    } finally {
+      busy.remove(thread);
+    }
+  }
+
+  private static void run(Work work) {
+    try {
+      work.call();
+      work.result.pieceDone();
+    } catch (Throwable t) {
+      work.result.fail(t);
+    }
+  }
+
+  /**
+   * Returns throughput and estimated remaining time, for the progress output.
+   *
+   * <p>The throughput per thread is the average over all threads that took work from the queue so
+   * far, not only the ones that are currently busy.
+   */
+  @Nullable
+  String status(int processed, int total) {
+    long elapsedMs = sw.elapsed(TimeUnit.MILLISECONDS);
+    if (processed == 0 || elapsedMs < 1000) {
+      return null;
+    }
+    double docsPerSec = processed * 1000.0 / elapsedMs;
+    String status =
+        String.format(
+            "%.1f docs/s, avg %.1f docs/s per thread",
+            docsPerSec, docsPerSec / Math.max(1, processedByThread.size()));
+    if (total > processed) {
+      status += ", ETA " + formatSeconds((long) ((total - processed) / docsPerSec));
+    }
+    return status;
+  }
+
+  void printThreadStats(PrintWriter out, Stopwatch total) {
+    double seconds = Math.max(1, total.elapsed(TimeUnit.MILLISECONDS)) / 1000.0;
+    processedByThread.entrySet().stream()
+        .sorted(Map.Entry.comparingByKey())
+        .forEach(
+            e ->
+                out.format(
+                    "Thread %s processed %d changes (%.1f docs/s)\n",
+                    e.getKey(), e.getValue().sum(), e.getValue().sum() / seconds));
+  }
+
+  private static String formatSeconds(long seconds) {
+    return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+  }
+
+  /** Completion of a slice whose items may be processed by several threads. */
+  static class Result {
+    final SettableFuture<Void> future = SettableFuture.create();
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final AtomicBoolean failures = new AtomicBoolean();
+
+    private void pieceDone() {
+      if (pending.decrementAndGet() == 0) {
+        future.set(null);
+      }
+    }
+
+    private void fail(Throwable t) {
+      future.setException(t);
+    }
+
+    /** Records that an item of the slice could not be processed. */
+    void itemFailed() {
+      failures.set(true);
+    }
+
+    /** Whether any item of the slice could not be processed. */
+    boolean hasFailures() {
+      return failures.get();
+    }
+  }
+
+  /**
+   * Work on the items {@code [pos, end)} of a slice.
+   *
+   * <p>Implementations process the items in {@link #call()} and call {@link #handOverHalf(int)}
+   * between items, so that idle threads can take over part of the remaining items.
+   */
+  abstract static class Work implements Callable<Void> {
+    // Only set if the work runs on a SliceScheduler.
+    @Nullable private SliceScheduler scheduler;
+    @Nullable private Result result;
+    private long cost;
+    private int costClass;
+    private long sequence;
+
+    /** Items of the slice that this piece processes. */
+    int pos;
+
+    int end;
+
+    /** Number of items processed by this piece, for the statistics per thread. */
+    int processed;
+
+    /**
+     * Creates a piece that shares the items of this work. Its range is set by {@link
+     * #handOverHalf(int)}.
+     */
+    abstract Work newPiece();
+
+    /** Returns the result of the slice, or {@code null} if the work doesn't run on a scheduler. */
+    @Nullable
+    Result result() {
+      return result;
+    }
+
+    /**
+     * Hands over the second half of the remaining items to another thread, if the scheduler has no
+     * other work queued and at least {@code 2 * minItems} items remain.
+     *
+     * @return number of items that were handed over; the handed over items start at the new value
+     *     of {@link #end}.
+     */
+    int handOverHalf(int minItems) {
+      if (scheduler == null || end - pos < 2 * minItems || !scheduler.wantsWork()) {
+        return 0;
+      }
+      int mid = pos + (end - pos) / 2;
+      Work piece = newPiece();
+      piece.pos = mid;
+      piece.end = end;
+      piece.scheduler = scheduler;
+      piece.result = result;
+      piece.setCost(cost * (end - mid) / (end - pos));
+      setCost(cost - piece.cost);
+      int handedOver = end - mid;
+      end = mid;
+      scheduler.handOver(piece);
+      return handedOver;
+    }
+
+    private void setCost(long cost) {
+      this.cost = cost;
+      // Costs are compared by order of magnitude, so that slices of similar cost run in the order
+      // in which they were submitted.
+      this.costClass = 64 - Long.numberOfLeadingZeros(cost);
+    }
+  }
+}
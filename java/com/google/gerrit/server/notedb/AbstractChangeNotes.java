@@ -144,11 +144,31 @@ public abstract class AbstractChangeNotes<T> {
       return self();
     }
 
+    if (args.failOnLoadForTest.get()) {
+      throw new StorageException("Reading from NoteDb is disabled");
+    }
+    try (Repository repo = args.repoManager.openRepository(getProjectName())) {
+      load(repo);
+    } catch (IOException e) {
+      throw new StorageException(e);
+    }
+    return self();
+  }
+
+  /**
+   * Loads the notes from a repository that was opened by the caller.
+   *
+   * @param repo open repository of {@link #getProjectName()}; not closed by this method.
+   */
+  public T load(Repository repo) {
+    if (loaded) {
+      return self();
+    }
+
     if (args.failOnLoadForTest.get()) {
       throw new StorageException("Reading from NoteDb is disabled");
     }
     try (Timer0.Context timer = args.metrics.readLatency.start();
-        Repository repo = args.repoManager.openRepository(getProjectName());
         // Call openHandle even if reading is disabled, to trigger
         // auto-rebuilding before this object may get passed to a ChangeUpdate.
         LoadHandle handle = openHandle(repo, revision)) {
@@ -142,6 +142,22 @@ public class ChangeNotes extends AbstractChangeNotes<ChangeNotes> {
       return new ChangeNotes(args, change, true, refs).load();
     }
 
+    /**
+     * Create change notes from a repository that was opened by the caller.
+     *
+     * <p>Intended for loading many changes of the same project, where the caller opens the
+     * repository once and reads all meta refs in a single lookup.
+     *
+     * @param repo open repository of {@code project}; not closed by this method.
+     * @param project project of the change.
+     * @param changeId ID of the change.
+     * @param refs cache from which the meta ref of the change is read.
+     */
+    public ChangeNotes create(
+        Repository repo, Project.NameKey project, Change.Id changeId, RefCache refs) {
+      return new ChangeNotes(args, newChange(project, changeId), true, refs).load(repo);
+    }
+
     /**
      * Create change notes based on a {@link com.google.gerrit.entities.Change.Id}. This requires
      * using the Change index and should only be used when {@link
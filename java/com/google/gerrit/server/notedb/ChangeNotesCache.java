@@ -30,6 +30,7 @@ import com.google.gerrit.server.cache.CacheModule;
 import com.google.gerrit.server.cache.proto.Cache.ChangeNotesKeyProto;
 import com.google.gerrit.server.cache.serialize.CacheSerializer;
 import com.google.gerrit.server.cache.serialize.ObjectIdConverter;
+import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.notedb.AbstractChangeNotes.Args;
 import com.google.gerrit.server.notedb.ChangeNotesCommit.ChangeNotesRevWalk;
 import com.google.inject.Inject;
@@ -39,11 +40,13 @@ import com.google.inject.name.Named;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Supplier;
 import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.ObjectId;
 
 @Singleton
@@ -52,6 +55,10 @@ public class ChangeNotesCache {
 
   @VisibleForTesting static final String CACHE_NAME = "change_notes";
 
+  // Maximum number of prior meta commits we inspect to find a cached state to resume parsing from.
+  // If no cached state is found within this number of parents, the change is parsed from scratch.
+  private static final int MAX_HISTORY_LOOKBACK = 10;
+
   public static Module module() {
     return new CacheModule() {
       @Override
@@ -364,24 +371,72 @@ public class ChangeNotesCache {
     public ChangeNotesState call() throws ConfigInvalidException, IOException {
       logger.atFine().log(
           "Load change notes for change %s of project %s", key.changeId(), key.project());
-      ChangeNotesParser parser =
-          new ChangeNotesParser(
-              key.changeId(), key.id(), walkSupplier.get(), args.changeNoteJson, args.metrics);
+      if (enablePartialReloads) {
+        ChangeNotesState base = findBase();
+        if (base != null) {
+          ChangeNotesParser parser = newParser();
+          Optional<ChangeNotesState> result = parser.parseFrom(base);
+          if (result.isPresent()) {
+            args.metrics.cacheLoadCount.increment(true);
+            revisionNoteMap = parser.getRevisionNoteMap();
+            return result.get();
+          }
+          logger.atFine().log(
+              "Cannot resume parsing change %s from %s, falling back to full reload",
+              key.changeId(), base.metaId().name());
+        }
+      }
+
+      ChangeNotesParser parser = newParser();
       ChangeNotesState result = parser.parseAll();
+      args.metrics.cacheLoadCount.increment(false);
       // This assignment only happens if call() was actually called, which only
       // happens when Cache#get(K, Callable<V>) incurs a cache miss.
       revisionNoteMap = parser.getRevisionNoteMap();
       return result;
     }
+
+    private ChangeNotesParser newParser() {
+      return new ChangeNotesParser(
+          key.changeId(), key.id(), walkSupplier.get(), args.changeNoteJson, args.metrics);
+    }
+
+    /**
+     * Returns the most recent cached state of an ancestor of the requested meta commit, or null if
+     * none of the last {@link #MAX_HISTORY_LOOKBACK} ancestors is cached.
+     */
+    @Nullable
+    private ChangeNotesState findBase() throws IOException {
+      ChangeNotesRevWalk walk = walkSupplier.get();
+      walk.reset();
+      walk.markStart(walk.parseCommit(key.id()));
+      // Skip the requested commit itself, the caller already incurred a cache miss for it.
+      walk.next();
+      ChangeNotesCommit commit;
+      int i = 0;
+      while ((commit = walk.next()) != null && i++ < MAX_HISTORY_LOOKBACK) {
+        ChangeNotesState state =
+            cache.getIfPresent(Key.create(key.project(), key.changeId(), commit));
+        if (state != null) {
+          return state;
+        }
+      }
+      return null;
+    }
   }
 
   private final Cache<Key, ChangeNotesState> cache;
   private final Args args;
+  private final boolean enablePartialReloads;
 
   @Inject
-  ChangeNotesCache(@Named(CACHE_NAME) Cache<Key, ChangeNotesState> cache, Args args) {
+  ChangeNotesCache(
+      @Named(CACHE_NAME) Cache<Key, ChangeNotesState> cache,
+      Args args,
+      @GerritServerConfig Config cfg) {
     this.cache = cache;
     this.args = args;
+    this.enablePartialReloads = cfg.getBoolean("cache", CACHE_NAME, "enablePartialReloads", true);
   }
 
   Value get(
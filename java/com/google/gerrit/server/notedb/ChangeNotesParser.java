@@ -161,6 +161,8 @@ class ChangeNotesParser {
   // the latest record unsets the field).
   private Optional<PatchSet.Id> cherryPickOf;
   private Timestamp mergedOn;
+  // Reviewer updates of the state that parsing was resumed from, see parseFrom.
+  private List<ReviewerStatusUpdate> baseReviewerUpdates;
 
   ChangeNotesParser(
       Change.Id changeId,
@@ -191,6 +193,7 @@ class ChangeNotesParser {
     deletedPatchSets = new HashSet<>();
     patchSetStates = new HashMap<>();
     currentPatchSets = new ArrayList<>();
+    baseReviewerUpdates = Collections.emptyList();
   }
 
   ChangeNotesState parseAll() throws ConfigInvalidException, IOException {
@@ -224,6 +227,231 @@ class ChangeNotesParser {
     return buildState();
   }
 
+  /**
+   * Parses only the commits that were added on top of a previously parsed state.
+   *
+   * <p>Walks from the tip down to {@code base.metaId()} and folds the result into {@code base}, so
+   * the cost is proportional to the number of new commits rather than to the length of the meta
+   * history. The result is the same as that of {@link #parseAll()}.
+   *
+   * <p>Like {@link #parseAll()}, this method may only be called once per instance.
+   *
+   * @param base state previously parsed from an ancestor of the tip.
+   * @return the parsed state, or empty if {@code base} is not an ancestor of the tip, or if the new
+   *     commits contain updates whose effect on older data cannot be derived from {@code base},
+   *     e.g. deleting a patch set. In that case the caller must fall back to {@link #parseAll()} on
+   *     a new parser.
+   */
+  Optional<ChangeNotesState> parseFrom(ChangeNotesState base)
+      throws ConfigInvalidException, IOException {
+    if (base.metaId() == null || base.columns() == null) {
+      return Optional.empty();
+    }
+    walk.reset();
+    walk.markStart(walk.parseCommit(tip));
+
+    try (Timer0.Context timer = metrics.parseLatency.start()) {
+      boolean foundBase = false;
+      ChangeNotesCommit commit;
+      while ((commit = walk.next()) != null) {
+        if (commit.equals(base.metaId())) {
+          foundBase = true;
+          break;
+        }
+        parse(commit);
+      }
+      if (!foundBase || !canResumeFrom(base)) {
+        return Optional.empty();
+      }
+      // Keep the order of a full parse: reviewers touched by the new commits come first.
+      allPastReviewers.addAll(reviewers.rowKeySet());
+      resumeFrom(base);
+      if (hasReviewStarted == null) {
+        hasReviewStarted = base.columns().reviewStarted();
+      }
+      parseNotes();
+      base.allPastReviewers().stream()
+          .filter(r -> !allPastReviewers.contains(r))
+          .forEach(allPastReviewers::add);
+      pruneReviewers();
+      pruneReviewersByEmail();
+
+      updatePatchSetStates();
+      checkMandatoryFooters();
+    }
+
+    return Optional.of(buildState());
+  }
+
+  /**
+   * Checks whether the commits parsed so far can be folded into {@code base}.
+   *
+   * <p>A {@link ChangeNotesState} only contains the outcome of older commits, not the entities that
+   * were discarded while parsing them. Newer commits that would bring such entities back, or that
+   * would discard entities retroactively, require a full parse.
+   */
+  private boolean canResumeFrom(ChangeNotesState base) {
+    if (!deletedPatchSets.isEmpty()) {
+      return false;
+    }
+
+    int maxBasePatchSet = 0;
+    Set<PatchSet.Id> basePatchSets = new HashSet<>();
+    for (Map.Entry<PatchSet.Id, PatchSet> e : base.patchSets()) {
+      basePatchSets.add(e.getKey());
+      maxBasePatchSet = Math.max(maxBasePatchSet, e.getKey().get());
+    }
+    for (Map.Entry<PatchSet.Id, PatchSet.Builder> e : patchSets.entrySet()) {
+      if (e.getValue().commitId().isPresent()) {
+        if (e.getKey().get() <= maxBasePatchSet) {
+          // Either a duplicate patch set or a patch set for which older entities were pruned.
+          return false;
+        }
+      } else if (!basePatchSets.contains(e.getKey())) {
+        return false;
+      }
+    }
+
+    // Approvals of removed reviewers are not part of the base state, so they can't be restored if
+    // the reviewer is added again.
+    Set<Account.Id> baseReviewers = base.reviewers().all();
+    for (Account.Id reviewer : reviewers.rowKeySet()) {
+      if (base.allPastReviewers().contains(reviewer) && !baseReviewers.contains(reviewer)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Folds {@code base} into the fields parsed so far, as if parsing had continued with the commits
+   * {@code base} was parsed from.
+   */
+  private void resumeFrom(ChangeNotesState base) {
+    ChangeNotesState.ChangeColumns c = base.columns();
+    updateCount += base.updateCount();
+    createdOn = c.createdOn();
+    if (lastUpdatedOn == null || c.lastUpdatedOn().after(lastUpdatedOn)) {
+      lastUpdatedOn = c.lastUpdatedOn();
+    }
+    ownerId = c.owner();
+    serverId = base.serverId();
+    if (branch == null) {
+      branch = c.branch();
+    }
+    if (changeId == null) {
+      changeId = c.changeKey().get();
+    }
+    if (subject == null) {
+      subject = c.subject();
+    }
+    if (c.originalSubject() != null) {
+      originalSubject = c.originalSubject();
+    }
+    if (topic == null) {
+      topic = c.topic();
+    }
+    if (hashtags == null) {
+      hashtags = base.hashtags();
+    }
+    if (submissionId == null) {
+      submissionId = c.submissionId();
+      mergedOn = base.mergedOn();
+    }
+    if (submitRecords.isEmpty()) {
+      submitRecords.addAll(base.submitRecords());
+    }
+    if (status == null) {
+      status = c.status();
+      applyStatusToBufferedApprovals(status);
+    }
+    if (isPrivate == null) {
+      isPrivate = c.isPrivate();
+    }
+    if (revertOf == null) {
+      revertOf = c.revertOf();
+    }
+    if (cherryPickOf == null) {
+      cherryPickOf = Optional.ofNullable(c.cherryPickOf());
+    }
+
+    if (workInProgress == null) {
+      workInProgress = c.workInProgress();
+      if (workInProgress) {
+        // The change was already in WIP state before the new commits, so all reviewers added since
+        // then are pending as well.
+        pendingReviewers = mergeReviewers(reviewers, base.pendingReviewers());
+        pendingReviewersByEmail =
+            mergeReviewersByEmail(reviewersByEmail, base.pendingReviewersByEmail());
+      }
+    }
+    putAllAbsent(reviewers, base.reviewers().asTable());
+    putAllAbsent(reviewersByEmail, base.reviewersByEmail().asTable());
+    baseReviewerUpdates = base.reviewerUpdates();
+
+    for (AttentionSetUpdate u : base.attentionSet()) {
+      latestAttentionStatus.putIfAbsent(u.account(), u);
+    }
+    allAttentionSetUpdates.addAll(base.allAttentionSetUpdates());
+    assigneeUpdates.addAll(base.assigneeUpdates());
+    allChangeMessages.addAll(Lists.reverse(base.changeMessages()));
+
+    for (Map.Entry<PatchSet.Id, PatchSet> e : base.patchSets()) {
+      PatchSet ps = e.getValue();
+      PatchSet.Builder b =
+          PatchSet.builder()
+              .id(ps.id())
+              .commitId(ps.commitId())
+              .uploader(ps.uploader())
+              .createdOn(ps.createdOn())
+              .groups(ps.groups())
+              .pushCertificate(ps.pushCertificate())
+              .description(ps.description());
+      // Newer commits may have updated mutable patch set fields.
+      PatchSet.Builder pending = patchSets.get(e.getKey());
+      if (pending != null) {
+        if (!pending.groups().isEmpty()) {
+          b.groups(pending.groups());
+        }
+        if (pending.description().isPresent()) {
+          b.description(pending.description());
+        }
+      }
+      patchSets.put(e.getKey(), b);
+    }
+    if (c.currentPatchSetId() != null) {
+      currentPatchSets.add(c.currentPatchSetId());
+    }
+    for (Map.Entry<PatchSet.Id, PatchSetApproval> e : base.approvals()) {
+      approvals.putIfAbsent(e.getValue().key(), e.getValue().toBuilder());
+    }
+  }
+
+  private static ReviewerSet mergeReviewers(
+      Table<Account.Id, ReviewerStateInternal, Timestamp> newer, ReviewerSet older) {
+    Table<Account.Id, ReviewerStateInternal, Timestamp> result = HashBasedTable.create(newer);
+    putAllAbsent(result, older.asTable());
+    return ReviewerSet.fromTable(Tables.transpose(result));
+  }
+
+  private static ReviewerByEmailSet mergeReviewersByEmail(
+      Table<Address, ReviewerStateInternal, Timestamp> newer, ReviewerByEmailSet older) {
+    Table<Address, ReviewerStateInternal, Timestamp> result = HashBasedTable.create(newer);
+    putAllAbsent(result, older.asTable());
+    return ReviewerByEmailSet.fromTable(Tables.transpose(result));
+  }
+
+  /** Adds reviewers from {@code older} unless {@code table} already has a state for them. */
+  private static <T> void putAllAbsent(
+      Table<T, ReviewerStateInternal, Timestamp> table,
+      Table<ReviewerStateInternal, T, Timestamp> older) {
+    for (Table.Cell<ReviewerStateInternal, T, Timestamp> c : older.cellSet()) {
+      if (!table.containsRow(c.getColumnKey())) {
+        table.put(c.getColumnKey(), c.getRowKey(), c.getValue());
+      }
+    }
+  }
+
   RevisionNoteMap<ChangeRevisionNote> getRevisionNoteMap() {
     return revisionNoteMap;
   }
@@ -311,8 +539,11 @@ class ChangeNotesParser {
   }
 
   private List<ReviewerStatusUpdate> buildReviewerUpdates() {
-    List<ReviewerStatusUpdate> result = new ArrayList<>();
+    List<ReviewerStatusUpdate> result = new ArrayList<>(baseReviewerUpdates);
     HashMap<Account.Id, ReviewerStateInternal> lastState = new HashMap<>();
+    for (ReviewerStatusUpdate u : baseReviewerUpdates) {
+      lastState.put(u.reviewer(), u.state());
+    }
     for (ReviewerStatusUpdate u : Lists.reverse(reviewerUpdates)) {
       if (!Objects.equals(ownerId, u.reviewer()) && lastState.get(u.reviewer()) != u.state()) {
         result.add(u);
@@ -655,6 +886,11 @@ class ChangeNotesParser {
     if (status == null) {
       throw invalidFooter(FOOTER_STATUS, statusLines.get(0));
     }
+    applyStatusToBufferedApprovals(status);
+    return status;
+  }
+
+  private void applyStatusToBufferedApprovals(@Nullable Change.Status status) {
     // All approvals after MERGED and before the next status change get the postSubmit
     // bit. (Currently the state can't change from MERGED to something else, but just in case.) The
     // exception is the legacy SUBM approval, which is never considered post-submit, but might end
@@ -667,7 +903,6 @@ class ChangeNotesParser {
       }
     }
     bufferedApprovals.clear();
-    return status;
   }
 
   private PatchSet.Id parsePatchSetId(ChangeNotesCommit commit) throws ConfigInvalidException {
@@ -14,10 +14,13 @@
 
 package com.google.gerrit.server.notedb;
 
+import com.google.gerrit.metrics.Counter1;
 import com.google.gerrit.metrics.Description;
 import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
 import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.server.logging.Metadata;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
@@ -43,6 +46,12 @@ class NoteDbMetrics {
    */
   final Timer0 parseLatency;
 
+  /**
+   * Number of change notes cache loads, split by whether the state was derived from a previously
+   * cached state of the same change.
+   */
+  final Counter1<Boolean> cacheLoadCount;
+
   @Inject
   NoteDbMetrics(MetricMaker metrics) {
     updateLatency =
@@ -72,5 +81,13 @@ class NoteDbMetrics {
             new Description("NoteDb parse latency for changes")
                 .setCumulative()
                 .setUnit(Units.MICROSECONDS));
+
+    cacheLoadCount =
+        metrics.newCounter(
+            "notedb/change_notes_cache_load_count",
+            new Description("Total number of change notes cache loads from NoteDb")
+                .setRate()
+                .setUnit("loads"),
+            Field.ofBoolean("partial", Metadata.Builder::partial).build());
   }
 }
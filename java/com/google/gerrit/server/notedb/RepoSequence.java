@@ -32,6 +32,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.util.concurrent.Runnables;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.entities.RefNames;
 import com.google.gerrit.exceptions.StorageException;
@@ -40,10 +41,14 @@ import com.google.gerrit.git.RefUpdateUtil;
 import com.google.gerrit.server.extensions.events.GitReferenceUpdated;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -63,6 +68,12 @@ import org.eclipse.jgit.transport.ReceiveCommand;
  * processes can increment the counter by a larger number and hand out numbers from that range in
  * memory until they run out. This means concurrent processes will hand out somewhat non-monotonic
  * numbers.
+ *
+ * <p>If a refill executor is given, the sequence runs in sharded mode: the size of the reserved
+ * blocks adapts to the rate at which numbers are handed out, between the configured batch size and
+ * a maximum, and the next block is reserved in the background before the current block is used
+ * up. Each process then hands out numbers from its own disjoint blocks, and the ref update that
+ * reserves a block is mostly taken off the path of the caller.
  */
 public class RepoSequence {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
@@ -72,6 +83,48 @@ public class RepoSequence {
     int get();
   }
 
+  /** Receives notifications about the reservation of blocks of numbers, e.g. to record metrics. */
+  public interface Listener {
+    Listener DISABLED =
+        new Listener() {
+          @Override
+          public void onBlockReserved(long latencyNanos) {}
+
+          @Override
+          public void onLockFailure() {}
+        };
+
+    /**
+     * Called after a block of numbers was reserved.
+     *
+     * @param latencyNanos time it took to read and update the sequence ref.
+     */
+    void onBlockReserved(long latencyNanos);
+
+    /** Called if reserving a block failed because the sequence ref was updated concurrently. */
+    void onLockFailure();
+  }
+
+  /** A block of sequence numbers reserved by this process. */
+  private static class Block {
+    /** First number of the block. */
+    final int start;
+
+    /** First number after the block. */
+    final int end;
+
+    Block(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /** Blocks that are used up faster than this grow in sharded mode. */
+  private static final long FAST_BLOCK_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  /** Blocks that last longer than this shrink in sharded mode. */
+  private static final long SLOW_BLOCK_NANOS = TimeUnit.MINUTES.toNanos(10);
+
   @VisibleForTesting
   static RetryerBuilder<ImmutableList<Integer>> retryerBuilder() {
     return RetryerBuilder.<ImmutableList<Integer>>newBuilder()
@@ -94,15 +147,23 @@ public class RepoSequence {
   private final String refName;
   private final Seed seed;
   private final int floor;
-  private final int batchSize;
+  private final int minBatchSize;
+  private final int maxBatchSize;
   private final Runnable afterReadRef;
   private final Retryer<ImmutableList<Integer>> retryer;
+  @Nullable private final Executor refillExecutor;
+  private final Listener listener;
 
   // Protects all non-final fields.
   private final Lock counterLock;
 
   private int limit;
   private int counter;
+  private int batchSize;
+  private final Deque<Block> reserved = new ArrayDeque<>();
+  private boolean refilling;
+  private int generation;
+  private long blockStartNanos;
 
   @VisibleForTesting int acquireCount;
 
@@ -145,6 +206,39 @@ public class RepoSequence {
         floor);
   }
 
+  /**
+   * Creates a sequence in sharded mode.
+   *
+   * @param batchSize minimum number of sequence numbers that are reserved at once.
+   * @param maxBatchSize maximum number of sequence numbers that are reserved at once.
+   * @param refillExecutor executor on which blocks are reserved in the background.
+   * @param listener listener that is notified about block reservations.
+   */
+  public RepoSequence(
+      GitRepositoryManager repoManager,
+      GitReferenceUpdated gitRefUpdated,
+      Project.NameKey projectName,
+      String name,
+      Seed seed,
+      int batchSize,
+      int maxBatchSize,
+      Executor refillExecutor,
+      Listener listener) {
+    this(
+        repoManager,
+        gitRefUpdated,
+        projectName,
+        name,
+        seed,
+        batchSize,
+        Runnables.doNothing(),
+        RETRYER,
+        0,
+        maxBatchSize,
+        requireNonNull(refillExecutor, "refillExecutor"),
+        listener);
+  }
+
   @VisibleForTesting
   RepoSequence(
       GitRepositoryManager repoManager,
@@ -168,6 +262,35 @@ public class RepoSequence {
       Runnable afterReadRef,
       Retryer<ImmutableList<Integer>> retryer,
       int floor) {
+    this(
+        repoManager,
+        gitRefUpdated,
+        projectName,
+        name,
+        seed,
+        batchSize,
+        afterReadRef,
+        retryer,
+        floor,
+        batchSize,
+        null,
+        Listener.DISABLED);
+  }
+
+  @VisibleForTesting
+  RepoSequence(
+      GitRepositoryManager repoManager,
+      GitReferenceUpdated gitRefUpdated,
+      Project.NameKey projectName,
+      String name,
+      Seed seed,
+      int batchSize,
+      Runnable afterReadRef,
+      Retryer<ImmutableList<Integer>> retryer,
+      int floor,
+      int maxBatchSize,
+      @Nullable Executor refillExecutor,
+      Listener listener) {
     this.repoManager = requireNonNull(repoManager, "repoManager");
     this.gitRefUpdated = requireNonNull(gitRefUpdated, "gitRefUpdated");
     this.projectName = requireNonNull(projectName, "projectName");
@@ -184,9 +307,18 @@ public class RepoSequence {
     this.floor = floor;
 
     checkArgument(batchSize > 0, "expected batchSize > 0, got: %s", batchSize);
+    checkArgument(
+        maxBatchSize >= batchSize,
+        "expected maxBatchSize >= batchSize, got: %s < %s",
+        maxBatchSize,
+        batchSize);
+    this.minBatchSize = batchSize;
+    this.maxBatchSize = maxBatchSize;
     this.batchSize = batchSize;
     this.afterReadRef = requireNonNull(afterReadRef, "afterReadRef");
     this.retryer = requireNonNull(retryer, "retryer");
+    this.refillExecutor = refillExecutor;
+    this.listener = requireNonNull(listener, "listener");
 
     logger.atFine().log("sequence batch size for %s is %s", name, batchSize);
     counterLock = new ReentrantLock(true);
@@ -224,22 +356,21 @@ public class RepoSequence {
             try {
               if (count == 1) {
                 if (counter >= limit) {
-                  acquire(batchSize);
+                  nextBlock(batchSize);
                 }
-                return ImmutableList.of(counter++);
+                ImmutableList<Integer> id = ImmutableList.of(counter++);
+                maybeRefill();
+                return id;
               }
 
               List<Integer> ids = new ArrayList<>(count);
-              while (counter < limit) {
-                ids.add(counter++);
-                if (ids.size() == count) {
-                  return ImmutableList.copyOf(ids);
-                }
-              }
-              acquire(Math.max(count - ids.size(), batchSize));
               while (ids.size() < count) {
+                if (counter >= limit) {
+                  nextBlock(Math.max(count - ids.size(), batchSize));
+                }
                 ids.add(counter++);
               }
+              maybeRefill();
               return ImmutableList.copyOf(ids);
             } finally {
               counterLock.unlock();
@@ -254,17 +385,109 @@ public class RepoSequence {
   }
 
   /**
-   * Updates the next available sequence number in NoteDb in order to have a batch of sequence
-   * numbers available that can be handed out. {@link #counter} stores the next sequence number that
-   * can be handed out. When {@link #limit} is reached a new batch of sequence numbers needs to be
-   * retrieved by calling this method.
+   * Switches to the next block of sequence numbers that can be handed out. {@link #counter} stores
+   * the next sequence number that can be handed out. When {@link #limit} is reached a new batch of
+   * sequence numbers needs to be retrieved by calling this method.
+   *
+   * <p>Uses a block that was reserved in the background, if there is one. Otherwise a new block is
+   * reserved.
    *
    * <p><strong>Note:</strong> Callers are required to acquire the {@link #counterLock} before
    * calling this method.
    *
+   * @param count the number of sequence numbers which should be retrieved if a new block needs to
+   *     be reserved
+   */
+  private void nextBlock(int count) {
+    Block block = reserved.poll();
+    if (block == null) {
+      block = reserve(count);
+      acquireCount++;
+    }
+    counter = block.start;
+    limit = block.end;
+    adaptBatchSize();
+  }
+
+  /**
+   * Adapts the size of the blocks that are reserved to the rate at which the numbers of the
+   * previous block were handed out.
+   *
+   * <p><strong>Note:</strong> Callers are required to acquire the {@link #counterLock} before
+   * calling this method.
+   */
+  private void adaptBatchSize() {
+    if (refillExecutor == null) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (blockStartNanos != 0) {
+      long elapsed = now - blockStartNanos;
+      if (elapsed < FAST_BLOCK_NANOS) {
+        batchSize = (int) Math.min((long) batchSize * 2, maxBatchSize);
+      } else if (elapsed > SLOW_BLOCK_NANOS) {
+        batchSize = Math.max(batchSize / 2, minBatchSize);
+      }
+    }
+    blockStartNanos = now;
+  }
+
+  /**
+   * Reserves the next block in the background once half of the current block was handed out.
+   *
+   * <p><strong>Note:</strong> Callers are required to acquire the {@link #counterLock} before
+   * calling this method.
+   */
+  private void maybeRefill() {
+    if (refillExecutor == null
+        || refilling
+        || !reserved.isEmpty()
+        || limit - counter > batchSize / 2) {
+      return;
+    }
+    refilling = true;
+    int count = batchSize;
+    int expectedGeneration = generation;
+    try {
+      refillExecutor.execute(() -> refill(count, expectedGeneration));
+    } catch (RejectedExecutionException e) {
+      refilling = false;
+    }
+  }
+
+  private void refill(int count, int expectedGeneration) {
+    Block block = null;
+    try {
+      block = reserve(count);
+    } catch (StorageException e) {
+      // The block is reserved by the caller of next() once the current block is used up.
+      logger.atFine().withCause(e).log("failed to reserve ids on %s in background", refName);
+    }
+
+    counterLock.lock();
+    try {
+      refilling = false;
+      if (block != null && generation == expectedGeneration) {
+        reserved.add(block);
+        acquireCount++;
+      }
+    } finally {
+      counterLock.unlock();
+    }
+  }
+
+  /**
+   * Updates the next available sequence number in NoteDb in order to reserve a block of sequence
+   * numbers that can be handed out.
+   *
+   * <p>Does not modify the state of this instance, so callers don't need to hold the {@link
+   * #counterLock}.
+   *
    * @param count the number of sequence numbers which should be retrieved
+   * @return the reserved block
    */
-  private void acquire(int count) {
+  private Block reserve(int count) {
+    long start = System.nanoTime();
     try (Repository repo = repoManager.openRepository(projectName);
         RevWalk rw = new RevWalk(repo)) {
       logger.atFine().log("acquire %d ids on %s in %s", count, refName, projectName);
@@ -283,9 +506,11 @@ public class RepoSequence {
       RefUpdate refUpdate =
           IntBlob.tryStore(repo, rw, projectName, refName, oldId, next + count, gitRefUpdated);
       RefUpdateUtil.checkResult(refUpdate);
-      counter = next;
-      limit = counter + count;
-      acquireCount++;
+      listener.onBlockReserved(System.nanoTime() - start);
+      return new Block(next, next + count);
+    } catch (LockFailureException e) {
+      listener.onLockFailure();
+      throw new StorageException(e);
     } catch (IOException e) {
       throw new StorageException(e);
     }
@@ -315,6 +540,9 @@ public class RepoSequence {
       counter = value;
       limit = counter + batchSize;
       acquireCount++;
+      // Blocks reserved in the background were taken from the old value.
+      reserved.clear();
+      generation++;
     } catch (IOException e) {
       throw new StorageException(e);
     } finally {
@@ -15,27 +15,37 @@
 package com.google.gerrit.server.notedb;
 
 import com.google.common.collect.ImmutableList;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.metrics.Counter1;
 import com.google.gerrit.metrics.Description;
 import com.google.gerrit.metrics.Description.Units;
 import com.google.gerrit.metrics.Field;
 import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
 import com.google.gerrit.metrics.Timer2;
 import com.google.gerrit.server.config.AllProjectsName;
 import com.google.gerrit.server.config.AllUsersName;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.extensions.events.GitReferenceUpdated;
 import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.WorkQueue;
 import com.google.gerrit.server.logging.Metadata;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import org.eclipse.jgit.lib.Config;
 
 @Singleton
 public class Sequences {
   private static final String SECTION_NOTEDB = "noteDb";
   private static final String KEY_SEQUENCE_BATCH_SIZE = "sequenceBatchSize";
+  private static final String KEY_SEQUENCE_MODE = "sequenceMode";
+  private static final String KEY_MAX_SEQUENCE_BATCH_SIZE = "maxSequenceBatchSize";
   private static final int DEFAULT_ACCOUNTS_SEQUENCE_BATCH_SIZE = 1;
   private static final int DEFAULT_CHANGES_SEQUENCE_BATCH_SIZE = 20;
+  private static final int DEFAULT_MAX_CHANGES_SEQUENCE_BATCH_SIZE = 1000;
 
   public static final String NAME_ACCOUNTS = "accounts";
   public static final String NAME_GROUPS = "groups";
@@ -51,12 +61,24 @@ public class Sequences {
     GROUPS;
   }
 
+  /** How the change sequence reserves blocks of change numbers. */
+  public enum SequenceMode {
+    /** Reserve blocks of fixed size when the current block is used up. */
+    DEFAULT,
+
+    /** Reserve blocks of adaptive size ahead of time in the background. */
+    SHARDED;
+  }
+
   private final RepoSequence accountSeq;
   private final RepoSequence changeSeq;
   private final RepoSequence groupSeq;
   private final Timer2<SequenceType, Boolean> nextIdLatency;
 
-  @Inject
+  /**
+   * Constructor for callers that don't run a work queue. The change sequence always reserves blocks
+   * of fixed size.
+   */
   public Sequences(
       @GerritServerConfig Config cfg,
       GitRepositoryManager repoManager,
@@ -64,6 +86,56 @@ public class Sequences {
       AllProjectsName allProjects,
       AllUsersName allUsers,
       MetricMaker metrics) {
+    this(
+        cfg,
+        repoManager,
+        gitRefUpdated,
+        allProjects,
+        allUsers,
+        metrics,
+        (Supplier<Executor>) null);
+  }
+
+  @Inject
+  public Sequences(
+      @GerritServerConfig Config cfg,
+      GitRepositoryManager repoManager,
+      GitReferenceUpdated gitRefUpdated,
+      AllProjectsName allProjects,
+      AllUsersName allUsers,
+      MetricMaker metrics,
+      WorkQueue workQueue) {
+    this(
+        cfg,
+        repoManager,
+        gitRefUpdated,
+        allProjects,
+        allUsers,
+        metrics,
+        () -> workQueue.createQueue(1, "ChangeSequenceRefill"));
+  }
+
+  /**
+   * @param refillExecutor creates the executor that reserves blocks of change numbers in the
+   *     background, if the change sequence is sharded; null to always reserve blocks of fixed size.
+   */
+  private Sequences(
+      Config cfg,
+      GitRepositoryManager repoManager,
+      GitReferenceUpdated gitRefUpdated,
+      AllProjectsName allProjects,
+      AllUsersName allUsers,
+      MetricMaker metrics,
+      @Nullable Supplier<Executor> refillExecutor) {
+    nextIdLatency =
+        metrics.newTimer(
+            "sequence/next_id_latency",
+            new Description("Latency of requesting IDs from repo sequences")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            Field.ofEnum(SequenceType.class, "sequence", Metadata.Builder::noteDbSequenceType)
+                .build(),
+            Field.ofBoolean("multiple", Metadata.Builder::multiple).build());
 
     int accountBatchSize =
         cfg.getInt(
@@ -86,14 +158,38 @@ public class Sequences {
             NAME_CHANGES,
             KEY_SEQUENCE_BATCH_SIZE,
             DEFAULT_CHANGES_SEQUENCE_BATCH_SIZE);
-    changeSeq =
-        new RepoSequence(
-            repoManager,
-            gitRefUpdated,
-            allProjects,
-            NAME_CHANGES,
-            () -> FIRST_CHANGE_ID,
-            changeBatchSize);
+    SequenceMode changeSequenceMode =
+        cfg.getEnum(SECTION_NOTEDB, NAME_CHANGES, KEY_SEQUENCE_MODE, SequenceMode.DEFAULT);
+    if (changeSequenceMode == SequenceMode.SHARDED && refillExecutor != null) {
+      int maxChangeBatchSize =
+          Math.max(
+              changeBatchSize,
+              cfg.getInt(
+                  SECTION_NOTEDB,
+                  NAME_CHANGES,
+                  KEY_MAX_SEQUENCE_BATCH_SIZE,
+                  DEFAULT_MAX_CHANGES_SEQUENCE_BATCH_SIZE));
+      changeSeq =
+          new RepoSequence(
+              repoManager,
+              gitRefUpdated,
+              allProjects,
+              NAME_CHANGES,
+              () -> FIRST_CHANGE_ID,
+              changeBatchSize,
+              maxChangeBatchSize,
+              refillExecutor.get(),
+              newListener(metrics, SequenceType.CHANGES));
+    } else {
+      changeSeq =
+          new RepoSequence(
+              repoManager,
+              gitRefUpdated,
+              allProjects,
+              NAME_CHANGES,
+              () -> FIRST_CHANGE_ID,
+              changeBatchSize);
+    }
 
     int groupBatchSize = 1;
     groupSeq =
@@ -104,16 +200,38 @@ public class Sequences {
             NAME_GROUPS,
             () -> FIRST_GROUP_ID,
             groupBatchSize);
+  }
 
-    nextIdLatency =
+  private static RepoSequence.Listener newListener(MetricMaker metrics, SequenceType type) {
+    Timer1<SequenceType> blockReserveLatency =
         metrics.newTimer(
-            "sequence/next_id_latency",
-            new Description("Latency of requesting IDs from repo sequences")
+            "sequence/block_reserve_latency",
+            new Description("Latency of reserving a block of IDs in a repo sequence")
                 .setCumulative()
                 .setUnit(Units.MILLISECONDS),
             Field.ofEnum(SequenceType.class, "sequence", Metadata.Builder::noteDbSequenceType)
-                .build(),
-            Field.ofBoolean("multiple", Metadata.Builder::multiple).build());
+                .build());
+    Counter1<SequenceType> lockFailureCount =
+        metrics.newCounter(
+            "sequence/lock_failure_count",
+            new Description(
+                    "Number of failures to reserve a block of IDs in a repo sequence due to"
+                        + " concurrent updates")
+                .setRate()
+                .setUnit("failures"),
+            Field.ofEnum(SequenceType.class, "sequence", Metadata.Builder::noteDbSequenceType)
+                .build());
+    return new RepoSequence.Listener() {
+      @Override
+      public void onBlockReserved(long latencyNanos) {
+        blockReserveLatency.record(type, latencyNanos, TimeUnit.NANOSECONDS);
+      }
+
+      @Override
+      public void onLockFailure() {
+        lockFailureCount.increment(type);
+      }
+    };
   }
 
   public int nextAccountId() {
@@ -0,0 +1,103 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.permissions;
+
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.BranchNameKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Union of the change numbers of several branches, with the destination branch of each change.
+ *
+ * <p>Ref filtering looks up changes in no particular order. The change numbers of all branches
+ * are therefore merged into one sorted array, and membership of dense change numbers is answered
+ * by a bit set that is offset by the lowest change number. Sparse change numbers are looked up in
+ * the sorted array only, so that a few changes with far apart numbers don't need a large bit set.
+ */
+class ChangeBranchLookup {
+  /**
+   * Maximum ratio between the range of the change numbers and their count for which the bit set
+   * is used. At this ratio the bit set takes as much memory as the array of change numbers.
+   */
+  private static final int MAX_SPARSENESS = Integer.SIZE;
+
+  static ChangeBranchLookup of(Map<BranchNameKey, int[]> changesByBranch) {
+    List<BranchNameKey> branches = new ArrayList<>(changesByBranch.keySet());
+    int count = 0;
+    for (int[] changes : changesByBranch.values()) {
+      count += changes.length;
+    }
+    // Change number in the upper half, index of the branch in the lower half.
+    long[] entries = new long[count];
+    int i = 0;
+    for (int b = 0; b < branches.size(); b++) {
+      for (int id : changesByBranch.get(branches.get(b))) {
+        entries[i++] = ((long) id << Integer.SIZE) | b;
+      }
+    }
+    Arrays.sort(entries);
+
+    int[] ids = new int[count];
+    BranchNameKey[] branchOf = new BranchNameKey[count];
+    for (int j = 0; j < count; j++) {
+      ids[j] = (int) (entries[j] >>> Integer.SIZE);
+      branchOf[j] = branches.get((int) entries[j]);
+    }
+
+    int offset = count > 0 ? ids[0] : 0;
+    BitSet bits = null;
+    if (count > 0 && (long) ids[count - 1] - offset < (long) count * MAX_SPARSENESS) {
+      bits = new BitSet(ids[count - 1] - offset + 1);
+      for (int id : ids) {
+        bits.set(id - offset);
+      }
+    }
+    return new ChangeBranchLookup(ids, branchOf, offset, bits);
+  }
+
+  private final int[] ids;
+  private final BranchNameKey[] branches;
+  private final int offset;
+  @Nullable private final BitSet bits;
+
+  private ChangeBranchLookup(
+      int[] ids, BranchNameKey[] branches, int offset, @Nullable BitSet bits) {
+    this.ids = ids;
+    this.branches = branches;
+    this.offset = offset;
+    this.bits = bits;
+  }
+
+  boolean contains(int id) {
+    if (bits != null) {
+      return id >= offset && bits.get(id - offset);
+    }
+    return Arrays.binarySearch(ids, id) >= 0;
+  }
+
+  /** Returns the destination branch of the change, or {@code null} if it isn't contained. */
+  @Nullable
+  BranchNameKey branch(int id) {
+    if (bits != null && !contains(id)) {
+      return null;
+    }
+    int i = Arrays.binarySearch(ids, id);
+    return i >= 0 ? branches[i] : null;
+  }
+}
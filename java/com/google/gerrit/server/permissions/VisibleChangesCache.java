@@ -15,8 +15,11 @@
 package com.google.gerrit.server.permissions;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.flogger.LazyArgs.lazy;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.BranchNameKey;
@@ -32,13 +35,22 @@ import com.google.gerrit.server.query.change.ChangeData;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.eclipse.jgit.lib.Repository;
 
 /**
  * Gets all of the visible by current user changes in the repository that are available in the
  * change index and cache.
+ *
+ * <p>Visibility of changes that are not private only depends on their destination branch. Such
+ * changes are therefore collected into one sorted array of change numbers per branch, and
+ * {@link RefPermission#READ} is evaluated once per branch instead of once per change. Only private
+ * changes need a permission check of their own.
  */
 class VisibleChangesCache {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
@@ -53,7 +65,8 @@ class VisibleChangesCache {
   private final PermissionBackend.ForProject permissionBackendForProject;
 
   private final Repository repository;
-  private Map<Change.Id, BranchNameKey> visibleChanges;
+  private Map<BranchNameKey, int[]> visibleChanges;
+  private ChangeBranchLookup allVisibleChanges;
 
   @Inject
   VisibleChangesCache(
@@ -76,21 +89,28 @@ class VisibleChangesCache {
    */
   public boolean isVisible(Change.Id changeId) throws PermissionBackendException {
     cachedVisibleChanges();
-    return visibleChanges.containsKey(changeId);
+    return allVisibleChanges.contains(changeId.get());
   }
 
   /**
-   * Returns the visible changes in the repository {@code repo}. If not cached, computes the visible
-   * changes and caches them.
+   * Returns the visible changes in the repository {@code repo} as sorted arrays of change numbers,
+   * keyed by destination branch. If not cached, computes the visible changes and caches them.
    */
-  public Map<Change.Id, BranchNameKey> cachedVisibleChanges() throws PermissionBackendException {
+  public Map<BranchNameKey, int[]> cachedVisibleChanges() throws PermissionBackendException {
     if (visibleChanges == null) {
-      if (changeCache == null) {
-        visibleChangesByScan();
-      } else {
-        visibleChangesBySearch();
+      ChangesByBranch changes = new ChangesByBranch();
+      if (projectState.statePermitsRead()) {
+        if (changeCache == null) {
+          visibleChangesByScan(changes);
+        } else {
+          visibleChangesBySearch(changes);
+        }
       }
-      logger.atFinest().log("Visible changes: %s", visibleChanges.keySet());
+      visibleChanges = filterByBranchVisibility(changes);
+      allVisibleChanges = ChangeBranchLookup.of(visibleChanges);
+      logger.atFinest().log(
+          "Visible changes: %s",
+          lazy(() -> Maps.transformValues(visibleChanges, Arrays::toString)));
     }
     return visibleChanges;
   }
@@ -102,20 +122,22 @@ class VisibleChangesCache {
    */
   @Nullable
   public BranchNameKey getBranchNameKey(Change.Id changeId) throws PermissionBackendException {
-    return cachedVisibleChanges().get(changeId);
+    cachedVisibleChanges();
+    return allVisibleChanges.branch(changeId.get());
   }
 
-  private void visibleChangesBySearch() throws PermissionBackendException {
-    visibleChanges = new HashMap<>();
+  private void visibleChangesBySearch(ChangesByBranch changes) throws PermissionBackendException {
     Project.NameKey project = projectState.getNameKey();
     try {
       for (ChangeData cd : changeCache.getChangeData(project)) {
-        if (!projectState.statePermitsRead()) {
+        Change change = cd.change();
+        if (!change.isPrivate()) {
+          changes.add(change.getDest(), change.getId());
           continue;
         }
         try {
           permissionBackendForProject.change(cd).check(ChangePermission.READ);
-          visibleChanges.put(cd.getId(), cd.change().getDest());
+          changes.addVisible(change.getDest(), change.getId());
         } catch (AuthException e) {
           // Do nothing.
         }
@@ -126,44 +148,88 @@ class VisibleChangesCache {
     }
   }
 
-  private void visibleChangesByScan() throws PermissionBackendException {
-    visibleChanges = new HashMap<>();
+  private void visibleChangesByScan(ChangesByBranch changes) throws PermissionBackendException {
     Project.NameKey p = projectState.getNameKey();
-    ImmutableList<ChangeNotesResult> changes;
+    ImmutableList<ChangeNotesResult> notesResults;
     try {
-      changes = changeNotesFactory.scan(repository, p).collect(toImmutableList());
+      notesResults = changeNotesFactory.scan(repository, p).collect(toImmutableList());
     } catch (IOException e) {
       logger.atSevere().withCause(e).log(
           "Cannot load changes for project %s, assuming no changes are visible", p);
       return;
     }
 
-    for (ChangeNotesResult notesResult : changes) {
-      ChangeNotes notes = toNotes(notesResult);
-      if (notes != null) {
-        visibleChanges.put(notes.getChangeId(), notes.getChange().getDest());
+    for (ChangeNotesResult notesResult : notesResults) {
+      if (notesResult.error().isPresent()) {
+        logger.atWarning().withCause(notesResult.error().get()).log(
+            "Failed to load change %s in %s", notesResult.id(), projectState.getName());
+        continue;
+      }
+      ChangeNotes notes = notesResult.notes();
+      Change change = notes.getChange();
+      if (!change.isPrivate()) {
+        changes.add(change.getDest(), change.getId());
+        continue;
+      }
+      try {
+        permissionBackendForProject.change(notes).check(ChangePermission.READ);
+        changes.addVisible(change.getDest(), change.getId());
+      } catch (AuthException e) {
+        // Skip.
       }
     }
   }
 
-  @Nullable
-  private ChangeNotes toNotes(ChangeNotesResult r) throws PermissionBackendException {
-    if (r.error().isPresent()) {
-      logger.atWarning().withCause(r.error().get()).log(
-          "Failed to load change %s in %s", r.id(), projectState.getName());
-      return null;
+  /**
+   * Evaluates {@link RefPermission#READ} once per destination branch and keeps the changes of
+   * readable branches.
+   */
+  private Map<BranchNameKey, int[]> filterByBranchVisibility(ChangesByBranch changes)
+      throws PermissionBackendException {
+    Map<BranchNameKey, int[]> result = new HashMap<>();
+    for (BranchNameKey branch : changes.branches()) {
+      boolean canRead;
+      try {
+        permissionBackendForProject.ref(branch.branch()).check(RefPermission.READ);
+        canRead = true;
+      } catch (AuthException e) {
+        canRead = false;
+      }
+      int[] visible = changes.visible(branch, canRead);
+      if (visible.length > 0) {
+        result.put(branch, visible);
+      }
     }
+    return result;
+  }
+
+  /** Change numbers of a project grouped by destination branch. */
+  private static class ChangesByBranch {
+    // Changes whose visibility depends only on the destination branch.
+    private final Map<BranchNameKey, List<Integer>> byBranch = new HashMap<>();
+    // Changes that were already checked individually and are visible.
+    private final Map<BranchNameKey, List<Integer>> visibleByBranch = new HashMap<>();
 
-    if (!projectState.statePermitsRead()) {
-      return null;
+    void add(BranchNameKey branch, Change.Id id) {
+      byBranch.computeIfAbsent(branch, b -> new ArrayList<>()).add(id.get());
     }
 
-    try {
-      permissionBackendForProject.change(r.notes()).check(ChangePermission.READ);
-      return r.notes();
-    } catch (AuthException e) {
-      // Skip.
+    void addVisible(BranchNameKey branch, Change.Id id) {
+      visibleByBranch.computeIfAbsent(branch, b -> new ArrayList<>()).add(id.get());
+    }
+
+    Set<BranchNameKey> branches() {
+      return Sets.union(byBranch.keySet(), visibleByBranch.keySet());
+    }
+
+    /** Returns the sorted change numbers of the branch that are visible. */
+    int[] visible(BranchNameKey branch, boolean canRead) {
+      List<Integer> ids =
+          new ArrayList<>(visibleByBranch.getOrDefault(branch, ImmutableList.of()));
+      if (canRead) {
+        ids.addAll(byBranch.getOrDefault(branch, ImmutableList.of()));
+      }
+      return ids.stream().mapToInt(i -> i).sorted().distinct().toArray();
     }
-    return null;
   }
 }
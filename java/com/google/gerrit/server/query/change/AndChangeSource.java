@@ -21,16 +21,36 @@ import java.util.Collection;
 import java.util.List;
 
 public class AndChangeSource extends AndSource<ChangeData> implements ChangeDataSource {
+  private final boolean indexOnly;
 
   public AndChangeSource(Collection<Predicate<ChangeData>> that) {
     super(that);
+    this.indexOnly = false;
   }
 
   public AndChangeSource(
       Predicate<ChangeData> that,
       IsVisibleToPredicate<ChangeData> isVisibleToPredicate,
       int start) {
+    this(that, isVisibleToPredicate, start, false);
+  }
+
+  /**
+   * @param indexOnly whether the results must not be loaded from NoteDb; requires that {@code
+   *     that} is evaluated by the index and that the index returns the change.
+   */
+  public AndChangeSource(
+      Predicate<ChangeData> that,
+      IsVisibleToPredicate<ChangeData> isVisibleToPredicate,
+      int start,
+      boolean indexOnly) {
     super(that, isVisibleToPredicate, start);
+    this.indexOnly = indexOnly && hasChange();
+  }
+
+  /** Returns whether the results must not be loaded from NoteDb. */
+  public boolean isIndexOnly() {
+    return indexOnly;
   }
 
   @Override
@@ -40,7 +60,11 @@ public class AndChangeSource extends AndSource<ChangeData> implements ChangeData
 
   @Override
   protected List<ChangeData> transformBuffer(List<ChangeData> buffer) {
-    if (!hasChange()) {
+    if (indexOnly) {
+      for (ChangeData cd : buffer) {
+        cd.setStorageConstraint(ChangeData.StorageConstraint.INDEX_ONLY);
+      }
+    } else if (!hasChange()) {
       ChangeData.ensureChangeLoaded(buffer);
     }
     return super.transformBuffer(buffer);
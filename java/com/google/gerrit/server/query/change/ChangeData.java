@@ -56,6 +56,7 @@ import com.google.gerrit.exceptions.StorageException;
 import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.ResourceConflictException;
 import com.google.gerrit.index.RefState;
+import com.google.gerrit.index.SearchAfter;
 import com.google.gerrit.server.ApprovalsUtil;
 import com.google.gerrit.server.ChangeMessagesUtil;
 import com.google.gerrit.server.CommentsUtil;
@@ -341,6 +342,7 @@ public class ChangeData {
   private Optional<Timestamp> mergedOn;
   private ImmutableSetMultimap<NameKey, RefState> refStates;
   private ImmutableList<byte[]> refStatePatterns;
+  private SearchAfter searchAfter;
 
   @Inject
   private ChangeData(
@@ -532,6 +534,19 @@ public class ChangeData {
     return notes;
   }
 
+  /** Returns whether {@link #notes()} would need to load the notes from NoteDb. */
+  public boolean needsNotes() {
+    return notes == null && lazyload();
+  }
+
+  /** Sets notes that were loaded by the caller, e.g. by {@link ChangeDataPrefetcher}. */
+  void setNotes(ChangeNotes notes) {
+    this.notes = notes;
+    if (change == null) {
+      change = notes.getChange();
+    }
+  }
+
   public PatchSet currentPatchSet() {
     if (currentPatchSet == null) {
       Change c = change();
@@ -676,6 +691,21 @@ public class ChangeData {
     this.mergedOn = Optional.ofNullable(mergedOn);
   }
 
+  /**
+   * Returns the position of this change in the sort order of the index query that returned it.
+   *
+   * @return the position, or null if this change wasn't loaded from an index that reports it.
+   */
+  @Nullable
+  public SearchAfter getSearchAfter() {
+    return searchAfter;
+  }
+
+  /** Sets the value when loading from index. */
+  public void setSearchAfter(@Nullable SearchAfter searchAfter) {
+    this.searchAfter = searchAfter;
+  }
+
   /**
    * Sets the specified attention set. If two or more entries refer to the same user, throws an
    * {@link IllegalStateException}.
@@ -0,0 +1,148 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.query.change;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.server.FanOutExecutor;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.RefCache;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Loads the NoteDb data of many {@link ChangeData} instances in one pass.
+ *
+ * <p>Changes are grouped by project. Each repository is opened once and the meta refs of all its
+ * changes are read with a single ref database lookup. The notes are then loaded in parallel on the
+ * {@link FanOutExecutor}, and patch sets, current approvals and reviewers are populated from them,
+ * so that accessing these fields later on doesn't need to read from NoteDb one change at a time.
+ *
+ * <p>Prefetching is best effort. Changes that fail to load are left untouched, so that the error
+ * surfaces when the data is accessed, like it would without prefetching.
+ */
+@Singleton
+public class ChangeDataPrefetcher {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final GitRepositoryManager repoManager;
+  private final ChangeNotes.Factory notesFactory;
+  private final ExecutorService executor;
+
+  @Inject
+  ChangeDataPrefetcher(
+      GitRepositoryManager repoManager,
+      ChangeNotes.Factory notesFactory,
+      @FanOutExecutor ExecutorService executor) {
+    this.repoManager = repoManager;
+    this.notesFactory = notesFactory;
+    this.executor = executor;
+  }
+
+  /**
+   * Loads the notes, patch sets, current approvals and reviewers of the given changes.
+   *
+   * <p>Changes whose notes were already loaded, or which may not be loaded from NoteDb, are
+   * skipped.
+   */
+  public void prefetch(Iterable<ChangeData> changes) {
+    ListMultimap<Project.NameKey, ChangeData> byProject =
+        MultimapBuilder.hashKeys().arrayListValues().build();
+    for (ChangeData cd : changes) {
+      if (cd.needsNotes()) {
+        byProject.put(cd.project(), cd);
+      }
+    }
+    if (byProject.size() < 2) {
+      // Nothing to gain over loading the change lazily.
+      return;
+    }
+
+    List<Repository> repos = new ArrayList<>();
+    List<FutureTask<Void>> tasks = new ArrayList<>(byProject.size());
+    try {
+      for (Map.Entry<Project.NameKey, Collection<ChangeData>> e : byProject.asMap().entrySet()) {
+        Map<String, Ref> metaRefs;
+        Repository repo;
+        try {
+          repo = repoManager.openRepository(e.getKey());
+          repos.add(repo);
+          metaRefs =
+              repo.getRefDatabase()
+                  .exactRef(
+                      e.getValue().stream()
+                          .map(cd -> RefNames.changeMetaRef(cd.getId()))
+                          .toArray(String[]::new));
+        } catch (IOException ex) {
+          logger.atWarning().withCause(ex).log(
+              "Failed to read change meta refs of project %s", e.getKey());
+          continue;
+        }
+
+        RefCache refs = name -> Optional.ofNullable(metaRefs.get(name)).map(Ref::getObjectId);
+        for (ChangeData cd : e.getValue()) {
+          FutureTask<Void> task = new FutureTask<>(() -> load(repo, refs, cd), null);
+          tasks.add(task);
+          try {
+            executor.execute(task);
+          } catch (RejectedExecutionException ex) {
+            // The task is run by this thread below.
+          }
+        }
+      }
+
+      for (FutureTask<Void> task : tasks) {
+        // Run the task in this thread unless the executor already started it. This keeps the
+        // calling thread busy and avoids waiting on a saturated executor.
+        task.run();
+        try {
+          Uninterruptibles.getUninterruptibly(task);
+        } catch (ExecutionException e) {
+          logger.atWarning().withCause(e).log("Failed to prefetch change data");
+        }
+      }
+    } finally {
+      repos.forEach(Repository::close);
+    }
+  }
+
+  private void load(Repository repo, RefCache refs, ChangeData cd) {
+    try {
+      cd.setNotes(notesFactory.create(repo, cd.project(), cd.getId(), refs));
+      cd.patchSets();
+      cd.currentApprovals();
+      cd.reviewers();
+    } catch (RuntimeException e) {
+      logger.atFine().withCause(e).log("Failed to prefetch change %s", cd.getId());
+    }
+  }
+}
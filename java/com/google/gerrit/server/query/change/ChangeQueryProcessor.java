@@ -18,15 +18,18 @@ import static com.google.common.base.Preconditions.checkState;
 import static com.google.gerrit.server.query.change.ChangeQueryBuilder.FIELD_LIMIT;
 
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Sets;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.extensions.common.PluginDefinedInfo;
 import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.extensions.registration.Extension;
 import com.google.gerrit.index.IndexConfig;
 import com.google.gerrit.index.QueryOptions;
+import com.google.gerrit.index.query.DataSource;
 import com.google.gerrit.index.query.IndexPredicate;
 import com.google.gerrit.index.query.Predicate;
 import com.google.gerrit.index.query.QueryProcessor;
+import com.google.gerrit.index.query.ResultSet;
 import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.DynamicOptions;
@@ -35,6 +38,7 @@ import com.google.gerrit.server.account.AccountLimits;
 import com.google.gerrit.server.change.ChangePluginDefinedInfoFactory;
 import com.google.gerrit.server.change.PluginDefinedAttributesFactories;
 import com.google.gerrit.server.change.PluginDefinedInfosFactory;
+import com.google.gerrit.server.index.change.ChangeIndex;
 import com.google.gerrit.server.index.change.ChangeIndexCollection;
 import com.google.gerrit.server.index.change.ChangeIndexRewriter;
 import com.google.gerrit.server.index.change.ChangeSchemaDefinitions;
@@ -57,11 +61,16 @@ import java.util.Set;
 public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
     implements DynamicOptions.BeanReceiver, DynamicOptions.BeanProvider, PluginDefinedInfosFactory {
   private final Provider<CurrentUser> userProvider;
+  private final ChangeIndexCollection indexes;
   private final ChangeIsVisibleToPredicate.Factory changeIsVisibleToPredicateFactory;
+  private final ChangeQueryResultCache resultCache;
   private final Map<String, DynamicBean> dynamicBeans = new HashMap<>();
   private final List<Extension<ChangePluginDefinedInfoFactory>>
       changePluginDefinedInfoFactoriesByPlugin = new ArrayList<>();
 
+  private boolean visibilityEnforced = true;
+  private boolean indexOnly;
+
   static {
     // It is assumed that basic rewrites do not touch visibleto predicates.
     checkState(
@@ -78,6 +87,7 @@ public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
       ChangeIndexCollection indexes,
       ChangeIndexRewriter rewriter,
       ChangeIsVisibleToPredicate.Factory changeIsVisibleToPredicateFactory,
+      ChangeQueryResultCache resultCache,
       DynamicSet<ChangePluginDefinedInfoFactory> changePluginDefinedInfoFactories) {
     super(
         metricMaker,
@@ -88,7 +98,9 @@ public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
         FIELD_LIMIT,
         () -> limitsFactory.create(userProvider.get()).getQueryLimit());
     this.userProvider = userProvider;
+    this.indexes = indexes;
     this.changeIsVisibleToPredicateFactory = changeIsVisibleToPredicateFactory;
+    this.resultCache = resultCache;
 
     changePluginDefinedInfoFactories
         .entries()
@@ -98,6 +110,33 @@ public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
   @Override
   public ChangeQueryProcessor enforceVisibility(boolean enforce) {
     super.enforceVisibility(enforce);
+    visibilityEnforced = enforce;
+    return this;
+  }
+
+  /**
+   * Execute queries that the change index can answer alone without reading NoteDb.
+   *
+   * <p>Only the stored fields that the caller needs are read from the index. If a rewritten query
+   * is a pure index query, its results can't be loaded from NoteDb (see {@link
+   * ChangeData.StorageConstraint#INDEX_ONLY}), not even for checking their visibility. Queries with
+   * predicates that the index can't evaluate are executed as usual.
+   *
+   * <p>Has no effect if plugins contribute attributes to the results, since they may need any data
+   * of the changes.
+   *
+   * @param unusedFields stored fields that the caller doesn't need.
+   * @return this.
+   */
+  public ChangeQueryProcessor setIndexOnly(Set<String> unusedFields) {
+    ChangeIndex index = indexes.getSearchIndex();
+    if (index == null || !changePluginDefinedInfoFactoriesByPlugin.isEmpty()) {
+      return this;
+    }
+    indexOnly = true;
+    setRequestedFields(
+        Sets.difference(index.getSchema().getStoredFields().keySet(), unusedFields)
+            .immutableCopy());
     return this;
   }
 
@@ -131,7 +170,24 @@ public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
   @Override
   protected Predicate<ChangeData> enforceVisibility(Predicate<ChangeData> pred) {
     return new AndChangeSource(
-        pred, changeIsVisibleToPredicateFactory.forUser(userProvider.get()), start);
+        pred,
+        changeIsVisibleToPredicateFactory.forUser(userProvider.get()),
+        start,
+        indexOnly && pred instanceof IndexedChangeQuery);
+  }
+
+  @Override
+  protected ResultSet<ChangeData> read(DataSource<ChangeData> source, QueryOptions opts) {
+    // Only visibility-enforcing queries are keyed on the user.
+    if (!visibilityEnforced) {
+      return source.read();
+    }
+    return resultCache.read(
+        userProvider.get(),
+        indexes.getSearchIndex(),
+        source,
+        opts,
+        source instanceof AndChangeSource && ((AndChangeSource) source).isIndexOnly());
   }
 
   @Override
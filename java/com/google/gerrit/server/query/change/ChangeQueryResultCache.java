@@ -0,0 +1,249 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.query.change;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.index.QueryOptions;
+import com.google.gerrit.index.SearchAfter;
+import com.google.gerrit.index.query.DataSource;
+import com.google.gerrit.index.query.LazyResultSet;
+import com.google.gerrit.index.query.ListResultSet;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.index.query.QueryParseException;
+import com.google.gerrit.index.query.ResultSet;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.AnonymousUser;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.index.change.ChangeIndex;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Caches the results of change queries that users run over and over again, e.g. from their
+ * dashboards.
+ *
+ * <p>Only the IDs of the resulting changes and their positions in the index sort order are cached.
+ * Entries are keyed on the rewritten query, its paging options, the user whose visibility was
+ * enforced and the {@link ChangeIndex#getSearcherGeneration() searcher generation} of the change
+ * index, so they are not used anymore as soon as any change was reindexed. Permission changes
+ * don't reindex changes, hence entries also expire after a short time. Results of index-only
+ * queries are read from the index again by their IDs.
+ *
+ * <p>The cache is disabled unless {@code cache.change_query_results.memoryLimit} is set.
+ */
+@Singleton
+public class ChangeQueryResultCache {
+  static final String NAME = "change_query_results";
+
+  /** Keeps lookups of index-only results below the maximum number of clauses of a query. */
+  private static final int MAX_IDS_PER_QUERY = 100;
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(NAME, Key.class, Result.class)
+            .maximumWeight(0)
+            .expireAfterWrite(Duration.ofMinutes(1));
+        bind(ChangeQueryResultCache.class);
+      }
+    };
+  }
+
+  @AutoValue
+  abstract static class Key {
+    abstract Object user();
+
+    abstract String query();
+
+    abstract int start();
+
+    abstract int limit();
+
+    abstract Optional<SearchAfter> searchAfter();
+
+    abstract long generation();
+  }
+
+  @AutoValue
+  abstract static class Result {
+    abstract ImmutableList<Project.NameKey> projects();
+
+    abstract ImmutableList<Change.Id> changeIds();
+
+    abstract ImmutableList<Optional<SearchAfter>> positions();
+
+    abstract long latencyNanos();
+  }
+
+  private final Cache<Key, Result> cache;
+  private final ChangeData.Factory changeDataFactory;
+  private final boolean enabled;
+  private final Counter0 savedLatency;
+
+  @Inject
+  ChangeQueryResultCache(
+      @Named(NAME) Cache<Key, Result> cache,
+      ChangeData.Factory changeDataFactory,
+      @GerritServerConfig Config cfg,
+      MetricMaker metricMaker) {
+    this.cache = cache;
+    this.changeDataFactory = changeDataFactory;
+    this.enabled = cfg.getLong("cache", NAME, "memoryLimit", 0) > 0;
+    this.savedLatency =
+        metricMaker.newCounter(
+            "query/change_result_cache/saved_latency",
+            new Description("Query latency that was saved by serving results from the cache")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS));
+  }
+
+  /**
+   * Start reading the results of a query, from the cache if possible.
+   *
+   * @param user user whose visibility is enforced by the query.
+   * @param index index that the query searches, null if there is none.
+   * @param source rewritten query.
+   * @param opts options that the query was rewritten with.
+   * @param indexOnly whether the results must not be loaded from NoteDb; cached results are then
+   *     read from the index by their IDs.
+   * @return results of the query.
+   */
+  ResultSet<ChangeData> read(
+      CurrentUser user,
+      @Nullable ChangeIndex index,
+      DataSource<ChangeData> source,
+      QueryOptions opts,
+      boolean indexOnly) {
+    if (!enabled || index == null || !isCacheable(user)) {
+      return source.read();
+    }
+    OptionalLong generation = index.getSearcherGeneration();
+    if (!generation.isPresent()) {
+      return source.read();
+    }
+
+    // The rewritten query doesn't render the start, and the rewriter may have folded it into the
+    // limit, hence they are part of the key on their own.
+    Key key =
+        new AutoValue_ChangeQueryResultCache_Key(
+            user.getCacheKey(),
+            source.toString(),
+            opts.start(),
+            opts.limit(),
+            Optional.ofNullable(opts.searchAfter()),
+            generation.getAsLong());
+    Result cached = cache.getIfPresent(key);
+    if (cached != null) {
+      Optional<ImmutableList<ChangeData>> cds =
+          indexOnly ? readFromIndex(index, opts, cached) : Optional.of(create(cached));
+      if (cds.isPresent()) {
+        savedLatency.incrementBy(NANOSECONDS.toMillis(cached.latencyNanos()));
+        return new ListResultSet<>(cds.get());
+      }
+    }
+
+    long startNanos = System.nanoTime();
+    ResultSet<ChangeData> results = source.read();
+    return new LazyResultSet<>(
+        () -> {
+          ImmutableList<ChangeData> cds = results.toList();
+          cache.put(
+              key,
+              new AutoValue_ChangeQueryResultCache_Result(
+                  cds.stream().map(ChangeData::project).collect(toImmutableList()),
+                  cds.stream().map(ChangeData::getId).collect(toImmutableList()),
+                  cds.stream()
+                      .map(cd -> Optional.ofNullable(cd.getSearchAfter()))
+                      .collect(toImmutableList()),
+                  System.nanoTime() - startNanos));
+          return cds;
+        });
+  }
+
+  private ImmutableList<ChangeData> create(Result cached) {
+    ImmutableList.Builder<ChangeData> cds = ImmutableList.builder();
+    for (int i = 0; i < cached.changeIds().size(); i++) {
+      ChangeData cd = changeDataFactory.create(cached.projects().get(i), cached.changeIds().get(i));
+      cd.setSearchAfter(cached.positions().get(i).orElse(null));
+      cds.add(cd);
+    }
+    return cds.build();
+  }
+
+  /**
+   * Reads the stored fields of cached results from the index, looking them up by their IDs.
+   *
+   * @return the results in their cached order, empty if any of them is not in the index anymore.
+   */
+  private static Optional<ImmutableList<ChangeData>> readFromIndex(
+      ChangeIndex index, QueryOptions opts, Result cached) {
+    Map<Change.Id, ChangeData> byId = new HashMap<>();
+    for (List<Change.Id> batch : Iterables.partition(cached.changeIds(), MAX_IDS_PER_QUERY)) {
+      Predicate<ChangeData> pred =
+          Predicate.or(batch.stream().map(index::keyPredicate).collect(toImmutableList()));
+      try {
+        for (ChangeData cd :
+            index
+                .getSource(pred, opts.withStart(0).withLimit(batch.size()).withSearchAfter(null))
+                .read()) {
+          byId.put(cd.getId(), cd);
+        }
+      } catch (QueryParseException e) {
+        throw new StorageException("Unexpected QueryParseException reading cached results", e);
+      }
+    }
+
+    ImmutableList.Builder<ChangeData> cds = ImmutableList.builder();
+    for (int i = 0; i < cached.changeIds().size(); i++) {
+      ChangeData cd = byId.get(cached.changeIds().get(i));
+      if (cd == null) {
+        return Optional.empty();
+      }
+      cd.setStorageConstraint(ChangeData.StorageConstraint.INDEX_ONLY);
+      cd.setSearchAfter(cached.positions().get(i).orElse(null));
+      cds.add(cd);
+    }
+    return Optional.of(cds.build());
+  }
+
+  private static boolean isCacheable(CurrentUser user) {
+    // Other users, e.g. internal ones, have special visibility rules.
+    return user.isIdentifiedUser() || user instanceof AnonymousUser;
+  }
+}
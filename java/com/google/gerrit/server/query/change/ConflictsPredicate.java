@@ -180,6 +180,12 @@ public class ConflictsPredicate {
       return 5;
     }
 
+    @Override
+    public double estimateSelectivity() {
+      // Only few of the changes on the same branch touching the same files actually conflict.
+      return 0.1;
+    }
+
     private Set<RevCommit> getAlreadyAccepted(Repository repo, RevWalk rw) {
       try {
         Set<RevCommit> accepted = new HashSet<>();
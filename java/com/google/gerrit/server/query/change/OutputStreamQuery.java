@@ -18,6 +18,7 @@ import static com.google.common.base.Preconditions.checkState;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.LabelTypes;
@@ -25,6 +26,7 @@ import com.google.gerrit.entities.PatchSet;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.exceptions.StorageException;
 import com.google.gerrit.extensions.common.PluginDefinedInfo;
+import com.google.gerrit.index.SearchAfter;
 import com.google.gerrit.index.query.QueryParseException;
 import com.google.gerrit.index.query.QueryResult;
 import com.google.gerrit.server.DynamicOptions;
@@ -131,6 +133,10 @@ public class OutputStreamQuery {
     queryProcessor.setStart(n);
   }
 
+  public void setSearchAfter(String cursor) {
+    queryProcessor.setSearchAfter(cursor);
+  }
+
   public void setIncludePatchSets(boolean on) {
     includePatchSets = on;
   }
@@ -223,6 +229,10 @@ public class OutputStreamQuery {
 
         stats.rowCount = results.entities().size();
         stats.moreChanges = results.more();
+        if (results.more() && !results.entities().isEmpty()) {
+          SearchAfter position = Iterables.getLast(results.entities()).getSearchAfter();
+          stats.searchAfter = position != null ? position.encode() : null;
+        }
         stats.runTimeMilliseconds = TimeUtil.nowMs() - stats.runTimeMilliseconds;
         show(stats);
       } catch (StorageException err) {
@@ -50,6 +50,7 @@ import com.google.gerrit.server.change.SetTopicOp;
 import com.google.gerrit.server.change.WorkInProgressOp;
 import com.google.gerrit.server.comment.CommentContextLoader;
 import com.google.gerrit.server.restapi.change.Reviewed.DeleteReviewed;
+import com.google.gerrit.server.restapi.change.Reviewed.PostReviewed;
 import com.google.gerrit.server.restapi.change.Reviewed.PutReviewed;
 import com.google.gerrit.server.util.AttentionSetEmail;
 
@@ -179,6 +180,7 @@ public class Module extends RestApiModule {
     get(REVISION_KIND, "ported_drafts").to(ListPortedDrafts.class);
 
     child(REVISION_KIND, "files").to(Files.class);
+    post(REVISION_KIND, "reviewed").to(PostReviewed.class);
     put(FILE_KIND, "reviewed").to(PutReviewed.class);
     delete(FILE_KIND, "reviewed").to(DeleteReviewed.class);
     get(FILE_KIND, "content").to(GetContent.class);
@@ -14,6 +14,7 @@
 
 package com.google.gerrit.server.restapi.change;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.extensions.client.ListChangesOption;
@@ -59,6 +60,7 @@ public class QueryChanges implements RestReadView<TopLevelResource>, DynamicOpti
   private Integer start;
   private Boolean noLimit;
   private Boolean skipVisibility;
+  private String searchAfter;
 
   @Option(
       name = "--query",
@@ -95,6 +97,14 @@ public class QueryChanges implements RestReadView<TopLevelResource>, DynamicOpti
     this.start = start;
   }
 
+  @Option(
+      name = "--search-after",
+      metaVar = "CURSOR",
+      usage = "Only return changes that sort after the change the cursor was returned for")
+  public void setSearchAfter(String searchAfter) {
+    this.searchAfter = searchAfter;
+  }
+
   @Option(name = "--no-limit", usage = "Return all results, overriding the default limit")
   public void setNoLimit(boolean on) {
     this.noLimit = on;
@@ -168,6 +178,9 @@ public class QueryChanges implements RestReadView<TopLevelResource>, DynamicOpti
     if (start != null) {
       queryProcessor.setStart(start);
     }
+    if (searchAfter != null) {
+      queryProcessor.setSearchAfter(searchAfter);
+    }
     if (noLimit != null) {
       queryProcessor.setNoLimit(noLimit);
     }
@@ -184,10 +197,20 @@ public class QueryChanges implements RestReadView<TopLevelResource>, DynamicOpti
       throw new QueryParseException("limit of 10 queries");
     }
 
+    ChangeJson changeJson = json.create(options, queryProcessor.getInfosFactory());
+    if (changeJson.isIndexOnly()) {
+      queryProcessor.setIndexOnly(changeJson.getUnusedIndexFields());
+    }
+
     int cnt = queries.size();
     List<QueryResult<ChangeData>> results = queryProcessor.query(qb.parse(queries));
-    List<List<ChangeInfo>> res =
-        json.create(options, queryProcessor.getInfosFactory()).format(results);
+    if (cnt == 1 && dynamicBeans.isEmpty()) {
+      // Large results of a single query are formatted while they are written to the client. This
+      // is not done if plugins contributed options, since their beans are only valid while the REST
+      // view is invoked.
+      return ImmutableList.of(changeJson.formatLazily(results.get(0)));
+    }
+    List<List<ChangeInfo>> res = changeJson.format(results);
     for (int n = 0; n < cnt; n++) {
       List<ChangeInfo> info = res.get(n);
       if (results.get(n).more() && !info.isEmpty()) {
@@ -14,14 +14,23 @@
 
 package com.google.gerrit.server.restapi.change;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.extensions.api.changes.ReviewedFilesInput;
 import com.google.gerrit.extensions.common.Input;
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.extensions.restapi.RestModifyView;
 import com.google.gerrit.server.change.AccountPatchReviewStore;
 import com.google.gerrit.server.change.FileResource;
+import com.google.gerrit.server.change.RevisionResource;
 import com.google.gerrit.server.plugincontext.PluginItemContext;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import java.util.Set;
 
 public class Reviewed {
 
@@ -68,5 +77,43 @@ public class Reviewed {
     }
   }
 
+  /** Marks many files of a revision as reviewed or unreviewed with one batch per direction. */
+  @Singleton
+  public static class PostReviewed implements RestModifyView<RevisionResource, ReviewedFilesInput> {
+    private final PluginItemContext<AccountPatchReviewStore> accountPatchReviewStore;
+
+    @Inject
+    PostReviewed(PluginItemContext<AccountPatchReviewStore> accountPatchReviewStore) {
+      this.accountPatchReviewStore = accountPatchReviewStore;
+    }
+
+    @Override
+    public Response<?> apply(RevisionResource resource, ReviewedFilesInput input)
+        throws AuthException, BadRequestException {
+      if (!resource.getUser().isIdentifiedUser()) {
+        throw new AuthException("Authentication required");
+      }
+      ImmutableSet<String> reviewed =
+          input.reviewed != null ? ImmutableSet.copyOf(input.reviewed) : ImmutableSet.of();
+      ImmutableSet<String> unreviewed =
+          input.unreviewed != null ? ImmutableSet.copyOf(input.unreviewed) : ImmutableSet.of();
+      Set<String> both = Sets.intersection(reviewed, unreviewed);
+      if (!both.isEmpty()) {
+        throw new BadRequestException(
+            "files cannot be both reviewed and unreviewed: " + String.join(", ", both));
+      }
+
+      PatchSet.Id psId = resource.getPatchSet().id();
+      Account.Id accountId = resource.getAccountId();
+      if (!reviewed.isEmpty()) {
+        accountPatchReviewStore.run(s -> s.markReviewed(psId, accountId, reviewed));
+      }
+      if (!unreviewed.isEmpty()) {
+        accountPatchReviewStore.run(s -> s.clearReviewed(psId, accountId, unreviewed));
+      }
+      return Response.none();
+    }
+  }
+
   private Reviewed() {}
 }
@@ -14,13 +14,20 @@
 
 package com.google.gerrit.server.schema;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
+import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.primitives.Ints;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.PatchSet;
@@ -34,6 +41,7 @@ import com.google.gerrit.server.config.ConfigUtil;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.config.SitePaths;
 import com.google.gerrit.server.config.ThreadSettingsConfig;
+import com.google.gerrit.server.git.WorkQueue;
 import com.google.gerrit.server.logging.Metadata;
 import com.google.gerrit.server.logging.TraceContext;
 import com.google.gerrit.server.logging.TraceContext.TraceTimer;
@@ -44,7 +52,19 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.sql.DataSource;
 import org.apache.commons.dbcp.BasicDataSource;
 import org.eclipse.jgit.lib.Config;
@@ -94,30 +114,81 @@ public abstract class JdbcAccountPatchReviewStore
     }
   }
 
+  private static final String INSERT =
+      "INSERT INTO account_patch_reviews "
+          + "(account_id, change_id, patch_set_id, file_name) VALUES "
+          + "(?, ?, ?, ?)";
+
+  /** Maximum number of change IDs that are passed to a single query. */
+  private static final int MAX_CHANGES_PER_QUERY = 500;
+
+  /** Number of pending reviewed flags at which the write-behind queue is flushed immediately. */
+  private static final int MAX_PENDING = 1000;
+
+  /** A reviewed flag. */
+  @AutoValue
+  abstract static class ReviewFlag {
+    abstract Account.Id accountId();
+
+    abstract PatchSet.Id psId();
+
+    abstract String path();
+
+    static ReviewFlag create(Account.Id accountId, PatchSet.Id psId, String path) {
+      return new AutoValue_JdbcAccountPatchReviewStore_ReviewFlag(accountId, psId, path);
+    }
+  }
+
   private DataSource ds;
 
+  // Null in offline programs, which don't write behind.
+  @Nullable private final WorkQueue workQueue;
+
+  /**
+   * Delay after which coalesced reviewed flags are written to the database, 0 if flags are written
+   * immediately.
+   */
+  private final long writeBehindDelayMillis;
+
+  // Protects pending and flushScheduled.
+  private final Object pendingLock = new Object();
+  private final Set<ReviewFlag> pending = new LinkedHashSet<>();
+  private boolean flushScheduled;
+
+  // Held while flushing, so that readers wait for flags that are being written.
+  private final Lock flushLock = new ReentrantLock();
+
+  @Nullable private volatile ScheduledExecutorService writeBehindExecutor;
+
   public static JdbcAccountPatchReviewStore createAccountPatchReviewStore(
       Config cfg, SitePaths sitePaths, ThreadSettingsConfig threadSettingsConfig) {
     String url = cfg.getString(ACCOUNT_PATCH_REVIEW_DB, null, URL);
     if (url == null || url.contains(H2_DB)) {
-      return new H2AccountPatchReviewStore(cfg, sitePaths, threadSettingsConfig);
+      return new H2AccountPatchReviewStore(cfg, sitePaths, threadSettingsConfig, null);
     }
     if (url.contains(POSTGRESQL)) {
-      return new PostgresqlAccountPatchReviewStore(cfg, sitePaths, threadSettingsConfig);
+      return new PostgresqlAccountPatchReviewStore(cfg, sitePaths, threadSettingsConfig, null);
     }
     if (url.contains(MYSQL)) {
-      return new MysqlAccountPatchReviewStore(cfg, sitePaths, threadSettingsConfig);
+      return new MysqlAccountPatchReviewStore(cfg, sitePaths, threadSettingsConfig, null);
     }
     if (url.contains(MARIADB)) {
-      return new MariaDBAccountPatchReviewStore(cfg, sitePaths, threadSettingsConfig);
+      return new MariaDBAccountPatchReviewStore(cfg, sitePaths, threadSettingsConfig, null);
     }
     throw new IllegalArgumentException(
         "unsupported driver type for account patch reviews db: " + url);
   }
 
   protected JdbcAccountPatchReviewStore(
-      Config cfg, SitePaths sitePaths, ThreadSettingsConfig threadSettingsConfig) {
+      Config cfg,
+      SitePaths sitePaths,
+      ThreadSettingsConfig threadSettingsConfig,
+      @Nullable WorkQueue workQueue) {
     this.ds = createDataSource(cfg, sitePaths, threadSettingsConfig);
+    this.workQueue = workQueue;
+    this.writeBehindDelayMillis =
+        ConfigUtil.getTimeUnit(
+            cfg, ACCOUNT_PATCH_REVIEW_DB, null, "writeBehindDelay", 0, MILLISECONDS);
   }
 
   private static String getUrl(@GerritServerConfig Config cfg, SitePaths sitePaths) {
@@ -174,6 +245,9 @@ public abstract class JdbcAccountPatchReviewStore
     } catch (StorageException e) {
       logger.atSevere().withCause(e).log("Failed to create table to store account patch reviews");
     }
+    if (writeBehindDelayMillis > 0 && workQueue != null) {
+      writeBehindExecutor = workQueue.createQueue(1, "AccountPatchReviewWriteBehind");
+    }
   }
 
   public Connection getConnection() throws SQLException {
@@ -211,10 +285,31 @@ public abstract class JdbcAccountPatchReviewStore
   }
 
   @Override
-  public void stop() {}
+  public void stop() {
+    ScheduledExecutorService executor = writeBehindExecutor;
+    if (executor != null) {
+      writeBehindExecutor = null;
+      executor.shutdownNow();
+      flushPending();
+    }
+  }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The flag is always written immediately, since callers need to know whether it was set
+   * before. Flags that are waiting to be written behind count as set.
+   */
   @Override
   public boolean markReviewed(PatchSet.Id psId, Account.Id accountId, String path) {
+    if (writeBehindExecutor != null) {
+      synchronized (pendingLock) {
+        if (pending.contains(ReviewFlag.create(accountId, psId, path))) {
+          return false;
+        }
+      }
+    }
+
     try (TraceTimer ignored =
             TraceContext.newTimer(
                 "Mark file as reviewed",
@@ -249,40 +344,137 @@ public abstract class JdbcAccountPatchReviewStore
     if (paths == null || paths.isEmpty()) {
       return;
     }
+    markReviewed(
+        paths.stream()
+            .map(path -> ReviewFlag.create(accountId, psId, path))
+            .collect(toImmutableList()));
+  }
 
+  @Override
+  public void markReviewed(Account.Id accountId, Multimap<PatchSet.Id, String> paths) {
+    markReviewed(
+        paths.entries().stream()
+            .map(e -> ReviewFlag.create(accountId, e.getKey(), e.getValue()))
+            .collect(toImmutableList()));
+  }
+
+  private void markReviewed(ImmutableList<ReviewFlag> flags) {
+    if (flags.isEmpty()) {
+      return;
+    }
+    if (writeBehindExecutor != null) {
+      enqueue(flags);
+      return;
+    }
+    insert(flags);
+  }
+
+  /**
+   * Inserts the given reviewed flags with a single batch statement. Flags that are already set are
+   * skipped.
+   */
+  private void insert(Collection<ReviewFlag> flags) {
     try (TraceTimer ignored =
             TraceContext.newTimer(
                 "Mark files as reviewed",
-                Metadata.builder()
-                    .patchSetId(psId.get())
-                    .accountId(accountId.get())
-                    .resourceCount(paths.size())
-                    .build());
+                Metadata.builder().resourceCount(flags.size()).build());
         Connection con = ds.getConnection();
-        PreparedStatement stmt =
-            con.prepareStatement(
-                "INSERT INTO account_patch_reviews "
-                    + "(account_id, change_id, patch_set_id, file_name) VALUES "
-                    + "(?, ?, ?, ?)")) {
-      for (String path : paths) {
-        stmt.setInt(1, accountId.get());
-        stmt.setInt(2, psId.changeId().get());
-        stmt.setInt(3, psId.get());
-        stmt.setString(4, path);
+        PreparedStatement stmt = con.prepareStatement(INSERT)) {
+      for (ReviewFlag flag : flags) {
+        setInsertParameters(stmt, flag);
         stmt.addBatch();
       }
-      stmt.executeBatch();
-    } catch (SQLException e) {
-      StorageException ormException = convertError("insert", e);
-      if (ormException instanceof DuplicateKeyException) {
+      try {
+        stmt.executeBatch();
         return;
+      } catch (SQLException e) {
+        StorageException ormException = convertError("insert", e);
+        if (!(ormException instanceof DuplicateKeyException)) {
+          throw ormException;
+        }
       }
-      throw ormException;
+
+      // Some of the flags were already set. Insert the flags one by one and skip the existing
+      // ones, so that the remaining flags are not lost.
+      stmt.clearBatch();
+      for (ReviewFlag flag : flags) {
+        setInsertParameters(stmt, flag);
+        try {
+          stmt.executeUpdate();
+        } catch (SQLException e) {
+          StorageException ormException = convertError("insert", e);
+          if (!(ormException instanceof DuplicateKeyException)) {
+            throw ormException;
+          }
+        }
+      }
+    } catch (SQLException e) {
+      throw convertError("insert", e);
+    }
+  }
+
+  private static void setInsertParameters(PreparedStatement stmt, ReviewFlag flag)
+      throws SQLException {
+    stmt.setInt(1, flag.accountId().get());
+    stmt.setInt(2, flag.psId().changeId().get());
+    stmt.setInt(3, flag.psId().get());
+    stmt.setString(4, flag.path());
+  }
+
+  /** Adds reviewed flags to the write-behind queue and schedules a flush. */
+  private void enqueue(Collection<ReviewFlag> flags) {
+    boolean flushNow = false;
+    synchronized (pendingLock) {
+      pending.addAll(flags);
+      if (pending.size() >= MAX_PENDING) {
+        flushNow = true;
+      } else if (!flushScheduled) {
+        ScheduledExecutorService executor = writeBehindExecutor;
+        if (executor != null) {
+          try {
+            @SuppressWarnings("unused")
+            Future<?> possiblyIgnoredError =
+                executor.schedule(this::flushPending, writeBehindDelayMillis, MILLISECONDS);
+            flushScheduled = true;
+          } catch (RejectedExecutionException e) {
+            flushNow = true;
+          }
+        } else {
+          flushNow = true;
+        }
+      }
+    }
+    if (flushNow) {
+      flushPending();
+    }
+  }
+
+  /** Writes all reviewed flags in the write-behind queue to the database. */
+  private void flushPending() {
+    flushLock.lock();
+    try {
+      ImmutableList<ReviewFlag> flags;
+      synchronized (pendingLock) {
+        flushScheduled = false;
+        if (pending.isEmpty()) {
+          return;
+        }
+        flags = ImmutableList.copyOf(pending);
+        pending.clear();
+      }
+      try {
+        insert(flags);
+      } catch (StorageException e) {
+        logger.atSevere().withCause(e).log("Failed to write %d reviewed flags", flags.size());
+      }
+    } finally {
+      flushLock.unlock();
     }
   }
 
   @Override
   public void clearReviewed(PatchSet.Id psId, Account.Id accountId, String path) {
+    flushPending();
     try (TraceTimer ignored =
             TraceContext.newTimer(
                 "Clear reviewed flag",
@@ -307,8 +499,42 @@ public abstract class JdbcAccountPatchReviewStore
     }
   }
 
+  @Override
+  public void clearReviewed(PatchSet.Id psId, Account.Id accountId, Collection<String> paths) {
+    if (paths.isEmpty()) {
+      return;
+    }
+    flushPending();
+    try (TraceTimer ignored =
+            TraceContext.newTimer(
+                "Clear reviewed flags",
+                Metadata.builder()
+                    .patchSetId(psId.get())
+                    .accountId(accountId.get())
+                    .resourceCount(paths.size())
+                    .build());
+        Connection con = ds.getConnection();
+        PreparedStatement stmt =
+            con.prepareStatement(
+                "DELETE FROM account_patch_reviews "
+                    + "WHERE account_id = ? AND change_id = ? AND "
+                    + "patch_set_id = ? AND file_name = ?")) {
+      for (String path : paths) {
+        stmt.setInt(1, accountId.get());
+        stmt.setInt(2, psId.changeId().get());
+        stmt.setInt(3, psId.get());
+        stmt.setString(4, path);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    } catch (SQLException e) {
+      throw convertError("delete", e);
+    }
+  }
+
   @Override
   public void clearReviewed(PatchSet.Id psId) {
+    flushPending();
     try (TraceTimer ignored =
             TraceContext.newTimer(
                 "Clear all reviewed flags of patch set",
@@ -328,6 +554,7 @@ public abstract class JdbcAccountPatchReviewStore
 
   @Override
   public void clearReviewed(Change.Id changeId) {
+    flushPending();
     try (TraceTimer ignored =
             TraceContext.newTimer(
                 "Clear all reviewed flags of change",
@@ -344,6 +571,7 @@ public abstract class JdbcAccountPatchReviewStore
 
   @Override
   public Optional<PatchSetWithReviewedFiles> findReviewed(PatchSet.Id psId, Account.Id accountId) {
+    flushPending();
     try (TraceTimer ignored =
             TraceContext.newTimer(
                 "Find reviewed flags",
@@ -379,6 +607,68 @@ public abstract class JdbcAccountPatchReviewStore
     }
   }
 
+  @Override
+  public ImmutableMap<PatchSet.Id, PatchSetWithReviewedFiles> findReviewed(
+      Collection<PatchSet.Id> psIds, Account.Id accountId) {
+    if (psIds.isEmpty()) {
+      return ImmutableMap.of();
+    }
+    flushPending();
+
+    // Reviewed files by patch set number by change.
+    Map<Change.Id, TreeMap<Integer, ImmutableSet.Builder<String>>> reviewed = new HashMap<>();
+    ImmutableList<Change.Id> changeIds =
+        psIds.stream().map(PatchSet.Id::changeId).distinct().collect(toImmutableList());
+    try (TraceTimer ignored =
+            TraceContext.newTimer(
+                "Find reviewed flags of many patch sets",
+                Metadata.builder()
+                    .accountId(accountId.get())
+                    .resourceCount(psIds.size())
+                    .build());
+        Connection con = ds.getConnection()) {
+      for (List<Change.Id> batch : Lists.partition(changeIds, MAX_CHANGES_PER_QUERY)) {
+        try (PreparedStatement stmt =
+            con.prepareStatement(
+                "SELECT change_id, patch_set_id, file_name FROM account_patch_reviews "
+                    + "WHERE account_id = ? AND change_id IN ("
+                    + String.join(", ", Collections.nCopies(batch.size(), "?"))
+                    + ")")) {
+          stmt.setInt(1, accountId.get());
+          for (int i = 0; i < batch.size(); i++) {
+            stmt.setInt(i + 2, batch.get(i).get());
+          }
+          try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+              reviewed
+                  .computeIfAbsent(Change.id(rs.getInt("change_id")), id -> new TreeMap<>())
+                  .computeIfAbsent(rs.getInt("patch_set_id"), ps -> ImmutableSet.builder())
+                  .add(rs.getString("file_name"));
+            }
+          }
+        }
+      }
+    } catch (SQLException e) {
+      throw convertError("select", e);
+    }
+
+    ImmutableMap.Builder<PatchSet.Id, PatchSetWithReviewedFiles> result = ImmutableMap.builder();
+    for (PatchSet.Id psId : ImmutableSet.copyOf(psIds)) {
+      TreeMap<Integer, ImmutableSet.Builder<String>> byPatchSet = reviewed.get(psId.changeId());
+      if (byPatchSet == null) {
+        continue;
+      }
+      Map.Entry<Integer, ImmutableSet.Builder<String>> latest = byPatchSet.floorEntry(psId.get());
+      if (latest != null) {
+        result.put(
+            psId,
+            PatchSetWithReviewedFiles.create(
+                PatchSet.id(psId.changeId(), latest.getKey()), latest.getValue().build()));
+      }
+    }
+    return result.build();
+  }
+
   public StorageException convertError(String op, SQLException err) {
     if (err.getCause() == null && err.getNextException() != null) {
       err.initCause(err.getNextException());
@@ -14,11 +14,13 @@
 
 package com.google.gerrit.server.schema;
 
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.exceptions.DuplicateKeyException;
 import com.google.gerrit.exceptions.StorageException;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.config.SitePaths;
 import com.google.gerrit.server.config.ThreadSettingsConfig;
+import com.google.gerrit.server.git.WorkQueue;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.sql.SQLException;
@@ -32,8 +34,9 @@ public class MysqlAccountPatchReviewStore extends JdbcAccountPatchReviewStore {
   MysqlAccountPatchReviewStore(
       @GerritServerConfig Config cfg,
       SitePaths sitePaths,
-      ThreadSettingsConfig threadSettingsConfig) {
-    super(cfg, sitePaths, threadSettingsConfig);
+      ThreadSettingsConfig threadSettingsConfig,
+      @Nullable WorkQueue workQueue) {
+    super(cfg, sitePaths, threadSettingsConfig, workQueue);
   }
 
   @Override
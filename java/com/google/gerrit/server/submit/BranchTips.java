@@ -18,18 +18,20 @@ import com.google.gerrit.entities.BranchNameKey;
 import com.google.gerrit.server.git.CodeReviewCommit;
 import com.google.gerrit.server.submit.MergeOpRepoManager.OpenRepo;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import org.eclipse.jgit.lib.Ref;
 
 /**
  * Current branch tips, taking into account commits created during the submit process as well as
  * submodule updates produced by this class.
+ *
+ * <p>Tips of different branches may be recorded concurrently.
  */
 class BranchTips {
 
-  private final Map<BranchNameKey, CodeReviewCommit> branchTips = new HashMap<>();
+  private final Map<BranchNameKey, CodeReviewCommit> branchTips = new ConcurrentHashMap<>();
 
   /**
    * Returns current tip of the branch, taking into account commits created during the submit
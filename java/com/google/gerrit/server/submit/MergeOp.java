@@ -16,6 +16,7 @@ package com.google.gerrit.server.submit;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static java.util.Comparator.comparing;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toSet;
@@ -24,12 +25,14 @@ import com.github.rholder.retry.Attempt;
 import com.github.rholder.retry.RetryListener;
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.common.Nullable;
@@ -58,11 +61,14 @@ import com.google.gerrit.metrics.Description;
 import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.server.ChangeMessagesUtil;
 import com.google.gerrit.server.ChangeUtil;
+import com.google.gerrit.server.FanOutExecutor;
 import com.google.gerrit.server.IdentifiedUser;
 import com.google.gerrit.server.InternalUser;
 import com.google.gerrit.server.change.NotifyResolver;
+import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.git.CodeReviewCommit;
 import com.google.gerrit.server.git.MergeTip;
+import com.google.gerrit.server.git.PerThreadRequestScope;
 import com.google.gerrit.server.git.validators.MergeValidationException;
 import com.google.gerrit.server.git.validators.MergeValidators;
 import com.google.gerrit.server.logging.RequestId;
@@ -83,6 +89,7 @@ import com.google.gerrit.server.update.SubmissionExecutor;
 import com.google.gerrit.server.update.SubmissionListener;
 import com.google.gerrit.server.update.SuperprojectUpdateOnSubmission;
 import com.google.gerrit.server.update.UpdateException;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
 import com.google.gerrit.server.util.time.TimeUtil;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
@@ -97,8 +104,11 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
@@ -122,6 +132,11 @@ public class MergeOp implements AutoCloseable {
   private static final SubmitRuleOptions SUBMIT_RULE_OPTIONS_ALLOW_CLOSED =
       SUBMIT_RULE_OPTIONS.toBuilder().recomputeOnClosedChanges(true).build();
 
+  /**
+   * Status of the commits that are being submitted.
+   *
+   * <p>Submit strategies of different projects may record their results concurrently.
+   */
   public static class CommitStatus {
     private final ImmutableMap<Change.Id, ChangeData> changes;
     private final ImmutableSetMultimap<BranchNameKey, Change.Id> byBranch;
@@ -138,8 +153,10 @@ public class MergeOp implements AutoCloseable {
         bb.put(cd.change().getDest(), cd.getId());
       }
       byBranch = bb.build();
-      commits = new HashMap<>();
-      problems = MultimapBuilder.treeKeys(comparing(Change.Id::get)).arrayListValues(1).build();
+      commits = new ConcurrentHashMap<>();
+      problems =
+          Multimaps.synchronizedListMultimap(
+              MultimapBuilder.treeKeys(comparing(Change.Id::get)).arrayListValues(1).build());
       this.allowClosed = allowClosed;
     }
 
@@ -239,6 +256,10 @@ public class MergeOp implements AutoCloseable {
   private final NotifyResolver notifyResolver;
   private final RetryHelper retryHelper;
   private final ChangeData.Factory changeDataFactory;
+  private final ExecutorService fanOutExecutor;
+  private final ThreadLocalRequestContext requestContext;
+  private final PerThreadRequestScope.Propagator scopePropagator;
+  private final int submitParallelism;
 
   // Changes that were updated by this MergeOp.
   private final Map<Change.Id, Change> updatedChanges;
@@ -272,7 +293,11 @@ public class MergeOp implements AutoCloseable {
       NotifyResolver notifyResolver,
       TopicMetrics topicMetrics,
       RetryHelper retryHelper,
-      ChangeData.Factory changeDataFactory) {
+      ChangeData.Factory changeDataFactory,
+      @FanOutExecutor ExecutorService fanOutExecutor,
+      ThreadLocalRequestContext requestContext,
+      PerThreadRequestScope.Propagator scopePropagator,
+      @GerritServerConfig Config cfg) {
     this.cmUtil = cmUtil;
     this.batchUpdateFactory = batchUpdateFactory;
     this.internalUserFactory = internalUserFactory;
@@ -288,6 +313,10 @@ public class MergeOp implements AutoCloseable {
     this.retryHelper = retryHelper;
     this.topicMetrics = topicMetrics;
     this.changeDataFactory = changeDataFactory;
+    this.fanOutExecutor = fanOutExecutor;
+    this.requestContext = requestContext;
+    this.scopePropagator = scopePropagator;
+    this.submitParallelism = cfg.getInt("change", null, "submitParallelism", 4);
     this.updatedChanges = new HashMap<>();
   }
 
@@ -621,6 +650,33 @@ public class MergeOp implements AutoCloseable {
     }
   }
 
+  /**
+   * Executes the batch updates in a per-thread request scope.
+   *
+   * <p>MergeOp may run in the request scope of any protocol. Entering a per-thread request scope
+   * lets the submission executor propagate the request to the threads that update repositories
+   * concurrently, whatever the scope of the caller is.
+   */
+  private void executeInRequestScope(
+      SubmissionExecutor submissionExecutor, List<BatchUpdate> batchUpdates)
+      throws RestApiException, UpdateException {
+    try {
+      scopePropagator
+          .scope(
+              requestContext.getContext(),
+              () -> {
+                submissionExecutor.execute(batchUpdates);
+                return null;
+              })
+          .call();
+    } catch (Exception e) {
+      Throwables.throwIfInstanceOf(e, RestApiException.class);
+      Throwables.throwIfInstanceOf(e, UpdateException.class);
+      Throwables.throwIfUnchecked(e);
+      throw new UpdateException(e);
+    }
+  }
+
   private void integrateIntoHistory(ChangeSet cs, SubmissionExecutor submissionExecutor)
       throws RestApiException, UpdateException {
     checkArgument(!cs.furtherHiddenChanges(), "cannot integrate hidden changes into history");
@@ -657,7 +713,16 @@ public class MergeOp implements AutoCloseable {
       try {
         submissionExecutor.setAdditionalBatchUpdateListeners(
             ImmutableList.of(new SubmitStrategyListener(submitInput, strategies, commitStatus)));
-        submissionExecutor.execute(batchUpdates);
+        // Superprojects get gitlink commits for the new tips of their submodules, so their
+        // repositories can only be updated after the repositories of all other projects.
+        submissionExecutor.setConcurrentRepoUpdates(
+            allProjects.stream()
+                .filter(p -> !subscriptionGraph.isAffectedSuperProject(p))
+                .collect(toImmutableSet()),
+            fanOutExecutor,
+            submitParallelism,
+            scopePropagator);
+        executeInRequestScope(submissionExecutor, batchUpdates);
       } finally {
         // If the BatchUpdate fails it can be that merging some of the changes was actually
         // successful. This is why we must to collect the updated changes also when an
@@ -126,6 +126,21 @@ public class BatchUpdate implements AutoCloseable {
   public static void execute(
       Collection<BatchUpdate> updates, ImmutableList<BatchUpdateListener> listeners, boolean dryrun)
       throws UpdateException, RestApiException {
+    execute(updates, listeners, dryrun, BatchUpdate::executeUpdateRepos);
+  }
+
+  /** Runs the {@link BatchUpdateOp#updateRepo} phase of a set of updates. */
+  @FunctionalInterface
+  interface RepoUpdater {
+    void updateRepos(Collection<BatchUpdate> updates) throws UpdateException, RestApiException;
+  }
+
+  static void execute(
+      Collection<BatchUpdate> updates,
+      ImmutableList<BatchUpdateListener> listeners,
+      boolean dryrun,
+      RepoUpdater repoUpdater)
+      throws UpdateException, RestApiException {
     requireNonNull(listeners);
     if (updates.isEmpty()) {
       return;
@@ -137,9 +152,7 @@ public class BatchUpdate implements AutoCloseable {
       List<ListenableFuture<?>> indexFutures = new ArrayList<>();
       List<ChangesHandle> changesHandles = new ArrayList<>(updates.size());
       try {
-        for (BatchUpdate u : updates) {
-          u.executeUpdateRepo();
-        }
+        repoUpdater.updateRepos(updates);
         notifyAfterUpdateRepo(listeners);
         for (BatchUpdate u : updates) {
           changesHandles.add(u.executeChangeOps(listeners, dryrun));
@@ -173,6 +186,13 @@ public class BatchUpdate implements AutoCloseable {
     }
   }
 
+  private static void executeUpdateRepos(Collection<BatchUpdate> updates)
+      throws UpdateException, RestApiException {
+    for (BatchUpdate u : updates) {
+      u.executeUpdateRepo();
+    }
+  }
+
   private static void notifyAfterUpdateRepo(ImmutableList<BatchUpdateListener> listeners)
       throws Exception {
     for (BatchUpdateListener listener : listeners) {
@@ -526,8 +546,10 @@ public class BatchUpdate implements AutoCloseable {
     return this;
   }
 
-  private void executeUpdateRepo() throws UpdateException, RestApiException {
-    try {
+  void executeUpdateRepo() throws UpdateException, RestApiException {
+    try (TraceContext.TraceTimer traceTimer =
+        TraceContext.newTimer(
+            "BatchUpdate#updateRepo", Metadata.builder().projectName(project.get()).build())) {
       logDebug("Executing updateRepo on %d ops", ops.size());
       RepoContextImpl ctx = new RepoContextImpl();
       for (BatchUpdateOp op : ops.values()) {
@@ -595,11 +617,12 @@ public class BatchUpdate implements AutoCloseable {
       }
       logDebug("Reindexing %d changes", results.size());
       List<ListenableFuture<?>> indexFutures = new ArrayList<>(results.size());
+      List<Change.Id> upserted = new ArrayList<>(results.size());
       for (Map.Entry<Change.Id, ChangeResult> e : results.entrySet()) {
         Change.Id id = e.getKey();
         switch (e.getValue()) {
           case UPSERTED:
-            indexFutures.add(indexer.indexAsync(project, id));
+            upserted.add(id);
             break;
           case DELETED:
             indexFutures.add(indexer.deleteAsync(id));
@@ -610,6 +633,12 @@ public class BatchUpdate implements AutoCloseable {
             throw new IllegalStateException("unexpected result: " + e.getValue());
         }
       }
+      if (upserted.size() == 1) {
+        indexFutures.add(indexer.indexAsync(project, upserted.get(0)));
+      } else if (!upserted.isEmpty()) {
+        // Load all changes in one pass, e.g. the changes created by a push of a large stack.
+        indexFutures.add(indexer.indexAsync(project, upserted));
+      }
       return indexFutures;
     }
   }
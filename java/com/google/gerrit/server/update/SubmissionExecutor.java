@@ -14,11 +14,22 @@
 
 package com.google.gerrit.server.update;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.server.submit.MergeOpRepoManager;
+import com.google.gerrit.server.util.RequestScopePropagator;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 public class SubmissionExecutor {
@@ -26,6 +37,10 @@ public class SubmissionExecutor {
   private final ImmutableList<SubmissionListener> submissionListeners;
   private final boolean dryrun;
   private ImmutableList<BatchUpdateListener> additionalListeners = ImmutableList.of();
+  private ImmutableSet<Project.NameKey> concurrentRepoUpdates = ImmutableSet.of();
+  private ExecutorService executor;
+  private int parallelism;
+  private RequestScopePropagator scopePropagator;
 
   public SubmissionExecutor(boolean dryrun, ImmutableList<SubmissionListener> submissionListeners) {
     this.dryrun = dryrun;
@@ -44,6 +59,33 @@ public class SubmissionExecutor {
     this.additionalListeners = additionalListeners;
   }
 
+  /**
+   * Let the repositories of some projects be updated concurrently. This can be set again in each
+   * try.
+   *
+   * <p>The {@link BatchUpdateOp#updateRepo} phase of the batch updates of these projects runs on
+   * {@code executor}, for at most {@code parallelism} projects at a time, before the repositories
+   * of all other projects are updated in order. Ops of these projects must hence neither depend on
+   * the repository updates of other projects nor share unsynchronized state with them. All later
+   * phases, in particular the atomic ref updates, are not affected.
+   *
+   * @param projects projects whose repositories may be updated concurrently.
+   * @param executor executor to run the repository updates on.
+   * @param parallelism maximum number of repositories that are updated at the same time.
+   * @param scopePropagator propagator of the request scope in which {@link #execute} is called to
+   *     the threads of the executor.
+   */
+  public void setConcurrentRepoUpdates(
+      ImmutableSet<Project.NameKey> projects,
+      ExecutorService executor,
+      int parallelism,
+      RequestScopePropagator scopePropagator) {
+    this.concurrentRepoUpdates = projects;
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.scopePropagator = scopePropagator;
+  }
+
   /** Execute the batch updates, reporting to all the Submission and BatchUpdateListeners. */
   public void execute(Collection<BatchUpdate> updates) throws RestApiException, UpdateException {
     submissionListeners.forEach(l -> l.beforeBatchUpdates(updates));
@@ -58,7 +100,79 @@ public class SubmissionExecutor {
                     .map(Optional::get)
                     .collect(Collectors.toList()))
             .build();
-    BatchUpdate.execute(updates, listeners, dryrun);
+    BatchUpdate.execute(updates, listeners, dryrun, this::updateRepos);
+  }
+
+  private void updateRepos(Collection<BatchUpdate> updates)
+      throws UpdateException, RestApiException {
+    List<BatchUpdate> concurrent = new ArrayList<>();
+    List<BatchUpdate> inOrder = new ArrayList<>();
+    for (BatchUpdate u : updates) {
+      if (concurrentRepoUpdates.contains(u.getProject())) {
+        concurrent.add(u);
+      } else {
+        inOrder.add(u);
+      }
+    }
+    if (parallelism < 2 || concurrent.size() < 2) {
+      for (BatchUpdate u : updates) {
+        u.executeUpdateRepo();
+      }
+      return;
+    }
+
+    updateReposConcurrently(concurrent);
+    for (BatchUpdate u : inOrder) {
+      u.executeUpdateRepo();
+    }
+  }
+
+  private void updateReposConcurrently(List<BatchUpdate> updates)
+      throws UpdateException, RestApiException {
+    // Distribute the updates over a bounded number of tasks, each of which updates its
+    // repositories one after another.
+    int taskCount = Math.min(parallelism, updates.size());
+    List<FutureTask<Void>> tasks = new ArrayList<>(taskCount);
+    for (int i = 0; i < taskCount; i++) {
+      List<BatchUpdate> updatesOfTask = new ArrayList<>();
+      for (int j = i; j < updates.size(); j += taskCount) {
+        updatesOfTask.add(updates.get(j));
+      }
+      FutureTask<Void> task =
+          new FutureTask<>(
+              scopePropagator.wrap(
+                  () -> {
+                    for (BatchUpdate u : updatesOfTask) {
+                      u.executeUpdateRepo();
+                    }
+                    return null;
+                  }));
+      tasks.add(task);
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        // The task is run by this thread below.
+      }
+    }
+
+    Throwable failure = null;
+    for (FutureTask<Void> task : tasks) {
+      // Run the task in this thread unless the executor already started it. This keeps the
+      // calling thread busy and avoids waiting on a saturated executor.
+      task.run();
+      try {
+        Uninterruptibles.getUninterruptibly(task);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+    if (failure != null) {
+      Throwables.throwIfInstanceOf(failure, UpdateException.class);
+      Throwables.throwIfInstanceOf(failure, RestApiException.class);
+      throw new UpdateException(failure);
+    }
   }
 
   /**
@@ -0,0 +1,78 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.util;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.flogger.FluentLogger;
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads if the Java runtime supports them.
+ *
+ * <p>Gerrit is compiled for a Java release without virtual threads, hence the API is accessed by
+ * reflection.
+ */
+public class VirtualThreads {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final boolean SUPPORTED = checkSupported();
+
+  /** Returns whether the Java runtime supports virtual threads. */
+  public static boolean isSupported() {
+    return SUPPORTED;
+  }
+
+  /**
+   * Creates a factory for virtual threads.
+   *
+   * @param namePrefix prefix of the thread names, followed by a counter.
+   * @param uncaughtExceptionHandler handler for exceptions that terminate a thread.
+   * @throws IllegalStateException if virtual threads are not supported.
+   */
+  public static ThreadFactory newThreadFactory(
+      String namePrefix, UncaughtExceptionHandler uncaughtExceptionHandler) {
+    checkState(SUPPORTED, "virtual threads are not supported by this Java runtime");
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder =
+          builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+      builder =
+          builderClass
+              .getMethod("uncaughtExceptionHandler", UncaughtExceptionHandler.class)
+              .invoke(builder, uncaughtExceptionHandler);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("cannot create virtual thread factory", e);
+    }
+  }
+
+  private static boolean checkSupported() {
+    try {
+      Method ofVirtual = Thread.class.getMethod("ofVirtual");
+      // Fails if virtual threads are a preview feature that is not enabled.
+      ofVirtual.invoke(null);
+      return true;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      logger.atFine().withCause(e).log("Virtual threads are not supported");
+      return false;
+    }
+  }
+
+  private VirtualThreads() {}
+}
@@ -36,6 +36,23 @@ public class CommandExecutorQueueProvider implements QueueProvider {
       @GerritServerConfig Config config,
       ThreadSettingsConfig threadsSettingsConfig,
       WorkQueue queues) {
+    if (threadsSettingsConfig.useVirtualThreads()) {
+      // Virtual threads are cheap, so the pool sizes are the limits of concurrent requests per
+      // queue type instead of a number of platform threads.
+      batchThreads = threadsSettingsConfig.getBatchRequestLimit();
+      poolSize = threadsSettingsConfig.getInteractiveRequestLimit() + batchThreads;
+      interactiveExecutor =
+          queues.createQueue(
+              threadsSettingsConfig.getInteractiveRequestLimit(),
+              "SSH-Interactive-Worker",
+              Thread.MIN_PRIORITY,
+              true,
+              true);
+      batchExecutor =
+          queues.createQueue(batchThreads, "SSH-Batch-Worker", Thread.MIN_PRIORITY, true, true);
+      return;
+    }
+
     poolSize = threadsSettingsConfig.getSshdThreads();
     batchThreads =
         config.getInt("sshd", "batchThreads", threadsSettingsConfig.getSshdBatchTreads());
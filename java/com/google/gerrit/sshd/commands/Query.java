@@ -91,6 +91,14 @@ public class Query extends SshCommand implements DynamicOptions.BeanReceiver {
     processor.setStart(start);
   }
 
+  @Option(
+      name = "--search-after",
+      metaVar = "CURSOR",
+      usage = "Only return changes that sort after the change the cursor was returned for")
+  void setSearchAfter(String cursor) {
+    processor.setSearchAfter(cursor);
+  }
+
   @Option(name = "--no-limit", usage = "Return all results, overriding the default limit")
   void setNoLimit(boolean on) {
     processor.setNoLimit(on);
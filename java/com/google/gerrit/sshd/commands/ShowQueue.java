@@ -19,6 +19,7 @@ import static com.google.gerrit.sshd.CommandMetaData.Mode.MASTER_OR_SLAVE;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.extensions.restapi.AuthException;
 import com.google.gerrit.server.IdentifiedUser;
 import com.google.gerrit.server.config.ConfigResource;
@@ -38,6 +39,7 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import org.apache.sshd.server.Environment;
 import org.apache.sshd.server.channel.ChannelSession;
@@ -112,10 +114,15 @@ final class ShowQueue extends SshCommand {
       for (String queueName : byQueue.keySet()) {
         ScheduledThreadPoolExecutor e = workQueue.getExecutor(queueName);
         stdout.print(String.format("Queue: %s\n", queueName));
-        print(byQueue.get(queueName), now, viewAll, e.getCorePoolSize());
+        print(
+            byQueue.get(queueName),
+            now,
+            viewAll,
+            e.getCorePoolSize(),
+            workQueue.getWaitTimeHistogram(queueName));
       }
     } else {
-      print(tasks, now, viewAll, 0);
+      print(tasks, now, viewAll, 0, null);
     }
   }
 
@@ -127,7 +134,12 @@ final class ShowQueue extends SshCommand {
     return byQueue;
   }
 
-  private void print(List<TaskInfo> tasks, long now, boolean viewAll, int threadPoolSize) {
+  private void print(
+      List<TaskInfo> tasks,
+      long now,
+      boolean viewAll,
+      int threadPoolSize,
+      @Nullable WorkQueue.WaitTimeHistogram waitTimes) {
     for (TaskInfo task : tasks) {
       String start;
       switch (task.state) {
@@ -174,7 +186,15 @@ final class ShowQueue extends SshCommand {
     if (threadPoolSize > 0) {
       stdout.print(", " + threadPoolSize + " worker threads");
     }
-    stdout.print("\n\n");
+    stdout.print("\n");
+    if (waitTimes != null) {
+      stdout.print("  wait time:");
+      for (Map.Entry<String, Long> bucket : waitTimes.getBuckets().entrySet()) {
+        stdout.print(String.format(" %s %d", bucket.getKey(), bucket.getValue()));
+      }
+      stdout.print("\n");
+    }
+    stdout.print("\n");
   }
 
   private static String time(long now, long delay) {
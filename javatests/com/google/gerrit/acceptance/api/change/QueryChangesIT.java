@@ -21,30 +21,41 @@ import static com.google.gerrit.testing.GerritJUnit.assertThrows;
 import static java.util.stream.Collectors.toList;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 
+import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.gerrit.acceptance.AbstractDaemonTest;
 import com.google.gerrit.acceptance.NoHttpd;
 import com.google.gerrit.acceptance.PushOneCommit;
 import com.google.gerrit.acceptance.UseClockStep;
 import com.google.gerrit.acceptance.config.GerritConfig;
 import com.google.gerrit.acceptance.testsuite.account.AccountOperations;
+import com.google.gerrit.acceptance.testsuite.change.ChangeOperations;
 import com.google.gerrit.acceptance.testsuite.project.ProjectOperations;
 import com.google.gerrit.acceptance.testsuite.request.RequestScopeOperations;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.AccessSection;
 import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.LabelId;
 import com.google.gerrit.entities.Patch;
 import com.google.gerrit.entities.Permission;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.api.changes.ReviewInput;
+import com.google.gerrit.extensions.client.ListChangesOption;
 import com.google.gerrit.extensions.common.ChangeInfo;
+import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gerrit.extensions.registration.PluginName;
 import com.google.gerrit.extensions.restapi.AuthException;
 import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.StreamingList;
 import com.google.gerrit.extensions.restapi.TopLevelResource;
+import com.google.gerrit.server.change.ChangeJson;
 import com.google.gerrit.server.project.ProjectConfig;
 import com.google.gerrit.server.restapi.change.QueryChanges;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
@@ -54,6 +65,8 @@ import org.junit.Test;
 @NoHttpd
 public class QueryChangesIT extends AbstractDaemonTest {
   @Inject private AccountOperations accountOperations;
+  @Inject private DynamicMap<Cache<?, ?>> caches;
+  @Inject private ChangeOperations changeOperations;
   @Inject private ProjectOperations projectOperations;
   @Inject private Provider<QueryChanges> queryChangesProvider;
   @Inject private RequestScopeOperations requestScopeOperations;
@@ -123,6 +136,155 @@ public class QueryChangesIT extends AbstractDaemonTest {
     assertThat(result2.get(1).get(0)._moreChanges).isTrue();
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void largeResultIsFormattedLazily() throws Exception {
+    int limit = ChangeJson.STREAMING_CHUNK_SIZE + 1;
+    List<Integer> created = new ArrayList<>();
+    for (int i = 0; i < limit + 1; i++) {
+      created.add(changeOperations.newChange().project(project).create().get());
+    }
+
+    QueryChanges queryChanges = queryChangesProvider.get();
+    queryChanges.addQuery("repo:" + project.get());
+    queryChanges.setLimit(limit);
+    List<ChangeInfo> result =
+        (List<ChangeInfo>) queryChanges.apply(TopLevelResource.INSTANCE).value();
+    assertThat(result).isInstanceOf(StreamingList.class);
+
+    List<ChangeInfo> streamed =
+        ImmutableList.copyOf(((StreamingList<ChangeInfo>) result).streamingIterator());
+    List<Integer> streamedIds = streamed.stream().map(i -> i._number).collect(toList());
+    assertThat(streamedIds).hasSize(limit);
+    assertThat(created).containsAtLeastElementsIn(streamedIds);
+    assertThat(result.stream().map(i -> i._number).collect(toList()))
+        .containsExactlyElementsIn(streamedIds)
+        .inOrder();
+    assertNoChangeHasMoreChangesSet(streamed.subList(0, limit - 1));
+    assertThat(Iterables.getLast(streamed)._moreChanges).isTrue();
+    assertThat(Iterables.getLast(result)._moreChanges).isTrue();
+  }
+
+  @Test
+  @GerritConfig(name = "cache.change_query_results.memoryLimit", value = "100")
+  public void cachedQueryResultsIncludeNewChanges() throws Exception {
+    int first = changeOperations.newChange().project(project).create().get();
+    String query = "is:open repo:" + project.get();
+    assertThat(queryNumbers(query)).containsExactly(first);
+    long hits = resultCacheHits();
+    assertThat(queryNumbers(query)).containsExactly(first);
+    assertThat(resultCacheHits()).isEqualTo(hits + 1);
+
+    int second = changeOperations.newChange().project(project).create().get();
+    assertThat(queryNumbers(query)).containsExactly(first, second);
+    assertThat(resultCacheHits()).isEqualTo(hits + 1);
+
+    requestScopeOperations.setApiUser(user.id());
+    assertThat(queryNumbers(query)).containsExactly(first, second);
+    assertThat(resultCacheHits()).isEqualTo(hits + 1);
+  }
+
+  @Test
+  @GerritConfig(name = "cache.change_query_results.memoryLimit", value = "100")
+  public void cachedQueryResultsAreKeyedOnPaging() throws Exception {
+    List<Integer> numbers = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      numbers.add(changeOperations.newChange().project(project).create().get());
+    }
+    String query = "is:open repo:" + project.get();
+    List<Integer> all = queryNumbers(query);
+    assertThat(all).containsExactlyElementsIn(numbers);
+
+    // Both pages would be fetched with the same limit from the index.
+    assertThat(queryNumbers(query, 0, 3)).containsExactlyElementsIn(all).inOrder();
+    assertThat(queryNumbers(query, 1, 2)).containsExactlyElementsIn(all.subList(1, 3)).inOrder();
+    long hits = resultCacheHits();
+    assertThat(queryNumbers(query, 1, 2)).containsExactlyElementsIn(all.subList(1, 3)).inOrder();
+    assertThat(resultCacheHits()).isEqualTo(hits + 1);
+  }
+
+  @Test
+  @UseClockStep
+  public void pagingWithSearchAfterSkipsNoChangesWhenChangesAreUpdated() throws Exception {
+    List<Integer> numbers = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      numbers.add(changeOperations.newChange().project(project).create().get());
+    }
+    String query = "repo:" + project.get();
+
+    List<ChangeInfo> page = queryPage(query, 2, null);
+    List<Integer> paged = page.stream().map(i -> i._number).collect(toList());
+    assertThat(paged).containsExactly(numbers.get(4), numbers.get(3)).inOrder();
+
+    // Move a change that was already returned and one that was not yet returned to the front. With
+    // offsets the next page would return the change of the first page again and miss another one.
+    gApi.changes().id(numbers.get(3)).topic("updated");
+    gApi.changes().id(numbers.get(1)).topic("updated");
+
+    while (Iterables.getLast(page)._moreChanges != null) {
+      page = queryPage(query, 2, Iterables.getLast(page)._searchAfter);
+      page.forEach(i -> paged.add(i._number));
+    }
+    assertThat(paged)
+        .containsExactly(numbers.get(4), numbers.get(3), numbers.get(2), numbers.get(0))
+        .inOrder();
+  }
+
+  @Test
+  @UseClockStep
+  @GerritConfig(name = "index.maxPostFilterCandidates", value = "2")
+  public void queryIsAbortedWhenTooManyResultsAreFilteredOut() throws Exception {
+    String privateChangeId = createChange().getChangeId();
+    createChange();
+    createChange();
+    // The private change sorts first and is not visible to the user, so the query needs to check
+    // more than two results to fill its limit.
+    gApi.changes().id(privateChangeId).setPrivate(true);
+
+    requestScopeOperations.setApiUser(user.id());
+    BadRequestException thrown =
+        assertThrows(
+            BadRequestException.class,
+            () -> gApi.changes().query("limit:1 repo:" + project.get()).get());
+    assertThat(thrown)
+        .hasMessageThat()
+        .isEqualTo(
+            "Query is too expensive: checked 2 results without finding enough matches"
+                + " (index.maxPostFilterCandidates). Narrow down the query, e.g. by project,"
+                + " branch or status.");
+
+    // The owner can see the private change, so the first results suffice.
+    requestScopeOperations.setApiUser(admin.id());
+    assertThat(queryNumbers("limit:1 repo:" + project.get()))
+        .containsExactly(gApi.changes().id(privateChangeId).get()._number);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<ChangeInfo> queryPage(String query, int limit, @Nullable String searchAfter)
+      throws Exception {
+    QueryChanges queryChanges = queryChangesProvider.get();
+    queryChanges.addQuery(query);
+    queryChanges.setLimit(limit);
+    if (searchAfter != null) {
+      queryChanges.setSearchAfter(searchAfter);
+    }
+    return (List<ChangeInfo>) queryChanges.apply(TopLevelResource.INSTANCE).value();
+  }
+
+  private List<Integer> queryNumbers(String query) throws Exception {
+    return gApi.changes().query(query).get().stream().map(i -> i._number).collect(toList());
+  }
+
+  private List<Integer> queryNumbers(String query, int start, int limit) throws Exception {
+    return gApi.changes().query(query).withStart(start).withLimit(limit).get().stream()
+        .map(i -> i._number)
+        .collect(toList());
+  }
+
+  private long resultCacheHits() {
+    return caches.get(PluginName.GERRIT, "change_query_results").stats().hitCount();
+  }
+
   @Test
   @SuppressWarnings("unchecked")
   @GerritConfig(name = "operator-alias.change.numberaliastest", value = "change")
@@ -358,6 +520,28 @@ public class QueryChangesIT extends AbstractDaemonTest {
     assertThat(result3).hasSize(1);
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void indexOnlyQueryDoesNotLoadNoteDb() throws Exception {
+    String changeId = createChange().getChangeId();
+    gApi.changes().id(changeId).current().review(ReviewInput.recommend());
+
+    QueryChanges queryChanges = queryChangesProvider.get();
+    queryChanges.addQuery("is:open repo:" + project.get());
+    queryChanges.addOption(ListChangesOption.LABELS);
+    queryChanges.addOption(ListChangesOption.DETAILED_ACCOUNTS);
+    try (AutoCloseable ignored = disableNoteDb()) {
+      List<ChangeInfo> result =
+          ImmutableList.copyOf(
+              (List<ChangeInfo>) queryChanges.apply(TopLevelResource.INSTANCE).value());
+      assertThat(result).hasSize(1);
+      ChangeInfo info = result.get(0);
+      assertThat(info.changeId).isEqualTo(changeId);
+      assertThat(info.labels.get(LabelId.CODE_REVIEW).recommended._accountId)
+          .isEqualTo(admin.id().get());
+    }
+  }
+
   private static void assertNoChangeHasMoreChangesSet(List<ChangeInfo> results) {
     for (ChangeInfo info : results) {
       assertThat(info._moreChanges).isNull();
@@ -67,6 +67,7 @@ import com.google.gerrit.extensions.api.changes.NotifyInfo;
 import com.google.gerrit.extensions.api.changes.RecipientType;
 import com.google.gerrit.extensions.api.changes.ReviewInput;
 import com.google.gerrit.extensions.api.changes.ReviewInput.CommentInput;
+import com.google.gerrit.extensions.api.changes.ReviewedFilesInput;
 import com.google.gerrit.extensions.api.changes.RevisionApi;
 import com.google.gerrit.extensions.api.projects.BranchInput;
 import com.google.gerrit.extensions.client.ChangeStatus;
@@ -1231,6 +1232,35 @@ public class RevisionIT extends AbstractDaemonTest {
     assertThat(gApi.changes().id(r.getChangeId()).current().reviewed()).isEmpty();
   }
 
+  @Test
+  public void setReviewedFlagsInBatch() throws Exception {
+    PushOneCommit.Result r =
+        pushFactory
+            .create(
+                admin.newIdent(),
+                testRepo,
+                "subject",
+                ImmutableMap.of("a.txt", "a", "b.txt", "b", "c.txt", "c"))
+            .to("refs/for/master");
+    RevisionApi revision = gApi.changes().id(r.getChangeId()).current();
+
+    ReviewedFilesInput in = new ReviewedFilesInput();
+    in.reviewed = ImmutableList.of("a.txt", "b.txt", "c.txt");
+    revision.setReviewed(in);
+    assertThat(revision.reviewed()).containsExactly("a.txt", "b.txt", "c.txt");
+
+    in = new ReviewedFilesInput();
+    in.reviewed = ImmutableList.of("a.txt");
+    in.unreviewed = ImmutableList.of("b.txt");
+    revision.setReviewed(in);
+    assertThat(revision.reviewed()).containsExactly("a.txt", "c.txt");
+
+    ReviewedFilesInput conflicting = new ReviewedFilesInput();
+    conflicting.reviewed = ImmutableList.of("a.txt");
+    conflicting.unreviewed = ImmutableList.of("a.txt");
+    assertThrows(BadRequestException.class, () -> revision.setReviewed(conflicting));
+  }
+
   @Test
   public void setReviewedFlagWithMultiplePatchSets() throws Exception {
     PushOneCommit push = pushFactory.create(admin.newIdent(), testRepo);
@@ -103,6 +103,7 @@ import com.google.gerrit.server.events.CommitReceivedEvent;
 import com.google.gerrit.server.git.receive.NoteDbPushOption;
 import com.google.gerrit.server.git.receive.PluginPushOption;
 import com.google.gerrit.server.git.receive.ReceiveConstants;
+import com.google.gerrit.server.git.validators.CommitValidationException;
 import com.google.gerrit.server.git.validators.CommitValidationListener;
 import com.google.gerrit.server.git.validators.CommitValidationMessage;
 import com.google.gerrit.server.group.SystemGroupBackend;
@@ -2362,6 +2363,31 @@ public abstract class AbstractPushForReview extends AbstractDaemonTest {
         .isEqualTo(Iterables.getLast(commits).name());
   }
 
+  @Test
+  @GerritConfig(name = "receive.parallelCommitValidation", value = "true")
+  public void firstInvalidCommitOfSeriesIsReported() throws Exception {
+    CommitValidationListener validator =
+        receivedEvent -> {
+          String subject = receivedEvent.commit.getShortMessage();
+          if (subject.startsWith("bad")) {
+            throw new CommitValidationException("rejected " + subject);
+          }
+          return Collections.emptyList();
+        };
+    List<RevCommit> commits = new ArrayList<>();
+    for (String subject : ImmutableList.of("good 1", "bad 1", "good 2", "bad 2")) {
+      commits.add(createCommitWithChangeId(testRepo, subject));
+    }
+
+    try (Registration registration = extensionRegistry.newRegistration().add(validator)) {
+      String ref = "refs/for/master";
+      assertPushRejected(
+          pushHead(testRepo, ref),
+          ref,
+          String.format("commit %s: rejected bad 1", abbreviateName(commits.get(1))));
+    }
+  }
+
   private static class TestValidator implements CommitValidationListener {
     private final AtomicInteger count = new AtomicInteger();
     private final boolean validateAll;
@@ -1276,6 +1276,50 @@ public class RefAdvertisementIT extends AbstractDaemonTest {
     }
   }
 
+  @Test
+  public void advertisedReferencesIncludeOwnPrivateChanges() throws Exception {
+    projectOperations
+        .project(project)
+        .forUpdate()
+        .add(allow(Permission.READ).ref("refs/heads/master").group(REGISTERED_USERS))
+        .update();
+    gApi.changes().id(cd3.getId().get()).setPrivate(true, null);
+
+    TestRepository<?> userTestRepository = cloneProject(project, user);
+    PushOneCommit.Result r =
+        pushFactory.create(user.newIdent(), userTestRepository).to("refs/for/master%private");
+    r.assertOkStatus();
+
+    try (Git git = userTestRepository.git()) {
+      assertThat(getRefs(git))
+          .containsAtLeast(
+              r.getChange().currentPatchSet().refName(),
+              RefNames.changeMetaRef(r.getChange().getId()),
+              psRef1);
+      assertThat(getRefs(git)).containsNoneOf(psRef3, metaRef3);
+    }
+  }
+
+  @Test
+  public void advertisedReferencesOmitPrivateChangesOnUnreadableBranches() throws Exception {
+    projectOperations
+        .project(project)
+        .forUpdate()
+        .add(allow(Permission.READ).ref("refs/heads/master").group(REGISTERED_USERS))
+        .add(allow(Permission.VIEW_PRIVATE_CHANGES).ref("refs/*").group(REGISTERED_USERS))
+        .update();
+    gApi.changes().id(cd3.getId().get()).setPrivate(true, null);
+    gApi.changes().id(cd4.getId().get()).setPrivate(true, null);
+
+    TestRepository<?> userTestRepository = cloneProject(project, user);
+    try (Git git = userTestRepository.git()) {
+      // Private changes are checked one by one, which must still respect the visibility of their
+      // destination branch.
+      assertThat(getRefs(git)).containsAtLeast(psRef3, metaRef3);
+      assertThat(getRefs(git)).containsNoneOf(psRef4, metaRef4);
+    }
+  }
+
   @Test
   public void advertisedReferencesIncludePrivateChangesWhenAllRefsMayBeRead() throws Exception {
     assume()
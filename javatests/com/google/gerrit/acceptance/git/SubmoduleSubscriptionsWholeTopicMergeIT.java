@@ -22,6 +22,7 @@ import static com.google.gerrit.testing.GerritJUnit.assertThrows;
 
 import com.google.common.collect.ImmutableList;
 import com.google.gerrit.acceptance.NoHttpd;
+import com.google.gerrit.acceptance.config.GerritConfig;
 import com.google.gerrit.acceptance.testsuite.ThrowingConsumer;
 import com.google.gerrit.acceptance.testsuite.project.ProjectOperations;
 import com.google.gerrit.entities.BranchNameKey;
@@ -370,6 +371,65 @@ public class SubmoduleSubscriptionsWholeTopicMergeIT extends AbstractSubmoduleSu
         .isEqualTo(superPreviousId);
   }
 
+  @Test
+  @GerritConfig(name = "change.submitParallelism", value = "4")
+  public void updateManySubmodulesConcurrently() throws Exception {
+    final int NUM = 4;
+    Project.NameKey subKey[] = new Project.NameKey[NUM];
+    TestRepository<?> sub[] = new TestRepository[NUM];
+    String prefix = RandomStringUtils.randomAlphabetic(8);
+    for (int i = 0; i < subKey.length; i++) {
+      subKey[i] =
+          projectOperations
+              .newProject()
+              .name(prefix + "sub" + i)
+              .submitType(getSubmitType())
+              .create();
+      projectOperations
+          .project(subKey[i])
+          .forUpdate()
+          .add(allow(Permission.PUSH).ref("refs/heads/*").group(adminGroupUuid()))
+          .add(allow(Permission.SUBMIT).ref("refs/for/refs/heads/*").group(adminGroupUuid()))
+          .update();
+      sub[i] = cloneProject(subKey[i]);
+      allowMatchingSubmoduleSubscription(
+          subKey[i], "refs/heads/master", superKey, "refs/heads/master");
+    }
+
+    Config config = new Config();
+    for (int i = 0; i < subKey.length; i++) {
+      prepareSubmoduleConfigEntry(config, subKey[i], "master");
+    }
+    pushSubmoduleConfig(superRepo, "master", config);
+
+    // The repositories of the submodules are updated concurrently, the superproject is only
+    // updated afterwards and must see the new tips of all of them.
+    String superChangeId =
+        getChangeId(
+                superRepo,
+                pushChangeTo(
+                    superRepo,
+                    "refs/for/master",
+                    "super.txt",
+                    "super contents",
+                    "superproject change",
+                    "same-topic"))
+            .get();
+    approve(superChangeId);
+    ObjectId subId[] = new ObjectId[NUM];
+    for (int i = 0; i < sub.length; i++) {
+      subId[i] = pushChangeTo(sub[i], "refs/for/master", "some message", "same-topic");
+      approve(getChangeId(sub[i], subId[i]).get());
+    }
+
+    gApi.changes().id(superChangeId).current().submit();
+
+    assertThat(gApi.changes().id(superChangeId).get().status).isEqualTo(ChangeStatus.MERGED);
+    for (int i = 0; i < sub.length; i++) {
+      expectToHaveSubmoduleState(superRepo, "master", subKey[i], sub[i], "master");
+    }
+  }
+
   @Test
   public void doNotUseFastForward() throws Exception {
     // like setup, but without empty commit
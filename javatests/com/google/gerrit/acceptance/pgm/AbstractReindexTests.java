@@ -20,7 +20,9 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
 import static com.google.common.truth.Truth8.assertThat;
 import static com.google.gerrit.extensions.client.ListGroupsOption.MEMBERS;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.MoreFiles;
 import com.google.common.io.RecursiveDeleteOption;
@@ -29,19 +31,28 @@ import com.google.gerrit.acceptance.StandaloneSiteTest;
 import com.google.gerrit.acceptance.pgm.IndexUpgradeController.UpgradeAttempt;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
 import com.google.gerrit.extensions.api.GerritApi;
 import com.google.gerrit.extensions.common.ChangeInput;
+import com.google.gerrit.index.IndexConfig;
 import com.google.gerrit.launcher.GerritLauncher;
+import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.index.GerritIndexStatus;
+import com.google.gerrit.server.index.change.ChangeIndex;
 import com.google.gerrit.server.index.change.ChangeIndexCollection;
 import com.google.gerrit.server.index.change.ChangeSchemaDefinitions;
+import com.google.gerrit.server.index.change.IndexedChangeQuery;
 import com.google.gerrit.server.query.change.InternalChangeQuery;
 import com.google.inject.Injector;
 import com.google.inject.Provider;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Set;
 import java.util.function.Consumer;
 import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.storage.file.FileBasedConfig;
 import org.eclipse.jgit.util.FS;
 import org.junit.Test;
@@ -87,6 +98,91 @@ public abstract class AbstractReindexTests extends StandaloneSiteTest {
     }
   }
 
+  @Test
+  public void incrementalReindex() throws Exception {
+    setUpChange();
+    Project.NameKey skippedProject = Project.nameKey("reindex-project-skipped");
+    try (ServerContext ctx = startServer()) {
+      GerritApi gApi = ctx.getInjector().getInstance(GerritApi.class);
+      gApi.projects().create(skippedProject.get());
+      ChangeInput in = new ChangeInput(skippedProject.get(), "master", "Test skipped change");
+      in.newBranch = true;
+      Change.Id skippedId = Change.id(gApi.changes().create(in).info()._number);
+
+      // Both documents went missing, and an interrupted run already finished the slice of the
+      // skipped project.
+      ChangeIndex index =
+          ctx.getInjector().getInstance(ChangeIndexCollection.class).getSearchIndex();
+      index.delete(Change.id(gApi.changes().id(changeId).get()._number));
+      index.delete(skippedId);
+    }
+    Files.write(
+        sitePaths.index_dir.resolve(
+            String.format(
+                "reindex_%s_%04d.checkpoint",
+                CHANGES, ChangeSchemaDefinitions.INSTANCE.getLatest().getVersion())),
+        ImmutableList.of("0/1 " + skippedProject.get()),
+        UTF_8);
+
+    runGerrit(
+        "reindex",
+        "-d",
+        sitePaths.site_path.toString(),
+        "--index",
+        CHANGES,
+        "--incremental",
+        "--show-stack-trace");
+    assertReady(ChangeSchemaDefinitions.INSTANCE.getLatest().getVersion());
+    try (DirectoryStream<Path> paths =
+        Files.newDirectoryStream(sitePaths.index_dir, "reindex_*.checkpoint")) {
+      assertThat(paths).isEmpty();
+    }
+
+    try (ServerContext ctx = startServer()) {
+      GerritApi gApi = ctx.getInjector().getInstance(GerritApi.class);
+      // The stale change was reindexed, the change of the finished slice wasn't.
+      assertThat(gApi.changes().query("message:Test").get().stream().map(c -> c.changeId))
+          .containsExactly(changeId);
+    }
+  }
+
+  @Test
+  public void incrementalReindexDeletesDocumentsOfDeletedChanges() throws Exception {
+    setUpChange();
+    Change.Id id;
+    Change.Id deletedId;
+    try (ServerContext ctx = startServer()) {
+      GerritApi gApi = ctx.getInjector().getInstance(GerritApi.class);
+      id = Change.id(gApi.changes().id(changeId).get()._number);
+      ChangeInput in = new ChangeInput(project.get(), "master", "Test deleted change");
+      in.newBranch = true;
+      deletedId = Change.id(gApi.changes().create(in).info()._number);
+
+      // Delete the change without updating the index.
+      try (Repository repo =
+          ctx.getInjector().getInstance(GitRepositoryManager.class).openRepository(project)) {
+        RefUpdate u = repo.updateRef(RefNames.changeMetaRef(deletedId));
+        u.setForceUpdate(true);
+        assertThat(u.delete()).isEqualTo(RefUpdate.Result.FORCED);
+      }
+      assertThat(isIndexed(ctx, deletedId)).isTrue();
+    }
+
+    runGerrit(
+        "reindex",
+        "-d",
+        sitePaths.site_path.toString(),
+        "--index",
+        CHANGES,
+        "--incremental",
+        "--show-stack-trace");
+
+    try (ServerContext ctx = startServer()) {
+      assertThat(isIndexed(ctx, id)).isTrue();
+      assertThat(isIndexed(ctx, deletedId)).isFalse();
+    }
+  }
+
   @Test
   public void offlineReindexForChangesIsNotPossibleInSlaveMode() throws Exception {
     enableSlaveMode();
@@ -236,6 +332,14 @@ public abstract class AbstractReindexTests extends StandaloneSiteTest {
     }
   }
 
+  private boolean isIndexed(ServerContext ctx, Change.Id id) {
+    ChangeIndex index = ctx.getInjector().getInstance(ChangeIndexCollection.class).getSearchIndex();
+    IndexConfig indexConfig = ctx.getInjector().getInstance(IndexConfig.class);
+    return index
+        .get(id, IndexedChangeQuery.createOptions(indexConfig, 0, 1, ImmutableSet.of()))
+        .isPresent();
+  }
+
   private void setOnlineUpgradeConfig(boolean enable) throws Exception {
     updateConfig(cfg -> cfg.setBoolean("index", null, "onlineUpgrade", enable));
   }
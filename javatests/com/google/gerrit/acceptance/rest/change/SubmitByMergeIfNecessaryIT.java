@@ -26,6 +26,7 @@ import static com.google.gerrit.testing.GerritJUnit.assertThrows;
 
 import com.google.gerrit.acceptance.GitUtil;
 import com.google.gerrit.acceptance.PushOneCommit;
+import com.google.gerrit.acceptance.config.GerritConfig;
 import com.google.gerrit.acceptance.testsuite.project.ProjectOperations;
 import com.google.gerrit.acceptance.testsuite.request.RequestScopeOperations;
 import com.google.gerrit.entities.BranchNameKey;
@@ -314,6 +315,52 @@ public class SubmitByMergeIfNecessaryIT extends AbstractSubmitByMerge {
     }
   }
 
+  @Test
+  @GerritConfig(name = "change.submitParallelism", value = "4")
+  public void submitTopicAcrossReposWithConflictInOneRepoUpdatesNoBranch() throws Throwable {
+    assume().that(isSubmitWholeTopicEnabled()).isTrue();
+    String topic = "test-topic";
+    int conflictingRepo = 2;
+
+    List<Project.NameKey> projects = new ArrayList<>();
+    List<PushOneCommit.Result> changes = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Project.NameKey p = projectOperations.newProject().create();
+      TestRepository<?> repo = cloneProject(p);
+      RevCommit initialHead = projectOperations.project(p).getHead("master");
+      changes.add(createChange(repo, "master", "Change " + i, "a.txt", "1", topic));
+      if (i == conflictingRepo) {
+        repo.reset(initialHead);
+        submit(
+            createChange(repo, "master", "conflicting change", "a.txt", "2\n2", "")
+                .getChangeId());
+      }
+      projects.add(p);
+    }
+    List<RevCommit> headsBeforeSubmit = new ArrayList<>();
+    for (Project.NameKey p : projects) {
+      headsBeforeSubmit.add(projectOperations.project(p).getHead("master"));
+    }
+    for (PushOneCommit.Result change : changes) {
+      approve(change.getChangeId());
+    }
+
+    // The repositories are updated concurrently, the conflict must still abort the whole topic.
+    submitWithConflict(
+        changes.get(0).getChangeId(),
+        "Failed to submit 4 changes due to the following problems:\n"
+            + "Change "
+            + changes.get(conflictingRepo).getChange().getId()
+            + ": Change could not be merged due to a path conflict. Please rebase the change "
+            + "locally and upload the rebased commit for review.");
+
+    for (int i = 0; i < projects.size(); i++) {
+      assertThat(projectOperations.project(projects.get(i)).getHead("master"))
+          .isEqualTo(headsBeforeSubmit.get(i));
+      assertNoSubmitter(changes.get(i).getChangeId(), 1);
+    }
+  }
+
   @Test
   public void submitWithMergedAncestorsOnOtherBranch() throws Throwable {
     RevCommit initialHead = projectOperations.project(project).getHead("master");
@@ -0,0 +1,84 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.acceptance.server.change;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.acceptance.AbstractDaemonTest;
+import com.google.gerrit.acceptance.NoHttpd;
+import com.google.gerrit.acceptance.PushOneCommit;
+import com.google.gerrit.acceptance.testsuite.project.ProjectOperations;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.extensions.api.changes.ReviewInput;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.ChangeDataPrefetcher;
+import com.google.inject.Inject;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.junit.Test;
+
+@NoHttpd
+public class ChangeDataPrefetcherIT extends AbstractDaemonTest {
+  @Inject private ChangeDataPrefetcher prefetcher;
+  @Inject private ProjectOperations projectOperations;
+
+  @Test
+  public void prefetchLoadsChangesOfMultipleProjects() throws Exception {
+    PushOneCommit.Result r1 = createChange();
+    PushOneCommit.Result r2 = createChange();
+    gApi.changes().id(r2.getChangeId()).current().review(ReviewInput.approve());
+    amendChange(r2.getChangeId());
+
+    Project.NameKey otherProject = projectOperations.newProject().create();
+    TestRepository<InMemoryRepository> otherRepo = cloneProject(otherProject);
+    PushOneCommit.Result r3 = createChange(otherRepo);
+
+    ChangeData cd1 = changeDataFactory.create(project, r1.getChange().getId());
+    ChangeData cd2 = changeDataFactory.create(project, r2.getChange().getId());
+    ChangeData cd3 = changeDataFactory.create(otherProject, r3.getChange().getId());
+    prefetcher.prefetch(ImmutableList.of(cd1, cd2, cd3));
+
+    try (AutoCloseable ignored = disableNoteDb()) {
+      assertThat(cd1.change().getId()).isEqualTo(r1.getChange().getId());
+      assertThat(cd1.patchSets()).hasSize(1);
+      assertThat(cd2.patchSets()).hasSize(2);
+      assertThat(cd2.reviewers().all()).contains(admin.id());
+      assertThat(cd3.change().getProject()).isEqualTo(otherProject);
+      assertThat(cd3.currentApprovals()).isEmpty();
+    }
+  }
+
+  @Test
+  public void prefetchSkipsMissingChanges() throws Exception {
+    PushOneCommit.Result r1 = createChange();
+    PushOneCommit.Result r2 = createChange();
+
+    ChangeData cd1 = changeDataFactory.create(project, r1.getChange().getId());
+    ChangeData cd2 = changeDataFactory.create(project, r2.getChange().getId());
+    ChangeData missing =
+        changeDataFactory.create(project, Change.id(r2.getChange().getId().get() + 1000));
+    prefetcher.prefetch(ImmutableList.of(cd1, missing, cd2));
+
+    try (AutoCloseable ignored = disableNoteDb()) {
+      assertThat(cd1.patchSets()).hasSize(1);
+      assertThat(cd2.patchSets()).hasSize(1);
+    }
+    assertThrows(StorageException.class, () -> missing.notes());
+  }
+}
@@ -0,0 +1,96 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.acceptance.server.change;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gerrit.acceptance.AbstractDaemonTest;
+import com.google.gerrit.acceptance.NoHttpd;
+import com.google.gerrit.acceptance.PushOneCommit;
+import com.google.gerrit.acceptance.config.GerritConfig;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.server.index.change.ChangeIndexCollection;
+import com.google.gerrit.server.index.change.ChangeIndexer;
+import com.google.inject.Inject;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@NoHttpd
+public class ChangeIndexerIT extends AbstractDaemonTest {
+  @Inject private ChangeIndexer.Factory indexerFactory;
+  @Inject private ChangeIndexCollection indexes;
+
+  private ListeningExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void changeUpdatedWhileBatchTaskIsQueuedIsIndexedWithLatestState() throws Exception {
+    PushOneCommit.Result r1 = createChange();
+    PushOneCommit.Result r2 = createChange();
+    Change.Id id1 = r1.getChange().getId();
+    ChangeIndexer indexer = indexerFactory.create(executor, indexes);
+
+    // Keep the tasks queued until the change was updated again.
+    CountDownLatch release = new CountDownLatch(1);
+    executor.execute(
+        () -> {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    ListenableFuture<?> batch =
+        indexer.indexAsync(project, ImmutableList.of(id1, r2.getChange().getId()));
+
+    gApi.changes().id(id1.get()).topic("updated");
+    // Deduplicated against the queued task of the batch.
+    ListenableFuture<?> single = indexer.indexAsync(project, id1);
+    release.countDown();
+    batch.get(10, SECONDS);
+    single.get(10, SECONDS);
+
+    assertThat(gApi.changes().query("topic:updated").get()).hasSize(1);
+  }
+
+  @Test
+  @GerritConfig(name = "index.waitForRefreshOnWrite", value = "false")
+  public void queryRightAfterWriteSeesOwnWrite() throws Exception {
+    Change.Id id = createChange().getChange().getId();
+    for (int i = 0; i < 10; i++) {
+      // The index write returns before searchers were refreshed, and the query runs on the index
+      // executor.
+      gApi.changes().id(id.get()).topic("topic-" + i);
+      assertThat(gApi.changes().query("topic:topic-" + i).get()).hasSize(1);
+    }
+  }
+}
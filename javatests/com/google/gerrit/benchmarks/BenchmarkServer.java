@@ -0,0 +1,146 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmarks;
+
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.extensions.api.changes.ReviewInput;
+import com.google.gerrit.extensions.api.projects.ProjectInput;
+import com.google.gerrit.extensions.common.ChangeInput;
+import com.google.gerrit.lifecycle.LifecycleManager;
+import com.google.gerrit.server.account.AccountManager;
+import com.google.gerrit.server.account.AuthRequest;
+import com.google.gerrit.server.schema.SchemaCreator;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import com.google.gerrit.testing.InMemoryModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * In-memory Gerrit server shared by the benchmark suites.
+ *
+ * <p>Uses {@link InMemoryModule}, so repositories, NoteDb and the Lucene index live in memory and
+ * benchmarks run without a site or network access. Each benchmark state owns its own instance; the
+ * server is started in {@code @Setup} and stopped in {@code @TearDown}.
+ */
+final class BenchmarkServer implements AutoCloseable {
+  @Inject private AccountManager accountManager;
+  @Inject private GerritApi gApi;
+  @Inject private OneOffRequestContext requestContext;
+  @Inject private SchemaCreator schemaCreator;
+
+  private final Injector injector;
+  private final LifecycleManager lifecycle;
+
+  private Account.Id admin;
+  private Account.Id user;
+
+  static BenchmarkServer start() throws Exception {
+    return start(new Config());
+  }
+
+  static BenchmarkServer start(Config cfg) throws Exception {
+    InMemoryModule.setDefaults(cfg);
+    BenchmarkServer server = new BenchmarkServer(Guice.createInjector(new InMemoryModule(cfg)));
+    server.init();
+    return server;
+  }
+
+  private BenchmarkServer(Injector injector) {
+    this.injector = injector;
+    this.lifecycle = new LifecycleManager();
+    injector.injectMembers(this);
+    lifecycle.add(injector);
+  }
+
+  private void init() throws Exception {
+    lifecycle.start();
+    schemaCreator.create();
+
+    // The first user is added to the "Administrators" group. See AccountManager#create().
+    admin = accountManager.authenticate(AuthRequest.forUser("admin")).getAccountId();
+    user = accountManager.authenticate(AuthRequest.forUser("user")).getAccountId();
+  }
+
+  <T> T getInstance(Class<T> clazz) {
+    return injector.getInstance(clazz);
+  }
+
+  Injector injector() {
+    return injector;
+  }
+
+  GerritApi api() {
+    return gApi;
+  }
+
+  Account.Id admin() {
+    return admin;
+  }
+
+  /** Returns a non-administrative user that is only a member of the system groups. */
+  Account.Id user() {
+    return user;
+  }
+
+  ManualRequestContext openAs(Account.Id id) {
+    return requestContext.openAs(id);
+  }
+
+  Project.NameKey createProject(String name) throws Exception {
+    try (ManualRequestContext ctx = openAs(admin)) {
+      ProjectInput in = new ProjectInput();
+      in.name = name;
+      in.createEmptyCommit = true;
+      gApi.projects().create(in);
+    }
+    return Project.nameKey(name);
+  }
+
+  /**
+   * Creates {@code count} changes on {@code master} of {@code project}.
+   *
+   * @param count number of changes to create.
+   * @param updatesPerChange number of additional NoteDb updates (change messages) per change.
+   * @return the IDs of the created changes, in creation order.
+   */
+  List<Change.Id> createChanges(Project.NameKey project, int count, int updatesPerChange)
+      throws Exception {
+    List<Change.Id> ids = new ArrayList<>(count);
+    try (ManualRequestContext ctx = openAs(admin)) {
+      for (int i = 0; i < count; i++) {
+        ChangeInput in = new ChangeInput(project.get(), "master", "Benchmark change " + i);
+        Change.Id id = Change.id(gApi.changes().create(in).get()._number);
+        for (int u = 0; u < updatesPerChange; u++) {
+          gApi.changes().id(id.get()).current().review(ReviewInput.create().message("Update " + u));
+        }
+        ids.add(id);
+      }
+    }
+    return ids;
+  }
+
+  @Override
+  public void close() {
+    lifecycle.stop();
+  }
+}
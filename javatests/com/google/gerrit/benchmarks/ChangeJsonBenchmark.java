@@ -0,0 +1,119 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.gerrit.benchmarks;
+
+import static com.google.gerrit.extensions.client.ListChangesOption.ALL_REVISIONS;
+import static com.google.gerrit.extensions.client.ListChangesOption.CURRENT_COMMIT;
+import static com.google.gerrit.extensions.client.ListChangesOption.CURRENT_REVISION;
+import static com.google.gerrit.extensions.client.ListChangesOption.DETAILED_ACCOUNTS;
+import static com.google.gerrit.extensions.client.ListChangesOption.DETAILED_LABELS;
+import static com.google.gerrit.extensions.client.ListChangesOption.LABELS;
+import static com.google.gerrit.extensions.client.ListChangesOption.MESSAGES;
+import static com.google.gerrit.extensions.client.ListChangesOption.SUBMITTABLE;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.client.ListChangesOption;
+import com.google.gerrit.extensions.common.ChangeInfo;
+import com.google.gerrit.server.change.ChangeJson;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.util.ManualRequestContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ChangeJson#format(java.util.Collection)} over a large result set.
+ *
+ * <p>Fresh {@link ChangeData} instances are created before every invocation, so lazily loaded
+ * fields are not carried over between invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChangeJsonBenchmark {
+  private static final ImmutableSet<ListChangesOption> NONE = ImmutableSet.of();
+
+  private static final ImmutableSet<ListChangesOption> DETAILED =
+      ImmutableSet.of(
+          LABELS,
+          DETAILED_LABELS,
+          DETAILED_ACCOUNTS,
+          CURRENT_REVISION,
+          CURRENT_COMMIT,
+          ALL_REVISIONS,
+          MESSAGES,
+          SUBMITTABLE);
+
+  @Param({"100", "500"})
+  public int changes;
+
+  @Param({"false", "true"})
+  public boolean detailed;
+
+  private BenchmarkServer server;
+  private ChangeJson.Factory changeJsonFactory;
+  private ChangeData.Factory changeDataFactory;
+  private Project.NameKey project;
+  private List<Change.Id> ids;
+  private List<ChangeData> changeData;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServer.start();
+    changeJsonFactory = server.getInstance(ChangeJson.Factory.class);
+    changeDataFactory = server.getInstance(ChangeData.Factory.class);
+    project = server.createProject("change-json");
+    ids = server.createChanges(project, changes, 1);
+  }
+
+  @Setup(Level.Invocation)
+  public void newChangeData() {
+    changeData = new ArrayList<>(ids.size());
+    for (Change.Id id : ids) {
+      changeData.add(changeDataFactory.create(project, id));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public List<ChangeInfo> format() throws Exception {
+    try (ManualRequestContext ctx = server.openAs(server.user())) {
+      return changeJsonFactory.create(detailed ? DETAILED : NONE).format(changeData);
+    }
+  }
+}
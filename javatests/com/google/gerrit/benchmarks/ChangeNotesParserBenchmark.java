@@ -0,0 +1,93 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmarks;
+
+import com.google.common.cache.Cache;
+import com.google.common.collect.Iterables;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.notedb.ChangeNotesCache;
+import com.google.gerrit.server.notedb.ChangeNotesState;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing a change's NoteDb meta ref into a {@link ChangeNotesState}.
+ *
+ * <p>The change notes cache is cleared before every invocation, so each load walks the complete
+ * meta history of a change with {@code updates} additional NoteDb commits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChangeNotesParserBenchmark {
+  @Param({"10", "100", "1000"})
+  public int updates;
+
+  private BenchmarkServer server;
+  private ChangeNotes.Factory notesFactory;
+  private Cache<ChangeNotesCache.Key, ChangeNotesState> notesCache;
+  private Project.NameKey project;
+  private Change.Id changeId;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServer.start();
+    notesFactory = server.getInstance(ChangeNotes.Factory.class);
+    notesCache =
+        server
+            .injector()
+            .getInstance(
+                Key.get(
+                    new TypeLiteral<Cache<ChangeNotesCache.Key, ChangeNotesState>>() {},
+                    Names.named("change_notes")));
+    project = server.createProject("notedb-parser");
+    changeId = Iterables.getOnlyElement(server.createChanges(project, 1, updates));
+  }
+
+  @Setup(Level.Invocation)
+  public void invalidateCache() {
+    notesCache.invalidateAll();
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public ChangeNotes parseAll() {
+    return notesFactory.createChecked(project, changeId);
+  }
+}
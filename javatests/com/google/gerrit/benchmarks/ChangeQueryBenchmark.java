@@ -0,0 +1,86 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.gerrit.benchmarks;
+
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.index.query.QueryResult;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.ChangeQueryBuilder;
+import com.google.gerrit.server.query.change.ChangeQueryProcessor;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.inject.Provider;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures change queries against the Lucene change index through {@link ChangeQueryProcessor},
+ * including visibility filtering for a non-administrative user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChangeQueryBenchmark {
+  @Param({"100", "1000"})
+  public int changes;
+
+  @Param({"status:open", "project:query-benchmark", "owner:admin status:open"})
+  public String query;
+
+  @Param({"25", "500"})
+  public int limit;
+
+  private BenchmarkServer server;
+  private Provider<ChangeQueryBuilder> queryBuilderProvider;
+  private Provider<ChangeQueryProcessor> queryProcessorProvider;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServer.start();
+    queryBuilderProvider = server.injector().getProvider(ChangeQueryBuilder.class);
+    queryProcessorProvider = server.injector().getProvider(ChangeQueryProcessor.class);
+    Project.NameKey project = server.createProject("query-benchmark");
+    server.createChanges(project, changes, 0);
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public QueryResult<ChangeData> runQuery() throws Exception {
+    try (ManualRequestContext ctx = server.openAs(server.user())) {
+      return queryProcessorProvider
+          .get()
+          .setUserProvidedLimit(limit)
+          .query(queryBuilderProvider.get().parse(query));
+    }
+  }
+}
@@ -0,0 +1,126 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmarks;
+
+import static com.google.gerrit.acceptance.testsuite.project.TestProjectUpdate.allow;
+import static com.google.gerrit.acceptance.testsuite.project.TestProjectUpdate.permissionKey;
+import static com.google.gerrit.entities.Permission.READ;
+import static com.google.gerrit.server.group.SystemGroupBackend.PROJECT_OWNERS;
+
+import com.google.gerrit.acceptance.testsuite.project.ProjectOperations;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.IdentifiedUser;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.PermissionBackend.RefFilterOptions;
+import com.google.gerrit.server.util.ManualRequestContext;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures ref filtering in {@code DefaultRefFilter} as done for a ref advertisement.
+ *
+ * <p>The benchmarked project has an exclusive READ permission on one branch, so the calling user
+ * cannot see all refs and every ref goes through full evaluation. Besides {@code changes} real
+ * changes, the repository is padded with patch set refs of changes that are unknown to the index
+ * until it holds {@code refs} refs under {@code refs/changes/}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RefFilterBenchmark {
+  @Param({"10000", "100000"})
+  public int refs;
+
+  @Param({"100"})
+  public int changes;
+
+  private BenchmarkServer server;
+  private PermissionBackend permissionBackend;
+  private IdentifiedUser user;
+  private Project.NameKey project;
+  private Repository repo;
+  private List<Ref> allRefs;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServer.start();
+    permissionBackend = server.getInstance(PermissionBackend.class);
+    user = server.getInstance(IdentifiedUser.GenericFactory.class).create(server.user());
+    project = server.createProject("ref-filter");
+    server
+        .getInstance(ProjectOperations.class)
+        .project(project)
+        .forUpdate()
+        .add(allow(READ).ref("refs/heads/secret").group(PROJECT_OWNERS))
+        .setExclusiveGroup(permissionKey(READ).ref("refs/heads/secret"), true)
+        .update();
+    List<Change.Id> ids = server.createChanges(project, changes, 0);
+
+    repo = server.getInstance(GitRepositoryManager.class).openRepository(project);
+    ObjectId head = repo.exactRef("refs/heads/master").getObjectId();
+    int next = ids.get(ids.size() - 1).get() + 1;
+    BatchRefUpdate bru = repo.getRefDatabase().newBatchUpdate();
+    for (int i = changes; i < refs; i++) {
+      String name = PatchSet.id(Change.id(next++), 1).toRefName();
+      bru.addCommand(new ReceiveCommand(ObjectId.zeroId(), head, name));
+    }
+    try (RevWalk rw = new RevWalk(repo)) {
+      bru.execute(rw, NullProgressMonitor.INSTANCE);
+    }
+    allRefs = repo.getRefDatabase().getRefs();
+  }
+
+  @TearDown
+  public void tearDown() {
+    repo.close();
+    server.close();
+  }
+
+  @Benchmark
+  public Collection<Ref> filter() throws Exception {
+    try (ManualRequestContext ctx = server.openAs(server.user())) {
+      return permissionBackend
+          .user(user)
+          .project(project)
+          .filter(allRefs, repo, RefFilterOptions.defaults());
+    }
+  }
+}
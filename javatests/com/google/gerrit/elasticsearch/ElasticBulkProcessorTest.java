@@ -0,0 +1,268 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.elasticsearch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests {@link ElasticBulkProcessor} against a stub HTTP server. */
+public class ElasticBulkProcessorTest {
+  private static final String OK = "{\"errors\":false,\"items\":[]}";
+
+  /** Response of the stub server. */
+  private static class StubResponse {
+    final int status;
+    final String body;
+    final CountDownLatch release;
+
+    StubResponse(int status, String body) {
+      this(status, body, new CountDownLatch(0));
+    }
+
+    StubResponse(int status, String body, CountDownLatch release) {
+      this.status = status;
+      this.body = body;
+      this.release = release;
+    }
+  }
+
+  private final BlockingQueue<StubResponse> responses = new LinkedBlockingQueue<>();
+  private final List<String> requests = new CopyOnWriteArrayList<>();
+  private final CountDownLatch firstRequestReceived = new CountDownLatch(1);
+
+  private ExecutorService serverExecutor;
+  private ScheduledExecutorService retryExecutor;
+  private HttpServer server;
+  private RestClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    serverExecutor = Executors.newCachedThreadPool();
+    retryExecutor = Executors.newSingleThreadScheduledExecutor();
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/_bulk", this::handle);
+    server.setExecutor(serverExecutor);
+    server.start();
+    client =
+        RestClient.builder(new HttpHost("localhost", server.getAddress().getPort(), "http"))
+            .build();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.close();
+    server.stop(0);
+    serverExecutor.shutdownNow();
+    retryExecutor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    String body = new String(ByteStreams.toByteArray(exchange.getRequestBody()), UTF_8);
+    requests.add(exchange.getRequestURI().getQuery() + " " + body);
+    firstRequestReceived.countDown();
+    try {
+      StubResponse response = responses.take();
+      response.release.await();
+      byte[] bytes = response.body.getBytes(UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(response.status, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private ElasticBulkProcessor newProcessor(int maxActions, int maxInFlight) {
+    return new ElasticBulkProcessor(
+        () -> client,
+        maxActions,
+        1024 * 1024,
+        maxInFlight,
+        3,
+        retryExecutor,
+        new DisabledMetricMaker());
+  }
+
+  private static String indexAction(int id) {
+    return "{\"index\":{\"_id\":\"" + id + "\",\"_index\":\"changes\"}}"
+        + System.lineSeparator()
+        + "{\"id\":"
+        + id
+        + "}"
+        + System.lineSeparator();
+  }
+
+  @Test
+  public void actionsQueuedWhileRequestIsRunningAreSentTogether() throws Exception {
+    ElasticBulkProcessor processor = newProcessor(100, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    responses.add(new StubResponse(200, OK, release));
+    responses.add(new StubResponse(200, OK));
+
+    ListenableFuture<Void> first = processor.submit(indexAction(1));
+    assertThat(firstRequestReceived.await(10, SECONDS)).isTrue();
+    ListenableFuture<Void> second = processor.submit(indexAction(2));
+    ListenableFuture<Void> third = processor.submit(indexAction(3));
+    release.countDown();
+
+    first.get(10, SECONDS);
+    second.get(10, SECONDS);
+    third.get(10, SECONDS);
+    assertThat(requests).hasSize(2);
+    assertThat(requests.get(0)).startsWith("refresh=true ");
+    assertThat(requests.get(0)).contains("\"_id\":\"1\"");
+    assertThat(requests.get(1)).contains("\"_id\":\"2\"");
+    assertThat(requests.get(1)).contains("\"_id\":\"3\"");
+  }
+
+  @Test
+  public void batchesAreLimitedToMaxActions() throws Exception {
+    ElasticBulkProcessor processor = newProcessor(2, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    responses.add(new StubResponse(200, OK, release));
+    responses.add(new StubResponse(200, OK));
+    responses.add(new StubResponse(200, OK));
+
+    ListenableFuture<Void> first = processor.submit(indexAction(1));
+    assertThat(firstRequestReceived.await(10, SECONDS)).isTrue();
+    processor.submit(indexAction(2));
+    processor.submit(indexAction(3));
+    ListenableFuture<Void> last = processor.submit(indexAction(4));
+    release.countDown();
+
+    first.get(10, SECONDS);
+    last.get(10, SECONDS);
+    assertThat(requests).hasSize(3);
+  }
+
+  @Test
+  public void rejectedRequestIsRetriedWithSmallerBatches() throws Exception {
+    ElasticBulkProcessor processor = newProcessor(8, 1);
+    responses.add(new StubResponse(429, "{\"error\":\"rejected\"}"));
+    responses.add(new StubResponse(200, OK));
+
+    processor.execute(indexAction(1) + indexAction(2));
+
+    assertThat(requests).hasSize(2);
+    assertThat(requests.get(1)).isEqualTo(requests.get(0));
+    assertThat(processor.getBatchLimit()).isLessThan(8);
+  }
+
+  @Test
+  public void rejectedItemsAreRetried() throws Exception {
+    ElasticBulkProcessor processor = newProcessor(100, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    responses.add(new StubResponse(200, OK, release));
+    responses.add(
+        new StubResponse(
+            200,
+            "{\"errors\":true,\"items\":["
+                + "{\"index\":{\"status\":201}},"
+                + "{\"index\":{\"status\":429,\"error\":{\"type\":\"es_rejected_execution\"}}}]}"));
+    responses.add(new StubResponse(200, OK));
+
+    processor.submit(indexAction(1));
+    assertThat(firstRequestReceived.await(10, SECONDS)).isTrue();
+    ListenableFuture<Void> accepted = processor.submit(indexAction(2));
+    ListenableFuture<Void> rejected = processor.submit(indexAction(3));
+    release.countDown();
+
+    accepted.get(10, SECONDS);
+    rejected.get(10, SECONDS);
+    assertThat(requests).hasSize(3);
+    assertThat(requests.get(2)).doesNotContain("\"_id\":\"2\"");
+    assertThat(requests.get(2)).contains("\"_id\":\"3\"");
+  }
+
+  @Test
+  public void failedItemFailsOnlyItsAction() throws Exception {
+    ElasticBulkProcessor processor = newProcessor(100, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    responses.add(new StubResponse(200, OK, release));
+    responses.add(
+        new StubResponse(
+            200,
+            "{\"errors\":true,\"items\":["
+                + "{\"index\":{\"status\":400,\"error\":{\"type\":\"mapper_parsing_exception\"}}},"
+                + "{\"index\":{\"status\":201}}]}"));
+
+    processor.submit(indexAction(1));
+    assertThat(firstRequestReceived.await(10, SECONDS)).isTrue();
+    ListenableFuture<Void> failed = processor.submit(indexAction(2));
+    ListenableFuture<Void> succeeded = processor.submit(indexAction(3));
+    release.countDown();
+
+    succeeded.get(10, SECONDS);
+    ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(10, SECONDS));
+    assertThat(e).hasCauseThat().isInstanceOf(StorageException.class);
+    assertThat(e).hasCauseThat().hasMessageThat().contains("mapper_parsing_exception");
+  }
+
+  @Test
+  public void giveUpAfterMaxRetries() throws Exception {
+    ElasticBulkProcessor processor = newProcessor(100, 1);
+    for (int i = 0; i < 4; i++) {
+      responses.add(new StubResponse(429, "{\"error\":\"rejected\"}"));
+    }
+
+    StorageException e =
+        assertThrows(StorageException.class, () -> processor.execute(indexAction(1)));
+    assertThat(e).hasMessageThat().contains("after 3 retries");
+    assertThat(requests).hasSize(4);
+  }
+
+  @Test
+  public void rejectedActionsFailWhenRetryExecutorIsShutDown() throws Exception {
+    ElasticBulkProcessor processor = newProcessor(100, 1);
+    responses.add(new StubResponse(429, "{\"error\":\"rejected\"}"));
+    retryExecutor.shutdown();
+
+    StorageException e =
+        assertThrows(StorageException.class, () -> processor.execute(indexAction(1)));
+    assertThat(e).hasCauseThat().hasCauseThat().isInstanceOf(RejectedExecutionException.class);
+    assertThat(requests).hasSize(1);
+  }
+}
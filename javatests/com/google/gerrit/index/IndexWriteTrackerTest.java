@@ -0,0 +1,73 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.index;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+public class IndexWriteTrackerTest {
+  private final Object index = new Object();
+  private final Object otherIndex = new Object();
+
+  @Test
+  public void recordsHighestGenerationPerIndex() {
+    IndexWriteTracker tracker = IndexWriteTracker.current();
+    assertThat(tracker.getGeneration(index)).isEqualTo(-1);
+
+    tracker.record(index, 5);
+    tracker.record(index, 3);
+    tracker.record(otherIndex, 7);
+
+    assertThat(tracker.getGeneration(index)).isEqualTo(5);
+    assertThat(tracker.getGeneration(otherIndex)).isEqualTo(7);
+  }
+
+  @Test
+  public void writesOfOtherThreadAreNotTracked() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      executor.submit(() -> IndexWriteTracker.current().record(index, 5)).get();
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(IndexWriteTracker.current().getGeneration(index)).isEqualTo(-1);
+  }
+
+  @Test
+  public void writesOfOtherThreadCanBeAttributedToSubmitter() throws Exception {
+    IndexWriteTracker submitter = IndexWriteTracker.current();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      executor
+          .submit(
+              () -> {
+                try (IndexWriteTracker.Context ignored = IndexWriteTracker.use(submitter)) {
+                  IndexWriteTracker.current().record(index, 5);
+                }
+                IndexWriteTracker.current().record(otherIndex, 7);
+              })
+          .get();
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(submitter.getGeneration(index)).isEqualTo(5);
+    assertThat(submitter.getGeneration(otherIndex)).isEqualTo(-1);
+  }
+}
@@ -0,0 +1,48 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.index;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.index.query.QueryParseException;
+import org.junit.Test;
+
+public class SearchAfterTest {
+  @Test
+  public void encodeAndDecode() throws Exception {
+    SearchAfter after = SearchAfter.create(ImmutableList.of(1234567890123L, -1, "a.b/c", ""));
+    String encoded = after.encode();
+    assertThat(encoded).doesNotContain("=");
+    assertThat(SearchAfter.decode(encoded)).isEqualTo(after);
+    assertThat(SearchAfter.decode(encoded).values())
+        .containsExactly(1234567890123L, -1L, "a.b/c", "")
+        .inOrder();
+  }
+
+  @Test
+  public void decodeInvalidCursor() throws Exception {
+    assertThrows(QueryParseException.class, () -> SearchAfter.decode("not base64!"));
+    assertThrows(QueryParseException.class, () -> SearchAfter.decode("eDE"));
+    assertThrows(QueryParseException.class, () -> SearchAfter.decode("bGFiYw"));
+  }
+
+  @Test
+  public void createRejectsUnsupportedValues() throws Exception {
+    assertThrows(
+        IllegalArgumentException.class, () -> SearchAfter.create(ImmutableList.of(new Object())));
+  }
+}
@@ -23,6 +23,7 @@ import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.Test;
 
@@ -106,4 +107,51 @@ public class AndPredicateTest extends PredicateTest {
     assertEquals(s2, n2.copy(s2).getChildren());
     assertEquals(s3, n2.copy(s3).getChildren());
   }
+
+  @Test
+  public void matchEvaluatesMostRestrictivePerCostFirst() {
+    List<String> evaluated = new ArrayList<>();
+    Predicate<String> expensive = new CostedPredicate("expensive", 10, 0.1, true, evaluated);
+    Predicate<String> cheap = new CostedPredicate("cheap", 1, 0.9, true, evaluated);
+    Predicate<String> restrictive = new CostedPredicate("restrictive", 1, 0.1, false, evaluated);
+    Predicate<String> n = and(expensive, cheap, restrictive);
+
+    assertFalse(n.asMatchable().match("x"));
+    assertEquals(of("restrictive"), evaluated);
+    assertEquals(of(expensive, cheap, restrictive), n.getChildren());
+    assertEquals(0.1 * 0.9 * 0.1, n.estimateSelectivity(), 1e-9);
+  }
+
+  private static class CostedPredicate extends OperatorPredicate<String>
+      implements Matchable<String> {
+    private final int cost;
+    private final double selectivity;
+    private final boolean result;
+    private final List<String> evaluated;
+
+    CostedPredicate(
+        String value, int cost, double selectivity, boolean result, List<String> evaluated) {
+      super("costed", value);
+      this.cost = cost;
+      this.selectivity = selectivity;
+      this.result = result;
+      this.evaluated = evaluated;
+    }
+
+    @Override
+    public boolean match(String object) {
+      evaluated.add(getValue());
+      return result;
+    }
+
+    @Override
+    public int getCost() {
+      return cost;
+    }
+
+    @Override
+    public double estimateSelectivity() {
+      return selectivity;
+    }
+  }
 }
@@ -0,0 +1,210 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache.mmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gerrit.server.cache.serialize.StringCacheSerializer;
+import com.google.inject.TypeLiteral;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MmapCacheTest {
+  private static final TypeLiteral<String> KEY_TYPE = new TypeLiteral<String>() {};
+  private static final int DEFAULT_VERSION = 1234;
+  private static final int SEGMENT_SIZE = 1 << 16;
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = temporaryFolder.newFolder().toPath();
+  }
+
+  private MmapStore<String, String> newStore(int version, long maxSize) {
+    return new MmapStore<>(
+        dir,
+        StringCacheSerializer.INSTANCE,
+        StringCacheSerializer.INSTANCE,
+        version,
+        maxSize,
+        SEGMENT_SIZE,
+        null);
+  }
+
+  private static MmapCacheImpl<String, String> newImpl(
+      MmapStore<String, String> store, Cache<String, String> mem) {
+    return new MmapCacheImpl<>(MoreExecutors.directExecutor(), store, KEY_TYPE, mem);
+  }
+
+  @Test
+  public void get() throws ExecutionException {
+    Cache<String, String> mem = CacheBuilder.newBuilder().build();
+    MmapCacheImpl<String, String> impl = newImpl(newStore(DEFAULT_VERSION, 1 << 20), mem);
+
+    assertThat(impl.getIfPresent("foo")).isNull();
+
+    AtomicBoolean called = new AtomicBoolean();
+    assertThat(
+            impl.get(
+                "foo",
+                () -> {
+                  called.set(true);
+                  return "bar";
+                }))
+        .isEqualTo("bar");
+    assertWithMessage("Callable was called").that(called.get()).isTrue();
+    assertWithMessage("in-memory value").that(impl.getIfPresent("foo")).isEqualTo("bar");
+    mem.invalidate("foo");
+    assertWithMessage("persistent value").that(impl.getIfPresent("foo")).isEqualTo("bar");
+
+    called.set(false);
+    assertWithMessage("cached value")
+        .that(
+            impl.get(
+                "foo",
+                () -> {
+                  called.set(true);
+                  return "baz";
+                }))
+        .isEqualTo("bar");
+    assertWithMessage("Callable was called").that(called.get()).isFalse();
+  }
+
+  @Test
+  public void entriesSurviveRestart() {
+    MmapCacheImpl<String, String> impl =
+        newImpl(newStore(DEFAULT_VERSION, 1 << 20), disableMemCache());
+    impl.put("foo", "bar");
+    impl.put("baz", "old");
+    impl.put("baz", "new");
+    impl.put("gone", "val");
+    impl.invalidate("gone");
+    impl.stop();
+
+    impl = newImpl(newStore(DEFAULT_VERSION, 1 << 20), disableMemCache());
+    assertThat(impl.getIfPresent("foo")).isEqualTo("bar");
+    assertThat(impl.getIfPresent("baz")).isEqualTo("new");
+    assertThat(impl.getIfPresent("gone")).isNull();
+    assertThat(impl.diskStats().size()).isEqualTo(2);
+    assertThat(impl.diskStats().hitCount()).isEqualTo(2);
+    assertThat(impl.diskStats().requestCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void version() {
+    MmapCacheImpl<String, String> oldImpl =
+        newImpl(newStore(DEFAULT_VERSION, 1 << 20), disableMemCache());
+    oldImpl.put("key", "val");
+    assertThat(oldImpl.getIfPresent("key")).isEqualTo("val");
+    oldImpl.stop();
+
+    // Entries written with an older version are ignored.
+    MmapCacheImpl<String, String> newImpl =
+        newImpl(newStore(DEFAULT_VERSION + 1, 1 << 20), disableMemCache());
+    assertThat(newImpl.getIfPresent("key")).isNull();
+    newImpl.put("key", "val2");
+    assertThat(newImpl.getIfPresent("key")).isEqualTo("val2");
+  }
+
+  @Test
+  public void invalidateAll() {
+    MmapStore<String, String> store = newStore(DEFAULT_VERSION, 1 << 20);
+    MmapCacheImpl<String, String> impl = newImpl(store, disableMemCache());
+    impl.put("foo", "bar");
+    impl.invalidateAll();
+    assertThat(impl.getIfPresent("foo")).isNull();
+    assertThat(impl.diskStats().space()).isEqualTo(0);
+    assertThat(store.segmentCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void oldestSegmentsAreEvictedWhenOverLimit() {
+    MmapStore<String, String> store = newStore(DEFAULT_VERSION, 4 * SEGMENT_SIZE);
+    Cache<String, String> mem = CacheBuilder.newBuilder().build();
+    MmapCacheImpl<String, String> impl = newImpl(store, mem);
+    String value = Strings.repeat("x", 1000);
+    impl.put("hot", value);
+    for (int i = 0; i < 500; i++) {
+      impl.put("key" + i, value);
+      mem.invalidate("key" + i);
+    }
+
+    assertThat(impl.diskStats().space()).isAtMost(4 * SEGMENT_SIZE);
+    assertThat(store.getIfPresent("key0")).isNull();
+    assertThat(store.getIfPresent("key499")).isEqualTo(value);
+    // Entries that are still in the in-memory cache are kept.
+    assertThat(store.getIfPresent("hot")).isEqualTo(value);
+  }
+
+  @Test
+  public void supersededRecordsAreCompacted() {
+    MmapStore<String, String> store = newStore(DEFAULT_VERSION, 1 << 20);
+    MmapCacheImpl<String, String> impl = newImpl(store, disableMemCache());
+    String value = Strings.repeat("x", 1000);
+    for (int i = 0; i < 200; i++) {
+      impl.put("key", value + i);
+    }
+    assertThat(store.segmentCount()).isGreaterThan(1);
+
+    impl.prune();
+    assertThat(store.segmentCount()).isEqualTo(1);
+    assertThat(impl.getIfPresent("key")).isEqualTo(value + 199);
+  }
+
+  @Test
+  public void invalidationSurvivesCompaction() {
+    MmapStore<String, String> store = newStore(DEFAULT_VERSION, 1 << 20);
+    MmapCacheImpl<String, String> impl = newImpl(store, disableMemCache());
+    String value = Strings.repeat("x", 1000);
+    // The first segment only contains live records and is not compacted.
+    impl.put("gone", value);
+    for (int i = 0; i < 70; i++) {
+      impl.put("key" + i, value);
+    }
+    impl.invalidate("gone");
+    for (int i = 0; i < 100; i++) {
+      impl.put("key", value + i);
+    }
+    int segments = store.segmentCount();
+
+    impl.prune();
+    assertThat(store.segmentCount()).isLessThan(segments);
+    assertThat(impl.getIfPresent("gone")).isNull();
+    impl.stop();
+
+    impl = newImpl(newStore(DEFAULT_VERSION, 1 << 20), disableMemCache());
+    assertThat(impl.getIfPresent("gone")).isNull();
+    assertThat(impl.getIfPresent("key0")).isEqualTo(value);
+    assertThat(impl.getIfPresent("key69")).isEqualTo(value);
+    assertThat(impl.getIfPresent("key")).isEqualTo(value + 99);
+  }
+
+  private static <K, V> Cache<K, V> disableMemCache() {
+    return CacheBuilder.newBuilder().maximumSize(0).build();
+  }
+}
@@ -17,12 +17,14 @@ package com.google.gerrit.server.change;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.entities.RefNames.REFS_TAGS;
 
+import org.eclipse.jgit.internal.storage.dfs.DfsGarbageCollector;
 import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
 import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
 import org.eclipse.jgit.junit.TestRepository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -147,6 +149,24 @@ public class IncludedInResolverTest {
     assertThat(detail.branches()).containsExactly(BRANCH_1_3, BRANCH_2_5);
   }
 
+  @Test
+  public void resolveWithReachabilityBitmaps() throws Exception {
+    InMemoryRepository repo = (InMemoryRepository) tr.getRepository();
+    assertThat(new DfsGarbageCollector(repo).pack(null)).isTrue();
+    // Not in the packed history, hence the branch has no bitmap and is walked.
+    tr.branch(BRANCH_1_3).commit().message("after gc").create();
+
+    try (RevWalk rw = new RevWalk(repo)) {
+      assertThat(rw.getObjectReader().getBitmapIndex()).isNotNull();
+      IncludedInResolver.Result detail =
+          IncludedInResolver.resolve(repo, rw, rw.parseCommit(commit_v1_3));
+
+      assertThat(detail.tags())
+          .containsExactly(TAG_1_3, TAG_2_5, TAG_2_5_ANNOTATED, TAG_2_5_ANNOTATED_TWICE);
+      assertThat(detail.branches()).containsExactly(BRANCH_1_3, BRANCH_2_5);
+    }
+  }
+
   private IncludedInResolver.Result resolve(RevCommit commit) throws Exception {
     return IncludedInResolver.resolve(tr.getRepository(), tr.getRevWalk(), commit);
   }
@@ -16,6 +16,7 @@ package com.google.gerrit.server.change;
 
 import static com.google.common.collect.Collections2.permutations;
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -30,8 +31,12 @@ import com.google.gerrit.testing.InMemoryRepositoryManager.Repo;
 import com.google.gerrit.testing.TestChanges;
 import java.util.ArrayList;
 import java.util.List;
+import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.junit.Before;
@@ -230,6 +235,49 @@ public class WalkSorterTest {
             patchSetData(cd1, c1)));
   }
 
+  @Test
+  public void oldAndNewCommitsAreSortedWithoutWalkingHistory() throws Exception {
+    TestRepository<Repo> p = newRepo("p");
+    RevCommit merged = p.commit().create();
+    // The new commits are much newer than the merged one, and their history is missing from the
+    // repository, so walking from them to the merged commit would fail.
+    int newCommitTime = merged.getCommitTime() + 1000;
+    RevCommit c1 = commitWithMissingParent(p, "c1", newCommitTime);
+    RevCommit c2 = commitWithMissingParent(p, "c2", newCommitTime);
+    RevCommit c3 = commitWithMissingParent(p, "c3", newCommitTime + 1);
+    assertThat(c2).isNotEqualTo(c1);
+    try (RevWalk rw = new RevWalk(p.getRepository())) {
+      rw.markStart(rw.parseCommit(c1));
+      assertThrows(
+          MissingObjectException.class,
+          () -> {
+            while (rw.next() != null) {}
+          });
+    }
+
+    ChangeData cdMerged = newChange(p, merged);
+    ChangeData cd1 = newChange(p, c1);
+    ChangeData cd2 = newChange(p, c2);
+    ChangeData cd3 = newChange(p, c3);
+    WalkSorter sorter = new WalkSorter(repoManager);
+
+    // Commits with the same commit time keep their input order.
+    assertThat(sorter.sort(ImmutableList.of(cdMerged, cd1, cd2, cd3)))
+        .containsExactly(
+            patchSetData(cd3, c3),
+            patchSetData(cd1, c1),
+            patchSetData(cd2, c2),
+            patchSetData(cdMerged, merged))
+        .inOrder();
+    assertThat(sorter.sort(ImmutableList.of(cd2, cdMerged, cd3, cd1)))
+        .containsExactly(
+            patchSetData(cd3, c3),
+            patchSetData(cd2, c2),
+            patchSetData(cd1, c1),
+            patchSetData(cdMerged, merged))
+        .inOrder();
+  }
+
   @Test
   public void projectsSortedByName() throws Exception {
     TestRepository<Repo> pa = newRepo("a");
@@ -347,6 +395,23 @@ public class WalkSorterTest {
     return ps;
   }
 
+  private static RevCommit commitWithMissingParent(
+      TestRepository<Repo> tr, String message, int commitTime) throws Exception {
+    PersonIdent ident = new PersonIdent("A U Thor", "author@example.com", commitTime * 1000L, 0);
+    CommitBuilder cb = new CommitBuilder();
+    cb.setTreeId(tr.tree());
+    cb.setParentId(ObjectId.fromString("deadbeefdeadbeefdeadbeefdeadbeefdeadbeef"));
+    cb.setAuthor(ident);
+    cb.setCommitter(ident);
+    cb.setMessage(message);
+    ObjectId id;
+    try (ObjectInserter ins = tr.getRepository().newObjectInserter()) {
+      id = ins.insert(cb);
+      ins.flush();
+    }
+    return tr.getRevWalk().parseCommit(id);
+  }
+
   private TestRepository<Repo> newRepo(String name) throws Exception {
     return new TestRepository<>(repoManager.createRepository(Project.nameKey(name)));
   }
@@ -0,0 +1,57 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.config;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.eclipse.jgit.lib.Config;
+import org.junit.Test;
+
+public class ThreadSettingsConfigTest {
+  @Test
+  public void virtualThreadsAreDisabledByDefault() {
+    assertThat(new ThreadSettingsConfig(new Config(), true).useVirtualThreads()).isFalse();
+  }
+
+  @Test
+  public void virtualThreadsAreUsedIfSupported() {
+    Config cfg = new Config();
+    cfg.setBoolean("execution", null, "virtualThreads", true);
+
+    assertThat(new ThreadSettingsConfig(cfg, true).useVirtualThreads()).isTrue();
+  }
+
+  @Test
+  public void platformThreadsAreUsedIfVirtualThreadsAreUnsupported() {
+    Config cfg = new Config();
+    cfg.setBoolean("execution", null, "virtualThreads", true);
+
+    assertThat(new ThreadSettingsConfig(cfg, false).useVirtualThreads()).isFalse();
+  }
+
+  @Test
+  public void requestLimits() {
+    ThreadSettingsConfig defaults = new ThreadSettingsConfig(new Config(), true);
+    assertThat(defaults.getInteractiveRequestLimit()).isEqualTo(256);
+    assertThat(defaults.getBatchRequestLimit()).isEqualTo(64);
+
+    Config cfg = new Config();
+    cfg.setInt("execution", null, "interactiveRequestLimit", 0);
+    cfg.setInt("execution", null, "batchRequestLimit", 3);
+    ThreadSettingsConfig configured = new ThreadSettingsConfig(cfg, true);
+    assertThat(configured.getInteractiveRequestLimit()).isEqualTo(1);
+    assertThat(configured.getBatchRequestLimit()).isEqualTo(3);
+  }
+}
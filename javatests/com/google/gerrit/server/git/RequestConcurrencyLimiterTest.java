@@ -0,0 +1,133 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.Mockito.mock;
+
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.config.ThreadSettingsConfig;
+import com.google.gerrit.server.git.QueueProvider.QueueType;
+import com.google.gerrit.server.quota.QuotaException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestConcurrencyLimiterTest {
+  private CurrentUser interactiveUser;
+  private CurrentUser batchUser;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    interactiveUser = mock(CurrentUser.class);
+    batchUser = mock(CurrentUser.class);
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void requestsAreNotLimitedOnPlatformThreads() throws Exception {
+    Config cfg = new Config();
+    cfg.setInt("execution", null, "interactiveRequestLimit", 1);
+    RequestConcurrencyLimiter limiter = newLimiter(new ThreadSettingsConfig(cfg, true), 10);
+
+    // The permits are never released.
+    for (int i = 0; i < 10; i++) {
+      limiter.acquire(interactiveUser);
+    }
+  }
+
+  @Test
+  public void requestsAreNotLimitedIfVirtualThreadsAreUnsupported() throws Exception {
+    RequestConcurrencyLimiter limiter = newLimiter(virtualThreads(1, 1, false), 10);
+
+    for (int i = 0; i < 10; i++) {
+      limiter.acquire(interactiveUser);
+    }
+  }
+
+  @Test
+  public void requestOverLimitIsRejectedAfterMaxWait() throws Exception {
+    RequestConcurrencyLimiter limiter = newLimiter(virtualThreads(2, 1, true), 10);
+    limiter.acquire(interactiveUser);
+    limiter.acquire(interactiveUser);
+
+    QuotaException thrown =
+        assertThrows(QuotaException.class, () -> limiter.acquire(interactiveUser));
+    assertThat(thrown).hasMessageThat().isEqualTo("Too many concurrent requests");
+  }
+
+  @Test
+  public void closedPermitIsReused() throws Exception {
+    RequestConcurrencyLimiter limiter = newLimiter(virtualThreads(1, 1, true), 10);
+    limiter.acquire(interactiveUser).close();
+
+    limiter.acquire(interactiveUser);
+    assertThrows(QuotaException.class, () -> limiter.acquire(interactiveUser));
+  }
+
+  @Test
+  public void requestOverLimitWaitsUntilPermitIsClosed() throws Exception {
+    RequestConcurrencyLimiter limiter =
+        newLimiter(virtualThreads(1, 1, true), SECONDS.toMillis(60));
+    RequestConcurrencyLimiter.Permit permit = limiter.acquire(interactiveUser);
+
+    Future<RequestConcurrencyLimiter.Permit> queued =
+        executor.submit(() -> limiter.acquire(interactiveUser));
+    assertThrows(TimeoutException.class, () -> queued.get(100, MILLISECONDS));
+
+    permit.close();
+    assertThat(queued.get(10, SECONDS)).isNotNull();
+  }
+
+  @Test
+  public void limitsArePerQueueType() throws Exception {
+    RequestConcurrencyLimiter limiter = newLimiter(virtualThreads(1, 1, true), 10);
+    limiter.acquire(batchUser);
+
+    assertThrows(QuotaException.class, () -> limiter.acquire(batchUser));
+    limiter.acquire(interactiveUser);
+  }
+
+  private RequestConcurrencyLimiter newLimiter(
+      ThreadSettingsConfig threadSettingsConfig, long maxWaitMillis) {
+    return new RequestConcurrencyLimiter(
+        user -> user == batchUser ? QueueType.BATCH : QueueType.INTERACTIVE,
+        threadSettingsConfig,
+        maxWaitMillis);
+  }
+
+  private static ThreadSettingsConfig virtualThreads(
+      int interactiveRequestLimit, int batchRequestLimit, boolean supported) {
+    Config cfg = new Config();
+    cfg.setBoolean("execution", null, "virtualThreads", true);
+    cfg.setInt("execution", null, "interactiveRequestLimit", interactiveRequestLimit);
+    cfg.setInt("execution", null, "batchRequestLimit", batchRequestLimit);
+    return new ThreadSettingsConfig(cfg, supported);
+  }
+}
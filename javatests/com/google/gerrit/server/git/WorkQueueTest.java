@@ -0,0 +1,231 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.util.IdGenerator;
+import com.google.inject.Guice;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkQueueTest {
+  private Config cfg;
+  private WorkQueue workQueue;
+  private ScheduledThreadPoolExecutor executor;
+
+  @Before
+  public void setUp() {
+    cfg = new Config();
+    workQueue =
+        new WorkQueue(
+            Guice.createInjector().getInstance(IdGenerator.class),
+            2,
+            new DisabledMetricMaker(),
+            cfg);
+  }
+
+  @After
+  public void tearDown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void readyTasksRunInOrderOfPriority() throws Exception {
+    cfg.setBoolean("queue", "test", "priorityScheduling", true);
+    executor = workQueue.createQueue(1, "test");
+
+    CountDownLatch blocked = new CountDownLatch(1);
+    executor.execute(() -> await(blocked));
+    List<String> order = new CopyOnWriteArrayList<>();
+    executor.execute(new Prioritized("low", -1, order));
+    executor.execute(new Prioritized("default", 0, order));
+    executor.execute(new Prioritized("high", 10, order));
+    Future<?> last = executor.submit(new Prioritized("high-later", 10, order));
+
+    blocked.countDown();
+    last.get(10, TimeUnit.SECONDS);
+    executor.shutdown();
+    assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(order).containsExactly("high", "high-later", "default", "low").inOrder();
+  }
+
+  @Test
+  public void cancelledTaskIsNotRunWithPriorityScheduling() throws Exception {
+    cfg.setBoolean("queue", "test", "priorityScheduling", true);
+    executor = workQueue.createQueue(1, "test");
+
+    CountDownLatch blocked = block(executor);
+    List<String> order = new CopyOnWriteArrayList<>();
+    Future<?> cancelled = executor.submit(new Prioritized("cancelled", 10, order));
+    Future<?> other = executor.submit(new Prioritized("other", 0, order));
+    assertThat(cancelled.cancel(false)).isTrue();
+
+    blocked.countDown();
+    other.get(10, TimeUnit.SECONDS);
+    assertThat(order).containsExactly("other");
+  }
+
+  @Test
+  public void cancellingRunningTaskDoesNotStrandReadyTasks() throws Exception {
+    cfg.setBoolean("queue", "test", "priorityScheduling", true);
+    executor = workQueue.createQueue(1, "test");
+
+    CountDownLatch blocked = block(executor);
+    List<String> order = new CopyOnWriteArrayList<>();
+    Future<?> low = executor.submit(new Prioritized("low", 0, order));
+    CountDownLatch highStarted = new CountDownLatch(1);
+    Future<?> high =
+        executor.submit(
+            new WorkQueue.PrioritizedRunnable() {
+              @Override
+              public int getPriority() {
+                return 10;
+              }
+
+              @Override
+              public void run() {
+                highStarted.countDown();
+                await(new CountDownLatch(1));
+              }
+            });
+
+    // The high priority task runs in the execution that was queued for the low priority one.
+    blocked.countDown();
+    assertThat(highStarted.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(high.cancel(true)).isTrue();
+
+    low.get(10, TimeUnit.SECONDS);
+    assertThat(order).containsExactly("low");
+  }
+
+  @Test
+  public void fullQueueRejectsTasks() throws Exception {
+    cfg.setInt("queue", "test", "maxQueueSize", 1);
+    executor = workQueue.createQueue(1, "test");
+
+    CountDownLatch blocked = block(executor);
+    executor.execute(() -> {});
+    assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+    blocked.countDown();
+  }
+
+  @Test
+  public void fullQueueRejectsScheduledTasks() throws Exception {
+    cfg.setInt("queue", "test", "maxQueueSize", 1);
+    executor = workQueue.createQueue(1, "test");
+
+    CountDownLatch blocked = block(executor);
+    executor.execute(() -> {});
+    assertThrows(
+        RejectedExecutionException.class, () -> executor.schedule(() -> {}, 1, TimeUnit.SECONDS));
+    assertThrows(
+        RejectedExecutionException.class,
+        () -> executor.scheduleAtFixedRate(() -> {}, 1, 1, TimeUnit.SECONDS));
+    blocked.countDown();
+  }
+
+  @Test
+  public void fullQueueRunsTasksInCallerWithCallerRunsPolicy() throws Exception {
+    cfg.setInt("queue", "test", "maxQueueSize", 1);
+    cfg.setEnum("queue", "test", "rejectionPolicy", WorkQueue.RejectionPolicy.CALLER_RUNS);
+    executor = workQueue.createQueue(1, "test");
+
+    CountDownLatch blocked = block(executor);
+    executor.execute(() -> {});
+    Thread caller = Thread.currentThread();
+    List<Thread> ranIn = new CopyOnWriteArrayList<>();
+    Future<?> f = executor.submit(() -> ranIn.add(Thread.currentThread()));
+    assertThat(f.isDone()).isTrue();
+    assertThat(ranIn).containsExactly(caller);
+    blocked.countDown();
+  }
+
+  @Test
+  public void waitTimesAreRecorded() throws Exception {
+    executor = workQueue.createQueue(1, "test");
+    executor.submit(() -> {}).get(10, TimeUnit.SECONDS);
+    executor.submit(() -> {}).get(10, TimeUnit.SECONDS);
+
+    assertThat(
+            workQueue.getWaitTimeHistogram("test").getBuckets().values().stream()
+                .mapToLong(Long::longValue)
+                .sum())
+        .isEqualTo(2);
+    assertThat(workQueue.getWaitTimeHistogram("unknown")).isNull();
+  }
+
+  /** Occupies the only worker thread of the executor until the returned latch is counted down. */
+  private static CountDownLatch block(ScheduledThreadPoolExecutor executor) throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    executor.execute(
+        () -> {
+          started.countDown();
+          await(blocked);
+        });
+    assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+    return blocked;
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static class Prioritized implements WorkQueue.PrioritizedRunnable {
+    private final String name;
+    private final int priority;
+    private final List<String> order;
+
+    Prioritized(String name, int priority, List<String> order) {
+      this.name = name;
+      this.priority = priority;
+      this.order = order;
+    }
+
+    @Override
+    public int getPriority() {
+      return priority;
+    }
+
+    @Override
+    public void run() {
+      order.add(name);
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+}
@@ -0,0 +1,304 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.index.change;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.common.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SliceSchedulerTest {
+  private static final int MIN_ITEMS = 100;
+
+  private List<Runnable> tasks;
+  private ExecutorService pool;
+
+  @Before
+  public void setUp() {
+    tasks = new ArrayList<>();
+  }
+
+  @After
+  public void tearDown() {
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void mostExpensiveSlicesRunFirst() throws Exception {
+    SliceScheduler scheduler = new SliceScheduler(tasks::add);
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    scheduler.submit(new TestWork("cheap", 1, order), 10);
+    scheduler.submit(new TestWork("expensive", 1, order), 1000);
+    scheduler.submit(new TestWork("similar", 1, order), 12);
+    scheduler.submit(new TestWork("medium", 1, order), 100);
+    scheduler.start();
+
+    tasks.get(0).run();
+
+    // Slices of the same order of magnitude run in the order in which they were submitted.
+    assertThat(order)
+        .containsExactly("expensive:0", "medium:0", "cheap:0", "similar:0")
+        .inOrder();
+  }
+
+  @Test
+  public void mostExpensiveSlicesRunFirstOnThreadPool() throws Exception {
+    pool = Executors.newFixedThreadPool(1);
+    SliceScheduler scheduler = new SliceScheduler(pool);
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    List<SliceScheduler.Result> results = new ArrayList<>();
+    results.add(scheduler.submit(new TestWork("cheap", 1, order), 10));
+    results.add(scheduler.submit(new TestWork("expensive", 1, order), 1000));
+    results.add(scheduler.submit(new TestWork("similar", 1, order), 12));
+    results.add(scheduler.submit(new TestWork("medium", 1, order), 100));
+
+    // The pool would already run the first submitted slice if it was started on submit.
+    scheduler.start();
+    for (SliceScheduler.Result result : results) {
+      result.future.get(10, SECONDS);
+    }
+
+    assertThat(order)
+        .containsExactly("expensive:0", "medium:0", "cheap:0", "similar:0")
+        .inOrder();
+  }
+
+  @Test
+  public void largeSliceIsSplitWhileQueueIsEmpty() throws Exception {
+    SliceScheduler scheduler = new SliceScheduler(tasks::add);
+    TestWork work = new TestWork("large", 1000, null);
+    SliceScheduler.Result result = scheduler.submit(work, 1000);
+    scheduler.start();
+
+    tasks.get(0).run();
+
+    // Each piece hands over half of its items as soon as it finds the queue empty, until the
+    // remaining items are too few to be split.
+    assertThat(work.handedOver).containsExactly("500-1000", "750-1000", "875-1000").inOrder();
+    assertThat(tasks).hasSize(4);
+    assertThat(work.processedItems).hasSize(1000);
+    assertThat(work.processedItems.keySet()).containsExactlyElementsIn(range(0, 1000));
+    assertThat(result.future.isDone()).isTrue();
+    assertThat(result.hasFailures()).isFalse();
+  }
+
+  @Test
+  public void smallSliceIsNotSplit() throws Exception {
+    SliceScheduler scheduler = new SliceScheduler(tasks::add);
+    TestWork work = new TestWork("small", 2 * MIN_ITEMS - 1, null);
+    scheduler.submit(work, 1000);
+    scheduler.start();
+
+    tasks.get(0).run();
+
+    assertThat(work.handedOver).isEmpty();
+    assertThat(tasks).hasSize(1);
+  }
+
+  @Test
+  public void idleThreadTakesOverItemsOfBusyThread() throws Exception {
+    pool = Executors.newFixedThreadPool(2);
+    SliceScheduler scheduler = new SliceScheduler(pool);
+    CountDownLatch pieceStarted = new CountDownLatch(1);
+    TestWork work =
+        new TestWork("large", 4 * MIN_ITEMS, null) {
+          @Override
+          void process(int item) throws InterruptedException {
+            if (item == 0) {
+              // Keep the first thread busy until another thread took over the handed over items.
+              assertThat(pieceStarted.await(10, SECONDS)).isTrue();
+            } else if (item == 2 * MIN_ITEMS) {
+              pieceStarted.countDown();
+            }
+          }
+        };
+
+    SliceScheduler.Result result = scheduler.submit(work, 1000);
+    scheduler.start();
+    result.future.get(10, SECONDS);
+
+    assertThat(work.handedOver).contains("200-400");
+    assertThat(work.processedItems.keySet()).containsExactlyElementsIn(range(0, 4 * MIN_ITEMS));
+    assertThat(work.processedItems.get(2 * MIN_ITEMS))
+        .isNotEqualTo(work.processedItems.get(0));
+  }
+
+  @Test
+  public void sliceIsDoneOnlyAfterHandedOverItemsWereProcessed() throws Exception {
+    pool = Executors.newFixedThreadPool(2);
+    SliceScheduler scheduler = new SliceScheduler(pool);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch firstHalfDone = new CountDownLatch(1);
+    TestWork work =
+        new TestWork("large", 2 * MIN_ITEMS, null) {
+          @Override
+          void process(int item) throws InterruptedException {
+            if (item == MIN_ITEMS) {
+              assertThat(release.await(10, SECONDS)).isTrue();
+            } else if (item == MIN_ITEMS - 1) {
+              firstHalfDone.countDown();
+            }
+          }
+        };
+
+    SliceScheduler.Result result = scheduler.submit(work, 1000);
+    scheduler.start();
+    assertThat(firstHalfDone.await(10, SECONDS)).isTrue();
+    assertThat(result.future.isDone()).isFalse();
+
+    release.countDown();
+    result.future.get(10, SECONDS);
+    assertThat(work.processedItems.keySet()).containsExactlyElementsIn(range(0, 2 * MIN_ITEMS));
+  }
+
+  @Test
+  public void directExecutorRunsHandedOverItemsOnCallingThread() throws Exception {
+    SliceScheduler scheduler = new SliceScheduler(directExecutor());
+    TestWork work = new TestWork("large", 1000, null);
+
+    SliceScheduler.Result result = scheduler.submit(work, 1000);
+    assertThat(result.future.isDone()).isFalse();
+
+    scheduler.start();
+    assertThat(result.future.isDone()).isTrue();
+    assertThat(work.processedItems.keySet()).containsExactlyElementsIn(range(0, 1000));
+    assertThat(ImmutableList.copyOf(work.processedItems.values()))
+        .containsExactlyElementsIn(Collections.nCopies(1000, Thread.currentThread().getName()));
+  }
+
+  @Test
+  public void failureOfHandedOverItemsFailsSlice() throws Exception {
+    SliceScheduler scheduler = new SliceScheduler(tasks::add);
+    TestWork work =
+        new TestWork("large", 2 * MIN_ITEMS, null) {
+          @Override
+          void process(int item) {
+            if (item == MIN_ITEMS) {
+              throw new IllegalStateException("failed " + item);
+            }
+          }
+        };
+
+    SliceScheduler.Result result = scheduler.submit(work, 1000);
+    scheduler.start();
+    tasks.get(0).run();
+
+    ExecutionException thrown = assertThrows(ExecutionException.class, result.future::get);
+    assertThat(thrown).hasCauseThat().hasMessageThat().isEqualTo("failed 100");
+  }
+
+  @Test
+  public void slicesDontRunBeforeStart() throws Exception {
+    SliceScheduler scheduler = new SliceScheduler(tasks::add);
+    scheduler.submit(new TestWork("first", 1, null), 10);
+    scheduler.submit(new TestWork("second", 1, null), 10);
+
+    assertThat(tasks).isEmpty();
+    scheduler.start();
+    assertThat(tasks).hasSize(2);
+  }
+
+  @Test
+  public void rejectedSliceFails() throws Exception {
+    SliceScheduler scheduler =
+        new SliceScheduler(
+            r -> {
+              throw new RejectedExecutionException("shutdown");
+            });
+
+    SliceScheduler.Result result = scheduler.submit(new TestWork("rejected", 1, null), 1);
+    scheduler.start();
+
+    ExecutionException thrown = assertThrows(ExecutionException.class, result.future::get);
+    assertThat(thrown).hasCauseThat().isInstanceOf(RejectedExecutionException.class);
+  }
+
+  private static ImmutableList<Integer> range(int from, int to) {
+    ImmutableList.Builder<Integer> items = ImmutableList.builder();
+    for (int i = from; i < to; i++) {
+      items.add(i);
+    }
+    return items.build();
+  }
+
+  /** Work that records which thread processed which item, shared by all of its pieces. */
+  private static class TestWork extends SliceScheduler.Work {
+    private final String name;
+    @Nullable private final List<String> order;
+    final Map<Integer, String> processedItems;
+    final List<String> handedOver;
+    private final TestWork root;
+
+    TestWork(String name, int items, @Nullable List<String> order) {
+      this.name = name;
+      this.order = order;
+      this.processedItems = new ConcurrentHashMap<>();
+      this.handedOver = Collections.synchronizedList(new ArrayList<>());
+      this.root = this;
+      end = items;
+    }
+
+    private TestWork(TestWork root) {
+      this.name = root.name;
+      this.order = root.order;
+      this.processedItems = root.processedItems;
+      this.handedOver = root.handedOver;
+      this.root = root;
+    }
+
+    @Override
+    SliceScheduler.Work newPiece() {
+      return new TestWork(root);
+    }
+
+    @Override
+    public Void call() throws Exception {
+      while (pos < end) {
+        int n = handOverHalf(MIN_ITEMS);
+        if (n > 0) {
+          handedOver.add(end + "-" + (end + n));
+        }
+        int item = pos++;
+        if (order != null) {
+          order.add(name + ":" + item);
+        }
+        processedItems.put(item, Thread.currentThread().getName());
+        root.process(item);
+        processed++;
+      }
+      return null;
+    }
+
+    void process(int item) throws Exception {}
+  }
+}
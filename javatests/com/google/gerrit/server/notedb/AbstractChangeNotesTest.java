@@ -85,6 +85,13 @@ public abstract class AbstractChangeNotesTest {
 
   @ConfigSuite.Parameter public Config testConfig;
 
+  @ConfigSuite.Config
+  public static Config partialCacheReloadingDisabled() {
+    Config cfg = new Config();
+    cfg.setBoolean("cache", ChangeNotesCache.CACHE_NAME, "enablePartialReloads", false);
+    return cfg;
+  }
+
   protected Account.Id otherUserId;
   protected FakeAccountCache accountCache;
   protected IdentifiedUser changeOwner;
@@ -1529,6 +1529,58 @@ public class ChangeNotesTest extends AbstractChangeNotesTest {
     }
   }
 
+  @Test
+  public void parseFromCachedStateMatchesFullParse() throws Exception {
+    Change c = newChange();
+    ChangeUpdate update = newUpdate(c, changeOwner);
+    update.putReviewer(otherUser.getAccount().id(), REVIEWER);
+    update.putApproval(LabelId.CODE_REVIEW, (short) 1);
+    update.setChangeMessage("first message");
+    update.commit();
+    ChangeNotesState base = parseAll(c, newNotes(c).getRevision());
+
+    update = newUpdate(c, otherUser);
+    update.putApproval(LabelId.CODE_REVIEW, (short) -1);
+    update.setTopic("topic");
+    update.commit();
+    incrementPatchSet(c);
+    update = newUpdate(c, changeOwner);
+    update.putApproval(LabelId.VERIFIED, (short) 1);
+    update.setChangeMessage("second message");
+    update.commit();
+    ObjectId tip = newNotes(c).getRevision();
+
+    try (ChangeNotesRevWalk walk = ChangeNotesCommit.newRevWalk(repo)) {
+      ChangeNotesParser parser =
+          new ChangeNotesParser(c.getId(), tip, walk, changeNoteJson, args.metrics);
+      assertThat(parser.parseFrom(base)).hasValue(parseAll(c, tip));
+    }
+  }
+
+  @Test
+  public void parseFromCachedStateFailsIfPatchSetWasDeleted() throws Exception {
+    Change c = newChange();
+    incrementPatchSet(c);
+    ChangeNotesState base = parseAll(c, newNotes(c).getRevision());
+
+    ChangeUpdate update = newUpdate(c, changeOwner);
+    update.setPatchSetState(PatchSetState.DELETED);
+    update.commit();
+    ObjectId tip = newNotes(c).getRevision();
+
+    try (ChangeNotesRevWalk walk = ChangeNotesCommit.newRevWalk(repo)) {
+      ChangeNotesParser parser =
+          new ChangeNotesParser(c.getId(), tip, walk, changeNoteJson, args.metrics);
+      assertThat(parser.parseFrom(base)).isEmpty();
+    }
+  }
+
+  private ChangeNotesState parseAll(Change c, ObjectId tip) throws Exception {
+    try (ChangeNotesRevWalk walk = ChangeNotesCommit.newRevWalk(repo)) {
+      return new ChangeNotesParser(c.getId(), tip, walk, changeNoteJson, args.metrics).parseAll();
+    }
+  }
+
   @Test
   public void multipleUpdatesAcrossRefs() throws Exception {
     Change c1 = newChange();
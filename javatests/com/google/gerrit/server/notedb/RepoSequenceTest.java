@@ -26,6 +26,7 @@ import com.github.rholder.retry.RetryerBuilder;
 import com.github.rholder.retry.StopStrategies;
 import com.google.common.collect.ImmutableList;
 import com.google.common.truth.Expect;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.Runnables;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.entities.RefNames;
@@ -33,7 +34,10 @@ import com.google.gerrit.exceptions.StorageException;
 import com.google.gerrit.server.extensions.events.GitReferenceUpdated;
 import com.google.gerrit.testing.InMemoryRepositoryManager;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -329,6 +333,93 @@ public class RepoSequenceTest {
     assertThat(s2.acquireCount).isEqualTo(1);
   }
 
+  @Test
+  public void shardedModeRefillsInBackground() throws Exception {
+    List<Runnable> refills = new ArrayList<>();
+    AtomicInteger reservedBlocks = new AtomicInteger();
+    RepoSequence s = newShardedSequence("id", 1, 4, 4, refills::add, reservedBlocks);
+
+    assertThat(s.next()).isEqualTo(1);
+    assertThat(s.acquireCount).isEqualTo(1);
+    assertThat(refills).isEmpty();
+
+    // Half of the block is used up, the next block is reserved in the background.
+    assertThat(s.next()).isEqualTo(2);
+    assertThat(refills).hasSize(1);
+    refills.remove(0).run();
+    assertThat(s.acquireCount).isEqualTo(2);
+    assertThat(readBlob("id")).isEqualTo("9");
+
+    // No further refill while a reserved block is available.
+    assertThat(s.next(2)).containsExactly(3, 4).inOrder();
+    assertThat(refills).isEmpty();
+
+    // The reserved block is used without updating the ref.
+    assertThat(s.next()).isEqualTo(5);
+    assertThat(s.acquireCount).isEqualTo(2);
+    assertThat(readBlob("id")).isEqualTo("9");
+    assertThat(reservedBlocks.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shardedModeGrowsBatchSizeUpToMaximum() throws Exception {
+    AtomicInteger reservedBlocks = new AtomicInteger();
+    RepoSequence s =
+        newShardedSequence("id", 1, 2, 8, MoreExecutors.directExecutor(), reservedBlocks);
+
+    // Blocks are used up quickly, so the size of the blocks reserved in the background doubles
+    // up to the maximum: 2, 2, 4, 8, 8.
+    for (int i = 1; i <= 14; i++) {
+      assertThat(s.next()).isEqualTo(i);
+    }
+    assertThat(readBlob("id")).isEqualTo("25");
+    assertThat(reservedBlocks.get()).isEqualTo(5);
+  }
+
+  @Test
+  public void shardedModeDropsReservedBlockOnStoreNew() throws Exception {
+    List<Runnable> refills = new ArrayList<>();
+    RepoSequence s = newShardedSequence("id", 1, 2, 2, refills::add, new AtomicInteger());
+
+    assertThat(s.next()).isEqualTo(1);
+    assertThat(refills).hasSize(1);
+    s.storeNew(100);
+    refills.remove(0).run();
+
+    assertThat(s.next()).isEqualTo(100);
+    assertThat(s.next()).isEqualTo(101);
+  }
+
+  private RepoSequence newShardedSequence(
+      String name,
+      int start,
+      int batchSize,
+      int maxBatchSize,
+      Executor refillExecutor,
+      AtomicInteger reservedBlocks) {
+    return new RepoSequence(
+        repoManager,
+        GitReferenceUpdated.DISABLED,
+        project,
+        name,
+        () -> start,
+        batchSize,
+        Runnables.doNothing(),
+        RETRYER,
+        0,
+        maxBatchSize,
+        refillExecutor,
+        new RepoSequence.Listener() {
+          @Override
+          public void onBlockReserved(long latencyNanos) {
+            reservedBlocks.incrementAndGet();
+          }
+
+          @Override
+          public void onLockFailure() {}
+        });
+  }
+
   private RepoSequence newSequence(String name, int start, int batchSize) {
     return newSequence(name, start, batchSize, Runnables.doNothing(), RETRYER);
   }
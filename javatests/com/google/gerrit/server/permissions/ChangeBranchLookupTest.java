@@ -0,0 +1,94 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.permissions;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.entities.BranchNameKey;
+import com.google.gerrit.entities.Project;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class ChangeBranchLookupTest {
+  private static final Project.NameKey PROJECT = Project.nameKey("project");
+  private static final BranchNameKey MASTER = BranchNameKey.create(PROJECT, "master");
+  private static final BranchNameKey STABLE = BranchNameKey.create(PROJECT, "stable");
+
+  @Test
+  public void empty() {
+    ChangeBranchLookup lookup = ChangeBranchLookup.of(ImmutableMap.of());
+
+    assertThat(lookup.contains(0)).isFalse();
+    assertThat(lookup.contains(1)).isFalse();
+    assertThat(lookup.branch(1)).isNull();
+  }
+
+  @Test
+  public void denseChangeNumbers() {
+    ChangeBranchLookup lookup =
+        ChangeBranchLookup.of(
+            ImmutableMap.of(
+                MASTER,
+                IntStream.range(1000, 2000).filter(i -> i % 2 == 0).toArray(),
+                STABLE,
+                IntStream.range(1000, 2000).filter(i -> i % 2 == 1).toArray()));
+
+    for (int id = 1000; id < 2000; id++) {
+      assertThat(lookup.contains(id)).isTrue();
+      assertThat(lookup.branch(id)).isEqualTo(id % 2 == 0 ? MASTER : STABLE);
+    }
+    assertThat(lookup.contains(999)).isFalse();
+    assertThat(lookup.contains(2000)).isFalse();
+    assertThat(lookup.contains(-1)).isFalse();
+    assertThat(lookup.branch(999)).isNull();
+    assertThat(lookup.branch(2000)).isNull();
+  }
+
+  @Test
+  public void denseChangeNumbersWithGaps() {
+    ChangeBranchLookup lookup =
+        ChangeBranchLookup.of(
+            ImmutableMap.of(
+                MASTER, new int[] {1, 2, 3, 5, 8},
+                STABLE, new int[] {4, 9}));
+
+    assertThat(lookup.branch(4)).isEqualTo(STABLE);
+    assertThat(lookup.branch(5)).isEqualTo(MASTER);
+    assertThat(lookup.contains(6)).isFalse();
+    assertThat(lookup.contains(7)).isFalse();
+    assertThat(lookup.branch(7)).isNull();
+    assertThat(lookup.branch(9)).isEqualTo(STABLE);
+  }
+
+  @Test
+  public void sparseChangeNumbers() {
+    ChangeBranchLookup lookup =
+        ChangeBranchLookup.of(
+            ImmutableMap.of(
+                MASTER, new int[] {1, 1_000_000},
+                STABLE, new int[] {50_000, 2_000_000_000}));
+
+    assertThat(lookup.branch(1)).isEqualTo(MASTER);
+    assertThat(lookup.branch(50_000)).isEqualTo(STABLE);
+    assertThat(lookup.branch(1_000_000)).isEqualTo(MASTER);
+    assertThat(lookup.branch(2_000_000_000)).isEqualTo(STABLE);
+    assertThat(lookup.contains(0)).isFalse();
+    assertThat(lookup.contains(2)).isFalse();
+    assertThat(lookup.contains(999_999)).isFalse();
+    assertThat(lookup.contains(2_000_000_001)).isFalse();
+    assertThat(lookup.branch(2)).isNull();
+  }
+}
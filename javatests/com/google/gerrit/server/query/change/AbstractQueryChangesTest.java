@@ -90,6 +90,7 @@ import com.google.gerrit.index.Schema;
 import com.google.gerrit.index.query.IndexPredicate;
 import com.google.gerrit.index.query.Predicate;
 import com.google.gerrit.index.query.QueryParseException;
+import com.google.gerrit.index.query.QueryResult;
 import com.google.gerrit.lifecycle.LifecycleManager;
 import com.google.gerrit.server.AnonymousUser;
 import com.google.gerrit.server.CurrentUser;
@@ -1247,6 +1248,41 @@ public abstract class AbstractQueryChangesTest extends GerritServerTests {
     assertQuery(query.withLimit(100).withStart(100));
   }
 
+  @Test
+  public void searchAfterWithFilteredResults() throws Exception {
+    TestRepository<Repo> repo = createProject("repo");
+    Account.Id user2 =
+        accountManager.authenticate(AuthRequest.forUser("anotheruser")).getAccountId();
+    List<Change> visible = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      visible.add(insert(repo, newChange(repo), user2));
+      insert(repo, newChange(repo, null, null, null, null, false, true), userId);
+    }
+
+    // The private changes are returned by the index but are not visible to user2, so the index
+    // query is restarted at an offset after the cursor.
+    requestContext.setContext(newRequestContext(user2));
+    List<ChangeData> page = queryPage("project:repo", 2, null);
+    assertThat(page.stream().map(ChangeData::getId).collect(toList()))
+        .containsExactly(visible.get(3).getId(), visible.get(2).getId())
+        .inOrder();
+    page = queryPage("project:repo", 2, Iterables.getLast(page).getSearchAfter().encode());
+    assertThat(page.stream().map(ChangeData::getId).collect(toList()))
+        .containsExactly(visible.get(1).getId(), visible.get(0).getId())
+        .inOrder();
+  }
+
+  private List<ChangeData> queryPage(String query, int limit, @Nullable String searchAfter)
+      throws Exception {
+    QueryResult<ChangeData> result =
+        queryProcessorProvider
+            .get()
+            .setUserProvidedLimit(limit)
+            .setSearchAfter(searchAfter)
+            .query(queryBuilderProvider.get().parse(query));
+    return result.entities();
+  }
+
   @Test
   public void updateOrder() throws Exception {
     resetTimeWithClockStep(2, MINUTES);
@@ -0,0 +1,197 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.schema;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.change.AccountPatchReviewStore.PatchSetWithReviewedFiles;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.config.ThreadSettingsConfig;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.util.IdGenerator;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Test;
+
+public class JdbcAccountPatchReviewStoreTest {
+  private static final AtomicInteger DB_COUNTER = new AtomicInteger();
+
+  private final Account.Id accountId = Account.id(1000);
+  private final Account.Id otherAccountId = Account.id(1001);
+  private final Change.Id changeId1 = Change.id(1);
+  private final Change.Id changeId2 = Change.id(2);
+
+  private final List<JdbcAccountPatchReviewStore> stores = new ArrayList<>();
+  private final List<WorkQueue> workQueues = new ArrayList<>();
+  private JdbcAccountPatchReviewStore store;
+
+  @After
+  public void tearDown() {
+    for (JdbcAccountPatchReviewStore s : stores) {
+      s.stop();
+    }
+    for (WorkQueue workQueue : workQueues) {
+      workQueue.getDefaultQueue().shutdownNow();
+    }
+  }
+
+  @Test
+  public void markReviewedInBatch() throws Exception {
+    store = newStore(new Config());
+    PatchSet.Id ps1 = PatchSet.id(changeId1, 1);
+    PatchSet.Id ps2 = PatchSet.id(changeId2, 1);
+
+    store.markReviewed(
+        accountId, ImmutableListMultimap.of(ps1, "a.txt", ps1, "b.txt", ps2, "c.txt"));
+    // Already reviewed files are skipped without losing the other ones.
+    store.markReviewed(ps1, accountId, ImmutableList.of("a.txt", "d.txt"));
+
+    assertThat(store.findReviewed(ps1, accountId).get().files())
+        .containsExactly("a.txt", "b.txt", "d.txt");
+    assertThat(store.findReviewed(ps2, accountId).get().files()).containsExactly("c.txt");
+    assertThat(store.findReviewed(ps1, otherAccountId)).isEmpty();
+  }
+
+  @Test
+  public void clearReviewedInBatch() throws Exception {
+    store = newStore(new Config());
+    PatchSet.Id ps1 = PatchSet.id(changeId1, 1);
+
+    store.markReviewed(ps1, accountId, ImmutableList.of("a.txt", "b.txt", "c.txt"));
+    store.clearReviewed(ps1, accountId, ImmutableList.of("a.txt", "c.txt", "missing.txt"));
+
+    assertThat(store.findReviewed(ps1, accountId).get().files()).containsExactly("b.txt");
+  }
+
+  @Test
+  public void findReviewedOfManyPatchSets() throws Exception {
+    store = newStore(new Config());
+    PatchSet.Id ps11 = PatchSet.id(changeId1, 1);
+    PatchSet.Id ps12 = PatchSet.id(changeId1, 2);
+    PatchSet.Id ps13 = PatchSet.id(changeId1, 3);
+    PatchSet.Id ps21 = PatchSet.id(changeId2, 1);
+    PatchSet.Id ps22 = PatchSet.id(changeId2, 2);
+
+    store.markReviewed(ps11, accountId, "a.txt");
+    store.markReviewed(ps12, accountId, "b.txt");
+    store.markReviewed(ps22, accountId, "c.txt");
+    store.markReviewed(ps21, otherAccountId, "d.txt");
+
+    ImmutableMap<PatchSet.Id, PatchSetWithReviewedFiles> reviewed =
+        store.findReviewed(ImmutableList.of(ps11, ps13, ps21, ps22), accountId);
+
+    assertThat(reviewed.keySet()).containsExactly(ps11, ps13, ps22);
+    assertThat(reviewed.get(ps11)).isEqualTo(store.findReviewed(ps11, accountId).get());
+    assertThat(reviewed.get(ps13)).isEqualTo(store.findReviewed(ps13, accountId).get());
+    assertThat(reviewed.get(ps13).patchSetId()).isEqualTo(ps12);
+    assertThat(reviewed.get(ps22).files()).containsExactly("c.txt");
+  }
+
+  @Test
+  public void writeBehindFlushesBeforeReads() throws Exception {
+    Config cfg = new Config();
+    cfg.setString("accountPatchReviewDb", null, "writeBehindDelay", "1 hour");
+    store = newStore(cfg);
+    PatchSet.Id ps1 = PatchSet.id(changeId1, 1);
+
+    store.markReviewed(ps1, accountId, ImmutableList.of("a.txt", "b.txt"));
+
+    assertThat(store.findReviewed(ps1, accountId).get().files()).containsExactly("a.txt", "b.txt");
+
+    store.markReviewed(ps1, accountId, ImmutableList.of("c.txt"));
+    store.clearReviewed(ps1, accountId, "c.txt");
+    assertThat(store.findReviewed(ps1, accountId).get().files()).containsExactly("a.txt", "b.txt");
+  }
+
+  @Test
+  public void writeBehindFlushesOnStop() throws Exception {
+    Config cfg = new Config();
+    cfg.setString("accountPatchReviewDb", null, "writeBehindDelay", "1 hour");
+    store = newStore(cfg);
+    PatchSet.Id ps1 = PatchSet.id(changeId1, 1);
+
+    store.markReviewed(ps1, accountId, ImmutableList.of("a.txt"));
+    store.stop();
+
+    // A new store reads the database without pending flags of its own.
+    JdbcAccountPatchReviewStore reopened = newStore(cfg);
+    assertThat(reopened.findReviewed(ps1, accountId).get().files()).containsExactly("a.txt");
+  }
+
+  @Test
+  public void writeBehindDoesNotDelaySingleFlags() throws Exception {
+    Config cfg = new Config();
+    cfg.setString("accountPatchReviewDb", null, "writeBehindDelay", "1 hour");
+    store = newStore(cfg);
+    PatchSet.Id ps1 = PatchSet.id(changeId1, 1);
+
+    store.markReviewed(ps1, accountId, ImmutableList.of("a.txt"));
+    // Pending flags count as reviewed.
+    assertThat(store.markReviewed(ps1, accountId, "a.txt")).isFalse();
+
+    assertThat(store.markReviewed(ps1, accountId, "b.txt")).isTrue();
+    assertThat(store.markReviewed(ps1, accountId, "b.txt")).isFalse();
+  }
+
+  /** Creates a store for the database configured in {@code cfg}, or for a new database. */
+  private JdbcAccountPatchReviewStore newStore(Config cfg) throws Exception {
+    if (cfg.getString("accountPatchReviewDb", null, "url") == null) {
+      cfg.setString(
+          "accountPatchReviewDb",
+          null,
+          "url",
+          "jdbc:h2:mem:account_patch_reviews_test_"
+              + DB_COUNTER.incrementAndGet()
+              + ";DB_CLOSE_DELAY=-1");
+    }
+    ThreadSettingsConfig threadSettingsConfig =
+        Guice.createInjector(
+                new AbstractModule() {
+                  @Override
+                  protected void configure() {
+                    bind(Config.class).annotatedWith(GerritServerConfig.class).toInstance(cfg);
+                  }
+                })
+            .getInstance(ThreadSettingsConfig.class);
+    WorkQueue workQueue =
+        new WorkQueue(
+            Guice.createInjector().getInstance(IdGenerator.class),
+            1,
+            new DisabledMetricMaker(),
+            cfg);
+    workQueues.add(workQueue);
+    JdbcAccountPatchReviewStore reviewStore =
+        new H2AccountPatchReviewStore(
+            cfg, new SitePaths(Paths.get("/tmp/foo")), threadSettingsConfig, workQueue);
+    stores.add(reviewStore);
+    reviewStore.start();
+    return reviewStore;
+  }
+}
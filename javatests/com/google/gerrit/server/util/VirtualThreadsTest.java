@@ -0,0 +1,45 @@
+// Copyright (C) 2021 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.TruthJUnit.assume;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+
+import java.util.concurrent.ThreadFactory;
+import org.junit.Test;
+
+public class VirtualThreadsTest {
+  @Test
+  public void threadFactoryCannotBeCreatedIfUnsupported() {
+    assume().that(VirtualThreads.isSupported()).isFalse();
+
+    assertThrows(
+        IllegalStateException.class, () -> VirtualThreads.newThreadFactory("test-", (t, e) -> {}));
+  }
+
+  @Test
+  public void threadFactoryNamesThreads() throws Exception {
+    assume().that(VirtualThreads.isSupported()).isTrue();
+
+    ThreadFactory factory = VirtualThreads.newThreadFactory("test-", (t, e) -> {});
+    Thread first = factory.newThread(() -> {});
+    Thread second = factory.newThread(() -> {});
+
+    assertThat(first.getName()).isEqualTo("test-1");
+    assertThat(second.getName()).isEqualTo("test-2");
+    assertThat(first.isDaemon()).isTrue();
+  }
+}